@@ -0,0 +1,107 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize.bson;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.mongodb.util.JSON;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.jaqpot.core.data.serialize.JacksonMongoSerializer;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.openjdk.jol.info.GraphLayout;
+
+/**
+ * Measures what a dataset costs on the wire and on the heap: the size of its
+ * JSON and BSON forms with rows keyed by feature URI and in the compact
+ * encoding, and the retained size of the rows as the legacy Mongo path read
+ * them, as {@link JacksonBsonCodec} reads them and after
+ * {@link Dataset#toColumnar()}. Retained sizes are walked with JOL, so they
+ * count every object reachable from the dataset.
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.main=org.jaqpot.core.data.serialize.bson.DatasetFootprint
+ * -Djmh.args="1000 20 200"
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class DatasetFootprint {
+
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        System.out.printf("%6s %8s %12s %12s %12s %12s %12s %12s %12s%n", "rows", "features",
+                "json", "json-compact", "bson", "bson-compact", "heap-legacy", "heap-codec", "heap-columnar");
+        for (int i = 1; i < Math.max(args.length, 2); i++) {
+            int features = args.length > i ? Integer.parseInt(args[i]) : 20;
+            measure(rows, features);
+        }
+    }
+
+    private static void measure(int rows, int features) throws IOException {
+        ObjectMapper jsonMapper = new ObjectMapper();
+        JacksonBsonCodec<Dataset> codec = new JacksonBsonCodec<>(Dataset.class, JacksonMongoSerializer.createMapper());
+
+        long json = jsonMapper.writeValueAsBytes(EntityCodecBenchmark.dataset(rows, features)).length;
+        long jsonCompact = jsonMapper.writeValueAsBytes(EntityCodecBenchmark.dataset(rows, features).compact()).length;
+        byte[] stored = encode(codec, EntityCodecBenchmark.dataset(rows, features));
+        long bsonCompact = encode(codec, EntityCodecBenchmark.dataset(rows, features).compact()).length;
+
+        Document document = new DocumentCodec().decode(new BsonBinaryReader(ByteBuffer.wrap(stored)), DecoderContext.builder().build());
+        Dataset legacy = EntityCodecBenchmark.legacyMapper()
+                .readValue(JSON.serialize(document).replaceAll("\\(DOT\\)", "\\."), Dataset.class);
+        Dataset decoded = decode(codec, stored);
+        Dataset columnar = decode(codec, stored);
+        columnar.toColumnar();
+
+        System.out.printf("%6d %8d %12d %12d %12d %12d %12d %12d %12d%n", rows, features,
+                json, jsonCompact, stored.length, bsonCompact,
+                GraphLayout.parseInstance(legacy).totalSize(),
+                GraphLayout.parseInstance(decoded).totalSize(),
+                GraphLayout.parseInstance(columnar).totalSize());
+    }
+
+    private static byte[] encode(JacksonBsonCodec<Dataset> codec, Dataset dataset) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), dataset, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    private static Dataset decode(JacksonBsonCodec<Dataset> codec, byte[] stored) {
+        return codec.decode(new BsonBinaryReader(ByteBuffer.wrap(stored)), DecoderContext.builder().build());
+    }
+
+}
@@ -0,0 +1,239 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize.bson;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.BeanDescription;
+import com.fasterxml.jackson.databind.DeserializationConfig;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.deser.BeanDeserializerModifier;
+import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
+import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
+import com.fasterxml.jackson.databind.module.SimpleModule;
+import com.mongodb.util.JSON;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.jaqpot.core.data.serialize.JacksonMongoSerializer;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+import org.jaqpot.core.model.dto.dataset.Substance;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares writing and reading a dataset through {@link JacksonBsonCodec}
+ * with the path MongoDBEntityManager took before it: JSON text with dotted
+ * keys escaped by regular expressions, parsed with Document.parse, and on the
+ * way back JSON.serialize of the stored Document, parsed again by Jackson.
+ * Both sides start from and end at BSON bytes, as the driver does.
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec -Djmh.args="EntityCodecBenchmark -prof gc"
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EntityCodecBenchmark {
+
+    @Param({"100", "1000"})
+    int rows;
+
+    @Param({"20", "200"})
+    int features;
+
+    private final JacksonBsonCodec<Dataset> codec = new JacksonBsonCodec<>(Dataset.class, JacksonMongoSerializer.createMapper());
+    private final ObjectMapper legacyMapper = legacyMapper();
+    private final DocumentCodec documentCodec = new DocumentCodec();
+
+    private Dataset dataset;
+    private byte[] stored;
+
+    @Setup
+    public void setUp() {
+        dataset = dataset(rows, features);
+        stored = codecWrite();
+    }
+
+    @Benchmark
+    public byte[] codecWrite() {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        codec.encode(new BsonBinaryWriter(buffer), dataset, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public Dataset codecRead() {
+        return codec.decode(new BsonBinaryReader(ByteBuffer.wrap(stored)), DecoderContext.builder().build());
+    }
+
+    @Benchmark
+    public byte[] legacyWrite() throws IOException {
+        String result = legacyMapper.writeValueAsString(dataset);
+        while (true) {
+            String temp = result.replaceAll("(\"[^\"]*)(\\.)([^\"]*\":)", "$1\\(DOT\\)$3");
+            if (temp.equals(result)) {
+                break;
+            }
+            result = temp;
+        }
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        documentCodec.encode(new BsonBinaryWriter(buffer), Document.parse(result), EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    @Benchmark
+    public Dataset legacyRead() throws IOException {
+        Document document = documentCodec.decode(new BsonBinaryReader(ByteBuffer.wrap(stored)), DecoderContext.builder().build());
+        return legacyMapper.readValue(JSON.serialize(document).replaceAll("\\(DOT\\)", "\\."), Dataset.class);
+    }
+
+    static Dataset dataset(int rows, int features) {
+        List<String> uris = new ArrayList<>(features);
+        Set<FeatureInfo> featureInfo = new HashSet<>();
+        for (int j = 0; j < features; j++) {
+            String uri = "http://app.jaqpot.org:8080/jaqpot/services/feature/f" + j;
+            uris.add(uri);
+            featureInfo.add(new FeatureInfo(uri, "feature " + j));
+        }
+        List<DataEntry> dataEntry = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            TreeMap<String, Object> values = new TreeMap<>();
+            for (int j = 0; j < features; j++) {
+                values.put(uris.get(j), i * 0.5 + j);
+            }
+            DataEntry row = new DataEntry();
+            row.setCompound(new Substance("http://app.jaqpot.org:8080/jaqpot/services/substance/s" + i, "s" + i, null));
+            row.setValues(values);
+            dataEntry.add(row);
+        }
+        Dataset dataset = new Dataset();
+        dataset.setId("benchmark");
+        dataset.setFeatures(featureInfo);
+        dataset.setDataEntry(dataEntry);
+        dataset.setTotalRows(rows);
+        dataset.setTotalColumns(features);
+        return dataset;
+    }
+
+    /**
+     * The Mongo mapper as it was before the codec, with a regular expression
+     * per key of every row.
+     */
+    static ObjectMapper legacyMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        SimpleModule module = new SimpleModule();
+        module.addSerializer(DataEntry.class, new JsonSerializer<DataEntry>() {
+            @Override
+            public void serialize(DataEntry value, JsonGenerator gen, SerializerProvider serializers) throws IOException {
+                gen.writeStartObject();
+                gen.writeObjectField("compound", value.getCompound());
+                gen.writeObjectFieldStart("values");
+                for (Map.Entry<String, Object> entry : value.getValues().entrySet()) {
+                    gen.writeObjectField(entry.getKey().replaceAll("\\.", "\\(DOT\\)"), entry.getValue());
+                }
+                gen.writeEndObject();
+                gen.writeEndObject();
+            }
+        });
+        module.setDeserializerModifier(new BeanDeserializerModifier() {
+            @Override
+            public JsonDeserializer<?> modifyDeserializer(DeserializationConfig config, BeanDescription beanDesc, JsonDeserializer<?> deserializer) {
+                return beanDesc.getBeanClass() == DataEntry.class ? new LegacyDataEntryDeserializer(deserializer) : deserializer;
+            }
+        });
+        mapper.registerModule(module);
+        mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper;
+    }
+
+    private static class LegacyDataEntryDeserializer extends StdDeserializer<DataEntry> implements ResolvableDeserializer {
+
+        private final JsonDeserializer<?> parent;
+
+        LegacyDataEntryDeserializer(JsonDeserializer<?> parent) {
+            super(DataEntry.class);
+            this.parent = parent;
+        }
+
+        @Override
+        public DataEntry deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {
+            DataEntry dataEntry = (DataEntry) parent.deserialize(p, ctxt);
+            TreeMap<String, Object> values = new TreeMap<>();
+            for (Map.Entry<String, Object> entry : dataEntry.getValues().entrySet()) {
+                values.put(entry.getKey().replaceAll("\\(DOT\\)", "\\."), entry.getValue());
+            }
+            dataEntry.setValues(values);
+            return dataEntry;
+        }
+
+        @Override
+        public void resolve(DeserializationContext ctxt) throws JsonMappingException {
+            ((ResolvableDeserializer) parent).resolve(ctxt);
+        }
+
+    }
+
+}
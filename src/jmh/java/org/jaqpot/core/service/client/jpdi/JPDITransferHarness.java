@@ -0,0 +1,254 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.service.client.jpdi;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
+import org.apache.http.util.EntityUtils;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+import org.jaqpot.core.model.dto.dataset.Substance;
+import org.jaqpot.core.model.dto.jpdi.TrainingRequest;
+
+/**
+ * Measures the throughput and latency of training requests sent to a local
+ * stand-in of an algorithm service, which reads the whole body and answers
+ * with a small JSON document. Every request serializes its dataset on the
+ * calling thread, once through the PipedInputStream entity JPDIClientImpl
+ * used to send and once through {@link RequestBodyProducer}, with the
+ * client configured as in JPDIClientFactory. Latency is measured from
+ * sending the request to receiving the response.
+ *
+ * Run with: mvn -Pjmh test-compile exec:exec
+ * -Djmh.main=org.jaqpot.core.service.client.jpdi.JPDITransferHarness
+ * -Djmh.args="&lt;rows&gt; &lt;features&gt; &lt;clients,...&gt; &lt;requests per client&gt;"
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class JPDITransferHarness {
+
+    private static final long BUFFER_LIMIT = 1 << 20;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private enum Mode {
+        PIPED, PRODUCER
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int features = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        String clients = args.length > 2 ? args[2] : "1,8";
+        int requests = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+
+        TrainingRequest trainingRequest = new TrainingRequest();
+        trainingRequest.setDataset(dataset(rows, features));
+        trainingRequest.setPredictionFeature("http://localhost:8080/jaqpot/services/feature/f0");
+        trainingRequest.setParameters(Collections.emptyMap());
+        long size = MAPPER.writeValueAsBytes(trainingRequest).length;
+
+        AtomicLong received = new AtomicLong();
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/training", exchange -> {
+            byte[] buffer = new byte[1 << 16];
+            long length = 0;
+            try (InputStream in = exchange.getRequestBody()) {
+                for (int read; (read = in.read(buffer)) >= 0;) {
+                    length += read;
+                }
+            }
+            received.addAndGet(length);
+            byte[] response = ("{\"received\":" + length + "}").getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        });
+        server.start();
+        String uri = "http://127.0.0.1:" + server.getAddress().getPort() + "/training";
+
+        System.out.printf("Body of %.1f MB, %d rows and %d features, %d processor(s)%n",
+                size / 1e6, rows, features, Runtime.getRuntime().availableProcessors());
+        System.out.printf("%-9s %7s %9s %9s %9s %9s %9s %9s%n",
+                "mode", "clients", "req/s", "MB/s", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        try (CloseableHttpAsyncClient client = HttpAsyncClientBuilder.create()
+                .setMaxConnTotal(200)
+                .setMaxConnPerRoute(50)
+                .build()) {
+            client.start();
+            for (String count : clients.split(",")) {
+                int threads = Integer.parseInt(count.trim());
+                for (Mode mode : Mode.values()) {
+                    // Warm up, then measure
+                    run(client, uri, mode, trainingRequest, threads, Math.max(2, requests / 4));
+                    long start = System.nanoTime();
+                    long[] latencies = run(client, uri, mode, trainingRequest, threads, requests);
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    Arrays.sort(latencies);
+                    System.out.printf("%-9s %7d %9.1f %9.1f %9.1f %9.1f %9.1f %9.1f%n",
+                            mode.name().toLowerCase(), threads,
+                            latencies.length / seconds, latencies.length * size / seconds / 1e6,
+                            percentile(latencies, 50), percentile(latencies, 90),
+                            percentile(latencies, 99), latencies[latencies.length - 1] / 1e6);
+                }
+            }
+        } finally {
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdownNow();
+        }
+    }
+
+    /**
+     * Sends requests from the given number of threads at once.
+     *
+     * @return the latency of every request, in nanoseconds
+     */
+    private static long[] run(CloseableHttpAsyncClient client, String uri, Mode mode, TrainingRequest trainingRequest,
+            int threads, int requests) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<long[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                results.add(executor.submit(() -> {
+                    long[] latencies = new long[requests];
+                    for (int i = 0; i < requests; i++) {
+                        long start = System.nanoTime();
+                        HttpResponse response = mode == Mode.PIPED
+                                ? sendPiped(client, uri, trainingRequest)
+                                : sendProduced(client, uri, trainingRequest);
+                        EntityUtils.consume(response.getEntity());
+                        if (response.getStatusLine().getStatusCode() != 200) {
+                            throw new IOException("Stand-in service answered " + response.getStatusLine());
+                        }
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                    return latencies;
+                }));
+            }
+            long[] latencies = new long[threads * requests];
+            for (int t = 0; t < threads; t++) {
+                System.arraycopy(results.get(t).get(), 0, latencies, t * requests, requests);
+            }
+            return latencies;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * The body as JPDIClientImpl sent it before {@link RequestBodyProducer}:
+     * through a pipe the I/O reactor reads from.
+     */
+    private static HttpResponse sendPiped(CloseableHttpAsyncClient client, String uri, TrainingRequest trainingRequest) throws Exception {
+        PipedOutputStream out = new PipedOutputStream();
+        PipedInputStream in = new PipedInputStream(out);
+        InputStreamEntity entity = new InputStreamEntity(in, ContentType.APPLICATION_JSON);
+        entity.setChunked(true);
+        HttpPost request = new HttpPost(uri);
+        request.setEntity(entity);
+        Future<HttpResponse> response = client.execute(request, null);
+        try (OutputStream body = out) {
+            MAPPER.writeValue(body, trainingRequest);
+        }
+        return response.get();
+    }
+
+    private static HttpResponse sendProduced(CloseableHttpAsyncClient client, String uri, TrainingRequest trainingRequest) throws Exception {
+        HttpPost request = new HttpPost(uri);
+        RequestBodyProducer body = new RequestBodyProducer(request, ContentType.APPLICATION_JSON, BUFFER_LIMIT);
+        Future<HttpResponse> response = client.execute(body, HttpAsyncMethods.createConsumer(), null);
+        try (OutputStream out = body.stream()) {
+            MAPPER.writeValue(out, trainingRequest);
+        }
+        body.finish();
+        return response.get();
+    }
+
+    private static double percentile(long[] sorted, int percent) {
+        int index = (int) Math.ceil(percent / 100.0 * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static Dataset dataset(int rows, int features) {
+        List<String> uris = new ArrayList<>(features);
+        Set<FeatureInfo> featureInfo = new HashSet<>();
+        for (int j = 0; j < features; j++) {
+            String uri = "http://localhost:8080/jaqpot/services/feature/f" + j;
+            uris.add(uri);
+            featureInfo.add(new FeatureInfo(uri, "feature " + j));
+        }
+        List<DataEntry> dataEntry = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            TreeMap<String, Object> values = new TreeMap<>();
+            for (int j = 0; j < features; j++) {
+                values.put(uris.get(j), i * 0.5 + j);
+            }
+            DataEntry row = new DataEntry();
+            row.setCompound(new Substance("http://localhost:8080/jaqpot/services/substance/s" + i, "s" + i, null));
+            row.setValues(values);
+            dataEntry.add(row);
+        }
+        Dataset dataset = new Dataset();
+        dataset.setId("harness");
+        dataset.setFeatures(featureInfo);
+        dataset.setDataEntry(dataEntry);
+        return dataset;
+    }
+
+}
@@ -31,13 +31,22 @@ package org.jaqpot.core.data;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.jaqpot.core.db.entitymanager.JaqpotBulkWriteException;
 import org.jaqpot.core.db.entitymanager.JaqpotEntityManager;
+import org.jaqpot.core.db.entitymanager.KeysetCursor;
 import org.jaqpot.core.model.JaqpotEntity;
+import org.jaqpot.core.model.UserCounters;
 
 
 /**
@@ -49,10 +58,32 @@ import org.jaqpot.core.model.JaqpotEntity;
  */
 public abstract class AbstractHandler<T extends JaqpotEntity>  {
 
+    private static final long COUNTERS_TTL = 30000L;
+    private static final int COUNTERS_CACHE_SIZE = 1024;
+
+    private static final Map<String, CachedCounters> countersCache = Collections.synchronizedMap(
+            new LinkedHashMap<String, CachedCounters>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, CachedCounters> eldest) {
+            return size() > COUNTERS_CACHE_SIZE;
+        }
+    });
+
     private final Class<T> entityClass;
+    private final boolean counted;
 
     public AbstractHandler(Class<T> entityClass) {
+        this(entityClass, false);
+    }
+
+    /**
+     * @param entityClass the class of the handled entities
+     * @param counted whether visible entities are counted per creator in the
+     * {@link UserCounters} of each user
+     */
+    public AbstractHandler(Class<T> entityClass, boolean counted) {
         this.entityClass = entityClass;
+        this.counted = counted;
     }
 
     protected abstract JaqpotEntityManager getEntityManager();
@@ -62,14 +93,177 @@ public abstract class AbstractHandler<T extends JaqpotEntity>  {
             entity.getMeta().setDate(new Date());
         }
         getEntityManager().persist(entity);
+        updateCounters(null, entity);
     }
 
     public void edit(T entity) {
-        getEntityManager().merge(entity);
+        T previous = getEntityManager().merge(entity);
+        updateCounters(previous, entity);
     }
 
     public void remove(T entity) {
+        T previous = counted ? getEntityManager().find(entityClass, entity.getId(), counterFields()) : null;
         getEntityManager().remove(entity);
+        updateCounters(previous, null);
+    }
+
+    /**
+     * Creates all given entities with a single bulk write.
+     *
+     * @param entities the entities to create
+     * @throws org.jaqpot.core.db.entitymanager.JaqpotBulkWriteException if some
+     * of the entities could not be created
+     */
+    public void createAll(Collection<T> entities) {
+        Date now = new Date();
+        for (T entity : entities) {
+            if (entity.getMeta() != null) {
+                entity.getMeta().setDate(now);
+            }
+        }
+        try {
+            getEntityManager().persistAll(entities);
+        } catch (JaqpotBulkWriteException ex) {
+            updateCounters(entities, ex.getFailures().keySet(), 1L);
+            throw ex;
+        }
+        updateCounters(entities, Collections.emptySet(), 1L);
+    }
+
+    public void editAll(Collection<T> entities) {
+        if (counted) {
+            // bulk replacements do not return the previous state the counters
+            // depend on
+            entities.forEach(this::edit);
+            return;
+        }
+        getEntityManager().mergeAll(entities);
+    }
+
+    public void removeAll(Collection<T> entities) {
+        List<T> previous = counted
+                ? getEntityManager().find(entityClass,
+                        entities.stream().map(JaqpotEntity::getId).collect(Collectors.toList()),
+                        counterFields())
+                : Collections.emptyList();
+        try {
+            getEntityManager().removeAll(entities);
+        } catch (JaqpotBulkWriteException ex) {
+            updateCounters(previous, ex.getFailures().keySet(), -1L);
+            throw ex;
+        }
+        updateCounters(previous, Collections.emptySet(), -1L);
+    }
+
+    /**
+     * The names of the per-user counters the given entity contributes to.
+     * Handlers that keep finer-grained counters override this method together
+     * with {@link #counterFields()}.
+     *
+     * @param entity a visible entity
+     * @return the names of the counters
+     */
+    protected Set<String> counterKeys(T entity) {
+        return Collections.singleton(entityClass.getSimpleName());
+    }
+
+    /**
+     * The fields {@link #counterKeys} depends on.
+     *
+     * @return a list of fields
+     */
+    protected List<String> counterFields() {
+        return Arrays.asList("meta.creators", "visible");
+    }
+
+    /**
+     * Updates the counters of the creators of an entity that changed from the
+     * given previous to the given current state. Either state may be null when
+     * the entity is created or removed.
+     *
+     * @param previous the previous state of the entity
+     * @param current the current state of the entity
+     */
+    protected void updateCounters(T previous, T current) {
+        Map<String, Map<String, Long>> deltas = new HashMap<>();
+        addCounterDeltas(deltas, previous, -1L);
+        addCounterDeltas(deltas, current, 1L);
+        applyCounterDeltas(deltas);
+    }
+
+    /**
+     * Counts the given entities, except for the ones that failed to be
+     * written, in a single update per creator.
+     *
+     * @param entities the entities that were created or removed
+     * @param failed the ids of the entities that failed to be written
+     * @param amount 1 for created and -1 for removed entities
+     */
+    protected void updateCounters(Collection<T> entities, Set<String> failed, long amount) {
+        Map<String, Map<String, Long>> deltas = new HashMap<>();
+        for (T entity : entities) {
+            if (!failed.contains(entity.getId())) {
+                addCounterDeltas(deltas, entity, amount);
+            }
+        }
+        applyCounterDeltas(deltas);
+    }
+
+    private void addCounterDeltas(Map<String, Map<String, Long>> deltas, T entity, long amount) {
+        if (!counted || entity == null || !Boolean.TRUE.equals(entity.getVisible())
+                || entity.getMeta() == null || entity.getMeta().getCreators() == null) {
+            return;
+        }
+        Set<String> keys = counterKeys(entity);
+        for (String creator : entity.getMeta().getCreators()) {
+            Map<String, Long> increments = deltas.computeIfAbsent(creator, c -> new HashMap<>());
+            keys.forEach(key -> increments.merge("counters." + key, amount, Long::sum));
+        }
+    }
+
+    private void applyCounterDeltas(Map<String, Map<String, Long>> deltas) {
+        for (Map.Entry<String, Map<String, Long>> delta : deltas.entrySet()) {
+            Map<String, Long> increments = delta.getValue();
+            increments.values().removeIf(amount -> amount == 0L);
+            if (!increments.isEmpty()) {
+                getEntityManager().increment(UserCounters.class, delta.getKey(), increments);
+                forgetCounters(delta.getKey());
+            }
+        }
+    }
+
+    /**
+     * Reads the counters of the given user, serving them from a small cache
+     * that is invalidated whenever they are updated through a handler.
+     *
+     * @param userId the id of the user
+     * @return the counters of the user, empty if nothing has been counted yet
+     */
+    protected Map<String, Long> findCounters(String userId) {
+        CachedCounters cached = countersCache.get(userId);
+        if (cached != null && System.currentTimeMillis() - cached.loadedAt < COUNTERS_TTL) {
+            return cached.counters;
+        }
+        UserCounters userCounters = getEntityManager().find(UserCounters.class, userId);
+        Map<String, Long> counters = userCounters != null && userCounters.getCounters() != null
+                ? Collections.unmodifiableMap(userCounters.getCounters())
+                : Collections.emptyMap();
+        countersCache.put(userId, new CachedCounters(counters));
+        return counters;
+    }
+
+    protected Long findCounter(String userId, String key) {
+        return findCounters(userId).getOrDefault(key, 0L);
+    }
+
+    /**
+     * Drops the cached counters of the given user, so that they are read
+     * again on the next request.
+     *
+     * @param userId the id of the user
+     */
+    protected static void forgetCounters(String userId) {
+        countersCache.remove(userId);
     }
 
     public T find(Object id) {
@@ -93,6 +287,18 @@ public abstract class AbstractHandler<T extends JaqpotEntity>  {
         return getEntityManager().find(entityClass, properties, 0, Integer.MAX_VALUE);
     }
 
+    /**
+     * Streams the entities that match the given properties without loading
+     * them all in memory. The returned stream must be closed.
+     *
+     * @param properties a properties map matching field names with values
+     * @param fields a list of fields to be returned, or null for whole entities
+     * @return a stream over the matching entities
+     */
+    public Stream<T> stream(Map<String, Object> properties, List<String> fields) {
+        return getEntityManager().stream(entityClass, properties, fields);
+    }
+
     public List<T> findAll() {
         return getEntityManager().findAll(entityClass, 0, Integer.MAX_VALUE);
     }
@@ -141,11 +347,48 @@ public abstract class AbstractHandler<T extends JaqpotEntity>  {
         return getEntityManager().findSortedDesc(entityClass, properties, fields, start, max, Arrays.asList("meta.date"));
     }
 
+    /**
+     * Lists the entities of the given creator, newest first, starting right
+     * after the given cursor.
+     *
+     * @param createdBy the creator of the entities
+     * @param cursor continuation token returned by {@link #cursorOf} for the
+     * last entity of the previous page, or null for the first page
+     * @param max the maximum number of entities to list
+     * @return the next page of entities
+     */
+    public List<T> listMetaOfCreator(String createdBy, String cursor, Integer max) {
+        List<String> fields = new ArrayList<>();
+        fields.add("_id");
+        fields.add("meta");
+        fields.add("ontologicalClasses");
+
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("meta.creators", Arrays.asList(createdBy));
+        properties.put("visible", true);
+
+        return getEntityManager().findPage(entityClass, properties, fields, cursor, max);
+    }
+
+    /**
+     * Creates the continuation token that points right after the given
+     * entity.
+     *
+     * @param entity the last entity of a page
+     * @return an opaque continuation token
+     */
+    public String cursorOf(T entity) {
+        return KeysetCursor.of(entity);
+    }
+
     public Long countAll() {
         return getEntityManager().countAll(entityClass);
     }
 
     public Long countAllOfCreator(String createdBy) {
+        if (counted) {
+            return findCounter(createdBy, entityClass.getSimpleName());
+        }
         Map<String, Object> properties = new HashMap<>();
         properties.put("meta.creators", Arrays.asList(createdBy));
         properties.put("visible", true);
@@ -153,4 +396,15 @@ public abstract class AbstractHandler<T extends JaqpotEntity>  {
         return getEntityManager().count(entityClass, properties);
     }
 
+    private static class CachedCounters {
+
+        private final Map<String, Long> counters;
+        private final long loadedAt;
+
+        CachedCounters(Map<String, Long> counters) {
+            this.counters = counters;
+            this.loadedAt = System.currentTimeMillis();
+        }
+    }
+
 }
@@ -57,7 +57,7 @@ public class AlgorithmHandler extends AbstractHandler<Algorithm> {
     JaqpotEntityManager em;
 
     public AlgorithmHandler() {
-        super(Algorithm.class);
+        super(Algorithm.class, true);
     }
 
     @Override
@@ -51,7 +51,7 @@ public class BibTeXHandler extends AbstractHandler<BibTeX> {
     JaqpotEntityManager em;
 
     public BibTeXHandler() {
-        super(BibTeX.class);
+        super(BibTeX.class, true);
     }
 
     @Override
@@ -35,32 +35,101 @@
 package org.jaqpot.core.data;
 
 import org.jaqpot.core.annotations.MongoDB;
+import org.jaqpot.core.data.serialize.ArrowDatasetReader;
+import org.jaqpot.core.data.serialize.CSVDatasetReader;
+import org.jaqpot.core.data.serialize.DatasetStreamReader;
+import org.jaqpot.core.data.serialize.custom.MongoKeyEncoder;
+import org.jaqpot.core.db.entitymanager.AsyncJaqpotEntityManager;
+import org.jaqpot.core.db.entitymanager.JaqpotBulkWriteException;
 import org.jaqpot.core.db.entitymanager.JaqpotEntityManager;
 import org.jaqpot.core.model.MetaInfo;
+import org.jaqpot.core.model.dto.dataset.ColumnarData;
 import org.jaqpot.core.model.dto.dataset.DataEntry;
 import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.DatasetChunk;
+import org.jaqpot.core.model.dto.dataset.FeatureDictionary;
 import org.jaqpot.core.model.dto.dataset.FeatureInfo;
 import org.jaqpot.core.model.factory.DatasetFactory;
+import org.jaqpot.core.model.util.ROG;
+import org.jaqpot.core.model.validator.DatasetValidator;
+import org.jaqpot.core.properties.PropertyManager;
+import javax.ejb.Asynchronous;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
+ * Datasets are stored as a header document (features, meta and totals) plus
+ * row chunks of at most {@link #CHUNK_SIZE} rows and {@link #CHUNK_BYTES}
+ * estimated bytes each, see {@link DatasetChunk}.
+ * Datasets stored as a single document by earlier versions are still read
+ * as they are and are converted by {@link #migrate()}. Chunks are written in
+ * the compact encoding when jaqpot.db.dataset.compact is set; chunks in
+ * either encoding are read.
  *
  * @author Charalampos Chomenidis
  * @author Pantelis Sopasakis
  */
 @Stateless
 public class DatasetHandler extends AbstractHandler<Dataset> {
+
+    private static final Logger LOG = Logger.getLogger(DatasetHandler.class.getName());
+
+    public static final int CHUNK_SIZE = 1000;
+
+    /**
+     * Estimated size at which a chunk is closed, half of the 16 MB that
+     * MongoDB allows a document so that the estimate may fall short.
+     */
+    public static final long CHUNK_BYTES = 8L * 1024 * 1024;
+
+    private static final List<String> HEADER_FIELDS = Arrays.asList("_id", "meta", "ontologicalClasses",
+            "visible", "temporary", "featured", "datasetURI", "byModel", "features", "totalRows",
+            "totalColumns", "descriptors", "chunkSize", "chunkStarts", "chunkGeneration");
+
+    private static final List<String> CHUNKING_FIELDS = Arrays.asList("_id", "chunkSize", "chunkStarts", "chunkGeneration");
+
+    private static final List<String> CHUNK_ORDER = Arrays.asList("chunkIndex");
+
+    private static final int MAX_SAMPLES = 64;
+
+    /**
+     * Row orders of randomized and stratified datasets, keyed by
+     * {@link #sampleKey(Object, String, Long, Integer, String)}, so that every
+     * page after the first is read as a view of the cached order. Least
+     * recently used orders are evicted first.
+     */
+    private static final Map<String, int[]> SAMPLES = Collections.synchronizedMap(new LinkedHashMap<String, int[]>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, int[]> eldest) {
+            return size() > MAX_SAMPLES;
+        }
+    });
     
     @Inject
     @MongoDB
     JaqpotEntityManager em;
+
+    @Inject
+    @MongoDB
+    AsyncJaqpotEntityManager asyncEm;
+
+    @Inject
+    PropertyManager propertyManager;
     
     public DatasetHandler() {
-        super(Dataset.class);
+        super(Dataset.class, true);
     }
     
     @Override
@@ -70,65 +139,963 @@ public class DatasetHandler extends AbstractHandler<Dataset> {
     
     @Override
     public void create(Dataset dataset) throws IllegalArgumentException {
+        dataset.expand();
 //        if (dataset.getDataEntry() == null || dataset.getDataEntry().isEmpty()) {
 //            throw new IllegalArgumentException("Resulting dataset is empty");
 //        }
-        HashSet<String> features = dataset.getFeatures().stream().map(FeatureInfo::getURI).collect(Collectors.toCollection(HashSet::new));
-        for (DataEntry dataEntry : dataset.getDataEntry()) {
-            HashSet<String> entryFeatures = new HashSet<>(dataEntry.getValues().keySet());
-            if (!entryFeatures.equals(features)) {
+        validate(dataset);
+        dataset.setVisible(Boolean.TRUE);
+        if (dataset.getMeta() != null) {
+            dataset.getMeta().setDate(new Date());
+        }
+        storeRows(dataset, false);
+        updateCounters(null, dataset);
+    }
+    
+    /**
+     * Creates a dataset from its JSON representation without holding all of
+     * its rows in memory. Rows are validated as they are read and are stored
+     * a chunk at a time, so the first invalid row ends the upload. The header
+     * is stored last, once all rows are stored; if the upload fails, the
+     * chunks stored so far are removed.
+     *
+     * @param id the id of the new dataset
+     * @param in the JSON representation of the dataset
+     * @param prepare applied to the header before it is stored
+     * @return the header of the stored dataset, without rows
+     * @throws IOException if the stream cannot be read or is not a valid
+     * dataset
+     * @throws IllegalArgumentException if the rows do not match the
+     * features
+     */
+    public Dataset ingest(String id, InputStream in, Consumer<Dataset> prepare) throws IOException, IllegalArgumentException {
+        return ingest(id, rows -> DatasetStreamReader.read(in, rows), prepare);
+    }
+
+    /**
+     * Creates a dataset from a CSV document, storing its rows as they are
+     * read like {@link #ingest(String, InputStream, Consumer)}. See
+     * {@link CSVDatasetReader} for how records are mapped to features and
+     * rows.
+     *
+     * @param id the id of the new dataset
+     * @param in the CSV document, in UTF-8
+     * @param substanceColumn the name of the column holding the names of the
+     * substances, or null if there is none
+     * @param prepare applied to the header before it is stored
+     * @return the header of the stored dataset, without rows
+     * @throws IOException if the stream cannot be read or is not valid CSV
+     * @throws IllegalArgumentException if the header or a record is invalid
+     */
+    public Dataset ingestCsv(String id, InputStream in, String substanceColumn, Consumer<Dataset> prepare) throws IOException, IllegalArgumentException {
+        String baseUri = propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_BASE_SERVICE);
+        return ingest(id, rows -> CSVDatasetReader.read(in, baseUri, substanceColumn, rows), prepare);
+    }
+
+    /**
+     * Creates a dataset from an Apache Arrow IPC stream, storing its rows as
+     * they are read like {@link #ingest(String, InputStream, Consumer)}.
+     *
+     * @param id the id of the new dataset
+     * @param in the Arrow stream, see {@link ArrowDatasetReader}
+     * @param prepare applied to the header before it is stored
+     * @return the header of the stored dataset, without rows
+     * @throws IOException if the stream cannot be read or is not a valid
+     * Arrow stream
+     * @throws IllegalArgumentException if the rows do not match the
+     * features
+     */
+    public Dataset ingestArrow(String id, InputStream in, Consumer<Dataset> prepare) throws IOException, IllegalArgumentException {
+        return ingest(id, rows -> ArrowDatasetReader.read(in, rows), prepare);
+    }
+
+    /**
+     * Creates a dataset with the rows of the given datasets one after the
+     * other and the features of all of them. The rows are stored a chunk at a
+     * time like {@link #ingest(String, InputStream, Consumer)}: those of a
+     * stored dataset are streamed from its chunks, and those of a fetched
+     * dataset are stored as soon as it and the datasets before it are
+     * stored, after which the fetched dataset is left without rows. The
+     * header is based on that of the first dataset.
+     *
+     * @param id the id of the new dataset
+     * @param parts the datasets to merge, in order
+     * @param prepare applied to the header before it is stored
+     * @return the header of the stored dataset, without rows
+     * @throws IllegalArgumentException if there are no datasets or the rows
+     * do not match the features
+     * @throws java.util.concurrent.CompletionException if a dataset could
+     * not be fetched
+     */
+    public Dataset createMerged(String id, List<MergePart> parts, Consumer<Dataset> prepare) throws IllegalArgumentException {
+        if (parts.isEmpty()) {
+            throw new IllegalArgumentException("There are no datasets to merge");
+        }
+        try {
+            return ingest(id, sink -> {
+                Dataset header = null;
+                Set<FeatureInfo> union = new HashSet<>();
+                for (MergePart part : parts) {
+                    Dataset dataset = part.stored != null ? part.stored : part.fetched.join();
+                    if (dataset.getFeatures() != null) {
+                        union.addAll(dataset.getFeatures());
+                    }
+                    if (header == null) {
+                        // The features are only known once every dataset is
+                        // read, so the rows are checked against those of the
+                        // first row until then
+                        header = dataset;
+                        header.setFeatures(null);
+                    }
+                    Dataset merged = header;
+                    if (part.stored != null) {
+                        try (Stream<DataEntry> rows = streamRows(part.stored.getId())) {
+                            rows.forEach(dataEntry -> sink.accept(merged, dataEntry));
+                        }
+                    } else {
+                        List<DataEntry> rows = dataset.expand().getDataEntry();
+                        dataset.setDataEntry(null);
+                        if (rows != null) {
+                            rows.forEach(dataEntry -> sink.accept(merged, dataEntry));
+                        }
+                    }
+                }
+                header.setFeatures(union);
+                header.setTotalRows(null);
+                header.setTotalColumns(null);
+                return header;
+            }, prepare);
+        } catch (IOException ex) {
+            // Rows are read from storage or from datasets already fetched
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    /**
+     * A dataset to merge with {@link #createMerged(String, List, Consumer)}.
+     */
+    public static final class MergePart {
+
+        private final Dataset stored;
+        private final CompletableFuture<Dataset> fetched;
+
+        private MergePart(Dataset stored, CompletableFuture<Dataset> fetched) {
+            this.stored = stored;
+            this.fetched = fetched;
+        }
+
+        /**
+         * @param header the header of a dataset of this service, see
+         * {@link #findHeader(Object)}
+         */
+        public static MergePart stored(Dataset header) {
+            return new MergePart(header, null);
+        }
+
+        /**
+         * @param dataset a dataset with its rows, once fetched
+         */
+        public static MergePart fetched(CompletableFuture<Dataset> dataset) {
+            return new MergePart(null, dataset);
+        }
+
+    }
+
+    private Dataset ingest(String id, DatasetSource source, Consumer<Dataset> prepare) throws IOException, IllegalArgumentException {
+        Ingestion ingestion = new Ingestion(id);
+        Dataset dataset;
+        try {
+            dataset = source.read(ingestion);
+            ingestion.finish(dataset);
+            dataset.setId(id);
+            prepare.accept(dataset);
+            dataset.setVisible(Boolean.TRUE);
+            if (dataset.getMeta() != null) {
+                dataset.getMeta().setDate(new Date());
+            }
+            storeHeader(dataset, ingestion.chunks, false);
+        } catch (IOException | RuntimeException ex) {
+            removeChunks(id, ingestion.chunks.generation);
+            throw ex;
+        }
+        updateCounters(null, dataset);
+        return dataset;
+    }
+
+    /**
+     * Reads the header of a dataset, passing its rows to a callback.
+     */
+    @FunctionalInterface
+    private interface DatasetSource {
+
+        Dataset read(BiConsumer<Dataset, DataEntry> rows) throws IOException;
+
+    }
+
+    /**
+     * Validates rows as they are read and stores them a chunk at a time. If
+     * the rows precede the features, they are checked against the features
+     * of the first row and those are compared to the features at the end.
+     */
+    private class Ingestion implements BiConsumer<Dataset, DataEntry> {
+
+        private final ChunkWriter chunks;
+        private DatasetValidator validator;
+        private boolean provisional;
+
+        Ingestion(String datasetId) {
+            this.chunks = new ChunkWriter(datasetId, em::persist);
+        }
+
+        @Override
+        public void accept(Dataset header, DataEntry dataEntry) {
+            if (validator == null) {
+                provisional = header.getFeatures() == null;
+                validator = new DatasetValidator(provisional
+                        ? (dataEntry != null && dataEntry.getValues() != null ? dataEntry.getValues().keySet() : Collections.emptySet())
+                        : featureURIs(header));
+            }
+            if (!validator.accept(dataEntry)) {
+                validator.check();
+            }
+            chunks.add(dataEntry);
+        }
+
+        void finish(Dataset header) {
+            chunks.flush();
+            if (header.getFeatures() == null) {
+                header.setFeatures(new HashSet<>());
+            }
+            if (validator == null) {
+                validator = new DatasetValidator(featureURIs(header));
+            } else if (provisional && !validator.getFeatures().equals(FeatureDictionary.of(featureURIs(header)).uris())) {
                 throw new IllegalArgumentException("Invalid Dataset - DataEntry URIs do not match with Feature URIs. "
-                        + " Problem was found when parsing " + dataEntry.getCompound());
+                        + "The rows have " + validator.getFeatures().size() + " feature(s) while the dataset declares "
+                        + header.getFeatures().size());
             }
+            header.setTotalRows(validator.getRows());
+            header.setTotalColumns(validator.getColumns());
         }
-        dataset.setTotalRows(dataset.getDataEntry().size());
-        dataset.setTotalColumns(dataset.getDataEntry()
-                .stream()
-                .max((e1, e2) -> Integer.compare(e1.getValues().size(), e2.getValues().size()))
-                .orElseGet(() -> {
-                    DataEntry de = new DataEntry();
-                    de.setValues(new TreeMap<>());
-                    return de;
-                })
-                .getValues().size());
-        dataset.setVisible(Boolean.TRUE);
-        super.create(dataset);
+
     }
-    
+
+    /**
+     * Splits rows into the chunks of a new generation, closing a chunk at
+     * {@link #CHUNK_SIZE} rows or at {@link #CHUNK_BYTES} estimated bytes,
+     * whichever comes first, and records the first row of every chunk for
+     * the header.
+     */
+    private class ChunkWriter {
+
+        private final String datasetId;
+        private final String generation = new ROG(true).nextString(12);
+        private final boolean compact = isCompact();
+        private final Consumer<DatasetChunk> sink;
+        private final List<Integer> starts = new ArrayList<>();
+        private List<DataEntry> rows = new ArrayList<>();
+        private long bytes;
+        private int written;
+
+        ChunkWriter(String datasetId, Consumer<DatasetChunk> sink) {
+            this.datasetId = datasetId;
+            this.sink = sink;
+        }
+
+        void add(DataEntry dataEntry) {
+            long size = DatasetChunk.estimateBytes(dataEntry);
+            if (rows.size() == CHUNK_SIZE || (!rows.isEmpty() && bytes + size > CHUNK_BYTES)) {
+                flush();
+            }
+            rows.add(dataEntry);
+            bytes += size;
+        }
+
+        void flush() {
+            if (rows.isEmpty()) {
+                return;
+            }
+            int chunkIndex = starts.size();
+            starts.add(written);
+            sink.accept(compact
+                    ? DatasetChunk.compact(datasetId, generation, chunkIndex, ColumnarData.of(rows))
+                    : new DatasetChunk(datasetId, generation, chunkIndex, rows));
+            written += rows.size();
+            rows = new ArrayList<>();
+            bytes = 0;
+        }
+
+    }
+
+    private static List<String> featureURIs(Dataset dataset) {
+        return dataset.getFeatures().stream()
+                .map(FeatureInfo::getURI)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public void createAll(Collection<Dataset> datasets) throws IllegalArgumentException {
+        for (Dataset dataset : datasets) {
+            create(dataset);
+        }
+    }
+
     @Override
     public void edit(Dataset dataset) throws IllegalArgumentException {
+        dataset.expand();
 //        if (dataset.getDataEntry().isEmpty()) {
 //            throw new IllegalArgumentException("Resulting dataset is empty");
 //        }
-        HashSet<String> features = dataset.getFeatures().stream().map(FeatureInfo::getURI).collect(Collectors.toCollection(HashSet::new));
-        for (DataEntry dataEntry : dataset.getDataEntry()) {
-            HashSet<String> entryFeatures = new HashSet<>(dataEntry.getValues().keySet());
-            if (!entryFeatures.equals(features)) {
-                throw new IllegalArgumentException("Invalid Dataset - DataEntry URIs do not match with Feature URIs. "
-                        + " Problem was found when parsing " + dataEntry.getCompound() + "On dataset" + dataset.getId());
+        validate(dataset);
+        Dataset previous = storeRows(dataset, true);
+        updateCounters(previous, dataset);
+    }
+
+    @Override
+    public void editAll(Collection<Dataset> datasets) throws IllegalArgumentException {
+        for (Dataset dataset : datasets) {
+            edit(dataset);
+        }
+    }
+
+    @Override
+    public void remove(Dataset dataset) {
+        Dataset previous = em.find(Dataset.class, dataset.getId(), counterFields());
+        em.remove(dataset);
+        removeChunks(dataset.getId());
+        updateCounters(previous, null);
+    }
+
+    @Override
+    public void removeAll(Collection<Dataset> datasets) {
+        List<String> ids = datasets.stream().map(Dataset::getId).collect(Collectors.toList());
+        List<Dataset> previous = em.find(Dataset.class, ids, counterFields());
+        try {
+            em.removeAll(datasets);
+        } catch (JaqpotBulkWriteException ex) {
+            removed(datasets, previous, ex.getFailures().keySet());
+            throw ex;
+        }
+        removed(datasets, previous, Collections.emptySet());
+    }
+
+    private void removed(Collection<Dataset> datasets, List<Dataset> previous, Set<String> failed) {
+        for (Dataset dataset : datasets) {
+            if (!failed.contains(dataset.getId())) {
+                removeChunks(dataset.getId());
             }
         }
-        getEntityManager().merge(dataset);
+        updateCounters(previous, failed, -1L);
+    }
+
+    /**
+     * Finds a Dataset together with all of its rows.
+     *
+     * @param id the id of the dataset
+     * @return the dataset or null if it does not exist
+     */
+    @Override
+    public Dataset find(Object id) {
+        Dataset dataset = em.find(Dataset.class, id, HEADER_FIELDS);
+        if (dataset == null) {
+            return null;
+        }
+        if (dataset.getChunkSize() == null) {
+            return em.find(Dataset.class, id);
+        }
+        try (Stream<DatasetChunk> chunks = em.stream(DatasetChunk.class, chunksOf(dataset), null)) {
+            return assemble(dataset, chunks);
+        }
+    }
+
+    /**
+     * Finds a Dataset without loading any of its rows.
+     *
+     * @param id the id of the dataset
+     * @return the dataset header or null if it does not exist
+     */
+    public Dataset findHeader(Object id) {
+        Dataset dataset = em.find(Dataset.class, id, HEADER_FIELDS);
+        return dataset != null ? unchunked(dataset) : null;
+    }
+
+    /**
+     * Streams the rows of a Dataset in order, holding a single chunk in
+     * memory at a time. Datasets persisted as a single document are loaded
+     * whole.
+     *
+     * The stream holds an open database cursor and must be closed.
+     *
+     * @param id the id of the dataset
+     * @return a stream over the rows of the dataset, empty if it does not
+     * exist
+     */
+    public Stream<DataEntry> streamRows(Object id) {
+        Dataset dataset = em.find(Dataset.class, id, CHUNKING_FIELDS);
+        if (dataset == null) {
+            return Stream.empty();
+        }
+        if (dataset.getChunkSize() == null) {
+            dataset = em.find(Dataset.class, id);
+            return dataset.getDataEntry() != null ? dataset.getDataEntry().stream() : Stream.empty();
+        }
+        return em.streamSortedAsc(DatasetChunk.class, chunksOf(dataset), null, CHUNK_ORDER)
+                .flatMap(chunk -> chunk.rows().stream());
     }
     
     public Dataset find(Object id, Integer rowStart, Integer rowMax, Integer colStart, Integer colMax, String stratify, Long seed, Integer folds, String targetFeature) {
-        Dataset dataset = em.find(Dataset.class, id);
+        Dataset dataset = em.find(Dataset.class, id, HEADER_FIELDS);
         if (dataset == null) {
             return null;
         }
-        if (stratify != null) {
-            switch (stratify) {
-                case "random":
-                    dataset = DatasetFactory.randomize(dataset, seed);
-                    break;
-                case "normal":
-                    dataset = DatasetFactory.stratify(dataset, folds, targetFeature);
-                    break;
-                default:
-                    break;
+        if (dataset.getChunkSize() == null) {
+            Dataset whole = em.find(Dataset.class, id);
+            return isSampled(stratify)
+                    ? samplePage(whole, sampleKey(id, stratify, seed, folds, targetFeature), stratify, seed, folds, targetFeature, rowStart, rowMax, colStart, colMax)
+                    : page(whole, rowStart, rowMax, colStart, colMax);
+        }
+        if (isSampled(stratify)) {
+            String key = sampleKey(id, stratify, seed, folds, targetFeature);
+            int[] order = SAMPLES.get(key);
+            if (order == null) {
+                List<DatasetChunk> targets = "random".equals(stratify)
+                        ? Collections.emptyList()
+                        : em.findSortedAsc(DatasetChunk.class, chunksOf(dataset), columnFields(Collections.singleton(targetFeature)), 0, Integer.MAX_VALUE, CHUNK_ORDER);
+                order = remember(key, sample(targetColumn(dataset, targets, targetFeature), stratify, seed, folds, targetFeature));
             }
+            int[] rows = pageOf(order, rowStart, rowMax);
+            Set<String> columns = columnsOf(dataset, colStart != null ? colStart : 0, colMax);
+            List<String> fields = columnFields(columns);
+            List<DatasetChunk> chunks = rows.length > 0
+                    ? em.findSortedAsc(DatasetChunk.class, chunksOf(dataset, rows), fields, 0, Integer.MAX_VALUE, CHUNK_ORDER)
+                    : Collections.emptyList();
+            return pick(dataset, chunks, rows, columns, !fields.contains("dataEntry"));
         }
-        
+
+        int start = rowStart != null ? rowStart : 0;
+        int end = rowEnd(dataset, start, rowMax);
+        Set<String> columns = columnsOf(dataset, colStart != null ? colStart : 0, colMax);
+        List<String> fields = columnFields(columns);
+        List<DatasetChunk> chunks = start < end
+                ? em.findSortedAsc(DatasetChunk.class, chunksOf(dataset, start, end), fields, 0, Integer.MAX_VALUE, CHUNK_ORDER)
+                : Collections.emptyList();
+        return slice(dataset, chunks, start, end, columns, !fields.contains("dataEntry"));
+    }
+
+    /**
+     * Non-blocking variant of
+     * {@link #find(Object, Integer, Integer, Integer, Integer, String, Long, Integer, String)}.
+     *
+     * @return a stage completing with the requested page of the dataset, or
+     * with null if the dataset does not exist
+     */
+    public CompletionStage<Dataset> findAsync(Object id, Integer rowStart, Integer rowMax, Integer colStart, Integer colMax, String stratify, Long seed, Integer folds, String targetFeature) {
+        return asyncEm.findAsync(Dataset.class, id, HEADER_FIELDS).thenCompose(dataset -> {
+            if (dataset == null) {
+                return CompletableFuture.<Dataset>completedFuture(null);
+            }
+            if (dataset.getChunkSize() == null) {
+                return asyncEm.findAsync(Dataset.class, id).thenApply(whole -> isSampled(stratify)
+                        ? samplePage(whole, sampleKey(id, stratify, seed, folds, targetFeature), stratify, seed, folds, targetFeature, rowStart, rowMax, colStart, colMax)
+                        : page(whole, rowStart, rowMax, colStart, colMax));
+            }
+            if (isSampled(stratify)) {
+                String key = sampleKey(id, stratify, seed, folds, targetFeature);
+                int[] cached = SAMPLES.get(key);
+                CompletionStage<int[]> order;
+                if (cached != null) {
+                    order = CompletableFuture.completedFuture(cached);
+                } else if ("random".equals(stratify)) {
+                    order = CompletableFuture.completedFuture(remember(key,
+                            sample(targetColumn(dataset, Collections.emptyList(), targetFeature), stratify, seed, folds, targetFeature)));
+                } else {
+                    order = asyncEm.findSortedAscAsync(DatasetChunk.class, chunksOf(dataset), columnFields(Collections.singleton(targetFeature)), 0, Integer.MAX_VALUE, CHUNK_ORDER)
+                            .thenApply(targets -> remember(key, sample(targetColumn(dataset, targets, targetFeature), stratify, seed, folds, targetFeature)));
+                }
+                return order.thenCompose(sampled -> {
+                    int[] rows = pageOf(sampled, rowStart, rowMax);
+                    Set<String> columns = columnsOf(dataset, colStart != null ? colStart : 0, colMax);
+                    List<String> fields = columnFields(columns);
+                    if (rows.length == 0) {
+                        return CompletableFuture.completedFuture(pick(dataset, Collections.emptyList(), rows, columns, false));
+                    }
+                    return asyncEm.findSortedAscAsync(DatasetChunk.class, chunksOf(dataset, rows), fields, 0, Integer.MAX_VALUE, CHUNK_ORDER)
+                            .thenApply(chunks -> pick(dataset, chunks, rows, columns, !fields.contains("dataEntry")));
+                });
+            }
+            int start = rowStart != null ? rowStart : 0;
+            int end = rowEnd(dataset, start, rowMax);
+            Set<String> columns = columnsOf(dataset, colStart != null ? colStart : 0, colMax);
+            List<String> fields = columnFields(columns);
+            if (start >= end) {
+                return CompletableFuture.completedFuture(slice(dataset, Collections.emptyList(), start, end, columns, false));
+            }
+            return asyncEm.findSortedAscAsync(DatasetChunk.class, chunksOf(dataset, start, end), fields, 0, Integer.MAX_VALUE, CHUNK_ORDER)
+                    .thenApply(chunks -> slice(dataset, chunks, start, end, columns, !fields.contains("dataEntry")));
+        });
+    }
+
+    private static boolean isSampled(String stratify) {
+        return "random".equals(stratify) || "normal".equals(stratify);
+    }
+
+    /**
+     * Key of the row order of a sampled read in {@link #SAMPLES}; it leaves
+     * out the parameters that the sampling method does not use.
+     */
+    private static String sampleKey(Object id, String stratify, Long seed, Integer folds, String targetFeature) {
+        return "random".equals(stratify)
+                ? id + "|random|" + (seed != null ? seed : 0L)
+                : id + "|normal|" + folds + "|" + targetFeature;
+    }
+
+    private static int[] remember(String key, int[] order) {
+        SAMPLES.put(key, order);
+        return order;
+    }
+
+    private static void forgetSamples(String datasetId) {
+        synchronized (SAMPLES) {
+            SAMPLES.keySet().removeIf(key -> key.startsWith(datasetId + "|"));
+        }
+    }
+
+    /**
+     * Computes the order of the rows of a sampled read. Random sampling only
+     * needs the number of rows; stratification only the target column.
+     *
+     * @throws IllegalArgumentException if the dataset cannot be stratified
+     * by the target feature
+     */
+    private static int[] sample(ColumnarData data, String stratify, Long seed, Integer folds, String targetFeature) {
+        if ("random".equals(stratify)) {
+            return DatasetFactory.randomRows(data.rows(), seed);
+        }
+        if (folds == null || folds < 1) {
+            throw new IllegalArgumentException("Stratification needs a positive number of folds");
+        }
+        int[] order = DatasetFactory.stratifiedRows(data, folds, targetFeature);
+        if (order == null) {
+            throw new IllegalArgumentException("Cannot stratify by " + targetFeature + ", which is not a numeric feature of the dataset");
+        }
+        return order;
+    }
+
+    /**
+     * The target column of a chunked dataset in columnar form, given its
+     * chunks projected on the target feature.
+     */
+    private ColumnarData targetColumn(Dataset dataset, List<DatasetChunk> chunks, String targetFeature) {
+        Set<String> target = targetFeature != null ? Collections.singleton(targetFeature) : Collections.emptySet();
+        boolean projected = !columnFields(target).contains("dataEntry");
+        ColumnarData data = ColumnarData.create(target, dataset.getTotalRows());
+        for (DatasetChunk chunk : chunks) {
+            int offset = chunkStart(dataset, chunk.getChunkIndex());
+            List<DataEntry> rows = rowsOf(chunk, target, projected);
+            for (int i = 0; i < rows.size(); i++) {
+                data.setRow(offset + i, rows.get(i));
+            }
+        }
+        return data;
+    }
+
+    /**
+     * Pages a dataset stored as a single document in sampled order.
+     */
+    private Dataset samplePage(Dataset dataset, String key, String stratify, Long seed, Integer folds, String targetFeature,
+            Integer rowStart, Integer rowMax, Integer colStart, Integer colMax) {
+        ColumnarData data = dataset.toColumnar();
+        int[] order = SAMPLES.get(key);
+        if (order == null) {
+            order = remember(key, sample(data, stratify, seed, folds, targetFeature));
+        }
+        dataset.setColumnar(data.selectRows(order));
+        return page(dataset, rowStart, rowMax, colStart, colMax);
+    }
+
+    /**
+     * The rows of a sampled order from rowStart (inclusive) up to rowStart +
+     * rowMax (exclusive).
+     */
+    private static int[] pageOf(int[] order, Integer rowStart, Integer rowMax) {
+        int start = Math.min(rowStart != null ? rowStart : 0, order.length);
+        int end = rowMax == null ? order.length : (int) Math.min((long) start + rowMax, order.length);
+        return Arrays.copyOfRange(order, start, end);
+    }
+
+    private static int rowEnd(Dataset dataset, int rowStart, Integer rowMax) {
+        if (rowMax == null || rowStart + rowMax > dataset.getTotalRows()) {
+            return dataset.getTotalRows();
+        }
+        return rowStart + rowMax;
+    }
+
+    /**
+     * Query for the current generation of the chunks of a stored header.
+     * Headers stored before chunks had generations have none, which matches
+     * chunks without one.
+     */
+    private static Map<String, Object> chunksOf(Dataset dataset) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("datasetId", dataset.getId());
+        properties.put("generation", dataset.getChunkGeneration());
+        return properties;
+    }
+
+    /**
+     * Query for the chunks that hold the rows from rowStart (inclusive) up to
+     * rowEnd (exclusive).
+     */
+    private static Map<String, Object> chunksOf(Dataset dataset, int rowStart, int rowEnd) {
+        Map<String, Object> chunkRange = new HashMap<>();
+        chunkRange.put("$gte", chunkOf(dataset, rowStart));
+        chunkRange.put("$lte", chunkOf(dataset, rowEnd - 1));
+        Map<String, Object> properties = chunksOf(dataset);
+        properties.put("chunkIndex", chunkRange);
+        return properties;
+    }
+
+    /**
+     * Query for the chunks that hold the given rows.
+     */
+    private static Map<String, Object> chunksOf(Dataset dataset, int[] rows) {
+        Map<String, Object> chunkIndices = new HashMap<>();
+        chunkIndices.put("$in", Arrays.stream(rows)
+                .map(row -> chunkOf(dataset, row))
+                .distinct()
+                .boxed()
+                .collect(Collectors.toList()));
+        Map<String, Object> properties = chunksOf(dataset);
+        properties.put("chunkIndex", chunkIndices);
+        return properties;
+    }
+
+    /**
+     * @return the index of the chunk of a stored header that holds the given
+     * row
+     */
+    private static int chunkOf(Dataset dataset, int row) {
+        List<Integer> starts = dataset.getChunkStarts();
+        if (starts == null) {
+            return row / dataset.getChunkSize();
+        }
+        int chunkIndex = Collections.binarySearch(starts, row);
+        return chunkIndex >= 0 ? chunkIndex : Math.max(0, -chunkIndex - 2);
+    }
+
+    /**
+     * @return the index of the first row of a chunk of a stored header
+     */
+    private static int chunkStart(Dataset dataset, int chunkIndex) {
+        List<Integer> starts = dataset.getChunkStarts();
+        return starts == null ? chunkIndex * dataset.getChunkSize() : starts.get(chunkIndex);
+    }
+
+    /**
+     * Clears the fields of a stored header that locate its chunks.
+     */
+    private static Dataset unchunked(Dataset dataset) {
+        dataset.setChunkSize(null);
+        dataset.setChunkStarts(null);
+        dataset.setChunkGeneration(null);
+        return dataset;
+    }
+
+    /**
+     * Sets the rows of all the given chunks to the dataset header, in
+     * columnar form. Chunks may come in any order and are converted one at a
+     * time, so the rows are never all held as {@link DataEntry} objects.
+     */
+    private static Dataset assemble(Dataset dataset, Stream<DatasetChunk> chunks) {
+        ColumnarData data = ColumnarData.create(dataset.getFeatures() != null
+                ? dataset.getFeatures().stream().map(FeatureInfo::getURI).collect(Collectors.toList())
+                : Collections.emptyList(), dataset.getTotalRows());
+        chunks.forEach(chunk -> {
+            int offset = chunkStart(dataset, chunk.getChunkIndex());
+            List<DataEntry> rows = chunk.rows();
+            for (int i = 0; i < rows.size(); i++) {
+                data.setRow(offset + i, rows.get(i));
+            }
+        });
+        dataset.setColumnar(data);
+        return unchunked(dataset);
+    }
+
+    /**
+     * Sets the rows from rowStart (inclusive) up to rowEnd (exclusive) to the
+     * dataset header, given the chunks returned for
+     * {@link #chunksOf(Dataset, int, int)} with the projection of
+     * {@link #columnFields(Set)}.
+     */
+    private Dataset slice(Dataset dataset, List<DatasetChunk> chunks, int rowStart, int rowEnd, Set<String> columns, boolean projected) {
+        List<DataEntry> dataEntry = new ArrayList<>();
+        if (rowStart < rowEnd) {
+            chunks.forEach(chunk -> dataEntry.addAll(rowsOf(chunk, columns, projected)));
+
+            int offset = chunkStart(dataset, chunkOf(dataset, rowStart));
+            dataEntry.subList(Math.min(rowEnd - offset, dataEntry.size()), dataEntry.size()).clear();
+            dataEntry.subList(0, Math.min(rowStart - offset, dataEntry.size())).clear();
+        }
+        return withRows(dataset, dataEntry);
+    }
+
+    /**
+     * Sets the given rows, in the given order, to the dataset header, given
+     * the chunks returned for {@link #chunksOf(Dataset, int[])} with
+     * the projection of {@link #columnFields(Set)}.
+     */
+    private Dataset pick(Dataset dataset, List<DatasetChunk> chunks, int[] rows, Set<String> columns, boolean projected) {
+        Map<Integer, List<DataEntry>> chunkRows = new HashMap<>();
+        chunks.forEach(chunk -> chunkRows.put(chunk.getChunkIndex(), rowsOf(chunk, columns, projected)));
+
+        List<DataEntry> dataEntry = new ArrayList<>(rows.length);
+        for (int row : rows) {
+            int chunkIndex = chunkOf(dataset, row);
+            List<DataEntry> chunk = chunkRows.get(chunkIndex);
+            int offset = row - chunkStart(dataset, chunkIndex);
+            if (chunk != null && offset < chunk.size()) {
+                dataEntry.add(chunk.get(offset));
+            }
+        }
+        return withRows(dataset, dataEntry);
+    }
+
+    private static Dataset withRows(Dataset dataset, List<DataEntry> dataEntry) {
+        for (int j = 0; j < dataEntry.size(); j++) {
+            DataEntry de = dataEntry.get(j);
+            if (de.getValues() == null) {
+                de.setValues(new TreeMap<>());
+            }
+            if (de.getCompound().getName() == null) {
+                de.getCompound().setName(Integer.toString(j + 1));
+            }
+        }
+        dataset.setDataEntry(dataEntry);
+        return unchunked(dataset);
+    }
+
+    /**
+     * Converts Datasets that are stored as a single document to a header
+     * document and row chunks. Datasets are converted one at a time so that
+     * an interrupted run can simply be started again.
+     */
+    @Asynchronous
+    public void migrate() {
+        Map<String, Object> exists = new HashMap<>();
+        exists.put("$exists", false);
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("chunkSize", exists);
+        List<String> legacy;
+        try (Stream<Dataset> headers = em.stream(Dataset.class, properties, Arrays.asList("_id"))) {
+            legacy = headers.map(Dataset::getId).collect(Collectors.toList());
+        }
+        if (legacy.isEmpty()) {
+            return;
+        }
+        LOG.log(Level.INFO, "Migrating {0} datasets to chunked storage", legacy.size());
+        for (String datasetId : legacy) {
+            Dataset dataset = em.find(Dataset.class, datasetId);
+            if (dataset == null || dataset.getChunkSize() != null) {
+                continue;
+            }
+            List<DataEntry> dataEntry = dataset.getDataEntry() != null ? dataset.getDataEntry() : new ArrayList<>();
+            dataset.setDataEntry(dataEntry);
+            if (dataset.getTotalRows() == null) {
+                dataset.setTotalRows(dataEntry.size());
+            }
+            if (dataset.getTotalColumns() == null) {
+                dataset.setTotalColumns(dataEntry.stream()
+                        .mapToInt(de -> de.getValues() != null ? de.getValues().size() : 0)
+                        .max()
+                        .orElse(0));
+            }
+            try {
+                storeRows(dataset, true);
+            } catch (RuntimeException ex) {
+                LOG.log(Level.SEVERE, "Could not migrate dataset " + dataset.getId(), ex);
+            }
+        }
+    }
+
+    /**
+     * Checks every row against the features of the dataset in one pass and
+     * sets the totals of the dataset.
+     *
+     * @throws IllegalArgumentException listing the invalid rows
+     */
+    private static void validate(Dataset dataset) throws IllegalArgumentException {
+        DatasetValidator validator = new DatasetValidator(featureURIs(dataset));
+        dataset.getDataEntry().forEach(validator::accept);
+        validator.check();
+        dataset.setTotalRows(validator.getRows());
+        dataset.setTotalColumns(validator.getColumns());
+    }
+
+    /**
+     * Stores the rows of the dataset as a new generation of chunks and then
+     * the header, which switches readers to the new chunks. The chunks of
+     * earlier generations are removed last, so the stored dataset has all of
+     * its rows at every point; if storing fails, the new chunks are removed
+     * and the dataset is left as it was.
+     *
+     * @return the replaced header, or null if the dataset was new
+     */
+    private Dataset storeRows(Dataset dataset, boolean replace) {
+        ChunkWriter writer = null;
+        Dataset previous;
+        try {
+            writer = persistChunks(dataset.getId(), dataset.getDataEntry());
+            previous = storeHeader(dataset, writer, replace);
+        } catch (RuntimeException ex) {
+            if (writer != null) {
+                removeChunks(dataset.getId(), writer.generation);
+            }
+            throw ex;
+        }
+        if (replace) {
+            removeStaleChunks(dataset.getId(), writer.generation);
+        }
+        return previous;
+    }
+
+    private ChunkWriter persistChunks(String datasetId, List<DataEntry> dataEntry) {
+        List<DatasetChunk> chunks = new ArrayList<>();
+        ChunkWriter writer = new ChunkWriter(datasetId, chunks::add);
+        dataEntry.forEach(writer::add);
+        writer.flush();
+        if (!chunks.isEmpty()) {
+            try {
+                em.persistAll(chunks);
+            } catch (RuntimeException ex) {
+                removeChunks(datasetId, writer.generation);
+                throw ex;
+            }
+        }
+        return writer;
+    }
+
+    private boolean isCompact() {
+        return Boolean.parseBoolean(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_DATASET_COMPACT));
+    }
+
+    private void removeChunks(String datasetId) {
+        forgetSamples(datasetId);
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("datasetId", datasetId);
+        em.remove(DatasetChunk.class, properties);
+    }
+
+    private void removeChunks(String datasetId, String generation) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("datasetId", datasetId);
+        properties.put("generation", generation);
+        em.remove(DatasetChunk.class, properties);
+    }
+
+    /**
+     * Removes the chunks of every generation of a dataset but the given one.
+     */
+    private void removeStaleChunks(String datasetId, String generation) {
+        forgetSamples(datasetId);
+        Map<String, Object> current = new HashMap<>();
+        current.put("$ne", generation);
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("datasetId", datasetId);
+        properties.put("generation", current);
+        em.remove(DatasetChunk.class, properties);
+    }
+
+    /**
+     * Stores the header of the dataset pointing at the chunks of the given
+     * writer, leaving the rows of the given instance untouched for the
+     * caller.
+     *
+     * @return the replaced header, or null if the dataset was new
+     */
+    private Dataset storeHeader(Dataset dataset, ChunkWriter chunks, boolean replace) {
+        List<DataEntry> dataEntry = dataset.getDataEntry();
+        dataset.setDataEntry(null);
+        dataset.setChunkSize(CHUNK_SIZE);
+        dataset.setChunkStarts(chunks.starts);
+        dataset.setChunkGeneration(chunks.generation);
+        try {
+            if (replace) {
+                return em.merge(dataset);
+            }
+            em.persist(dataset);
+            return null;
+        } finally {
+            dataset.setDataEntry(dataEntry);
+            unchunked(dataset);
+        }
+    }
+
+    /**
+     * @return the URIs of the features from colStart (inclusive) up to
+     * colStart + colMax (exclusive) in URI order, or null for all of them
+     */
+    private static Set<String> columnsOf(Dataset dataset, int colStart, Integer colMax) {
+        if (dataset.getFeatures() == null || (colStart == 0 && (colMax == null || colMax >= dataset.getFeatures().size()))) {
+            return null;
+        }
+        List<String> columns = dataset.getFeatures()
+                .stream()
+                .map(FeatureInfo::getURI)
+                .sorted()
+                .collect(Collectors.toList());
+        int colEnd = colMax == null ? columns.size() : Math.min(colStart + colMax, columns.size());
+        return new TreeSet<>(columns.subList(Math.min(colStart, colEnd), colEnd));
+    }
+
+    /**
+     * Projection of the chunk fields that covers the requested columns.
+     * Compact chunks key their values by position rather than by URI, so
+     * with compact storage whole chunks are read instead.
+     */
+    private List<String> columnFields(Set<String> columns) {
+        List<String> fields = new ArrayList<>();
+        fields.add("chunkIndex");
+        fields.add("features");
+        if (columns == null || isCompact()) {
+            fields.add("dataEntry");
+            return fields;
+        }
+        fields.add("dataEntry.compound");
+        for (String column : columns) {
+            fields.add("dataEntry.values." + MongoKeyEncoder.encode(column));
+        }
+        return fields;
+    }
+
+    /**
+     * The rows of a chunk restricted to the given columns. A compact chunk
+     * read with a projection by URI, which happens if compact storage was
+     * turned off after it was stored, is read again whole.
+     */
+    private List<DataEntry> rowsOf(DatasetChunk chunk, Set<String> columns, boolean projected) {
+        if (columns == null || (projected && chunk.getFeatures() == null)) {
+            return chunk.rows();
+        }
+        DatasetChunk whole = projected ? em.find(DatasetChunk.class, chunk.getId()) : chunk;
+        return whole.rows()
+                .stream()
+                .map(row -> {
+                    TreeMap<String, Object> values = new TreeMap<>();
+                    if (row.getValues() != null) {
+                        row.getValues().forEach((uri, value) -> {
+                            if (columns.contains(uri)) {
+                                values.put(uri, value);
+                            }
+                        });
+                    }
+                    DataEntry dataEntry = new DataEntry();
+                    dataEntry.setCompound(row.getCompound());
+                    dataEntry.setValues(values);
+                    return dataEntry;
+                })
+                .collect(Collectors.toList());
+    }
+
+    private Dataset page(Dataset dataset, Integer rowStart, Integer rowMax, Integer colStart, Integer colMax) {
         if (rowStart == null) {
             rowStart = 0;
         }
@@ -136,49 +1103,32 @@ public class DatasetHandler extends AbstractHandler<Dataset> {
             colStart = 0;
         }
         
+        ColumnarData data = dataset.toColumnar();
         if (dataset.getTotalRows() == null) {
-            dataset.setTotalRows(dataset.getDataEntry().size());
+            dataset.setTotalRows(data.rows());
         }
         
         if (dataset.getTotalColumns() == null) {
-            dataset.setTotalColumns(dataset.getDataEntry()
-                    .stream()
-                    .max((e1, e2) -> Integer.compare(e1.getValues().size(), e2.getValues().size()))
-                    .get()
-                    .getValues().size());
+            dataset.setTotalColumns(data.maxWidth());
         }
         
         int rowEnd;
         if (rowMax == null || (rowEnd = rowStart + rowMax) > dataset.getTotalRows()) {
             rowEnd = dataset.getTotalRows();
         }
-        if (colMax == null || colStart + colMax > dataset.getTotalColumns()) {
-            colMax = dataset.getTotalColumns() - colStart;
+        int colEnd = data.getDictionary().size();
+        if (colMax != null && colStart + colMax < colEnd) {
+            colEnd = colStart + colMax;
         }
         
-        dataset.setDataEntry(dataset.getDataEntry().subList(rowStart, rowEnd));
-        
-        for (int j = 0; j < dataset.getDataEntry().size(); j++) {
-            DataEntry de = dataset.getDataEntry().get(j);
-            TreeMap<String, Object> values = (TreeMap) de.getValues();
-            NavigableSet<String> valuesSet = values.navigableKeySet();
-            
-            Iterator<String> it = valuesSet.iterator();
-            for (int i = 0; i < colStart; i++) {
-                it.next();
-                it.remove();
-            }
-            for (int i = 0; i < colMax; i++) {
-                it.next();
-            }
-            while (it.hasNext()) {
-                it.next();
-                it.remove();
-            }
-            if (de.getCompound().getName() == null) {
-                de.getCompound().setName(Integer.toString(j+1));
+        rowEnd = Math.min(rowEnd, data.rows());
+        ColumnarData page = data.selectRows(Math.min(rowStart, rowEnd), rowEnd).selectColumns(Math.min(colStart, colEnd), colEnd);
+        for (int j = 0; j < page.rows(); j++) {
+            if (page.getCompound(j).getName() == null) {
+                page.getCompound(j).setName(Integer.toString(j + 1));
             }
         }
+        dataset.setColumnar(page);
 //        DataEntry blank = new DataEntry();
 //        blank.setValues(new TreeMap<>());
 //        DataEntry firstEntry = dataset.getDataEntry().stream().findFirst().orElse(blank);
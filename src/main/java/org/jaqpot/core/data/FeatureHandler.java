@@ -9,6 +9,7 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import org.jaqpot.core.annotations.MongoDB;
@@ -39,15 +40,22 @@ public class FeatureHandler extends AbstractHandler<Feature> {
         Map<String, Object> properties = new HashMap<>();
         properties.put("meta.titles", Arrays.asList(title));
         properties.put("meta.hasSources", Arrays.asList(source));
-        List<Feature> features = this.find(properties);
+        List<Feature> features = em.find(Feature.class, properties, 0, 1);
         return features.stream().findFirst().orElse(null);
     }
 
-    public List<Feature> findBySource(String source) {
+    /**
+     * Streams the features of the given source. The returned stream must be
+     * closed.
+     *
+     * @param source the source of the features, e.g. algorithm/{id}
+     * @param fields a list of fields to be returned, or null for whole features
+     * @return a stream over the features of the source
+     */
+    public Stream<Feature> streamBySource(String source, List<String> fields) {
         Map<String, Object> properties = new HashMap<>();
         properties.put("meta.hasSources", Arrays.asList(source));
-        List<Feature> features = this.find(properties);
-        return features;
+        return this.stream(properties, fields);
     }
 
 }
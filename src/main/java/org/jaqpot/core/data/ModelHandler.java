@@ -33,9 +33,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionStage;
 import javax.ejb.Stateless;
 import javax.inject.Inject;
 import org.jaqpot.core.annotations.MongoDB;
+import org.jaqpot.core.db.entitymanager.AsyncJaqpotEntityManager;
 import org.jaqpot.core.db.entitymanager.JaqpotEntityManager;
 import org.jaqpot.core.model.Model;
 
@@ -51,8 +53,12 @@ public class ModelHandler extends AbstractHandler<Model> {
     @MongoDB
     JaqpotEntityManager em;
 
+    @Inject
+    @MongoDB
+    AsyncJaqpotEntityManager asyncEm;
+
     public ModelHandler() {
-        super(Model.class);
+        super(Model.class, true);
     }
 
     @Override
@@ -118,6 +124,21 @@ public class ModelHandler extends AbstractHandler<Model> {
         List<String> keys = new ArrayList<>();
         keys.add(id);
 
+        return em.find(Model.class, keys, modelFields()).stream().findFirst().orElse(null);
+    }
+
+    /**
+     * Non-blocking variant of {@link #findModel(String)}.
+     *
+     * @param id the id of the model
+     * @return a stage completing with the model, or with null if it does not
+     * exist
+     */
+    public CompletionStage<Model> findModelAsync(String id) {
+        return asyncEm.findAsync(Model.class, id, modelFields());
+    }
+
+    private List<String> modelFields() {
         List<String> fields = new ArrayList<>();
         fields.add("_id");
         fields.add("meta");        
@@ -132,8 +153,7 @@ public class ModelHandler extends AbstractHandler<Model> {
         fields.add("transformationModels");
         fields.add("linkedModels");
         fields.add("additionalInfo");
-
-        return em.find(Model.class, keys, fields).stream().findFirst().orElse(null);
+        return fields;
     }
 
 }
@@ -48,7 +48,7 @@ public class ReportHandler extends AbstractHandler<Report> {
     JaqpotEntityManager em;
 
     public ReportHandler() {
-        super(Report.class);
+        super(Report.class, true);
     }
 
     @Override
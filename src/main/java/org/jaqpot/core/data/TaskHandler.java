@@ -31,8 +31,10 @@ package org.jaqpot.core.data;
 
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
 import javax.ejb.Stateless;
@@ -58,7 +60,7 @@ public class TaskHandler extends AbstractHandler<Task> {
     JaqpotEntityManager em;
 
     public TaskHandler() {
-        super(Task.class);
+        super(Task.class, true);
     }
 
     @Override
@@ -82,6 +84,27 @@ public class TaskHandler extends AbstractHandler<Task> {
         super.edit(entity);
     }
 
+    @Override
+    protected Set<String> counterKeys(Task entity) {
+        Set<String> keys = new HashSet<>(super.counterKeys(entity));
+        if (entity.getStatus() != null) {
+            keys.add(statusCounter(entity.getStatus()));
+        }
+        return keys;
+    }
+
+    @Override
+    protected List<String> counterFields() {
+        return Arrays.asList("meta.creators", "visible", "status");
+    }
+
+    /**
+     * @return the name of the counter of the tasks with the given status
+     */
+    static String statusCounter(Task.Status status) {
+        return "Task:" + status.name();
+    }
+
     public void cache(Object id) {
         Task result = super.find(id);
         if (result != null) {
@@ -114,12 +137,16 @@ public class TaskHandler extends AbstractHandler<Task> {
         return em.findSortedDesc(Task.class, properties, start, max, Arrays.asList("meta.date"));
     }
 
-    public Long countByUser(String userName) {
+    public List<Task> findByUser(String userName, String cursor, Integer max) {
         Map<String, Object> properties = new HashMap<>();
         properties.put("meta.creators", Arrays.asList(userName));
         properties.put("visible", true);
 
-        return em.count(Task.class, properties);
+        return em.findPage(Task.class, properties, null, cursor, max);
+    }
+
+    public Long countByUser(String userName) {
+        return countAllOfCreator(userName);
     }
 
     public List<Task> findByStatus(Task.Status status, Integer start, Integer max) {
@@ -147,13 +174,17 @@ public class TaskHandler extends AbstractHandler<Task> {
         return em.findSortedDesc(Task.class, properties, start, max, Arrays.asList("meta.date"));
     }
 
-    public Long countByUserAndStatus(String userName, Task.Status status) {
+    public List<Task> findByUserAndStatus(String userName, Task.Status status, String cursor, Integer max) {
         Map<String, Object> properties = new HashMap<>();
         properties.put("meta.creators", Arrays.asList(userName));
         properties.put("status", status.name());
         properties.put("visible", true);
 
-        return em.count(Task.class, properties);
+        return em.findPage(Task.class, properties, null, cursor, max);
+    }
+
+    public Long countByUserAndStatus(String userName, Task.Status status) {
+        return findCounter(userName, statusCounter(status));
     }
 
 }
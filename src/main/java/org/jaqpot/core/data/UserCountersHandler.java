@@ -0,0 +1,153 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import org.jaqpot.core.annotations.MongoDB;
+import org.jaqpot.core.db.entitymanager.JaqpotEntityManager;
+import org.jaqpot.core.model.Algorithm;
+import org.jaqpot.core.model.BibTeX;
+import org.jaqpot.core.model.JaqpotEntity;
+import org.jaqpot.core.model.Model;
+import org.jaqpot.core.model.Report;
+import org.jaqpot.core.model.Task;
+import org.jaqpot.core.model.UserCounters;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+@Stateless
+public class UserCountersHandler extends AbstractHandler<UserCounters> {
+
+    /**
+     * The entities whose handlers keep per-user counters.
+     */
+    private static final List<Class<? extends JaqpotEntity>> COUNTED = Arrays.asList(Task.class,
+            Algorithm.class, Model.class, BibTeX.class, Dataset.class, Report.class);
+
+    @Inject
+    @MongoDB
+    JaqpotEntityManager em;
+
+    public UserCountersHandler() {
+        super(UserCounters.class);
+    }
+
+    @Override
+    protected JaqpotEntityManager getEntityManager() {
+        return em;
+    }
+
+    /**
+     * Counts the visible entities of the given creator directly on their
+     * collections, per counter name.
+     *
+     * @param userId the creator of the entities
+     * @return the counters of the creator
+     */
+    public Map<String, Long> recount(String userId) {
+        Map<String, Long> counters = new HashMap<>();
+        for (Class<? extends JaqpotEntity> entityClass : COUNTED) {
+            counters.put(entityClass.getSimpleName(), em.count(entityClass, createdBy(userId)));
+        }
+        for (Task.Status status : Task.Status.values()) {
+            Map<String, Object> properties = createdBy(userId);
+            properties.put("status", status.name());
+            counters.put(TaskHandler.statusCounter(status), em.count(Task.class, properties));
+        }
+        return counters;
+    }
+
+    /**
+     * Corrects the drift of the counters of the given user from the
+     * collections. The counters are read before counting the collections and
+     * are then incremented by their difference to the counts in a single
+     * atomic update, which only applies if they still have the values read,
+     * so that increments landing before it are neither lost nor counted
+     * twice.
+     *
+     * Handlers persist an entity before incrementing its counter, so an
+     * entity persisted while the collections are counted and whose own
+     * increment lands only after the update is still counted twice. That
+     * window is as short as the time between the two calls of the handler,
+     * and the next reconciliation corrects it.
+     *
+     * @param userId the id of the user
+     * @return false if the counters changed since they were read, in which
+     * case nothing was written
+     */
+    public boolean reconcile(String userId) {
+        Map<String, Long> before = storedCounters(userId);
+        Map<String, Long> counts = recount(userId);
+        Map<String, Long> increments = new HashMap<>();
+        counts.forEach((key, count) -> {
+            long delta = count - before.getOrDefault(key, 0L);
+            if (delta != 0L) {
+                increments.put("counters." + key, delta);
+            }
+        });
+        if (increments.isEmpty()) {
+            return true;
+        }
+        Map<String, Object> expected = new HashMap<>();
+        counts.keySet().forEach(key -> expected.put("counters." + key, null));
+        before.forEach((key, value) -> expected.put("counters." + key, value));
+        if (!em.increment(UserCounters.class, userId, expected, increments)) {
+            return false;
+        }
+        forgetCounters(userId);
+        return true;
+    }
+
+    private Map<String, Long> storedCounters(String userId) {
+        UserCounters userCounters = em.find(UserCounters.class, userId);
+        return userCounters != null && userCounters.getCounters() != null
+                ? userCounters.getCounters()
+                : Collections.emptyMap();
+    }
+
+    private static Map<String, Object> createdBy(String userId) {
+        Map<String, Object> properties = new HashMap<>();
+        properties.put("meta.creators", Arrays.asList(userId));
+        properties.put("visible", true);
+        return properties;
+    }
+
+}
@@ -0,0 +1,191 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.apache.arrow.vector.util.Text;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureDictionary;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+import org.jaqpot.core.model.dto.dataset.Substance;
+
+import static org.jaqpot.core.data.serialize.ArrowDatasetWriter.*;
+
+/**
+ * Reads a {@link Dataset} from an Apache Arrow IPC stream, such as one
+ * written by {@link ArrowDatasetWriter}, a record batch at a time. Every
+ * column other than the substance columns is a feature named by the column
+ * name. Integers are read as integers, or as longs if they do not fit, other
+ * numbers as doubles, text as strings, or as the values it encodes in
+ * columns marked as JSON, and any other values as they are decoded. Null
+ * cells are read as null values. Nested columns are not supported.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class ArrowDatasetReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private ArrowDatasetReader() {
+    }
+
+    /**
+     * Reads a dataset, passing its rows to the given callback in order.
+     *
+     * @param in an Arrow IPC stream
+     * @param rows called with the header, which has its features, and with
+     * each row
+     * @return the header of the dataset, without rows
+     * @throws IOException if the stream cannot be read or is not a valid
+     * Arrow stream
+     */
+    public static Dataset read(InputStream in, BiConsumer<Dataset, DataEntry> rows) throws IOException {
+        try (BufferAllocator allocator = ALLOCATOR.newChildAllocator("dataset", 0, Long.MAX_VALUE);
+                ArrowStreamReader reader = new ArrowStreamReader(in, allocator)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            Schema schema = root.getSchema();
+            Dataset dataset = header(schema);
+
+            List<Field> fields = schema.getFields();
+            String[] uris = new String[fields.size()];
+            boolean[] json = new boolean[fields.size()];
+            int substanceURI = -1;
+            int substanceName = -1;
+            Set<FeatureInfo> features = new HashSet<>();
+            for (int i = 0; i < fields.size(); i++) {
+                Field field = fields.get(i);
+                Map<String, String> metadata = field.getMetadata();
+                String role = metadata != null ? metadata.get(ROLE) : null;
+                if (SUBSTANCE_URI.equals(role)) {
+                    substanceURI = i;
+                } else if (SUBSTANCE_NAME.equals(role)) {
+                    substanceName = i;
+                } else {
+                    if (field.getType().isComplex()) {
+                        throw new IOException("Invalid Arrow stream - column " + field.getName()
+                                + " is of the nested type " + field.getType() + ", which datasets cannot hold");
+                    }
+                    json[i] = metadata != null && JSON.equals(metadata.get(ENCODING));
+                    uris[i] = FeatureDictionary.intern(field.getName());
+                    features.add(feature(uris[i], metadata));
+                }
+            }
+            dataset.setFeatures(features);
+
+            int row = 0;
+            while (reader.loadNextBatch()) {
+                List<FieldVector> vectors = root.getFieldVectors();
+                for (int i = 0; i < root.getRowCount(); i++, row++) {
+                    TreeMap<String, Object> values = new TreeMap<>();
+                    for (int column = 0; column < uris.length; column++) {
+                        if (uris[column] == null) {
+                            continue;
+                        }
+                        values.put(uris[column], value(vectors.get(column), i, json[column]));
+                    }
+                    Substance compound = new Substance();
+                    Object uri = substanceURI >= 0 ? value(vectors.get(substanceURI), i, false) : null;
+                    Object name = substanceName >= 0 ? value(vectors.get(substanceName), i, false) : null;
+                    compound.setURI(uri != null ? uri.toString() : null);
+                    compound.setName(name != null ? name.toString() : "row" + row);
+                    DataEntry dataEntry = new DataEntry();
+                    dataEntry.setCompound(compound);
+                    dataEntry.setValues(values);
+                    rows.accept(dataset, dataEntry);
+                }
+            }
+            return dataset;
+        }
+    }
+
+    private static Dataset header(Schema schema) throws IOException {
+        Map<String, String> metadata = schema.getCustomMetadata();
+        String header = metadata != null ? metadata.get(DATASET) : null;
+        return header != null ? MAPPER.readValue(header, Dataset.class) : new Dataset();
+    }
+
+    private static FeatureInfo feature(String uri, Map<String, String> metadata) {
+        FeatureInfo feature = new FeatureInfo(uri, uri);
+        if (metadata != null) {
+            if (metadata.containsKey(NAME)) {
+                feature.setName(metadata.get(NAME));
+            }
+            feature.setUnits(metadata.get(UNITS));
+            if (metadata.containsKey(CATEGORY)) {
+                try {
+                    feature.setCategory(Dataset.DescriptorCategory.valueOf(metadata.get(CATEGORY)));
+                } catch (IllegalArgumentException ex) {
+                    // An unknown category is left unset
+                }
+            }
+        }
+        return feature;
+    }
+
+    private static Object value(FieldVector vector, int index, boolean json) throws IOException {
+        if (vector.isNull(index)) {
+            return null;
+        }
+        Object value = vector.getObject(index);
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            long integer = ((Number) value).longValue();
+            return integer == (int) integer ? (Object) (int) integer : (Object) integer;
+        }
+        if (value instanceof Character) {
+            return (int) (Character) value;
+        }
+        if (value instanceof Number && !(value instanceof Double)) {
+            return ((Number) value).doubleValue();
+        }
+        if (value instanceof Text) {
+            return json ? MAPPER.readValue(value.toString(), Object.class) : value.toString();
+        }
+        return value;
+    }
+
+}
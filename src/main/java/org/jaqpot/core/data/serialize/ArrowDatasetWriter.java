@@ -0,0 +1,309 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowStreamWriter;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.jaqpot.core.model.dto.dataset.ColumnarData;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureDictionary;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+import org.jaqpot.core.model.dto.dataset.Substance;
+
+/**
+ * Writes a {@link Dataset} as an Apache Arrow IPC stream. Every feature is a
+ * column named by its URI, typed after its values: int64 if they are all
+ * integers or longs, float64 if they are all numbers, bool if they are all
+ * booleans and utf8 if they are all strings. Any other column, such as one
+ * mixing strings and numbers, is written as utf8 holding the JSON of every
+ * value and marked as such in its metadata. Missing and null values are
+ * null cells. Two more string columns hold the URIs and names of the
+ * substances. The header of the dataset, without features and rows, is
+ * attached to the schema as JSON.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class ArrowDatasetWriter {
+
+    public static final String MEDIA_TYPE = "application/vnd.apache.arrow.stream";
+
+    /**
+     * Schema metadata key of the header of the dataset.
+     */
+    public static final String DATASET = "jaqpot.dataset";
+
+    /**
+     * Field metadata key of the role of the substance columns.
+     */
+    static final String ROLE = "jaqpot.role";
+    static final String SUBSTANCE_URI = "substance.uri";
+    static final String SUBSTANCE_NAME = "substance.name";
+
+    /**
+     * Field metadata key of the encoding of the values of a utf8 column, set
+     * to {@link #JSON} if they are JSON documents.
+     */
+    static final String ENCODING = "jaqpot.encoding";
+    static final String JSON = "json";
+
+    static final String NAME = "name";
+    static final String UNITS = "units";
+    static final String CATEGORY = "category";
+
+    static final BufferAllocator ALLOCATOR = new RootAllocator(Long.MAX_VALUE);
+
+    private static final int BATCH_SIZE = 4096;
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private ArrowDatasetWriter() {
+    }
+
+    public static void write(Dataset dataset, OutputStream out) throws IOException {
+        write(dataset, new HashMap<>(), out);
+    }
+
+    /**
+     * Writes a dataset along with custom schema metadata, such as the
+     * parameters of a request the dataset is part of. The stream is not
+     * closed.
+     *
+     * @param dataset the dataset to write
+     * @param metadata custom schema metadata
+     * @param out the stream to write to
+     * @throws IOException if writing fails
+     */
+    public static void write(Dataset dataset, Map<String, String> metadata, OutputStream out) throws IOException {
+        ColumnarData data = dataset.toColumnar();
+        FeatureDictionary dictionary = data.getDictionary();
+        Map<String, FeatureInfo> features = new HashMap<>();
+        if (dataset.getFeatures() != null) {
+            for (FeatureInfo feature : dataset.getFeatures()) {
+                features.put(feature.getURI(), feature);
+            }
+        }
+
+        List<Field> fields = new ArrayList<>(dictionary.size() + 2);
+        fields.add(field(SUBSTANCE_URI, ArrowType.Utf8.INSTANCE, role(SUBSTANCE_URI)));
+        fields.add(field(SUBSTANCE_NAME, ArrowType.Utf8.INSTANCE, role(SUBSTANCE_NAME)));
+        ColumnType[] types = new ColumnType[dictionary.size()];
+        for (int column = 0; column < dictionary.size(); column++) {
+            String uri = dictionary.uri(column);
+            types[column] = typeOf(data, column);
+            Map<String, String> description = describe(features.get(uri));
+            if (types[column] == ColumnType.JSON) {
+                description.put(ENCODING, JSON);
+            }
+            fields.add(field(uri, types[column].arrowType, description));
+        }
+        Map<String, String> schemaMetadata = new HashMap<>(metadata);
+        schemaMetadata.put(DATASET, MAPPER.writeValueAsString(header(dataset)));
+
+        try (BufferAllocator allocator = ALLOCATOR.newChildAllocator("dataset", 0, Long.MAX_VALUE);
+                VectorSchemaRoot root = VectorSchemaRoot.create(new Schema(fields, schemaMetadata), allocator)) {
+            ArrowStreamWriter writer = new ArrowStreamWriter(root, null, out);
+            writer.start();
+            VarCharVector substanceURIs = (VarCharVector) root.getVector(0);
+            VarCharVector substanceNames = (VarCharVector) root.getVector(1);
+            for (int start = 0; start < data.rows(); start += BATCH_SIZE) {
+                int rows = Math.min(BATCH_SIZE, data.rows() - start);
+                root.allocateNew();
+                for (int i = 0; i < rows; i++) {
+                    Substance compound = data.getCompound(start + i);
+                    setString(substanceURIs, i, compound != null ? compound.getURI() : null);
+                    setString(substanceNames, i, compound != null ? compound.getName() : null);
+                }
+                for (int column = 0; column < dictionary.size(); column++) {
+                    writeColumn(data, column, types[column], root.getVector(column + 2), start, rows);
+                }
+                root.setRowCount(rows);
+                writer.writeBatch();
+            }
+            writer.end();
+        }
+        out.flush();
+    }
+
+    private enum ColumnType {
+        INT64(new ArrowType.Int(64, true)),
+        FLOAT64(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE)),
+        BOOL(ArrowType.Bool.INSTANCE),
+        UTF8(ArrowType.Utf8.INSTANCE),
+        JSON(ArrowType.Utf8.INSTANCE);
+
+        private final ArrowType arrowType;
+
+        ColumnType(ArrowType arrowType) {
+            this.arrowType = arrowType;
+        }
+
+    }
+
+    /**
+     * The narrowest type holding every non null value of a column; a column
+     * without any is written as int64 if it is numeric and utf8 otherwise.
+     */
+    private static ColumnType typeOf(ColumnarData data, int column) {
+        if (data.isNumeric(column)) {
+            for (int row = 0; row < data.rows(); row++) {
+                if (!data.isIntegral(row, column) && !isNull(data, row, column)) {
+                    return ColumnType.FLOAT64;
+                }
+            }
+            return ColumnType.INT64;
+        }
+        boolean strings = true;
+        boolean booleans = true;
+        for (int row = 0; row < data.rows() && (strings || booleans); row++) {
+            Object value = data.get(row, column);
+            if (value != null) {
+                strings &= value instanceof String;
+                booleans &= value instanceof Boolean;
+            }
+        }
+        return strings ? ColumnType.UTF8 : booleans ? ColumnType.BOOL : ColumnType.JSON;
+    }
+
+    private static void writeColumn(ColumnarData data, int column, ColumnType type, FieldVector vector, int start, int rows) throws IOException {
+        for (int i = 0; i < rows; i++) {
+            int row = start + i;
+            if (type == ColumnType.INT64) {
+                if (data.isIntegral(row, column)) {
+                    ((BigIntVector) vector).setSafe(i, data.getLong(row, column));
+                } else {
+                    ((BigIntVector) vector).setNull(i);
+                }
+            } else if (type == ColumnType.FLOAT64) {
+                if (!isNull(data, row, column)) {
+                    ((Float8Vector) vector).setSafe(i, data.getDouble(row, column));
+                } else {
+                    ((Float8Vector) vector).setNull(i);
+                }
+            } else {
+                Object value = data.get(row, column);
+                if (type == ColumnType.BOOL) {
+                    if (value != null) {
+                        ((BitVector) vector).setSafe(i, (Boolean) value ? 1 : 0);
+                    } else {
+                        ((BitVector) vector).setNull(i);
+                    }
+                } else if (type == ColumnType.UTF8) {
+                    setString((VarCharVector) vector, i, (String) value);
+                } else {
+                    setString((VarCharVector) vector, i, value != null ? MAPPER.writeValueAsString(value) : null);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells missing and null values of a numeric column from NaN, boxing only
+     * values that read as NaN.
+     */
+    private static boolean isNull(ColumnarData data, int row, int column) {
+        return Double.isNaN(data.getDouble(row, column)) && data.get(row, column) == null;
+    }
+
+    private static Field field(String name, ArrowType type, Map<String, String> metadata) {
+        return new Field(name, new FieldType(true, type, null, metadata), null);
+    }
+
+    private static Map<String, String> role(String role) {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(ROLE, role);
+        return metadata;
+    }
+
+    private static Map<String, String> describe(FeatureInfo feature) {
+        Map<String, String> metadata = new HashMap<>();
+        if (feature != null) {
+            if (feature.getName() != null) {
+                metadata.put(NAME, feature.getName());
+            }
+            if (feature.getUnits() != null) {
+                metadata.put(UNITS, feature.getUnits());
+            }
+            if (feature.getCategory() != null) {
+                metadata.put(CATEGORY, feature.getCategory().name());
+            }
+        }
+        return metadata;
+    }
+
+    private static void setString(VarCharVector vector, int index, String value) {
+        if (value != null) {
+            vector.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+        } else {
+            vector.setNull(index);
+        }
+    }
+
+    /**
+     * The fields of a dataset besides its features and rows, which are
+     * carried by the columns.
+     */
+    private static Dataset header(Dataset dataset) {
+        Dataset header = new Dataset();
+        header.setId(dataset.getId());
+        header.setMeta(dataset.getMeta());
+        header.setOntologicalClasses(dataset.getOntologicalClasses());
+        header.setVisible(dataset.getVisible());
+        header.setTemporary(dataset.getTemporary());
+        header.setFeatured(dataset.getFeatured());
+        header.setDatasetURI(dataset.getDatasetURI());
+        header.setByModel(dataset.getByModel());
+        header.setTotalRows(dataset.getTotalRows());
+        header.setTotalColumns(dataset.getTotalColumns());
+        header.setDescriptors(dataset.getDescriptors());
+        return header;
+    }
+
+}
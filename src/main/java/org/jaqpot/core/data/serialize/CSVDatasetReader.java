@@ -0,0 +1,265 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureDictionary;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+import org.jaqpot.core.model.dto.dataset.Substance;
+import org.jaqpot.core.util.CSVReader;
+
+/**
+ * Reads a {@link Dataset} from a CSV document incrementally. The first record
+ * names the columns, each of which becomes a feature, except for an optional
+ * column holding the names of the substances. Every other record is a row.
+ * Features are named by absolute URIs under the base URI of the service,
+ * ending in the URL encoded name of their column.
+ *
+ * Records are converted to rows in batches, in parallel. A column is numeric
+ * if all of its values in the first batch are numbers; its values are then
+ * read as numbers, while the values of other columns are kept as strings.
+ * Empty values, and the values of columns a record stops short of, are
+ * missing values and are read as null.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class CSVDatasetReader {
+
+    private static final String FEATURE_PATH = "feature/";
+    private static final String SUBSTANCE_PATH = "substance/";
+    private static final int BATCH_SIZE = 1000;
+
+    private CSVDatasetReader() {
+    }
+
+    /**
+     * Reads a dataset, passing its rows to the given callback in order.
+     *
+     * @param in a CSV document in UTF-8
+     * @param baseUri the base URI of the service, under which features and
+     * substances are named
+     * @param substanceColumn the name of the column holding the names of the
+     * substances, or null if there is none
+     * @param rows called with the header, which has its features, and with
+     * each row
+     * @return the header of the dataset, without rows
+     * @throws IOException if the stream cannot be read or is not valid CSV
+     * @throws IllegalArgumentException if the document has no header, names
+     * a column twice or has a record with more values than columns
+     */
+    public static Dataset read(InputStream in, String baseUri, String substanceColumn, BiConsumer<Dataset, DataEntry> rows) throws IOException, IllegalArgumentException {
+        try (CSVReader reader = new CSVReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            String[] names = reader.readRecord();
+            if (names == null) {
+                throw new IllegalArgumentException("Invalid CSV - the document has no header");
+            }
+            if (!names[0].isEmpty() && names[0].charAt(0) == '\uFEFF') {
+                names[0] = names[0].substring(1);
+            }
+            Columns columns = new Columns(names, baseUri.endsWith("/") ? baseUri : baseUri + "/", substanceColumn);
+            Dataset dataset = new Dataset();
+            dataset.setFeatures(columns.features());
+
+            List<String[]> batch = new ArrayList<>(BATCH_SIZE);
+            int row = 0;
+            String[] record;
+            do {
+                record = reader.readRecord();
+                if (record != null) {
+                    if (record.length > names.length) {
+                        throw new IllegalArgumentException("Invalid CSV - the record at line " + (reader.getLine() - 1)
+                                + " has " + record.length + " values while the header has " + names.length);
+                    }
+                    batch.add(record);
+                }
+                if (batch.size() == BATCH_SIZE || (record == null && !batch.isEmpty())) {
+                    if (row == 0) {
+                        columns.inferTypes(batch);
+                    }
+                    int offset = row;
+                    List<DataEntry> entries = IntStream.range(0, batch.size())
+                            .parallel()
+                            .mapToObj(i -> columns.toDataEntry(offset + i, batch.get(i)))
+                            .collect(Collectors.toList());
+                    for (DataEntry dataEntry : entries) {
+                        rows.accept(dataset, dataEntry);
+                    }
+                    row += batch.size();
+                    batch.clear();
+                }
+            } while (record != null);
+            return dataset;
+        }
+    }
+
+    /**
+     * Parses a decimal number, possibly signed and in scientific notation.
+     * Unlike {@link Double#valueOf(String)} this rejects hexadecimal numbers
+     * and type suffixes such as "1f", and does not throw on other values.
+     *
+     * @param value a value
+     * @return the number or null if the value is not a number
+     */
+    static Double toNumber(String value) {
+        int length = value.length();
+        if (length == 0 || length > 64) {
+            return null;
+        }
+        boolean digits = false;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits = true;
+            } else if (c != '.' && c != '-' && c != '+' && c != 'e' && c != 'E') {
+                return null;
+            }
+        }
+        if (!digits) {
+            return null;
+        }
+        try {
+            return Double.valueOf(value);
+        } catch (NumberFormatException ex) {
+            return null;
+        }
+    }
+
+    private static class Columns {
+
+        private final String[] names;
+        private final String[] uris;
+        private final boolean[] numeric;
+        private final int substance;
+        private final String substancePrefix;
+
+        Columns(String[] names, String baseUri, String substanceColumn) {
+            uris = new String[names.length];
+            numeric = new boolean[names.length];
+            int substanceIndex = -1;
+            Map<String, Integer> seen = new LinkedHashMap<>();
+            for (int i = 0; i < names.length; i++) {
+                String name = names[i].trim();
+                if (substanceIndex < 0 && name.equals(substanceColumn)) {
+                    substanceIndex = i;
+                    continue;
+                }
+                if (name.isEmpty()) {
+                    name = "Column " + (i + 1);
+                }
+                Integer previous = seen.put(name, i);
+                if (previous != null) {
+                    throw new IllegalArgumentException("Invalid CSV - columns " + (previous + 1) + " and " + (i + 1)
+                            + " are both named " + name);
+                }
+                names[i] = name;
+                uris[i] = FeatureDictionary.intern(baseUri + FEATURE_PATH + encode(name));
+            }
+            this.names = names;
+            substance = substanceIndex;
+            substancePrefix = baseUri + SUBSTANCE_PATH;
+        }
+
+        private static String encode(String name) {
+            try {
+                return URLEncoder.encode(name, "UTF-8");
+            } catch (UnsupportedEncodingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        Set<FeatureInfo> features() {
+            Set<FeatureInfo> features = new HashSet<>();
+            for (int i = 0; i < uris.length; i++) {
+                if (uris[i] != null) {
+                    features.add(new FeatureInfo(uris[i], names[i]));
+                }
+            }
+            return features;
+        }
+
+        void inferTypes(List<String[]> records) {
+            IntStream.range(0, uris.length).parallel().forEach(column -> {
+                numeric[column] = records.stream()
+                        .allMatch(record -> column >= record.length
+                                || record[column].isEmpty()
+                                || toNumber(record[column].trim()) != null);
+            });
+        }
+
+        DataEntry toDataEntry(int row, String[] record) {
+            TreeMap<String, Object> values = new TreeMap<>();
+            for (int i = 0; i < uris.length; i++) {
+                if (uris[i] == null) {
+                    continue;
+                }
+                String value = i < record.length ? record[i] : "";
+                if (value.isEmpty()) {
+                    values.put(uris[i], null);
+                    continue;
+                }
+                Double number;
+                if (numeric[i] && (number = toNumber(value.trim())) != null) {
+                    values.put(uris[i], number);
+                } else {
+                    values.put(uris[i], value);
+                }
+            }
+            Substance compound = new Substance();
+            compound.setURI(substancePrefix + row);
+            compound.setName(substance >= 0 && substance < record.length && !record[substance].isEmpty()
+                    ? record[substance]
+                    : "row" + row);
+            DataEntry dataEntry = new DataEntry();
+            dataEntry.setCompound(compound);
+            dataEntry.setValues(values);
+            return dataEntry;
+        }
+
+    }
+
+}
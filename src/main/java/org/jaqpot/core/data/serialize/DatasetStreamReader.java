@@ -0,0 +1,148 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureDictionary;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+
+/**
+ * Reads the JSON representation of a {@link Dataset} incrementally. Header
+ * fields are bound as they appear, while rows are handed to a callback one
+ * at a time and are never all held in memory. Rows in the compact encoding
+ * are converted back to rows keyed by feature URI, provided that the
+ * dictionary precedes them.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class DatasetStreamReader {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private static final TypeReference<Set<FeatureInfo>> FEATURES = new TypeReference<Set<FeatureInfo>>() {
+    };
+
+    private static final TypeReference<List<String>> DICTIONARY = new TypeReference<List<String>>() {
+    };
+
+    private DatasetStreamReader() {
+    }
+
+    /**
+     * Reads a dataset, passing its rows to the given callback in order.
+     *
+     * @param in the JSON representation of a dataset
+     * @param rows called with the header read so far, which has its features
+     * if they precede the rows, and with each row
+     * @return the header of the dataset, without rows
+     * @throws IOException if the stream cannot be read or is not a valid
+     * dataset
+     */
+    public static Dataset read(InputStream in, BiConsumer<Dataset, DataEntry> rows) throws IOException {
+        ObjectNode header = MAPPER.createObjectNode();
+        Dataset dataset = new Dataset();
+        try (JsonParser parser = MAPPER.getFactory().createParser(in)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException("Expected a dataset object", parser.getCurrentLocation());
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                switch (field) {
+                    case "features":
+                        dataset.setFeatures(token == JsonToken.VALUE_NULL ? null : MAPPER.readValue(parser, FEATURES));
+                        break;
+                    case "dictionary":
+                        dataset.setDictionary(token == JsonToken.VALUE_NULL ? null : MAPPER.readValue(parser, DICTIONARY));
+                        break;
+                    case "dataEntry":
+                        if (token == JsonToken.START_ARRAY) {
+                            readRows(parser, dataset, rows);
+                        } else if (token != JsonToken.VALUE_NULL) {
+                            throw new JsonMappingException("Expected an array of data entries", parser.getCurrentLocation());
+                        }
+                        break;
+                    default:
+                        header.set(field, MAPPER.readTree(parser));
+                }
+            }
+        }
+        Dataset result = MAPPER.treeToValue(header, Dataset.class);
+        result.setFeatures(dataset.getFeatures());
+        return result;
+    }
+
+    private static void readRows(JsonParser parser, Dataset dataset, BiConsumer<Dataset, DataEntry> rows) throws IOException {
+        List<String> dictionary = dataset.getDictionary();
+        if (dictionary != null) {
+            dictionary.replaceAll(FeatureDictionary::intern);
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            DataEntry dataEntry = MAPPER.readValue(parser, DataEntry.class);
+            if (dictionary != null && dataEntry != null && dataEntry.getValues() != null) {
+                TreeMap<String, Object> values = new TreeMap<>();
+                for (Map.Entry<String, Object> value : dataEntry.getValues().entrySet()) {
+                    int id;
+                    try {
+                        id = Integer.parseInt(value.getKey());
+                    } catch (NumberFormatException ex) {
+                        id = -1;
+                    }
+                    if (id < 0 || id >= dictionary.size()) {
+                        throw new JsonMappingException("Unknown feature id " + value.getKey()
+                                + " in the values of " + dataEntry.getCompound(), parser.getCurrentLocation());
+                    }
+                    values.put(dictionary.get(id), value.getValue());
+                }
+                dataEntry.setValues(values);
+            }
+            rows.accept(dataset, dataEntry);
+        }
+    }
+
+}
@@ -46,6 +46,9 @@ import org.jaqpot.core.annotations.MongoDB;
 import org.jaqpot.core.data.serialize.custom.DataEntryDeSerializeModifier;
 import org.jaqpot.core.data.serialize.custom.DataEntryDeSerializer;
 import org.jaqpot.core.data.serialize.custom.DataEntrySerializer;
+import org.jaqpot.core.data.serialize.custom.MongoKeyDeserializer;
+import org.jaqpot.core.data.serialize.custom.MongoKeySerializer;
+import org.jaqpot.core.data.serialize.custom.MongoUntypedObjectDeserializer;
 import org.jaqpot.core.model.dto.dataset.DataEntry;
 
 /**
@@ -62,11 +65,30 @@ public class JacksonMongoSerializer implements JSONSerializer {
     ObjectMapper mapper;
 
     public JacksonMongoSerializer() {
-        this.mapper = new ObjectMapper();
+        this.mapper = createMapper();
+    }
+
+    /**
+     * Creates an ObjectMapper configured for MongoDB storage. It is shared
+     * with the BSON codecs so that both paths bind entities the same way.
+     * Map keys are escaped by {@link MongoKeySerializer} since MongoDB does
+     * not accept dots in field names, and unescaped by
+     * {@link MongoKeyDeserializer} and, in untyped values,
+     * {@link MongoUntypedObjectDeserializer}.
+     *
+     * @return a new ObjectMapper instance
+     */
+    public static ObjectMapper createMapper() {
+        ObjectMapper mapper = new ObjectMapper();
         SimpleModule module = new SimpleModule();
         module.addSerializer(DataEntry.class, new DataEntrySerializer());
+        module.addKeySerializer(String.class, new MongoKeySerializer());
+        module.addKeySerializer(Object.class, new MongoKeySerializer());
+        module.addKeyDeserializer(String.class, new MongoKeyDeserializer());
+        module.addDeserializer(Object.class, new MongoUntypedObjectDeserializer());
         mapper.registerModule(module.setDeserializerModifier(new DataEntryDeSerializeModifier()));
         mapper.configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        return mapper;
     }
 
     @Override
@@ -90,18 +112,7 @@ public class JacksonMongoSerializer implements JSONSerializer {
     @Override
     public String write(Object entity) {
         try {
-            String result = mapper.writeValueAsString(entity);
-            //for(int i=0; i<20 ; i++){
-            while (true) {
-                String temp = result.replaceAll("(\"[^\"]*)(\\.)([^\"]*\":)", "$1\\(DOT\\)$3");
-                if (temp.equals(result)) {
-                    result = temp;
-                    break;
-                }
-                result = temp;
-            }
-            //}
-            return result;
+            return mapper.writeValueAsString(entity);
         } catch (IOException ex) {
             throw new JaqpotSerializationException(ex);
         }
@@ -110,7 +121,7 @@ public class JacksonMongoSerializer implements JSONSerializer {
     @Override
     public <T> T parse(String content, Class<T> valueType) {
         try {
-            return mapper.readValue(content.replaceAll("\\(DOT\\)", "\\."), valueType);
+            return mapper.readValue(content, valueType);
         } catch (IOException ex) {
             throw new JaqpotSerializationException(ex);
         }
@@ -0,0 +1,251 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize.bson;
+
+import com.fasterxml.jackson.core.Base64Variants;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.util.TokenBuffer;
+import java.io.IOException;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.jaqpot.core.data.serialize.JaqpotSerializationException;
+import org.jaqpot.core.data.serialize.custom.MongoKeyEncoder;
+
+/**
+ * A BSON codec that binds entities with Jackson but reads and writes BSON
+ * directly, using a {@link TokenBuffer} as the intermediate representation
+ * instead of a JSON string.
+ *
+ * The produced documents are identical to the ones created by parsing the
+ * output of {@link org.jaqpot.core.data.serialize.JacksonMongoSerializer}, so
+ * data persisted with either path can be read by the other. Map keys are
+ * escaped by the mapper on the way out; on the way in every field name is
+ * unescaped, which also covers maps nested in untyped values.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ * @param <T> type of the encoded entity
+ */
+public class JacksonBsonCodec<T> implements Codec<T> {
+
+    private final Class<T> entityClass;
+    private final ObjectMapper mapper;
+
+    public JacksonBsonCodec(Class<T> entityClass, ObjectMapper mapper) {
+        this.entityClass = entityClass;
+        this.mapper = mapper;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, T value, EncoderContext encoderContext) {
+        try {
+            TokenBuffer buffer = new TokenBuffer(mapper, false);
+            mapper.writeValue(buffer, value);
+            try (JsonParser parser = buffer.asParser()) {
+                parser.nextToken();
+                writeValue(parser, writer);
+            }
+        } catch (IOException ex) {
+            throw new JaqpotSerializationException(ex);
+        }
+    }
+
+    @Override
+    public T decode(BsonReader reader, DecoderContext decoderContext) {
+        try {
+            TokenBuffer buffer = new TokenBuffer(mapper, false);
+            readDocument(reader, buffer);
+            try (JsonParser parser = buffer.asParser()) {
+                return mapper.readValue(parser, entityClass);
+            }
+        } catch (IOException ex) {
+            throw new JaqpotSerializationException(ex);
+        }
+    }
+
+    @Override
+    public Class<T> getEncoderClass() {
+        return entityClass;
+    }
+
+    private void writeValue(JsonParser parser, BsonWriter writer) throws IOException {
+        switch (parser.getCurrentToken()) {
+            case START_OBJECT:
+                writer.writeStartDocument();
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    writer.writeName(parser.getCurrentName());
+                    parser.nextToken();
+                    writeValue(parser, writer);
+                }
+                writer.writeEndDocument();
+                break;
+            case START_ARRAY:
+                writer.writeStartArray();
+                while (parser.nextToken() != JsonToken.END_ARRAY) {
+                    writeValue(parser, writer);
+                }
+                writer.writeEndArray();
+                break;
+            case VALUE_STRING:
+                writer.writeString(parser.getText());
+                break;
+            case VALUE_NUMBER_INT:
+                switch (parser.getNumberType()) {
+                    case INT:
+                        writer.writeInt32(parser.getIntValue());
+                        break;
+                    case LONG:
+                        // Document.parse stores integral JSON numbers as int32 whenever they fit
+                        long longValue = parser.getLongValue();
+                        if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                            writer.writeInt32((int) longValue);
+                        } else {
+                            writer.writeInt64(longValue);
+                        }
+                        break;
+                    default:
+                        writer.writeDouble(parser.getDoubleValue());
+                }
+                break;
+            case VALUE_NUMBER_FLOAT:
+                double doubleValue = parser.getDoubleValue();
+                if (Double.isNaN(doubleValue) || Double.isInfinite(doubleValue)) {
+                    // Jackson quotes non numeric numbers by default
+                    writer.writeString(parser.getText());
+                } else {
+                    writer.writeDouble(doubleValue);
+                }
+                break;
+            case VALUE_TRUE:
+                writer.writeBoolean(true);
+                break;
+            case VALUE_FALSE:
+                writer.writeBoolean(false);
+                break;
+            case VALUE_NULL:
+                writer.writeNull();
+                break;
+            case VALUE_EMBEDDED_OBJECT:
+                writeEmbedded(parser.getEmbeddedObject(), writer);
+                break;
+            default:
+                throw new JaqpotSerializationException("Unexpected token " + parser.getCurrentToken()
+                        + " while encoding " + entityClass.getSimpleName());
+        }
+    }
+
+    private void writeEmbedded(Object embedded, BsonWriter writer) throws IOException {
+        if (embedded == null) {
+            writer.writeNull();
+        } else if (embedded instanceof byte[]) {
+            writer.writeString(Base64Variants.getDefaultVariant().encode((byte[]) embedded));
+        } else {
+            // writeObject() on a TokenBuffer may keep the raw value; serialize it properly
+            TokenBuffer buffer = new TokenBuffer(mapper, false);
+            mapper.writeValue(buffer, embedded);
+            try (JsonParser parser = buffer.asParser()) {
+                parser.nextToken();
+                writeValue(parser, writer);
+            }
+        }
+    }
+
+    private void readDocument(BsonReader reader, JsonGenerator generator) throws IOException {
+        reader.readStartDocument();
+        generator.writeStartObject();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            generator.writeFieldName(MongoKeyEncoder.decode(reader.readName()));
+            readValue(reader, generator);
+        }
+        reader.readEndDocument();
+        generator.writeEndObject();
+    }
+
+    private void readValue(BsonReader reader, JsonGenerator generator) throws IOException {
+        switch (reader.getCurrentBsonType()) {
+            case DOCUMENT:
+                readDocument(reader, generator);
+                break;
+            case ARRAY:
+                reader.readStartArray();
+                generator.writeStartArray();
+                while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                    readValue(reader, generator);
+                }
+                reader.readEndArray();
+                generator.writeEndArray();
+                break;
+            case STRING:
+                generator.writeString(reader.readString());
+                break;
+            case INT32:
+                generator.writeNumber(reader.readInt32());
+                break;
+            case INT64:
+                long longValue = reader.readInt64();
+                if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                    generator.writeNumber((int) longValue);
+                } else {
+                    generator.writeNumber(longValue);
+                }
+                break;
+            case DOUBLE:
+                generator.writeNumber(reader.readDouble());
+                break;
+            case BOOLEAN:
+                generator.writeBoolean(reader.readBoolean());
+                break;
+            case NULL:
+                reader.readNull();
+                generator.writeNull();
+                break;
+            case OBJECT_ID:
+                generator.writeString(reader.readObjectId().toHexString());
+                break;
+            case DATE_TIME:
+                generator.writeNumber(reader.readDateTime());
+                break;
+            case BINARY:
+                generator.writeBinary(reader.readBinaryData().getData());
+                break;
+            default:
+                reader.skipValue();
+                generator.writeNull();
+        }
+    }
+
+}
@@ -36,17 +36,25 @@ package org.jaqpot.core.data.serialize.custom;
 
 import com.fasterxml.jackson.core.JsonParser;
 import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.DeserializationContext;
 import com.fasterxml.jackson.databind.JsonDeserializer;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.deser.ResolvableDeserializer;
 import com.fasterxml.jackson.databind.deser.std.StdDeserializer;
 import java.io.IOException;
-import java.util.Map;
 import java.util.TreeMap;
 import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.FeatureDictionary;
+import org.jaqpot.core.model.dto.dataset.Substance;
 
 /**
+ * Reads data entries field by field, so that the keys of the values are
+ * unescaped and interned with {@link FeatureDictionary#intern(String)} as
+ * they are read; rows of stored datasets then share one String instance per
+ * feature URI. The deserializers of the compound and of the values are
+ * looked up once, when this deserializer is resolved, rather than for every
+ * row.
  *
  * @author Charalampos Chomenidis
  * @author Pantelis Sopasakis
@@ -55,6 +63,10 @@ public class DataEntryDeSerializer extends StdDeserializer<DataEntry> implements
 
     JsonDeserializer parent;
 
+    private JsonDeserializer<Object> compoundDeserializer;
+
+    private JsonDeserializer<Object> valueDeserializer;
+
     public DataEntryDeSerializer(JsonDeserializer parent) {
         super(DataEntry.class);
         this.parent = parent;
@@ -62,20 +74,50 @@ public class DataEntryDeSerializer extends StdDeserializer<DataEntry> implements
 
     @Override
     public DataEntry deserialize(JsonParser p, DeserializationContext ctxt) throws IOException, JsonProcessingException {
-        DataEntry dataEntry = (DataEntry) parent.deserialize(p, ctxt);
-        TreeMap<String, Object> valuesMap = new TreeMap<>();
-        
-        for (Map.Entry<String, Object> entry : dataEntry.getValues().entrySet()) {
-            valuesMap.put(entry.getKey().replaceAll("\\(DOT\\)", "\\."), entry.getValue());
-        }              
-        dataEntry.setValues(valuesMap);
-        
+        DataEntry dataEntry = new DataEntry();
+        JsonToken token = p.getCurrentToken();
+        if (token == JsonToken.START_OBJECT) {
+            token = p.nextToken();
+        }
+        for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {
+            String field = p.getCurrentName();
+            token = p.nextToken();
+            switch (field) {
+                case "compound":
+                    dataEntry.setCompound(token == JsonToken.VALUE_NULL ? null
+                            : (Substance) compoundDeserializer.deserialize(p, ctxt));
+                    break;
+                case "values":
+                    dataEntry.setValues(token == JsonToken.VALUE_NULL ? null : readValues(p, ctxt));
+                    break;
+                default:
+                    p.skipChildren();
+            }
+        }
+        if (token != JsonToken.END_OBJECT) {
+            throw new JsonMappingException("Expected the end of a DataEntry but found " + token, p.getCurrentLocation());
+        }
         return dataEntry;
     }
 
+    private TreeMap<String, Object> readValues(JsonParser p, DeserializationContext ctxt) throws IOException {
+        if (p.getCurrentToken() != JsonToken.START_OBJECT) {
+            throw new JsonMappingException("Expected the values of a DataEntry but found " + p.getCurrentToken(), p.getCurrentLocation());
+        }
+        TreeMap<String, Object> values = new TreeMap<>();
+        while (p.nextToken() == JsonToken.FIELD_NAME) {
+            String key = FeatureDictionary.intern(MongoKeyEncoder.decode(p.getCurrentName()));
+            JsonToken token = p.nextToken();
+            values.put(key, token == JsonToken.VALUE_NULL ? null : valueDeserializer.deserialize(p, ctxt));
+        }
+        return values;
+    }
+
     @Override
     public void resolve(DeserializationContext ctxt) throws JsonMappingException {
         ((ResolvableDeserializer) parent).resolve(ctxt);
+        compoundDeserializer = ctxt.findRootValueDeserializer(ctxt.constructType(Substance.class));
+        valueDeserializer = ctxt.findRootValueDeserializer(ctxt.constructType(Object.class));
     }
 
 }
@@ -55,7 +55,7 @@ public class DataEntrySerializer extends JsonSerializer<DataEntry> {
         gen.writeObjectField("compound", value.getCompound());
         gen.writeObjectFieldStart("values");
         for (Entry<String, Object> entry : value.getValues().entrySet()) {
-            gen.writeObjectField(entry.getKey().replaceAll("\\.", "\\(DOT\\)"), entry.getValue());
+            gen.writeObjectField(MongoKeyEncoder.encode(entry.getKey()), entry.getValue());
         }
         gen.writeEndObject();
         gen.writeEndObject();
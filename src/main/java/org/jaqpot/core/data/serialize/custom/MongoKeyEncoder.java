@@ -0,0 +1,122 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it, in particular:
+ * (i)   JaqpotCoreServices
+ * (ii)  JaqpotAlgorithmServices
+ * (iii) JaqpotDB
+ * (iv)  JaqpotDomain
+ * (v)   JaqpotEAR
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize.custom;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Escapes map keys for MongoDB, which does not allow dots in field names.
+ * Every dot is replaced with "(DOT)" and back, in a single pass over the key.
+ *
+ * Feature URIs are repeated in every row of a dataset, so encoded and decoded
+ * keys are kept in bounded caches that evict the least recently used keys,
+ * and the same String instance is handed out for every occurrence of a cached
+ * key.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public final class MongoKeyEncoder {
+
+    private static final char DOT = '.';
+    private static final String ESCAPED_DOT = "(DOT)";
+    private static final int MAX_CACHED_KEYS = 16384;
+
+    private static final Map<String, String> ENCODED = lru();
+    private static final Map<String, String> DECODED = lru();
+
+    private MongoKeyEncoder() {
+    }
+
+    public static String encode(String key) {
+        if (key == null || key.indexOf(DOT) < 0) {
+            return key;
+        }
+        String encoded = ENCODED.get(key);
+        if (encoded == null) {
+            StringBuilder builder = new StringBuilder(key.length() + 4 * ESCAPED_DOT.length());
+            for (int i = 0; i < key.length(); i++) {
+                char c = key.charAt(i);
+                if (c == DOT) {
+                    builder.append(ESCAPED_DOT);
+                } else {
+                    builder.append(c);
+                }
+            }
+            encoded = builder.toString();
+            String previous = ENCODED.putIfAbsent(key, encoded);
+            if (previous != null) {
+                encoded = previous;
+            }
+        }
+        return encoded;
+    }
+
+    public static String decode(String key) {
+        int index;
+        if (key == null || (index = key.indexOf(ESCAPED_DOT)) < 0) {
+            return key;
+        }
+        String decoded = DECODED.get(key);
+        if (decoded == null) {
+            StringBuilder builder = new StringBuilder(key.length());
+            int from = 0;
+            while (index >= 0) {
+                builder.append(key, from, index).append(DOT);
+                from = index + ESCAPED_DOT.length();
+                index = key.indexOf(ESCAPED_DOT, from);
+            }
+            builder.append(key, from, key.length());
+            decoded = builder.toString();
+            String previous = DECODED.putIfAbsent(key, decoded);
+            if (previous != null) {
+                decoded = previous;
+            }
+        }
+        return decoded;
+    }
+
+    private static Map<String, String> lru() {
+        return Collections.synchronizedMap(new LinkedHashMap<String, String>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                return size() > MAX_CACHED_KEYS;
+            }
+        });
+    }
+
+}
@@ -0,0 +1,85 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it, in particular:
+ * (i)   JaqpotCoreServices
+ * (ii)  JaqpotAlgorithmServices
+ * (iii) JaqpotDB
+ * (iv)  JaqpotDomain
+ * (v)   JaqpotEAR
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize.custom;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.deser.std.UntypedObjectDeserializer;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reads untyped values, such as the values of parameters or additional info,
+ * unescaping with {@link MongoKeyEncoder} the keys of the maps nested in
+ * them; keys of typed maps are handled by {@link MongoKeyDeserializer}.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class MongoUntypedObjectDeserializer extends UntypedObjectDeserializer {
+
+    public MongoUntypedObjectDeserializer() {
+        super();
+    }
+
+    protected MongoUntypedObjectDeserializer(MongoUntypedObjectDeserializer base,
+            JsonDeserializer<?> mapDeserializer, JsonDeserializer<?> listDeserializer,
+            JsonDeserializer<?> stringDeserializer, JsonDeserializer<?> numberDeserializer) {
+        super(base, mapDeserializer, listDeserializer, stringDeserializer, numberDeserializer);
+    }
+
+    @Override
+    protected JsonDeserializer<?> _withResolved(JsonDeserializer<?> mapDeserializer, JsonDeserializer<?> listDeserializer,
+            JsonDeserializer<?> stringDeserializer, JsonDeserializer<?> numberDeserializer) {
+        return new MongoUntypedObjectDeserializer(this, mapDeserializer, listDeserializer, stringDeserializer, numberDeserializer);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    protected Object mapObject(JsonParser p, DeserializationContext ctxt) throws IOException {
+        Map<String, Object> map = (Map<String, Object>) super.mapObject(p, ctxt);
+        for (String key : map.keySet()) {
+            if (MongoKeyEncoder.decode(key) != key) {
+                Map<String, Object> decoded = new LinkedHashMap<>(map.size() * 2);
+                map.forEach((escaped, value) -> decoded.put(MongoKeyEncoder.decode(escaped), value));
+                return decoded;
+            }
+        }
+        return map;
+    }
+
+}
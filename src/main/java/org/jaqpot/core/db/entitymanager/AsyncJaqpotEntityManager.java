@@ -0,0 +1,136 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.db.entitymanager;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import org.jaqpot.core.model.JaqpotEntity;
+
+/**
+ * Non-blocking counterpart of {@link JaqpotEntityManager}. Every operation
+ * returns immediately with a stage that completes once the database has
+ * answered, so that callers such as suspended JAX-RS requests do not hold a
+ * container thread while documents are transferred.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+public interface AsyncJaqpotEntityManager {
+
+    /**
+     * Makes an entity instance persistent.
+     *
+     * @param entity entity instance
+     * @return a stage that completes when the entity has been persisted
+     */
+    public CompletionStage<Void> persistAsync(JaqpotEntity entity);
+
+    /**
+     * Merges the state of the given entity into the current database.
+     *
+     * @param <T>
+     * @param entity entity instance
+     * @return a stage completing with the previous state of the entity
+     */
+    public <T extends JaqpotEntity> CompletionStage<T> mergeAsync(T entity);
+
+    /**
+     * Removes an entity instance from the database context.
+     *
+     * @param entity entity instance
+     * @return a stage that completes when the entity has been removed
+     */
+    public CompletionStage<Void> removeAsync(JaqpotEntity entity);
+
+    /**
+     * Find by primary key.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param primaryKey primary key
+     * @return a stage completing with the found entity instance or null if
+     * the entity does not exist
+     */
+    public <T extends JaqpotEntity> CompletionStage<T> findAsync(Class<T> entityClass, Object primaryKey);
+
+    /**
+     * Find by primary key, returning only the specified fields.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param primaryKey primary key
+     * @param fields a list of fields to be returned
+     * @return a stage completing with the found entity instance or null if
+     * the entity does not exist
+     */
+    public <T extends JaqpotEntity> CompletionStage<T> findAsync(Class<T> entityClass, Object primaryKey, List<String> fields);
+
+    /**
+     * Find by properties.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param properties a properties map matching field names with values
+     * @param fields a list of fields to be returned, or null to return whole
+     * entities
+     * @param start the position of the first result to retrieve
+     * @param max the maximum number of results to retrieve
+     * @return a stage completing with the list of found entity instances
+     */
+    public <T extends JaqpotEntity> CompletionStage<List<T>> findAsync(Class<T> entityClass, Map<String, Object> properties, List<String> fields, Integer start, Integer max);
+
+    /**
+     * Find by properties, sorted in ascending order of the given fields.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param properties a properties map matching field names with values
+     * @param fields a list of fields to be returned, or null to return whole
+     * entities
+     * @param start the position of the first result to retrieve
+     * @param max the maximum number of results to retrieve
+     * @param ascendingFields the fields to sort by
+     * @return a stage completing with the list of found entity instances
+     */
+    public <T extends JaqpotEntity> CompletionStage<List<T>> findSortedAscAsync(Class<T> entityClass, Map<String, Object> properties, List<String> fields, Integer start, Integer max, List<String> ascendingFields);
+
+    /**
+     * Count by properties.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param properties a properties map matching field names with values
+     * @return a stage completing with the number of matching entities
+     */
+    public <T extends JaqpotEntity> CompletionStage<Long> countAsync(Class<T> entityClass, Map<String, Object> properties);
+
+}
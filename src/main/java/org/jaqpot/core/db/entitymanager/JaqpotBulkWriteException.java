@@ -0,0 +1,78 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.db.entitymanager;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Thrown by the bulk operations of {@link JaqpotEntityManager} when some of
+ * the entities could not be written, or when the server could not satisfy
+ * the write concern of the batch. Bulk writes are unordered, so all other
+ * entities of the batch have been written, though not necessarily with the
+ * requested durability if there is a write concern error.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+public class JaqpotBulkWriteException extends RuntimeException {
+
+    private final Map<String, String> failures;
+
+    private final String writeConcernError;
+
+    public JaqpotBulkWriteException(Map<String, String> failures) {
+        this(failures, null);
+    }
+
+    public JaqpotBulkWriteException(Map<String, String> failures, String writeConcernError) {
+        super("Bulk write failed for " + failures.size() + " entities: " + failures
+                + (writeConcernError != null ? "; write concern error: " + writeConcernError : ""));
+        this.failures = Collections.unmodifiableMap(failures);
+        this.writeConcernError = writeConcernError;
+    }
+
+    /**
+     * @return the error message of each failed entity, keyed by entity ID
+     */
+    public Map<String, String> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the write concern error reported by the server, or null if the
+     * write concern was satisfied
+     */
+    public String getWriteConcernError() {
+        return writeConcernError;
+    }
+
+}
@@ -30,8 +30,10 @@
 package org.jaqpot.core.db.entitymanager;
 
 import java.io.Closeable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 import org.jaqpot.core.model.JaqpotEntity;
 
 /**
@@ -58,6 +60,16 @@ public interface JaqpotEntityManager extends Closeable {
      */
     public void persist(JaqpotEntity entity);
 
+    /**
+     * Makes a collection of entity instances persistent, issuing a single
+     * unordered bulk write per entity class.
+     *
+     * @param entities entity instances
+     * @throws JaqpotBulkWriteException if some of the entities could not be
+     * persisted; all other entities are persisted
+     */
+    public void persistAll(Collection<? extends JaqpotEntity> entities);
+
     /**
      * Merges the state of the entity instance to the database context. If the
      * entity already existed in the database context, the old state is
@@ -69,6 +81,16 @@ public interface JaqpotEntityManager extends Closeable {
      */
     public <T extends JaqpotEntity> T merge(T entity);
 
+    /**
+     * Merges the state of a collection of entity instances to the database
+     * context, issuing a single unordered bulk write per entity class.
+     *
+     * @param entities entity instances
+     * @throws JaqpotBulkWriteException if some of the entities could not be
+     * merged; all other entities are merged
+     */
+    public void mergeAll(Collection<? extends JaqpotEntity> entities);
+
     /**
      * Removes the entity instance from the database context.
      *
@@ -76,6 +98,56 @@ public interface JaqpotEntityManager extends Closeable {
      */
     public void remove(JaqpotEntity entity);
 
+    /**
+     * Removes a collection of entity instances from the database context,
+     * issuing a single unordered bulk write per entity class.
+     *
+     * @param entities entity instances
+     * @throws JaqpotBulkWriteException if some of the entities could not be
+     * removed; all other entities are removed
+     */
+    public void removeAll(Collection<? extends JaqpotEntity> entities);
+
+    /**
+     * Remove by properties. Removes all entities of the specified class that
+     * match the given properties.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param properties a properties map matching field names with values
+     */
+    public <T extends JaqpotEntity> void remove(Class<T> entityClass, Map<String, Object> properties);
+
+    /**
+     * Atomically increments numeric fields of the entity with the given
+     * primary key. The entity is created if it does not exist yet.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param primaryKey primary key
+     * @param increments a map matching field names with the amounts they
+     * should be incremented by; negative amounts decrement them
+     */
+    public <T extends JaqpotEntity> void increment(Class<T> entityClass, Object primaryKey, Map<String, Long> increments);
+
+    /**
+     * Atomically increments numeric fields of the entity with the given
+     * primary key, provided that the given fields of the entity still have
+     * the expected values. The entity is created if it does not exist yet
+     * and none of the fields is expected to have a value.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param primaryKey primary key
+     * @param expected a map matching field names with their expected
+     * values; null values expect the field to be missing
+     * @param increments a map matching field names with the amounts they
+     * should be incremented by; negative amounts decrement them
+     * @return true if the fields had the expected values and the entity was
+     * incremented
+     */
+    public <T extends JaqpotEntity> boolean increment(Class<T> entityClass, Object primaryKey, Map<String, Object> expected, Map<String, Long> increments);
+
     /**
      * Find by primary key. Searches for an entity of the specified class and
      * primary key.
@@ -102,6 +174,39 @@ public interface JaqpotEntityManager extends Closeable {
      */
     public <T extends JaqpotEntity> List<T> find(Class<T> entityClass, Map<String, Object> properties, Integer start, Integer max);
 
+    /**
+     * Stream by properties. Lazily iterates over the entities of the specified
+     * class that match the given properties, fetching them from the database
+     * in batches while the stream is consumed. The returned entity instances
+     * will only contain fields that are present in the fields list.
+     *
+     * The stream holds an open database cursor and must be closed, e.g. using
+     * a try-with-resources statement.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param properties a properties map matching field names with values
+     * @param fields a list of fields to be returned, or null to return whole
+     * entities
+     * @return a stream over the matching entity instances
+     */
+    public <T extends JaqpotEntity> Stream<T> stream(Class<T> entityClass, Map<String, Object> properties, List<String> fields);
+
+    /**
+     * Stream by properties, sorted in ascending order of the given fields.
+     * Behaves like {@link #stream(Class, Map, List)} and must likewise be
+     * closed.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param properties a properties map matching field names with values
+     * @param fields a list of fields to be returned, or null to return whole
+     * entities
+     * @param ascendingFields fields to sort by
+     * @return a stream over the matching entity instances in sort order
+     */
+    public <T extends JaqpotEntity> Stream<T> streamSortedAsc(Class<T> entityClass, Map<String, Object> properties, List<String> fields, List<String> ascendingFields);
+
     /**
      * Count by properties. Counts the entities of the specified class that
      * match the given properties.
@@ -207,4 +312,41 @@ public interface JaqpotEntityManager extends Closeable {
     public <T extends JaqpotEntity> List<T> findSortedAsc(Class<T> entityClass, Map<String, Object> properties, Integer start, Integer max, List<String> ascendingFields);
     
     public <T extends JaqpotEntity> List<T> findSortedDesc(Class<T> entityClass, Map<String, Object> properties, Integer start, Integer max, List<String> descendingFields);
+
+    /**
+     * Find by properties using keyset pagination. Entities are sorted by
+     * creation date and primary key, both descending. The returned entity
+     * instances will only contain fields that are present in the fields list.
+     *
+     * Unlike start/max paging, the cost of fetching a page does not depend on
+     * how deep the page is.
+     *
+     * @param <T>
+     * @param entityClass entity class
+     * @param properties a properties map matching field names with values
+     * @param fields a list of fields to be returned, or null to return whole
+     * entities
+     * @param cursor a token created by {@link KeysetCursor#of} from the last
+     * entity of the previous page, or null for the first page
+     * @param max the maximum number of results to retrieve
+     * @return a list of entity instances that follow the cursor
+     */
+    public <T extends JaqpotEntity> List<T> findPage(Class<T> entityClass, Map<String, Object> properties, List<String> fields, String cursor, Integer max);
+
+    /**
+     * Explains the query shapes that are declared on the entity classes,
+     * reporting the plan chosen by the database for each one of them and
+     * whether it requires a full collection scan.
+     *
+     * @return a report for each declared query shape
+     */
+    public List<Map<String, Object>> explainQueryShapes();
+
+    /**
+     * Reports the size and utilization of the connection pool of every
+     * database server in use.
+     *
+     * @return the statistics of each connection pool
+     */
+    public List<Map<String, Object>> connectionPoolStatistics();
 }
@@ -0,0 +1,103 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.db.entitymanager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import org.jaqpot.core.model.JaqpotEntity;
+
+/**
+ * Opaque continuation token for keyset pagination. Entities are listed by
+ * {@code meta.date} and {@code _id}, both descending, and a cursor holds the
+ * position of the last entity of a page so that the next page can be found
+ * with an index seek instead of skipping over all previous results.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+public final class KeysetCursor {
+
+    private static final String SEPARATOR = ":";
+    private static final String NO_DATE = "-";
+
+    private final Long date;
+    private final String id;
+
+    private KeysetCursor(Long date, String id) {
+        this.date = date;
+        this.id = id;
+    }
+
+    /**
+     * Creates the cursor pointing right after the given entity.
+     *
+     * @param entity the last entity of a page
+     * @return an opaque continuation token
+     */
+    public static String of(JaqpotEntity entity) {
+        Long date = entity.getMeta() != null && entity.getMeta().getDate() != null
+                ? entity.getMeta().getDate().getTime() : null;
+        String token = (date != null ? date.toString() : NO_DATE) + SEPARATOR + entity.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Parses a continuation token created by {@link #of(JaqpotEntity)}.
+     *
+     * @param token an opaque continuation token
+     * @return the decoded cursor
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static KeysetCursor parse(String token) {
+        try {
+            String decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = decoded.indexOf(SEPARATOR);
+            String date = decoded.substring(0, separator);
+            String id = decoded.substring(separator + 1);
+            return new KeysetCursor(NO_DATE.equals(date) ? null : Long.valueOf(date), id);
+        } catch (IllegalArgumentException | IndexOutOfBoundsException ex) {
+            throw new IllegalArgumentException("Invalid cursor: " + token, ex);
+        }
+    }
+
+    /**
+     * @return the creation date of the last entity in milliseconds, or null if
+     * it had no date
+     */
+    public Long getDate() {
+        return date;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+}
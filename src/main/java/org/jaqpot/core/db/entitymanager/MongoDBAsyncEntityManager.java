@@ -0,0 +1,300 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.db.entitymanager;
+
+import com.mongodb.MongoClientOptions;
+import com.mongodb.ReadPreference;
+import com.mongodb.ServerAddress;
+import com.mongodb.WriteConcern;
+import com.mongodb.async.SingleResultCallback;
+import com.mongodb.async.client.FindIterable;
+import com.mongodb.async.client.MongoClient;
+import com.mongodb.async.client.MongoClientSettings;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import com.mongodb.client.model.FindOneAndReplaceOptions;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.connection.ClusterSettings;
+import com.mongodb.connection.ConnectionPoolSettings;
+import com.mongodb.connection.SocketSettings;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.DependsOn;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
+import javax.ejb.Singleton;
+import javax.enterprise.concurrent.ContextService;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.inject.Inject;
+import org.bson.Document;
+import org.jaqpot.core.annotations.MongoDB;
+import org.jaqpot.core.model.JaqpotEntity;
+import org.jaqpot.core.properties.PropertyManager;
+
+import static com.mongodb.client.model.Projections.include;
+
+/**
+ * An AsyncJaqpotEntityManager implementation for MongoDB on the asynchronous
+ * driver. No thread waits for the database while an operation is in flight;
+ * the driver calls back once the server has answered and the returned stage
+ * is completed on the managed executor of the container, so that dependent
+ * stages do not run on the I/O threads of the driver. The callback carries
+ * no container context of its own, so the stage is completed under the
+ * naming and security context of the thread that started the operation,
+ * captured before calling the driver.
+ *
+ * The client is configured from the same properties as
+ * {@link MongoDBEntityManager} and uses the same entity codecs, so both
+ * managers read and write the same documents.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+@MongoDB
+@Singleton
+@Lock(LockType.READ)
+@DependsOn("MongoDBEntityManager")
+public class MongoDBAsyncEntityManager implements AsyncJaqpotEntityManager {
+
+    private static final Logger LOG = Logger.getLogger(MongoDBAsyncEntityManager.class.getName());
+    private static final Integer DEFAULT_PAGE_SIZE = 10;
+
+    @Inject
+    PropertyManager propertyManager;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @Resource
+    private ContextService contextService;
+
+    private MongoClient mongoClient;
+    private Map<Class, MongoCollection> collections;
+
+    @PostConstruct
+    public void init() {
+        String dbName = propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_NAME, MongoDBEntityManager.DEFAULT_DB_NAME);
+        String dbHost = propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_HOST, MongoDBEntityManager.DEFAULT_DB_HOST);
+        int dbPort = Integer.parseInt(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_PORT,
+                Integer.toString(MongoDBEntityManager.DEFAULT_DB_PORT)));
+        MongoClientOptions options;
+        try {
+            options = MongoDBEntityManager.clientOptions(propertyManager).build();
+        } catch (RuntimeException ex) {
+            // Reported by MongoDBEntityManager, which also falls back to the defaults
+            options = MongoClientOptions.builder().build();
+        }
+        mongoClient = MongoClients.create(MongoClientSettings.builder()
+                .clusterSettings(ClusterSettings.builder()
+                        .hosts(Arrays.asList(new ServerAddress(dbHost, dbPort)))
+                        .build())
+                .connectionPoolSettings(ConnectionPoolSettings.builder()
+                        .maxSize(options.getConnectionsPerHost())
+                        .minSize(options.getMinConnectionsPerHost())
+                        .maxWaitQueueSize(options.getConnectionsPerHost() * options.getThreadsAllowedToBlockForConnectionMultiplier())
+                        .maxWaitTime(options.getMaxWaitTime(), TimeUnit.MILLISECONDS)
+                        .build())
+                .socketSettings(SocketSettings.builder()
+                        .connectTimeout(options.getConnectTimeout(), TimeUnit.MILLISECONDS)
+                        .readTimeout(options.getSocketTimeout(), TimeUnit.MILLISECONDS)
+                        .build())
+                .writeConcern(options.getWriteConcern())
+                .readPreference(options.getReadPreference())
+                .codecRegistry(MongoDBEntityManager.codecRegistry)
+                .build());
+        collections = createCollections(mongoClient.getDatabase(dbName));
+        LOG.log(Level.INFO, "Asynchronous MongoDB client connected to {0}:{1}/{2}", new Object[]{dbHost, Integer.toString(dbPort), dbName});
+    }
+
+    @PreDestroy
+    public void close() {
+        mongoClient.close();
+    }
+
+    /**
+     * Creates the collection handle of every entity class once, with the
+     * write concern and read preference configured for its collection.
+     */
+    private Map<Class, MongoCollection> createCollections(MongoDatabase db) {
+        Map<String, String> writeConcerns = MongoDBEntityManager.collectionProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_WRITE_CONCERN_COLLECTIONS);
+        Map<String, String> readPreferences = MongoDBEntityManager.collectionProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_READ_PREFERENCE_COLLECTIONS);
+        Map<Class, MongoCollection> handles = new HashMap<>();
+        for (Map.Entry<Class, String> entry : MongoDBEntityManager.collectionNames.entrySet()) {
+            String name = entry.getValue();
+            MongoCollection collection = db.getCollection(name, entry.getKey());
+            WriteConcern writeConcern = writeConcerns.containsKey(name) ? WriteConcern.valueOf(writeConcerns.get(name)) : null;
+            if (writeConcern != null) {
+                collection = collection.withWriteConcern(writeConcern);
+            }
+            if (readPreferences.containsKey(name)) {
+                try {
+                    collection = collection.withReadPreference(ReadPreference.valueOf(readPreferences.get(name)));
+                } catch (IllegalArgumentException ex) {
+                    // Reported by MongoDBEntityManager
+                }
+            }
+            handles.put(entry.getKey(), collection);
+        }
+        return handles;
+    }
+
+    private <T> MongoCollection<T> getCollection(Class<T> entityClass) {
+        MongoCollection<T> collection = collections.get(entityClass);
+        if (collection == null) {
+            throw new IllegalArgumentException("No collection is mapped to " + entityClass.getName()
+                    + "; entities must be annotated with @XmlRootElement in org.jaqpot.core.model");
+        }
+        return collection;
+    }
+
+    /**
+     * A callback that completes the returned stage on the managed executor,
+     * under the context of the calling thread. Must be called before the
+     * driver is, on the thread that starts the operation.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> SingleResultCallback<T> complete(CompletableFuture<T> future) {
+        BiConsumer<T, Throwable> completion = contextService.createContextualProxy(
+                (BiConsumer<T, Throwable>) (result, error) -> {
+                    if (error != null) {
+                        future.completeExceptionally(error);
+                    } else {
+                        future.complete(result);
+                    }
+                }, BiConsumer.class);
+        return (result, error) -> executor.execute(() -> completion.accept(result, error));
+    }
+
+    /**
+     * The query for the given properties; list values must all be present.
+     * The map of the caller is left as it is.
+     */
+    private static Document query(Map<String, Object> properties) {
+        Document query = new Document(properties);
+        properties.forEach((key, value) -> {
+            if (value instanceof List) {
+                query.put(key, new Document("$all", value));
+            }
+        });
+        return query;
+    }
+
+    private static Document projection(List<String> fields) {
+        if (fields == null) {
+            return null;
+        }
+        Document projection = new Document();
+        for (String field : fields) {
+            projection.put(field, 1);
+        }
+        return projection;
+    }
+
+    @Override
+    public CompletionStage<Void> persistAsync(JaqpotEntity entity) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        getCollection((Class<JaqpotEntity>) entity.getClass()).insertOne(entity, complete(result));
+        return result;
+    }
+
+    @Override
+    public <T extends JaqpotEntity> CompletionStage<T> mergeAsync(T entity) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        getCollection((Class<T>) entity.getClass()).findOneAndReplace(new Document("_id", entity.getId()), entity,
+                new FindOneAndReplaceOptions(), complete(result));
+        return result;
+    }
+
+    @Override
+    public CompletionStage<Void> removeAsync(JaqpotEntity entity) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        SingleResultCallback<Void> callback = complete(result);
+        getCollection(entity.getClass()).deleteOne(new Document("_id", entity.getId()),
+                (deleted, error) -> callback.onResult(null, error));
+        return result;
+    }
+
+    @Override
+    public <T extends JaqpotEntity> CompletionStage<T> findAsync(Class<T> entityClass, Object primaryKey) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        getCollection(entityClass).find(new Document("_id", primaryKey)).first(complete(result));
+        return result;
+    }
+
+    @Override
+    public <T extends JaqpotEntity> CompletionStage<T> findAsync(Class<T> entityClass, Object primaryKey, List<String> fields) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        getCollection(entityClass).find(new Document("_id", primaryKey))
+                .projection(include(fields))
+                .first(complete(result));
+        return result;
+    }
+
+    @Override
+    public <T extends JaqpotEntity> CompletionStage<List<T>> findAsync(Class<T> entityClass, Map<String, Object> properties, List<String> fields, Integer start, Integer max) {
+        return page(getCollection(entityClass).find(query(properties)), fields, start, max);
+    }
+
+    @Override
+    public <T extends JaqpotEntity> CompletionStage<List<T>> findSortedAscAsync(Class<T> entityClass, Map<String, Object> properties, List<String> fields, Integer start, Integer max, List<String> ascendingFields) {
+        return page(getCollection(entityClass).find(query(properties)).sort(Sorts.ascending(ascendingFields)), fields, start, max);
+    }
+
+    private <T> CompletionStage<List<T>> page(FindIterable<T> find, List<String> fields, Integer start, Integer max) {
+        CompletableFuture<List<T>> result = new CompletableFuture<>();
+        find.projection(projection(fields))
+                .skip(start != null ? start : 0)
+                .limit(max != null ? max : DEFAULT_PAGE_SIZE)
+                .into(new ArrayList<>(), complete(result));
+        return result;
+    }
+
+    @Override
+    public <T extends JaqpotEntity> CompletionStage<Long> countAsync(Class<T> entityClass, Map<String, Object> properties) {
+        CompletableFuture<Long> result = new CompletableFuture<>();
+        getCollection(entityClass).count(query(properties), complete(result));
+        return result;
+    }
+
+}
@@ -29,42 +29,73 @@
  */
 package org.jaqpot.core.db.entitymanager;
 
+import com.mongodb.ErrorCategory;
 import com.mongodb.MongoClient;
+import com.mongodb.MongoClientOptions;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoClientURI;
 import com.mongodb.MongoWriteException;
+import com.mongodb.ReadPreference;
+import com.mongodb.WriteConcern;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.DeleteOneModel;
+import com.mongodb.client.model.InsertOneModel;
 import com.mongodb.client.model.Projections;
-import com.mongodb.util.JSON;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
 import java.io.IOException;
 import java.io.InputStream;
 import static com.mongodb.client.model.Projections.*;
 import com.mongodb.client.model.Sorts;
 
 import org.bson.BsonDocument;
+import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.configuration.CodecRegistry;
 import org.bson.conversions.Bson;
 import org.jaqpot.core.annotations.MongoDB;
 import java.lang.annotation.Annotation;
+import java.lang.management.ManagementFactory;
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Function;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 import javax.annotation.PostConstruct;
 import javax.ejb.DependsOn;
 import javax.ejb.EJB;
+import javax.ejb.Lock;
+import javax.ejb.LockType;
 import javax.ejb.Singleton;
 import javax.ejb.Startup;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 import javax.xml.bind.annotation.XmlRootElement;
 import org.bson.Document;
-import org.jaqpot.core.data.serialize.JSONSerializer;
+import org.jaqpot.core.data.serialize.JacksonMongoSerializer;
+import org.jaqpot.core.data.serialize.bson.JacksonBsonCodecProvider;
 import org.jaqpot.core.model.JaqpotEntity;
 import org.jaqpot.core.model.Model;
 import org.jaqpot.core.properties.PropertyManager;
@@ -82,23 +113,38 @@ import org.reflections.Reflections;
 @Startup
 @Singleton
 @DependsOn("PropertyManager")
+@Lock(LockType.READ)
 public class MongoDBEntityManager implements JaqpotEntityManager {
 
     private static final Logger LOG = Logger.getLogger(MongoDBEntityManager.class.getName());
     private static final Integer DEFAULT_PAGE_SIZE = 10;
+    private static final Integer DEFAULT_BATCH_SIZE = 100;
+    private static final List<String> POOL_ATTRIBUTES = Arrays.asList("Host", "Port", "MinSize", "MaxSize",
+            "Size", "CheckedOutCount", "WaitQueueSize");
 
-    @Inject
-    @MongoDB
-    JSONSerializer serializer;
+    static final String DEFAULT_DB_NAME = "production";
+    static final String DEFAULT_DB_HOST = "localhost";
+    static final int DEFAULT_DB_PORT = 27017;
+
+    /**
+     * Codecs of the entity classes, shared with
+     * {@link MongoDBAsyncEntityManager}.
+     */
+    static final CodecRegistry codecRegistry = CodecRegistries.fromRegistries(MongoClient.getDefaultCodecRegistry(),
+            CodecRegistries.fromProviders(new JacksonBsonCodecProvider(JacksonMongoSerializer.createMapper())));
 
     @Inject
     PropertyManager propertyManager;
 
     private MongoClient mongoClient;
+    private MongoClientOptions.Builder options = MongoClientOptions.builder();
+    private Map<Class, MongoCollection> collections;
+    private MongoIndexManager indexManager;
     private String database;
+    private int batchSize = DEFAULT_BATCH_SIZE;
     private static Properties dbProperties = new Properties();
 
-    private static final Map<Class, String> collectionNames;
+    static final Map<Class, String> collectionNames;
 
     static {
         collectionNames = new HashMap<>();
@@ -126,28 +172,213 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
 
         //ClassLoader classLoader = this.getClass().getClassLoader();
         //InputStream is = classLoader.getResourceAsStream("config/db.properties");
-        String dbName = "production"; // Default DB name in case no properties file is found!
-        String dbHost = "localhost"; // Default DB host
-        int dbPort = 27017; // Default DB port
+        String dbName = DEFAULT_DB_NAME; // Default DB name in case no properties file is found!
+        String dbHost = DEFAULT_DB_HOST; // Default DB host
+        int dbPort = DEFAULT_DB_PORT; // Default DB port
         try {
             //dbProperties.load(is);
             dbName = propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_NAME, dbName);
             dbHost = propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_HOST, dbHost);
             dbPort = Integer.parseInt(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_PORT, Integer.toString(dbPort)));
+            batchSize = Integer.parseInt(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_BATCH_SIZE, Integer.toString(batchSize)));
             LOG.log(Level.INFO, "Database host : {0}", dbHost);
             LOG.log(Level.INFO, "Database port : {0}", dbPort);
             LOG.log(Level.INFO, "Database name : {0}", dbName);
+            LOG.log(Level.INFO, "Cursor batch size : {0}", batchSize);
         } catch (Exception ex) {
-            String errorMessage = "No DB properties file found!";
+            String errorMessage = "Could not read the database settings, using the defaults for the rest: " + ex.getMessage();
             LOG.log(Level.SEVERE, errorMessage, ex); // Log the event (but use the default properties)
+        }
+        try {
+            options = clientOptions(propertyManager);
+            LOG.log(Level.INFO, "Connection pool : {0}", options.build());
+        } catch (RuntimeException ex) {
+            String errorMessage = "Invalid connection pool, timeout, write concern or read preference settings, using the driver defaults: " + ex.getMessage();
+            LOG.log(Level.SEVERE, errorMessage, ex);
         } finally {
             database = dbName;
             String mongoUri = "mongodb://" + dbHost + ":" + dbPort + "/" + dbName;
-            mongoClient = new MongoClient(new MongoClientURI(mongoUri));
+            mongoClient = new MongoClient(new MongoClientURI(mongoUri, options));
+            collections = createCollections();
 //            mongoClient = new MongoClient(dbHost, dbPort); // Connect to the DB
             LOG.log(Level.INFO, "Database configured and connection established successfully!");
+            indexManager = new MongoIndexManager(mongoClient.getDatabase(database), collectionNames);
+            indexManager.ensureIndexes();
+        }
+
+    }
+
+    /**
+     * Reads the pool, timeout, write concern and read preference settings of
+     * the client from the properties.
+     */
+    static MongoClientOptions.Builder clientOptions(PropertyManager propertyManager) {
+        MongoClientOptions.Builder builder = MongoClientOptions.builder()
+                .connectionsPerHost(intProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_POOL_MAX))
+                .minConnectionsPerHost(intProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_POOL_MIN))
+                .threadsAllowedToBlockForConnectionMultiplier(intProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_POOL_WAIT_QUEUE))
+                .maxWaitTime(intProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_POOL_MAX_WAIT))
+                .connectTimeout(intProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_CONNECT_TIMEOUT))
+                .socketTimeout(intProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_SOCKET_TIMEOUT));
+        WriteConcern writeConcern = WriteConcern.valueOf(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_WRITE_CONCERN));
+        if (writeConcern != null) {
+            builder.writeConcern(writeConcern);
+        } else {
+            LOG.log(Level.WARNING, "Unknown write concern {0}, using the default",
+                    propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_WRITE_CONCERN));
+        }
+        builder.readPreference(ReadPreference.valueOf(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_DB_READ_PREFERENCE)));
+        return builder;
+    }
+
+    private static int intProperty(PropertyManager propertyManager, PropertyManager.PropertyType propertyType) {
+        return Integer.parseInt(propertyManager.getPropertyOrDefault(propertyType));
+    }
+
+    /**
+     * Parses a comma separated list of collection:value pairs.
+     */
+    static Map<String, String> collectionProperty(PropertyManager propertyManager, PropertyManager.PropertyType propertyType) {
+        Map<String, String> values = new HashMap<>();
+        String property;
+        try {
+            property = propertyManager.getPropertyOrDefault(propertyType);
+        } catch (Exception ex) {
+            LOG.log(Level.WARNING, "Could not read property " + propertyType.getName(), ex);
+            return values;
+        }
+        for (String pair : property.trim().split("\\s*,\\s*")) {
+            String[] entry = pair.split("\\s*:\\s*");
+            if (entry.length == 2) {
+                values.put(entry[0], entry[1]);
+            } else if (!pair.isEmpty()) {
+                LOG.log(Level.WARNING, "Ignoring malformed entry {0} of property {1}", new Object[]{pair, propertyType.getName()});
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Creates the collection handle of every entity class once, applying the
+     * write concern and read preference configured for its collection.
+     */
+    private Map<Class, MongoCollection> createCollections() {
+        Map<String, String> writeConcerns = collectionProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_WRITE_CONCERN_COLLECTIONS);
+        Map<String, String> readPreferences = collectionProperty(propertyManager, PropertyManager.PropertyType.JAQPOT_DB_READ_PREFERENCE_COLLECTIONS);
+        MongoDatabase db = mongoClient.getDatabase(database);
+        Map<Class, MongoCollection> handles = new HashMap<>();
+        for (Map.Entry<Class, String> entry : collectionNames.entrySet()) {
+            String name = entry.getValue();
+            MongoCollection collection = db.getCollection(name, entry.getKey())
+                    .withCodecRegistry(codecRegistry);
+            if (writeConcerns.containsKey(name)) {
+                WriteConcern writeConcern = WriteConcern.valueOf(writeConcerns.get(name));
+                if (writeConcern != null) {
+                    collection = collection.withWriteConcern(writeConcern);
+                    LOG.log(Level.INFO, "Write concern of {0} : {1}", new Object[]{name, writeConcerns.get(name)});
+                } else {
+                    LOG.log(Level.WARNING, "Unknown write concern {0} for {1}", new Object[]{writeConcerns.get(name), name});
+                }
+            }
+            if (readPreferences.containsKey(name)) {
+                try {
+                    collection = collection.withReadPreference(ReadPreference.valueOf(readPreferences.get(name)));
+                    LOG.log(Level.INFO, "Read preference of {0} : {1}", new Object[]{name, readPreferences.get(name)});
+                } catch (IllegalArgumentException ex) {
+                    LOG.log(Level.WARNING, "Unknown read preference {0} for {1}", new Object[]{readPreferences.get(name), name});
+                }
+            }
+            handles.put(entry.getKey(), collection);
+        }
+        return handles;
+    }
+
+    /**
+     * Returns the collection of the given entity class, typed so that
+     * documents are encoded and decoded directly by the entity codecs.
+     */
+    private <T> MongoCollection<T> getCollection(Class<T> entityClass) {
+        MongoCollection<T> collection = collections.get(entityClass);
+        if (collection == null) {
+            throw new IllegalArgumentException("No collection is mapped to " + entityClass.getName()
+                    + "; entities must be annotated with @XmlRootElement in org.jaqpot.core.model");
+        }
+        return collection;
+    }
+
+    @Override
+    public <T extends JaqpotEntity> List<T> findPage(Class<T> entityClass, Map<String, Object> properties, List<String> fields, String cursor, Integer max) {
+        MongoCollection<T> collection = getCollection(entityClass);
+        properties.entrySet()
+                .stream()
+                .filter(e -> {
+                    return e.getValue() instanceof List;
+                })
+                .forEach(e -> {
+                    Map<String, Object> all = new HashMap<>();
+                    all.put("$all", e.getValue());
+                    properties.put(e.getKey(), all);
+                });
+
+        Document query = new Document(properties);
+        if (cursor != null) {
+            KeysetCursor position = KeysetCursor.parse(cursor);
+            List<Document> after = new ArrayList<>();
+            if (position.getDate() != null) {
+                // Entities without a date sort last, after every dated entity
+                after.add(new Document("meta.date", new Document("$lt", position.getDate())));
+                after.add(new Document("meta.date", position.getDate()).append("_id", new Document("$lt", position.getId())));
+                after.add(new Document("meta.date", null));
+            } else {
+                after.add(new Document("meta.date", null).append("_id", new Document("$lt", position.getId())));
+            }
+            query.append("$or", after);
+        }
+
+        Document filter = null;
+        if (fields != null) {
+            filter = new Document();
+            for (String field : fields) {
+                filter.put(field, 1);
+            }
         }
+        List<T> result = new ArrayList<>();
+        collection.find(query)
+                .projection(filter)
+                .sort(Sorts.descending("meta.date", "_id"))
+                .limit(max != null ? max : DEFAULT_PAGE_SIZE)
+                .into(result);
+        return result;
+    }
 
+    @Override
+    public List<Map<String, Object>> explainQueryShapes() {
+        return indexManager.explain();
+    }
+
+    /**
+     * Reads the statistics that the driver publishes over JMX for the
+     * connection pool of every server it is connected to.
+     */
+    @Override
+    public List<Map<String, Object>> connectionPoolStatistics() {
+        List<Map<String, Object>> statistics = new ArrayList<>();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            for (ObjectName pool : server.queryNames(new ObjectName("org.mongodb.driver:type=ConnectionPool,*"), null)) {
+                Map<String, Object> poolStatistics = new LinkedHashMap<>();
+                for (String attribute : POOL_ATTRIBUTES) {
+                    poolStatistics.put(attribute, server.getAttribute(pool, attribute));
+                }
+                int maxSize = ((Number) poolStatistics.get("MaxSize")).intValue();
+                int checkedOut = ((Number) poolStatistics.get("CheckedOutCount")).intValue();
+                poolStatistics.put("Utilization", maxSize > 0 ? (double) checkedOut / maxSize : 0d);
+                statistics.add(poolStatistics);
+            }
+        } catch (JMException ex) {
+            LOG.log(Level.WARNING, "Could not read the connection pool statistics", ex);
+        }
+        return statistics;
     }
 
     @Override
@@ -157,12 +388,9 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
 
     @Override
     public void persist(JaqpotEntity entity) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        String entityJSON = serializer.write(entity);
-        MongoCollection collection = db.getCollection(collectionNames.get(entity.getClass()));
-        Document entityBSON = Document.parse(entityJSON);
+        MongoCollection<JaqpotEntity> collection = getCollection((Class<JaqpotEntity>) entity.getClass());
         try {
-            collection.insertOne(entityBSON);
+            collection.insertOne(entity);
         } catch (final MongoWriteException ex) {
             String errorMessage = "Entity with ID " + entity.getId() + " is already registered and will not be overwritten!";
             LOG.log(Level.FINE, errorMessage, ex);
@@ -170,44 +398,126 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
         }
     }
 
+    @Override
+    public void persistAll(Collection<? extends JaqpotEntity> entities) {
+        bulkWrite(entities, entity -> new InsertOneModel<>(entity));
+    }
+
     @Override
     public <T extends JaqpotEntity> T merge(T entity) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        Class<T> entityClass = (Class<T>) entity.getClass();
-        String entityJSON = serializer.write(entity);
-        Document entityBSON = Document.parse(entityJSON);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entity.getClass()));
-        Document oldEntity = collection.findOneAndReplace(new Document("_id", entity.getId()), entityBSON);
-        return serializer.parse(JSON.serialize(oldEntity), entityClass);
+        MongoCollection<T> collection = getCollection((Class<T>) entity.getClass());
+        return collection.findOneAndReplace(new Document("_id", entity.getId()), entity);
+    }
+
+    @Override
+    public void mergeAll(Collection<? extends JaqpotEntity> entities) {
+        bulkWrite(entities, entity -> new ReplaceOneModel<>(new Document("_id", entity.getId()), entity));
     }
 
     @Override
     public void remove(JaqpotEntity entity) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entity.getClass()));
+        MongoCollection<? extends JaqpotEntity> collection = getCollection(entity.getClass());
         collection.deleteOne(new Document("_id", entity.getId()));
     }
 
+    @Override
+    public void removeAll(Collection<? extends JaqpotEntity> entities) {
+        bulkWrite(entities, entity -> new DeleteOneModel<>(new Document("_id", entity.getId())));
+    }
+
+    /**
+     * Groups the entities by class and issues one unordered bulk write per
+     * collection, collecting the failures and write concern errors of all
+     * batches.
+     */
+    private void bulkWrite(Collection<? extends JaqpotEntity> entities, Function<JaqpotEntity, WriteModel<JaqpotEntity>> operation) {
+        Map<Class, List<JaqpotEntity>> batches = new HashMap<>();
+        for (JaqpotEntity entity : entities) {
+            batches.computeIfAbsent(entity.getClass(), c -> new ArrayList<>()).add(entity);
+        }
+        Map<String, String> failures = new LinkedHashMap<>();
+        List<String> writeConcernErrors = new ArrayList<>();
+        for (Map.Entry<Class, List<JaqpotEntity>> batch : batches.entrySet()) {
+            MongoCollection<JaqpotEntity> collection = getCollection((Class<JaqpotEntity>) batch.getKey());
+            List<WriteModel<JaqpotEntity>> operations = batch.getValue()
+                    .stream()
+                    .map(operation)
+                    .collect(Collectors.toList());
+            try {
+                collection.bulkWrite(operations, new BulkWriteOptions().ordered(false));
+            } catch (MongoBulkWriteException ex) {
+                for (BulkWriteError error : ex.getWriteErrors()) {
+                    failures.put(batch.getValue().get(error.getIndex()).getId(), error.getMessage());
+                }
+                if (ex.getWriteConcernError() != null) {
+                    writeConcernErrors.add(ex.getWriteConcernError().getMessage());
+                }
+            }
+        }
+        if (!failures.isEmpty() || !writeConcernErrors.isEmpty()) {
+            LOG.log(Level.FINE, "Bulk write failed for entities {0}", failures.keySet());
+            throw new JaqpotBulkWriteException(failures, writeConcernErrors.isEmpty() ? null : String.join("; ", writeConcernErrors));
+        }
+    }
+
+    @Override
+    public <T extends JaqpotEntity> void remove(Class<T> entityClass, Map<String, Object> properties) {
+        MongoCollection<T> collection = getCollection(entityClass);
+        properties.entrySet()
+                .stream()
+                .filter(e -> {
+                    return e.getValue() instanceof List;
+                })
+                .forEach(e -> {
+                    Map<String, Object> all = new HashMap<>();
+                    all.put("$all", e.getValue());
+                    properties.put(e.getKey(), all);
+                });
+        collection.deleteMany(new Document(properties));
+    }
+
+    @Override
+    public <T extends JaqpotEntity> void increment(Class<T> entityClass, Object primaryKey, Map<String, Long> increments) {
+        MongoCollection<T> collection = getCollection(entityClass);
+        collection.updateOne(new Document("_id", primaryKey),
+                new Document("$inc", new Document(new HashMap<>(increments))),
+                new UpdateOptions().upsert(true));
+    }
+
+    @Override
+    public <T extends JaqpotEntity> boolean increment(Class<T> entityClass, Object primaryKey, Map<String, Object> expected, Map<String, Long> increments) {
+        MongoCollection<T> collection = getCollection(entityClass);
+        Document filter = new Document("_id", primaryKey);
+        expected.forEach((field, value) -> filter.put(field, value != null ? value : new Document("$exists", false)));
+        try {
+            UpdateResult result = collection.updateOne(filter,
+                    new Document("$inc", new Document(new HashMap<>(increments))),
+                    new UpdateOptions().upsert(true));
+            return result.getMatchedCount() > 0 || result.getUpsertedId() != null;
+        } catch (MongoWriteException ex) {
+            // The entity exists but did not match, so the upsert collided with it
+            if (ErrorCategory.DUPLICATE_KEY.equals(ex.getError().getCategory())) {
+                return false;
+            }
+            throw ex;
+        }
+    }
+
     @Override
     public <T extends JaqpotEntity> T find(Class<T> entityClass, Object primaryKey) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
-        Document retrieved = collection.find(new Document("_id", primaryKey)).first();
-        return serializer.parse(JSON.serialize(retrieved), entityClass);
+        MongoCollection<T> collection = getCollection(entityClass);
+        return collection.find(new Document("_id", primaryKey)).first();
     }
 
     @Override
     public <T extends JaqpotEntity> T find(Class<T> entityClass, Object primaryKey, List<String> fields) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
-        Document retrieved = collection.find(new Document("_id", primaryKey)).projection(include(fields)).first();
-        return serializer.parse(JSON.serialize(retrieved), entityClass);
+        MongoCollection<T> collection = getCollection(entityClass);
+        return collection.find(new Document("_id", primaryKey)).projection(include(fields)).first();
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> find(Class<T> entityClass, Map<String, Object> properties, Integer start, Integer max) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         properties.entrySet()
                 .stream()
                 .filter(e -> {
@@ -223,15 +533,13 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
         collection.find(new Document(properties))
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> findSorted(Class<T> entityClass, Map<String, Object> properties, Integer start, Integer max, List<String> ascendingFields, List<String> descendingFields) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         properties.entrySet()
                 .stream()
                 .filter(e -> {
@@ -248,15 +556,13 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
                 .sort(Sorts.orderBy(Sorts.ascending(ascendingFields), Sorts.descending(descendingFields)))
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> findSortedAsc(Class<T> entityClass, Map<String, Object> properties, Integer start, Integer max, List<String> ascendingFields) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         properties.entrySet()
                 .stream()
                 .filter(e -> {
@@ -273,15 +579,13 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
                 .sort(Sorts.ascending(ascendingFields))
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> findSortedDesc(Class<T> entityClass, Map<String, Object> properties, Integer start, Integer max, List<String> descendingFields) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         properties.entrySet()
                 .stream()
                 .filter(e -> {
@@ -298,15 +602,56 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
                 .sort(Sorts.descending(descendingFields))
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
+    @Override
+    public <T extends JaqpotEntity> Stream<T> stream(Class<T> entityClass, Map<String, Object> properties, List<String> fields) {
+        return stream(getCollection(entityClass).find(query(properties)), fields);
+    }
+
+    @Override
+    public <T extends JaqpotEntity> Stream<T> streamSortedAsc(Class<T> entityClass, Map<String, Object> properties, List<String> fields, List<String> ascendingFields) {
+        return stream(getCollection(entityClass).find(query(properties)).sort(Sorts.ascending(ascendingFields)), fields);
+    }
+
+    /**
+     * Streams the results of a query in batches; closing the stream closes
+     * the cursor.
+     */
+    private <T> Stream<T> stream(FindIterable<T> find, List<String> fields) {
+        Document projection = null;
+        if (fields != null) {
+            projection = new Document();
+            for (String field : fields) {
+                projection.put(field, 1);
+            }
+        }
+        MongoCursor<T> cursor = find.projection(projection)
+                .batchSize(batchSize)
+                .iterator();
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(cursor, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(cursor::close);
+    }
+
+    /**
+     * Builds the filter of a query, matching list properties with $all. The
+     * properties of the caller are left as they are.
+     */
+    private static Document query(Map<String, Object> properties) {
+        Document query = new Document(properties);
+        properties.forEach((key, value) -> {
+            if (value instanceof List) {
+                query.put(key, new Document("$all", value));
+            }
+        });
+        return query;
+    }
+
     @Override
     public <T extends JaqpotEntity> Long count(Class<T> entityClass, Map<String, Object> properties) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         properties.entrySet()
                 .stream()
                 .filter(e -> {
@@ -322,22 +667,19 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
 
     @Override
     public <T extends JaqpotEntity> List<T> find(Class<T> entityClass, List<String> keys, List<String> fields) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         List<T> result = new ArrayList<>();
         Document query = new Document("_id", new Document("$in", keys));
         Document filter = new Document();
         fields.stream().forEach(f -> filter.put(f, 1));
         collection.find(query).projection(filter)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> find(Class<T> entityClass, Map<String, Object> properties, List<String> fields, Integer start, Integer max) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         properties.entrySet()
                 .stream()
                 .filter(e -> {
@@ -356,15 +698,13 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
                 .projection(filter)
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> findSorted(Class<T> entityClass, Map<String, Object> properties, List<String> fields, Integer start, Integer max, List<String> ascendingFields, List<String> descendingFields) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         properties.entrySet()
                 .stream()
                 .filter(e -> {
@@ -384,15 +724,13 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
                 .sort(Sorts.orderBy(Sorts.ascending(ascendingFields), Sorts.descending(descendingFields)))
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> findSortedAsc(Class<T> entityClass, Map<String, Object> properties, List<String> fields, Integer start, Integer max, List<String> ascendingFields) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         properties.entrySet()
                 .stream()
                 .filter(e -> {
@@ -412,15 +750,13 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
                 .sort(Sorts.ascending(ascendingFields))
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> findSortedDesc(Class<T> entityClass, Map<String, Object> properties, List<String> fields, Integer start, Integer max, List<String> descendingFields) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         properties.entrySet()
                 .stream()
                 .filter(e -> {
@@ -440,28 +776,24 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
                 .sort(Sorts.descending(descendingFields))
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> findAll(Class<T> entityClass, Integer start, Integer max) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         List<T> result = new ArrayList<>();
         collection.find()
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> List<T> findAll(Class<T> entityClass, List<String> fields, Integer start, Integer max) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         List<T> result = new ArrayList<>();
         Document filter = new Document();
         fields.stream().forEach(f -> filter.put(f, 1));
@@ -469,15 +801,13 @@ public class MongoDBEntityManager implements JaqpotEntityManager {
                 .projection(filter)
                 .skip(start != null ? start : 0)
                 .limit(max != null ? max : DEFAULT_PAGE_SIZE)
-                .map(document -> serializer.parse(JSON.serialize(document), entityClass))
                 .into(result);
         return result;
     }
 
     @Override
     public <T extends JaqpotEntity> Long countAll(Class<T> entityClass) {
-        MongoDatabase db = mongoClient.getDatabase(database);
-        MongoCollection<Document> collection = db.getCollection(collectionNames.get(entityClass));
+        MongoCollection<T> collection = getCollection(entityClass);
         return collection.count();
     }
 
@@ -0,0 +1,177 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.db.entitymanager;
+
+import com.mongodb.MongoException;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.IndexOptions;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.bson.Document;
+import org.jaqpot.core.annotations.MongoIndex;
+import org.jaqpot.core.model.JaqpotEntity;
+
+/**
+ * Creates the indexes declared with {@link MongoIndex} on the entity classes
+ * and reports how the database plans the declared query shapes.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+public class MongoIndexManager {
+
+    private static final Logger LOG = Logger.getLogger(MongoIndexManager.class.getName());
+
+    private static final String COLLECTION_SCAN = "COLLSCAN";
+
+    private final MongoDatabase database;
+    private final Map<Class, String> collectionNames;
+
+    public MongoIndexManager(MongoDatabase database, Map<Class, String> collectionNames) {
+        this.database = database;
+        this.collectionNames = collectionNames;
+    }
+
+    /**
+     * Creates all declared indexes. Creating an index that already exists
+     * with the same keys and options is a no-op, so this is safe to run on
+     * every startup.
+     */
+    public void ensureIndexes() {
+        for (Map.Entry<Class, String> entry : collectionNames.entrySet()) {
+            for (MongoIndex index : indexesOf(entry.getKey())) {
+                try {
+                    database.getCollection(entry.getValue())
+                            .createIndex(keys(index), new IndexOptions()
+                                    .name(index.name())
+                                    .unique(index.unique())
+                                    .background(true));
+                } catch (MongoException ex) {
+                    LOG.log(Level.WARNING, "Could not create index " + index.name()
+                            + " on collection " + entry.getValue(), ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Explains every declared query shape. Each report holds the collection,
+     * the expected index, the stages of the winning plan and whether the plan
+     * falls back to a collection scan.
+     *
+     * @return a report for each declared query shape
+     */
+    public List<Map<String, Object>> explain() {
+        List<Map<String, Object>> reports = new ArrayList<>();
+        for (Map.Entry<Class, String> entry : collectionNames.entrySet()) {
+            for (MongoIndex index : indexesOf(entry.getKey())) {
+                Document filter = new Document();
+                for (String field : index.filter()) {
+                    filter.put(field, "");
+                }
+                Document sort = new Document();
+                for (String field : index.sort()) {
+                    sort.put(fieldName(field), direction(field));
+                }
+                Document command = new Document("explain", new Document("find", entry.getValue())
+                        .append("filter", filter)
+                        .append("sort", sort))
+                        .append("verbosity", "queryPlanner");
+
+                Map<String, Object> report = new LinkedHashMap<>();
+                report.put("collection", entry.getValue());
+                report.put("index", index.name());
+                report.put("filter", filter);
+                report.put("sort", sort);
+                try {
+                    Document plan = (Document) ((Document) database.runCommand(command).get("queryPlanner")).get("winningPlan");
+                    List<String> stages = new ArrayList<>();
+                    List<String> indexes = new ArrayList<>();
+                    collectStages(plan, stages, indexes);
+                    report.put("stages", stages);
+                    report.put("indexesUsed", indexes);
+                    report.put("collectionScan", stages.contains(COLLECTION_SCAN));
+                } catch (MongoException ex) {
+                    report.put("error", ex.getMessage());
+                }
+                reports.add(report);
+            }
+        }
+        return reports;
+    }
+
+    private static MongoIndex[] indexesOf(Class entityClass) {
+        if (!JaqpotEntity.class.isAssignableFrom(entityClass) || Modifier.isAbstract(entityClass.getModifiers())) {
+            return new MongoIndex[0];
+        }
+        return (MongoIndex[]) entityClass.getAnnotationsByType(MongoIndex.class);
+    }
+
+    private static Document keys(MongoIndex index) {
+        Document keys = new Document();
+        for (String field : index.filter()) {
+            keys.put(field, 1);
+        }
+        for (String field : index.sort()) {
+            keys.put(fieldName(field), direction(field));
+        }
+        return keys;
+    }
+
+    private static String fieldName(String field) {
+        return field.startsWith("-") ? field.substring(1) : field;
+    }
+
+    private static int direction(String field) {
+        return field.startsWith("-") ? -1 : 1;
+    }
+
+    private static void collectStages(Document plan, List<String> stages, List<String> indexes) {
+        if (plan == null) {
+            return;
+        }
+        stages.add(plan.getString("stage"));
+        if (plan.containsKey("indexName")) {
+            indexes.add(plan.getString("indexName"));
+        }
+        collectStages((Document) plan.get("inputStage"), stages, indexes);
+        List<Document> inputStages = (List<Document>) plan.get("inputStages");
+        if (inputStages != null) {
+            inputStages.forEach(stage -> collectStages(stage, stages, indexes));
+        }
+    }
+
+}
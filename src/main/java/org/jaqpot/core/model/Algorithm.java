@@ -33,6 +33,7 @@ import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.HashSet;
 import java.util.Set;
 import javax.xml.bind.annotation.XmlRootElement;
+import org.jaqpot.core.annotations.MongoIndex;
 
 /**
  *
@@ -40,6 +41,7 @@ import javax.xml.bind.annotation.XmlRootElement;
  * @author Charalampos Chomenidis
  *
  */
+@MongoIndex(name = "creator", filter = {"meta.creators", "visible"}, sort = {"-meta.date", "-_id"})
 @XmlRootElement
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class Algorithm extends JaqpotEntity {
@@ -30,6 +30,7 @@
 package org.jaqpot.core.model;
 
 import javax.xml.bind.annotation.XmlRootElement;
+import org.jaqpot.core.annotations.MongoIndex;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
 
@@ -39,6 +40,7 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * @author Charalampos Chomenidis
  *
  */
+@MongoIndex(name = "creator", filter = {"meta.creators", "visible"}, sort = {"-meta.date", "-_id"})
 @XmlRootElement
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class BibTeX extends JaqpotEntity {
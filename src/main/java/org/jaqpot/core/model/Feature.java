@@ -31,6 +31,7 @@ package org.jaqpot.core.model;
 
 import java.util.Set;
 import javax.xml.bind.annotation.XmlRootElement;
+import org.jaqpot.core.annotations.MongoIndex;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.HashSet;
 
@@ -42,6 +43,8 @@ import java.util.HashSet;
  * @author Charalampos Chomenidis
  *
  */
+@MongoIndex(name = "creator", filter = {"meta.creators", "visible"}, sort = {"-meta.date", "-_id"})
+@MongoIndex(name = "source", filter = {"meta.hasSources"})
 @XmlRootElement
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class Feature extends JaqpotEntity {
@@ -32,6 +32,7 @@ package org.jaqpot.core.model;
 import java.util.List;
 import java.util.Set;
 import javax.xml.bind.annotation.XmlRootElement;
+import org.jaqpot.core.annotations.MongoIndex;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -44,6 +45,7 @@ import java.util.Map;
  * @author Charalampos Chomenidis
  *
  */
+@MongoIndex(name = "creator", filter = {"meta.creators", "visible"}, sort = {"-meta.date", "-_id"})
 @XmlRootElement(name = "Model")
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class Model extends JaqpotEntity {
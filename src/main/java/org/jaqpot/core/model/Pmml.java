@@ -7,11 +7,13 @@ package org.jaqpot.core.model;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
 import javax.xml.bind.annotation.XmlRootElement;
+import org.jaqpot.core.annotations.MongoIndex;
 
 /**
  *
  * @author chung
  */
+@MongoIndex(name = "creator", filter = {"meta.creators", "visible"}, sort = {"-meta.date", "-_id"})
 @XmlRootElement
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class Pmml extends JaqpotEntity {
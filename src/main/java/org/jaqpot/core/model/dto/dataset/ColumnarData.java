@@ -0,0 +1,605 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.dto.dataset;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Columnar in-memory representation of the rows of a {@link Dataset}. Feature
+ * URIs are kept once in a {@link FeatureDictionary}; doubles, integers and
+ * longs are kept unboxed in primitive columns, which read them back as the
+ * type they were written as, and all other values in dictionary encoded
+ * columns. Rows are exposed as {@link DataEntry} views, so code written
+ * against {@link Dataset#getDataEntry()} keeps working unchanged.
+ *
+ * Selections and copies are copy-on-write views: they share the columns of
+ * the instance they were taken from and remember which of its rows they
+ * contain. A column is copied only when one of the instances sharing it is
+ * about to write to it, and a view over a subset or a permutation of rows
+ * is materialized on its first write.
+ *
+ * Reads are not synchronized. Writes are synchronized on the instance, so
+ * that distinct rows may be written concurrently, e.g. from a parallel
+ * stream.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+public final class ColumnarData {
+
+    private FeatureDictionary dictionary;
+    private DatasetColumn[] columns;
+    private boolean[] owned;
+    private Substance[] compounds;
+    private boolean compoundsOwned;
+    private int[] rowMap;
+    private int offset;
+    private int rows;
+
+    private ColumnarData(FeatureDictionary dictionary, DatasetColumn[] columns, Substance[] compounds, int rows) {
+        this.dictionary = dictionary;
+        this.columns = columns;
+        this.owned = new boolean[columns.length];
+        Arrays.fill(owned, true);
+        this.compounds = compounds;
+        this.compoundsOwned = true;
+        this.rows = rows;
+    }
+
+    /**
+     * Creates a view sharing the given columns and compounds.
+     *
+     * @param rowMap maps the rows of the view, shifted by offset, to rows of
+     * the columns; null if the rows are consecutive
+     * @param offset the first row of the view in rowMap or in the columns
+     */
+    private ColumnarData(FeatureDictionary dictionary, DatasetColumn[] columns, Substance[] compounds, int[] rowMap, int offset, int rows) {
+        this.dictionary = dictionary;
+        this.columns = columns;
+        this.owned = new boolean[columns.length];
+        this.compounds = compounds;
+        this.compoundsOwned = false;
+        this.rowMap = rowMap;
+        this.offset = offset;
+        this.rows = rows;
+    }
+
+    /**
+     * Creates an instance with the given number of empty rows.
+     *
+     * @param features the URIs of the features that are expected
+     * @param rows the number of rows
+     * @return an instance whose rows have no values yet
+     */
+    public static ColumnarData create(Collection<String> features, int rows) {
+        FeatureDictionary dictionary = FeatureDictionary.of(features);
+        DatasetColumn[] columns = new DatasetColumn[dictionary.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = new NumericColumn(rows);
+        }
+        return new ColumnarData(dictionary, columns, new Substance[rows], rows);
+    }
+
+    /**
+     * Converts the given rows to the columnar representation.
+     *
+     * @param dataEntry the rows of a dataset
+     * @return the columnar representation of the rows
+     */
+    public static ColumnarData of(List<DataEntry> dataEntry) {
+        if (dataEntry instanceof RowList) {
+            return ((RowList) dataEntry).data().copy();
+        }
+        ColumnarData data = create(dataEntry.stream()
+                .filter(de -> de.getValues() != null)
+                .flatMap(de -> de.getValues().keySet().stream())
+                .distinct()
+                .collect(Collectors.toList()), dataEntry.size());
+        for (int row = 0; row < dataEntry.size(); row++) {
+            data.setRow(row, dataEntry.get(row));
+        }
+        return data;
+    }
+
+    /**
+     * Converts rows in the compact encoding, whose value keys are positions
+     * in the given list of feature URIs, see {@link #toCompactRows()}.
+     *
+     * @param dictionary the feature URIs the keys refer to
+     * @param dataEntry rows keyed by position in the dictionary
+     * @return the columnar representation of the rows
+     * @throws IllegalArgumentException if a key is not a position in the
+     * dictionary
+     */
+    public static ColumnarData ofCompact(List<String> dictionary, List<DataEntry> dataEntry) {
+        ColumnarData data = create(dictionary, dataEntry.size());
+        int[] columns = new int[dictionary.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = data.dictionary.indexOf(dictionary.get(i));
+        }
+        for (int row = 0; row < dataEntry.size(); row++) {
+            DataEntry entry = dataEntry.get(row);
+            data.compounds[row] = entry.getCompound();
+            if (entry.getValues() == null) {
+                continue;
+            }
+            for (Map.Entry<String, Object> value : entry.getValues().entrySet()) {
+                int id;
+                try {
+                    id = Integer.parseInt(value.getKey());
+                } catch (NumberFormatException ex) {
+                    id = -1;
+                }
+                if (id < 0 || id >= columns.length) {
+                    throw new IllegalArgumentException("Unknown feature id " + value.getKey()
+                            + " in the values of " + entry.getCompound());
+                }
+                data.store(row, columns[id], value.getValue());
+            }
+        }
+        return data;
+    }
+
+    public FeatureDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int rows() {
+        return rows;
+    }
+
+    public Substance getCompound(int row) {
+        return compounds[physical(row)];
+    }
+
+    public synchronized void setCompound(int row, Substance compound) {
+        checkRow(row);
+        writableCompounds()[row] = compound;
+    }
+
+    public boolean isPresent(int row, int column) {
+        return columns[column].isPresent(physical(row));
+    }
+
+    public Object get(int row, int column) {
+        return columns[column].get(physical(row));
+    }
+
+    public Object get(int row, String uri) {
+        int column = dictionary.indexOf(uri);
+        return column >= 0 ? get(row, column) : null;
+    }
+
+    /**
+     * Reads a value as a primitive double, without boxing it when the column
+     * is numeric.
+     *
+     * @return the value, or NaN if it is missing or not a number
+     */
+    public double getDouble(int row, int column) {
+        return columns[column].getDouble(physical(row));
+    }
+
+    /**
+     * @return true if the value is an integer or a long
+     */
+    public boolean isIntegral(int row, int column) {
+        return columns[column].isIntegral(physical(row));
+    }
+
+    /**
+     * Reads a value as a primitive long, without boxing it when the column
+     * is numeric.
+     *
+     * @return the value, truncated if it is not integral, or 0 if it is
+     * missing or not a number
+     */
+    public long getLong(int row, int column) {
+        return columns[column].getLong(physical(row));
+    }
+
+    /**
+     * @return true if all the values of the column are doubles, integers,
+     * longs or null
+     */
+    public boolean isNumeric(int column) {
+        return columns[column].isNumeric();
+    }
+
+    /**
+     * @return the number of features the row has
+     */
+    public int width(int row) {
+        int physical = physical(row);
+        int width = 0;
+        for (DatasetColumn column : columns) {
+            if (column.isPresent(physical)) {
+                width++;
+            }
+        }
+        return width;
+    }
+
+    /**
+     * @return the number of features of the widest row
+     */
+    public int maxWidth() {
+        return IntStream.range(0, rows).map(this::width).max().orElse(0);
+    }
+
+    public synchronized void set(int row, String uri, Object value) {
+        checkRow(row);
+        int column = dictionary.indexOf(uri);
+        if (column < 0) {
+            addFeatures(Arrays.asList(uri));
+            column = dictionary.indexOf(uri);
+        }
+        store(row, column, value);
+    }
+
+    public synchronized void remove(int row, int column) {
+        checkRow(row);
+        writable(column).remove(row);
+    }
+
+    /**
+     * Replaces the compound and all the values of a row; rows past the end
+     * are added.
+     *
+     * @param row the index of the row
+     * @param dataEntry the new contents of the row
+     */
+    public synchronized void setRow(int row, DataEntry dataEntry) {
+        if (row >= rows) {
+            ensureRows(row + 1);
+        }
+        writableCompounds()[row] = dataEntry.getCompound();
+        Map<String, Object> values = dataEntry.getValues();
+        if (values == null) {
+            for (int column = 0; column < columns.length; column++) {
+                writable(column).remove(row);
+            }
+            return;
+        }
+        for (String uri : values.keySet()) {
+            if (dictionary.indexOf(uri) < 0) {
+                addFeatures(values.keySet());
+                break;
+            }
+        }
+        for (int column = 0; column < columns.length; column++) {
+            String uri = dictionary.uri(column);
+            if (values.containsKey(uri)) {
+                store(row, column, values.get(uri));
+            } else {
+                writable(column).remove(row);
+            }
+        }
+    }
+
+    public synchronized void addRow(DataEntry dataEntry) {
+        setRow(rows, dataEntry);
+    }
+
+    /**
+     * @return a view of the row
+     */
+    public DataEntry row(int row) {
+        checkRow(row);
+        return new ColumnarDataEntry(this, row);
+    }
+
+    /**
+     * @return a view of all rows; rows may be replaced or appended
+     */
+    public List<DataEntry> rowList() {
+        return new RowList(this);
+    }
+
+    /**
+     * Creates rows in the compact encoding: the keys of the values are the
+     * positions of the features in {@link #getDictionary()}, written as
+     * decimal strings, instead of the feature URIs.
+     *
+     * @return detached rows keyed by feature position
+     */
+    public List<DataEntry> toCompactRows() {
+        String[] ids = new String[columns.length];
+        for (int column = 0; column < ids.length; column++) {
+            ids[column] = Integer.toString(column);
+        }
+        List<DataEntry> compact = new ArrayList<>(rows);
+        for (int row = 0; row < rows; row++) {
+            int physical = physical(row);
+            TreeMap<String, Object> values = new TreeMap<>();
+            for (int column = 0; column < columns.length; column++) {
+                if (columns[column].isPresent(physical)) {
+                    values.put(ids[column], columns[column].get(physical));
+                }
+            }
+            DataEntry dataEntry = new DataEntry();
+            dataEntry.setCompound(compounds[physical]);
+            dataEntry.setValues(values);
+            compact.add(dataEntry);
+        }
+        return compact;
+    }
+
+    /**
+     * @return a view of all rows and features
+     */
+    public ColumnarData copy() {
+        return selectRows(0, rows);
+    }
+
+    /**
+     * @param from first row, inclusive
+     * @param to last row, exclusive
+     * @return a view of the rows in the given range
+     */
+    public synchronized ColumnarData selectRows(int from, int to) {
+        if (from < 0 || from > to || to > rows) {
+            throw new IndexOutOfBoundsException("Rows " + from + " to " + to + " of " + rows);
+        }
+        return view(dictionary, IntStream.range(0, columns.length).toArray(), rowMap, offset + from, to - from);
+    }
+
+    /**
+     * @param rows the indices of the rows to include, in order; indices may
+     * repeat
+     * @return a view of the given rows
+     */
+    public synchronized ColumnarData selectRows(int[] rows) {
+        int[] selected = new int[rows.length];
+        for (int i = 0; i < rows.length; i++) {
+            selected[i] = physical(rows[i]);
+        }
+        return view(dictionary, IntStream.range(0, columns.length).toArray(), selected, 0, rows.length);
+    }
+
+    /**
+     * @param uris the URIs of the features to keep
+     * @return a view of the rows restricted to the given features
+     */
+    public ColumnarData selectColumns(Collection<String> uris) {
+        return selectColumns(IntStream.range(0, columns.length)
+                .filter(i -> uris.contains(dictionary.uri(i)))
+                .toArray());
+    }
+
+    /**
+     * @param from first column, inclusive
+     * @param to last column, exclusive
+     * @return a view of the rows restricted to the features in the given
+     * range of the dictionary
+     */
+    public ColumnarData selectColumns(int from, int to) {
+        return selectColumns(IntStream.range(from, to).toArray());
+    }
+
+    private synchronized ColumnarData selectColumns(int[] selection) {
+        FeatureDictionary selectedDictionary = selection.length == columns.length
+                ? dictionary
+                : FeatureDictionary.of(Arrays.stream(selection)
+                        .mapToObj(dictionary::uri)
+                        .collect(Collectors.toList()));
+        return view(selectedDictionary, selection, rowMap, offset, rows);
+    }
+
+    /**
+     * Creates a view sharing the selected columns; from then on neither this
+     * instance nor the view writes to them in place. The selection must be in
+     * the order of the dictionary of the view.
+     */
+    private ColumnarData view(FeatureDictionary viewDictionary, int[] selection, int[] viewRowMap, int viewOffset, int viewRows) {
+        DatasetColumn[] shared = new DatasetColumn[selection.length];
+        for (int i = 0; i < selection.length; i++) {
+            shared[i] = columns[selection[i]];
+            owned[selection[i]] = false;
+        }
+        compoundsOwned = false;
+        return new ColumnarData(viewDictionary, shared, compounds, viewRowMap, viewOffset, viewRows);
+    }
+
+    /**
+     * Adds the features of another instance to the first rows of this one,
+     * overwriting the values of common features. Rows are matched by index.
+     *
+     * @param other the features to add
+     */
+    public synchronized void putColumns(ColumnarData other) {
+        addFeatures(other.dictionary.uris());
+        int common = Math.min(rows, other.rows);
+        for (int c = 0; c < other.columns.length; c++) {
+            int column = dictionary.indexOf(other.dictionary.uri(c));
+            for (int row = 0; row < common; row++) {
+                if (other.isPresent(row, c)) {
+                    store(row, column, other.get(row, c));
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends the rows of another instance after the rows of this one.
+     *
+     * @param other the rows to append
+     */
+    public synchronized void addRows(ColumnarData other) {
+        for (int row = 0; row < other.rows; row++) {
+            setRow(rows, other.row(row));
+        }
+    }
+
+    private void addFeatures(Collection<String> uris) {
+        FeatureDictionary extended = dictionary.with(uris);
+        if (extended == dictionary) {
+            return;
+        }
+        materialize();
+        DatasetColumn[] extendedColumns = new DatasetColumn[extended.size()];
+        boolean[] extendedOwned = new boolean[extended.size()];
+        for (int i = 0; i < extendedColumns.length; i++) {
+            int previous = dictionary.indexOf(extended.uri(i));
+            extendedColumns[i] = previous >= 0 ? columns[previous] : new NumericColumn(rows);
+            extendedOwned[i] = previous < 0 || owned[previous];
+        }
+        dictionary = extended;
+        columns = extendedColumns;
+        owned = extendedOwned;
+    }
+
+    private void ensureRows(int count) {
+        writableCompounds();
+        if (compounds.length < count) {
+            compounds = Arrays.copyOf(compounds, Math.max(count, compounds.length * 2));
+        }
+        rows = count;
+    }
+
+    private void store(int row, int column, Object value) {
+        if (!writable(column).set(row, value)) {
+            columns[column] = columns[column].toDictionary(rows);
+            columns[column].set(row, value);
+        }
+    }
+
+    /**
+     * @return the column, copied first if it is shared with another instance
+     */
+    private DatasetColumn writable(int column) {
+        materialize();
+        if (!owned[column]) {
+            columns[column] = columns[column].select(IntStream.range(0, rows).toArray());
+            owned[column] = true;
+        }
+        return columns[column];
+    }
+
+    private Substance[] writableCompounds() {
+        materialize();
+        if (!compoundsOwned) {
+            compounds = Arrays.copyOf(compounds, rows);
+            compoundsOwned = true;
+        }
+        return compounds;
+    }
+
+    /**
+     * Copies the rows of a view over a range or a permutation of rows, so
+     * that rows are stored at their own index.
+     */
+    private void materialize() {
+        if (rowMap == null && offset == 0) {
+            return;
+        }
+        int[] physical = new int[rows];
+        for (int row = 0; row < rows; row++) {
+            physical[row] = physical(row);
+        }
+        Substance[] selectedCompounds = new Substance[rows];
+        for (int i = 0; i < rows; i++) {
+            selectedCompounds[i] = compounds[physical[i]];
+        }
+        for (int column = 0; column < columns.length; column++) {
+            columns[column] = columns[column].select(physical);
+            owned[column] = true;
+        }
+        compounds = selectedCompounds;
+        compoundsOwned = true;
+        rowMap = null;
+        offset = 0;
+    }
+
+    private int physical(int row) {
+        checkRow(row);
+        return rowMap == null ? offset + row : rowMap[offset + row];
+    }
+
+    private void checkRow(int row) {
+        if (row < 0 || row >= rows) {
+            throw new IndexOutOfBoundsException("Row " + row + " of " + rows);
+        }
+    }
+
+    /**
+     * The rows of a {@link ColumnarData} as a list of views.
+     */
+    static final class RowList extends AbstractList<DataEntry> implements RandomAccess {
+
+        private final ColumnarData data;
+
+        RowList(ColumnarData data) {
+            this.data = data;
+        }
+
+        ColumnarData data() {
+            return data;
+        }
+
+        @Override
+        public DataEntry get(int index) {
+            return data.row(index);
+        }
+
+        @Override
+        public DataEntry set(int index, DataEntry element) {
+            DataEntry previous = new DataEntry();
+            previous.setCompound(data.getCompound(index));
+            previous.setValues(new TreeMap<>(data.row(index).getValues()));
+            data.setRow(index, element);
+            return previous;
+        }
+
+        @Override
+        public boolean add(DataEntry element) {
+            data.addRow(element);
+            modCount++;
+            return true;
+        }
+
+        @Override
+        public int size() {
+            return data.rows();
+        }
+
+    }
+
+}
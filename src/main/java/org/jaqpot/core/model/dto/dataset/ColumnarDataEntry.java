@@ -0,0 +1,191 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.dto.dataset;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A row of a {@link ColumnarData}. Its values are a live map view over the
+ * columns, iterated in the order of the feature URIs; writing to the view
+ * writes to the columns.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+class ColumnarDataEntry extends DataEntry {
+
+    private final ColumnarData data;
+    private final int row;
+
+    ColumnarDataEntry(ColumnarData data, int row) {
+        this.data = data;
+        this.row = row;
+    }
+
+    @Override
+    public Substance getCompound() {
+        return data.getCompound(row);
+    }
+
+    @Override
+    public void setCompound(Substance compound) {
+        data.setCompound(row, compound);
+    }
+
+    @Override
+    public Map<String, Object> getValues() {
+        return new RowValues();
+    }
+
+    @Override
+    public void setValues(TreeMap<String, Object> values) {
+        DataEntry dataEntry = new DataEntry();
+        dataEntry.setCompound(getCompound());
+        dataEntry.setValues(values);
+        data.setRow(row, dataEntry);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ColumnarDataEntry)) {
+            return false;
+        }
+        ColumnarDataEntry other = (ColumnarDataEntry) obj;
+        return data == other.data && row == other.row;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * System.identityHashCode(data) + row;
+    }
+
+    @Override
+    public String toString() {
+        return "DataEntry{" + "compound=" + getCompound() + ", values=" + getValues() + '}';
+    }
+
+    private class RowValues extends AbstractMap<String, Object> {
+
+        @Override
+        public Object get(Object key) {
+            int column = data.getDictionary().indexOf(key);
+            return column >= 0 ? data.get(row, column) : null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            int column = data.getDictionary().indexOf(key);
+            return column >= 0 && data.isPresent(row, column);
+        }
+
+        @Override
+        public Object put(String key, Object value) {
+            Object previous = get(key);
+            data.set(row, key, value);
+            return previous;
+        }
+
+        @Override
+        public Object remove(Object key) {
+            int column = data.getDictionary().indexOf(key);
+            if (column < 0) {
+                return null;
+            }
+            Object previous = data.get(row, column);
+            data.remove(row, column);
+            return previous;
+        }
+
+        @Override
+        public int size() {
+            return data.width(row);
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return new AbstractSet<Entry<String, Object>>() {
+
+                @Override
+                public Iterator<Entry<String, Object>> iterator() {
+                    return new Iterator<Entry<String, Object>>() {
+
+                        private final FeatureDictionary dictionary = data.getDictionary();
+                        private int next = advance(0);
+                        private int last = -1;
+
+                        private int advance(int column) {
+                            while (column < dictionary.size() && !data.isPresent(row, column)) {
+                                column++;
+                            }
+                            return column;
+                        }
+
+                        @Override
+                        public boolean hasNext() {
+                            return next < dictionary.size();
+                        }
+
+                        @Override
+                        public Entry<String, Object> next() {
+                            if (!hasNext()) {
+                                throw new NoSuchElementException();
+                            }
+                            last = next;
+                            next = advance(next + 1);
+                            return new SimpleImmutableEntry<>(dictionary.uri(last), data.get(row, last));
+                        }
+
+                        @Override
+                        public void remove() {
+                            if (last < 0) {
+                                throw new IllegalStateException();
+                            }
+                            data.remove(row, data.getDictionary().indexOf(dictionary.uri(last)));
+                            last = -1;
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return RowValues.this.size();
+                }
+            };
+        }
+    }
+
+}
@@ -29,11 +29,14 @@
  */
 package org.jaqpot.core.model.dto.dataset;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import javax.xml.bind.annotation.XmlRootElement;
+import org.jaqpot.core.annotations.MongoIndex;
 import org.jaqpot.core.model.JaqpotEntity;
 
 /**
@@ -42,6 +45,7 @@ import org.jaqpot.core.model.JaqpotEntity;
  * @author Charalampos Chomenidis
  *
  */
+@MongoIndex(name = "creator", filter = {"meta.creators", "visible"}, sort = {"-meta.date", "-_id"})
 @XmlRootElement
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Dataset extends JaqpotEntity {
@@ -86,6 +90,32 @@ public class Dataset extends JaqpotEntity {
 
     private Set<DescriptorCategory> descriptors;
 
+    /**
+     * Most rows per {@link DatasetChunk}. It is only set on stored headers;
+     * datasets persisted as a single document leave it null.
+     */
+    private Integer chunkSize;
+
+    /**
+     * Index of the first row of every {@link DatasetChunk}, in chunk order.
+     * Chunks are closed at an estimated size in bytes, so they hold
+     * different numbers of rows. It is only set on stored headers.
+     */
+    private List<Integer> chunkStarts;
+
+    /**
+     * Generation of the chunks that hold the rows of a stored header, see
+     * {@link DatasetChunk#getGeneration()}.
+     */
+    private String chunkGeneration;
+
+    /**
+     * Feature URIs of a dataset in the compact encoding, in which the keys of
+     * the values of every data entry are positions in this list instead of
+     * feature URIs. It is null for datasets keyed by URI.
+     */
+    private List<String> dictionary;
+
     public String getDatasetURI() {
         return datasetURI;
     }
@@ -110,6 +140,65 @@ public class Dataset extends JaqpotEntity {
         this.dataEntry = dataEntry;
     }
 
+    /**
+     * Returns the columnar representation of the rows, converting them on
+     * first use. After the conversion {@link #getDataEntry()} returns views
+     * over the columns, so rows obtained earlier are detached from the
+     * dataset.
+     *
+     * @return the rows of the dataset in columnar form
+     */
+    public ColumnarData toColumnar() {
+        if (dataEntry instanceof ColumnarData.RowList) {
+            return ((ColumnarData.RowList) dataEntry).data();
+        }
+        ColumnarData columnar;
+        if (dictionary != null) {
+            columnar = ColumnarData.ofCompact(dictionary, dataEntry != null ? dataEntry : Collections.emptyList());
+            dictionary = null;
+        } else {
+            columnar = dataEntry != null
+                    ? ColumnarData.of(dataEntry)
+                    : ColumnarData.create(Collections.emptySet(), 0);
+        }
+        dataEntry = columnar.rowList();
+        return columnar;
+    }
+
+    /**
+     * Switches the rows to the compact encoding, see {@link #getDictionary()}.
+     * Feature URIs are then written once per dataset instead of once per
+     * row.
+     *
+     * @return this dataset
+     */
+    public Dataset compact() {
+        ColumnarData columnar = toColumnar();
+        dataEntry = columnar.toCompactRows();
+        dictionary = columnar.getDictionary().uris();
+        return this;
+    }
+
+    /**
+     * Switches rows received in the compact encoding back to rows keyed by
+     * feature URI; datasets keyed by URI are left as they are.
+     *
+     * @return this dataset
+     * @throws IllegalArgumentException if a key is not a position in the
+     * dictionary
+     */
+    public Dataset expand() {
+        if (dictionary != null) {
+            toColumnar();
+        }
+        return this;
+    }
+
+    @JsonIgnore
+    public void setColumnar(ColumnarData columnar) {
+        this.dataEntry = columnar.rowList();
+    }
+
     public Set<FeatureInfo> getFeatures() {
         return features;
     }
@@ -142,6 +231,38 @@ public class Dataset extends JaqpotEntity {
         this.descriptors = descriptors;
     }
 
+    public Integer getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(Integer chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public List<Integer> getChunkStarts() {
+        return chunkStarts;
+    }
+
+    public void setChunkStarts(List<Integer> chunkStarts) {
+        this.chunkStarts = chunkStarts;
+    }
+
+    public String getChunkGeneration() {
+        return chunkGeneration;
+    }
+
+    public void setChunkGeneration(String chunkGeneration) {
+        this.chunkGeneration = chunkGeneration;
+    }
+
+    public List<String> getDictionary() {
+        return dictionary;
+    }
+
+    public void setDictionary(List<String> dictionary) {
+        this.dictionary = dictionary;
+    }
+
     @Override
     public String toString() {
         return "Dataset{" + "datasetURI=" + datasetURI + ", dataEntry=" + dataEntry + '}';
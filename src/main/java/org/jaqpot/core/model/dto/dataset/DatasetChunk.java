@@ -0,0 +1,199 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.dto.dataset;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import javax.xml.bind.annotation.XmlRootElement;
+import org.jaqpot.core.annotations.MongoIndex;
+import org.jaqpot.core.model.JaqpotEntity;
+
+/**
+ * A contiguous block of rows of a {@link Dataset}. Datasets are stored as a
+ * header document holding features, meta and totals, plus a series of chunks
+ * keyed by the dataset id, the generation and the index of the chunk, so that
+ * a page of rows can be read without loading the whole dataset. Every write
+ * of the rows of a dataset stores a new generation of chunks, which the
+ * header switches to once all of them are stored.
+ *
+ * Chunks may be stored in the compact encoding, in which case they carry
+ * the URIs of their features once and the keys of the values of their rows
+ * are positions in that list, see {@link ColumnarData#toCompactRows()}.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+@MongoIndex(name = "chunk", filter = {"datasetId", "generation"}, sort = {"chunkIndex"}, unique = true)
+@XmlRootElement
+@JsonIgnoreProperties(ignoreUnknown = true)
+public class DatasetChunk extends JaqpotEntity {
+
+    private String datasetId;
+
+    private String generation;
+
+    private Integer chunkIndex;
+
+    private List<DataEntry> dataEntry;
+
+    /**
+     * Feature URIs of a chunk in the compact encoding, null otherwise.
+     */
+    private List<String> features;
+
+    public DatasetChunk() {
+    }
+
+    public DatasetChunk(String datasetId, String generation, Integer chunkIndex, List<DataEntry> dataEntry) {
+        super(datasetId + "-" + generation + "-" + chunkIndex);
+        this.datasetId = datasetId;
+        this.generation = generation;
+        this.chunkIndex = chunkIndex;
+        this.dataEntry = dataEntry;
+    }
+
+    /**
+     * Creates a chunk in the compact encoding.
+     *
+     * @param datasetId the id of the dataset
+     * @param generation the generation of the chunks of the dataset
+     * @param chunkIndex the index of the chunk
+     * @param rows the rows of the chunk
+     * @return a chunk holding the URIs of the features once
+     */
+    public static DatasetChunk compact(String datasetId, String generation, Integer chunkIndex, ColumnarData rows) {
+        DatasetChunk chunk = new DatasetChunk(datasetId, generation, chunkIndex, rows.toCompactRows());
+        chunk.setFeatures(rows.getDictionary().uris());
+        return chunk;
+    }
+
+    /**
+     * @return the rows of the chunk keyed by feature URI, whichever the
+     * encoding the chunk was stored in
+     */
+    public List<DataEntry> rows() {
+        if (features == null || dataEntry == null) {
+            return dataEntry;
+        }
+        return ColumnarData.ofCompact(features, dataEntry).rowList();
+    }
+
+    /**
+     * Estimates the number of bytes a row takes up in a stored chunk from the
+     * lengths of its keys and values. Keys are counted as feature URIs, so
+     * rows in the compact encoding are overestimated.
+     *
+     * @param dataEntry a row
+     * @return the estimated size of the row in BSON
+     */
+    public static long estimateBytes(DataEntry dataEntry) {
+        // Document, array element and field name overhead
+        long bytes = 48;
+        Substance compound = dataEntry.getCompound();
+        if (compound != null) {
+            bytes += estimateBytes(compound.getURI()) + estimateBytes(compound.getName()) + estimateBytes(compound.getOwnerUUID());
+        }
+        if (dataEntry.getValues() != null) {
+            for (Map.Entry<String, Object> value : dataEntry.getValues().entrySet()) {
+                bytes += 2 + value.getKey().length() + estimateBytes(value.getValue());
+            }
+        }
+        return bytes;
+    }
+
+    private static long estimateBytes(Object value) {
+        if (value == null) {
+            return 1;
+        }
+        if (value instanceof Number || value instanceof Boolean) {
+            return 9;
+        }
+        if (value instanceof Map) {
+            long bytes = 5;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += 2 + String.valueOf(entry.getKey()).length() + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        }
+        if (value instanceof Collection) {
+            long bytes = 5;
+            for (Object element : (Collection<?>) value) {
+                // Array elements are keyed by their index
+                bytes += 4 + estimateBytes(element);
+            }
+            return bytes;
+        }
+        return 5 + value.toString().length();
+    }
+
+    public String getDatasetId() {
+        return datasetId;
+    }
+
+    public void setDatasetId(String datasetId) {
+        this.datasetId = datasetId;
+    }
+
+    public String getGeneration() {
+        return generation;
+    }
+
+    public void setGeneration(String generation) {
+        this.generation = generation;
+    }
+
+    public Integer getChunkIndex() {
+        return chunkIndex;
+    }
+
+    public void setChunkIndex(Integer chunkIndex) {
+        this.chunkIndex = chunkIndex;
+    }
+
+    public List<DataEntry> getDataEntry() {
+        return dataEntry;
+    }
+
+    public void setDataEntry(List<DataEntry> dataEntry) {
+        this.dataEntry = dataEntry;
+    }
+
+    public List<String> getFeatures() {
+        return features;
+    }
+
+    public void setFeatures(List<String> features) {
+        this.features = features;
+    }
+
+}
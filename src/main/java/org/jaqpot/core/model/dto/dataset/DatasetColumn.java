@@ -0,0 +1,108 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.dto.dataset;
+
+/**
+ * A column of a {@link ColumnarData}, holding the values of one feature for
+ * every row. A row may also lack the feature altogether, which is different
+ * from having a null value.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+abstract class DatasetColumn {
+
+    abstract boolean isPresent(int row);
+
+    /**
+     * @return true if all the values of the column are numbers stored
+     * unboxed, or null
+     */
+    boolean isNumeric() {
+        return false;
+    }
+
+    abstract Object get(int row);
+
+    /**
+     * @return the numeric value of the row, or NaN if it is missing or not a
+     * number
+     */
+    abstract double getDouble(int row);
+
+    /**
+     * @return true if the value of the row is an integer or a long
+     */
+    boolean isIntegral(int row) {
+        Object value = get(row);
+        return value instanceof Integer || value instanceof Long;
+    }
+
+    /**
+     * @return the value of the row as a long, truncated if it is not
+     * integral, or 0 if it is missing or not a number
+     */
+    long getLong(int row) {
+        Object value = get(row);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    /**
+     * Stores a value, growing the column if needed.
+     *
+     * @return false if this kind of column cannot hold the value, in which
+     * case nothing is stored
+     */
+    abstract boolean set(int row, Object value);
+
+    abstract void remove(int row);
+
+    /**
+     * @param rows the rows to copy, in order; rows may repeat
+     * @return a new column holding the given rows
+     */
+    abstract DatasetColumn select(int[] rows);
+
+    /**
+     * @param rows the number of rows of the column
+     * @return a copy of this column that can hold any kind of value
+     */
+    DatasetColumn toDictionary(int rows) {
+        DictionaryColumn column = new DictionaryColumn(rows);
+        for (int row = 0; row < rows; row++) {
+            if (isPresent(row)) {
+                column.set(row, get(row));
+            }
+        }
+        return column;
+    }
+
+}
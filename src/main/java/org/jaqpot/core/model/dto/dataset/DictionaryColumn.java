@@ -0,0 +1,116 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.dto.dataset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A column of arbitrary values, typically strings, stored as codes into a
+ * dictionary of the distinct values of the column.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+final class DictionaryColumn extends DatasetColumn {
+
+    private static final int ABSENT = -1;
+
+    private int[] codes;
+    private final List<Object> dictionary;
+    private final Map<Object, Integer> codesOf;
+
+    DictionaryColumn(int capacity) {
+        this(capacity, new ArrayList<>(), new HashMap<>());
+    }
+
+    private DictionaryColumn(int capacity, List<Object> dictionary, Map<Object, Integer> codesOf) {
+        this.codes = new int[capacity];
+        Arrays.fill(codes, ABSENT);
+        this.dictionary = dictionary;
+        this.codesOf = codesOf;
+    }
+
+    @Override
+    boolean isPresent(int row) {
+        return row < codes.length && codes[row] != ABSENT;
+    }
+
+    @Override
+    Object get(int row) {
+        return isPresent(row) ? dictionary.get(codes[row]) : null;
+    }
+
+    @Override
+    double getDouble(int row) {
+        Object value = get(row);
+        return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+    }
+
+    @Override
+    boolean set(int row, Object value) {
+        if (codes.length <= row) {
+            int length = codes.length;
+            codes = Arrays.copyOf(codes, Math.max(row + 1, length * 2));
+            Arrays.fill(codes, length, codes.length, ABSENT);
+        }
+        Integer code = codesOf.get(value);
+        if (code == null) {
+            code = dictionary.size();
+            dictionary.add(value);
+            codesOf.put(value, code);
+        }
+        codes[row] = code;
+        return true;
+    }
+
+    @Override
+    void remove(int row) {
+        if (row < codes.length) {
+            codes[row] = ABSENT;
+        }
+    }
+
+    @Override
+    DatasetColumn select(int[] rows) {
+        DictionaryColumn column = new DictionaryColumn(rows.length, new ArrayList<>(dictionary), new HashMap<>(codesOf));
+        for (int i = 0; i < rows.length; i++) {
+            if (rows[i] < codes.length) {
+                column.codes[i] = codes[rows[i]];
+            }
+        }
+        return column;
+    }
+
+}
@@ -0,0 +1,150 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.dto.dataset;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * An immutable, sorted dictionary of feature URIs. Each URI is stored once
+ * and is identified by its position in the dictionary, so that rows can refer
+ * to features by index. Positions follow the natural order of the URIs, which
+ * is the order of the keys of {@link DataEntry#getValues()}.
+ *
+ * URIs are interned with {@link #intern(String)}, so that all dictionaries,
+ * and rows read from the database or from algorithm services, share one
+ * String instance per feature.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+public final class FeatureDictionary {
+
+    private static final FeatureDictionary EMPTY = new FeatureDictionary(new String[0]);
+    private static final int MAX_INTERNED = 1 << 16;
+    private static final ConcurrentMap<String, String> INTERNED = new ConcurrentHashMap<>();
+
+    private final String[] uris;
+    private final Map<String, Integer> index;
+
+    private FeatureDictionary(String[] uris) {
+        this.uris = uris;
+        this.index = new HashMap<>(uris.length * 2);
+        for (int i = 0; i < uris.length; i++) {
+            uris[i] = intern(uris[i]);
+            index.put(uris[i], i);
+        }
+    }
+
+    /**
+     * Returns the canonical instance of a feature URI. The pool is bounded;
+     * once it is full, URIs that are not in it are returned as they are.
+     *
+     * @param uri a feature URI
+     * @return an equal String, shared by all callers
+     */
+    public static String intern(String uri) {
+        if (uri == null) {
+            return null;
+        }
+        String interned = INTERNED.get(uri);
+        if (interned != null) {
+            return interned;
+        }
+        if (INTERNED.size() >= MAX_INTERNED) {
+            return uri;
+        }
+        interned = INTERNED.putIfAbsent(uri, uri);
+        return interned != null ? interned : uri;
+    }
+
+    public static FeatureDictionary empty() {
+        return EMPTY;
+    }
+
+    public static FeatureDictionary of(Collection<String> uris) {
+        if (uris.isEmpty()) {
+            return EMPTY;
+        }
+        return new FeatureDictionary(new TreeSet<>(uris).toArray(new String[0]));
+    }
+
+    /**
+     * @param uri a feature URI
+     * @return the position of the URI, or -1 if it is not in the dictionary
+     */
+    public int indexOf(Object uri) {
+        Integer i = index.get(uri);
+        return i != null ? i : -1;
+    }
+
+    public String uri(int index) {
+        return uris[index];
+    }
+
+    public int size() {
+        return uris.length;
+    }
+
+    public List<String> uris() {
+        return Collections.unmodifiableList(Arrays.asList(uris));
+    }
+
+    /**
+     * @param other more feature URIs
+     * @return a dictionary with the URIs of this dictionary and the given ones
+     */
+    public FeatureDictionary with(Collection<String> other) {
+        if (index.keySet().containsAll(other)) {
+            return this;
+        }
+        TreeSet<String> union = new TreeSet<>(index.keySet());
+        union.addAll(other);
+        return new FeatureDictionary(union.toArray(new String[0]));
+    }
+
+    /**
+     * @param from first position, inclusive
+     * @param to last position, exclusive
+     * @return a dictionary with the URIs in the given range of positions
+     */
+    public FeatureDictionary range(int from, int to) {
+        return new FeatureDictionary(Arrays.copyOfRange(uris, from, to));
+    }
+
+}
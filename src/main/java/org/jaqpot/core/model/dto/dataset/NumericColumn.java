@@ -0,0 +1,210 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.dto.dataset;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A column of numbers, stored unboxed, with bitmaps marking the rows that
+ * have the feature and the rows whose value is null. Integers and longs keep
+ * their type: they are stored as they are and marked in bitmaps of their
+ * own, doubles are stored as their bits, so every value is read back as the
+ * type it was written as.
+ *
+ * A few values of other types, such as a stray string in a numeric feature,
+ * are kept boxed aside instead of turning the whole column into a
+ * {@link DictionaryColumn}; the column is then no longer
+ * {@link #isNumeric() numeric}.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+final class NumericColumn extends DatasetColumn {
+
+    /**
+     * At most one in this many values of the column is kept boxed.
+     */
+    private static final int MAX_OTHERS_RATIO = 8;
+
+    private long[] values;
+    private final BitSet present;
+    private final BitSet nulls;
+    private final BitSet integers;
+    private final BitSet longs;
+    private Map<Integer, Object> others;
+    private int count;
+
+    NumericColumn(int capacity) {
+        this.values = new long[capacity];
+        this.present = new BitSet(capacity);
+        this.nulls = new BitSet();
+        this.integers = new BitSet();
+        this.longs = new BitSet();
+    }
+
+    @Override
+    boolean isPresent(int row) {
+        return present.get(row);
+    }
+
+    @Override
+    boolean isNumeric() {
+        return others == null || others.isEmpty();
+    }
+
+    @Override
+    Object get(int row) {
+        if (!present.get(row) || nulls.get(row)) {
+            return null;
+        }
+        if (integers.get(row)) {
+            return (int) values[row];
+        }
+        if (longs.get(row)) {
+            return values[row];
+        }
+        if (others != null && others.containsKey(row)) {
+            return others.get(row);
+        }
+        return Double.longBitsToDouble(values[row]);
+    }
+
+    @Override
+    double getDouble(int row) {
+        if (!present.get(row) || nulls.get(row)) {
+            return Double.NaN;
+        }
+        if (integers.get(row) || longs.get(row)) {
+            return values[row];
+        }
+        if (others != null && others.containsKey(row)) {
+            Object value = others.get(row);
+            return value instanceof Number ? ((Number) value).doubleValue() : Double.NaN;
+        }
+        return Double.longBitsToDouble(values[row]);
+    }
+
+    @Override
+    boolean isIntegral(int row) {
+        return integers.get(row) || longs.get(row);
+    }
+
+    @Override
+    long getLong(int row) {
+        if (integers.get(row) || longs.get(row)) {
+            return values[row];
+        }
+        double value = getDouble(row);
+        return Double.isNaN(value) ? 0 : (long) value;
+    }
+
+    @Override
+    boolean set(int row, Object value) {
+        boolean number = value == null || value instanceof Double || value instanceof Integer || value instanceof Long;
+        if (!number && (others != null ? others.size() + 1 : 1) * MAX_OTHERS_RATIO > count + 1) {
+            return false;
+        }
+        if (values.length <= row) {
+            values = Arrays.copyOf(values, Math.max(row + 1, values.length * 2));
+        }
+        if (!present.get(row)) {
+            present.set(row);
+            count++;
+        }
+        nulls.clear(row);
+        integers.clear(row);
+        longs.clear(row);
+        if (others != null) {
+            others.remove(row);
+        }
+        if (value == null) {
+            nulls.set(row);
+        } else if (value instanceof Double) {
+            values[row] = Double.doubleToRawLongBits((Double) value);
+        } else if (value instanceof Integer) {
+            values[row] = (Integer) value;
+            integers.set(row);
+        } else if (value instanceof Long) {
+            values[row] = (Long) value;
+            longs.set(row);
+        } else {
+            if (others == null) {
+                others = new HashMap<>();
+            }
+            others.put(row, value);
+        }
+        return true;
+    }
+
+    @Override
+    void remove(int row) {
+        if (present.get(row)) {
+            present.clear(row);
+            count--;
+        }
+        nulls.clear(row);
+        integers.clear(row);
+        longs.clear(row);
+        if (others != null) {
+            others.remove(row);
+        }
+    }
+
+    @Override
+    DatasetColumn select(int[] rows) {
+        NumericColumn column = new NumericColumn(rows.length);
+        for (int i = 0; i < rows.length; i++) {
+            int row = rows[i];
+            if (present.get(row)) {
+                column.present.set(i);
+                column.count++;
+                column.values[i] = values[row];
+                if (nulls.get(row)) {
+                    column.nulls.set(i);
+                } else if (integers.get(row)) {
+                    column.integers.set(i);
+                } else if (longs.get(row)) {
+                    column.longs.set(i);
+                } else if (others != null && others.containsKey(row)) {
+                    if (column.others == null) {
+                        column.others = new HashMap<>();
+                    }
+                    column.others.put(i, others.get(row));
+                }
+            }
+        }
+        return column;
+    }
+
+}
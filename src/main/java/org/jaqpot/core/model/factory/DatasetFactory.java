@@ -29,7 +29,6 @@
  */
 package org.jaqpot.core.model.factory;
 
-import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
@@ -39,6 +38,7 @@ import java.util.UUID;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import org.jaqpot.core.model.builder.MetaInfoBuilder;
+import org.jaqpot.core.model.dto.dataset.ColumnarData;
 import org.jaqpot.core.model.dto.dataset.DataEntry;
 import org.jaqpot.core.model.dto.dataset.Dataset;
 import org.jaqpot.core.model.dto.dataset.FeatureInfo;
@@ -97,17 +97,7 @@ public class DatasetFactory {
         Dataset result = new Dataset();
         result.setId(dataset.getId());
         result.setMeta(dataset.getMeta());
-
-        List<DataEntry> dataEntries = dataset.getDataEntry()
-                .parallelStream()
-                .map(dataEntry -> {
-                    DataEntry newEntry = new DataEntry();
-                    newEntry.setCompound(dataEntry.getCompound());
-                    newEntry.setValues(new TreeMap<>(dataEntry.getValues()));
-                    return newEntry;
-                })
-                .collect(Collectors.toList());
-        result.setDataEntry(dataEntries);
+        result.setColumnar(dataset.toColumnar().copy());
         result.setFeatures(dataset.getFeatures());
         result.setDatasetURI(dataset.getDatasetURI());
         result.setDescriptors(dataset.getDescriptors());
@@ -122,18 +112,10 @@ public class DatasetFactory {
         result.setId(UUID.randomUUID().toString());
         result.setMeta(dataset.getMeta());
 
-        List<DataEntry> dataEntries = dataset.getDataEntry()
-                .parallelStream()
-                .skip(rowStart)
-                .limit(rowMax)
-                .map(dataEntry -> {
-                    DataEntry newEntry = new DataEntry();
-                    newEntry.setCompound(dataEntry.getCompound());
-                    newEntry.setValues(new TreeMap<>(dataEntry.getValues()));
-                    return newEntry;
-                })
-                .collect(Collectors.toList());
-        result.setDataEntry(dataEntries);
+        ColumnarData data = dataset.toColumnar();
+        int from = Math.min(rowStart, data.rows());
+        int to = (int) Math.min((long) from + rowMax, data.rows());
+        result.setColumnar(data.selectRows(from, to));
         result.setFeatures(dataset.getFeatures());
         result.setDatasetURI(dataset.getDatasetURI());
         result.setDescriptors(dataset.getDescriptors());
@@ -143,29 +125,25 @@ public class DatasetFactory {
         return result;
     }
 
+    public static Dataset copy(Dataset dataset, int[] rows) {
+        Dataset result = new Dataset();
+        result.setId(UUID.randomUUID().toString());
+        result.setMeta(dataset.getMeta());
+        result.setColumnar(dataset.toColumnar().selectRows(rows));
+        result.setFeatures(dataset.getFeatures());
+        result.setDatasetURI(dataset.getDatasetURI());
+        result.setDescriptors(dataset.getDescriptors());
+        result.setTotalColumns(dataset.getTotalColumns());
+        result.setTotalRows(rows.length);
+        result.setByModel(dataset.getByModel());
+        return result;
+    }
+
     public static Dataset copy(Dataset dataset, Set<String> features) {
         Dataset result = new Dataset();
         result.setId(dataset.getId());
         result.setMeta(dataset.getMeta());
-
-        List<DataEntry> dataEntries = dataset.getDataEntry()
-                .parallelStream()
-                .map(dataEntry -> {
-                    DataEntry newEntry = new DataEntry();
-                    newEntry.setCompound(dataEntry.getCompound());
-                    TreeMap<String, Object> values = new TreeMap<>();
-                    dataEntry.getValues()
-                            .keySet()
-                            .stream()
-                            .filter(feature -> features.contains(feature))
-                            .forEach(feature -> {
-                                values.put(feature, dataEntry.getValues().get(feature));
-                            });
-                    newEntry.setValues(values);
-                    return newEntry;
-                })
-                .collect(Collectors.toList());
-        result.setDataEntry(dataEntries);
+        result.setColumnar(dataset.toColumnar().selectColumns(features));
         Set<FeatureInfo> featureInfo = new HashSet<>();
         dataset.getFeatures().stream().filter(f -> features.contains(f.getURI())).forEach(f -> featureInfo.add(f));
         result.setFeatures(featureInfo);
@@ -180,11 +158,7 @@ public class DatasetFactory {
         } else if (dataset == null && other == null) {
             return null;
         } else {
-            for (int i = 0; i < Math.min(dataset.getDataEntry().size(), other.getDataEntry().size()); i++) {
-                DataEntry dataEntry = dataset.getDataEntry().get(i);
-                DataEntry otherEntry = other.getDataEntry().get(i);
-                dataEntry.getValues().putAll(otherEntry.getValues());
-            }
+            dataset.toColumnar().putColumns(other.toColumnar());
             dataset.getFeatures().addAll(other.getFeatures());
             return dataset;
         }
@@ -198,53 +172,98 @@ public class DatasetFactory {
         } else if (dataset == null && other == null) {
             return null;
         } else {
-            dataset.getDataEntry().addAll(other.getDataEntry());
+            dataset.toColumnar().addRows(other.toColumnar());
             dataset.getFeatures().addAll(other.getFeatures());
             return dataset;
         }
     }
 
     public static Dataset randomize(Dataset dataset, Long seed) {
-        Random generator = new Random(seed);
-        dataset.setDataEntry(generator.ints(dataset.getDataEntry().size(), 0, dataset.getDataEntry().size())
-                .mapToObj(i -> {
-                    return dataset.getDataEntry().get(i);
-                })
-                .collect(Collectors.toList()));
+        ColumnarData data = dataset.toColumnar();
+        dataset.setColumnar(data.selectRows(randomRows(data.rows(), seed)));
         return dataset;
     }
 
     public static Dataset stratify(Dataset dataset, Integer folds, String targetFeature) {
-        Object value = dataset.getDataEntry().get(0).getValues().get(targetFeature);
-        if (value instanceof Number) {
-            List<DataEntry> sortedEntries = dataset.getDataEntry().stream()
-                    .sorted((e1, e2) -> {
-                        Double a = Double.parseDouble(e1.getValues().get(targetFeature).toString());
-                        Double b = Double.parseDouble(e2.getValues().get(targetFeature).toString());
-                        return a.compareTo(b);
-                    })
-                    .collect(Collectors.toList());
-
-            List<DataEntry> finalEntries = new ArrayList<>();
-            int i = 0;
-            while (finalEntries.size() < sortedEntries.size()) {
-                int k = 0, j = 0;
-                while (k < sortedEntries.size()) {
-                    k = i + j * folds;
-                    if (k >= sortedEntries.size()) {
-                        break;
-                    }
-                    DataEntry de = sortedEntries.get(k);
-                    finalEntries.add(de);
-                    j++;
-                }
-                i++;
-            }
-            dataset.setDataEntry(finalEntries);
-            return dataset;
-        } else {
+        ColumnarData data = dataset.toColumnar();
+        int[] rows = stratifiedRows(data, folds, targetFeature);
+        if (rows == null) {
             return null;
         }
+        dataset.setColumnar(data.selectRows(rows));
+        return dataset;
+    }
 
+    /**
+     * Draws rows uniformly at random with replacement, as in a bootstrap
+     * sample.
+     *
+     * @param rows the number of rows of the dataset
+     * @param seed seed of the generator; null is taken as 0
+     * @return as many row indices as there are rows
+     */
+    public static int[] randomRows(int rows, Long seed) {
+        return new Random(seed != null ? seed : 0L).ints(rows, 0, rows).toArray();
+    }
+
+    /**
+     * Orders rows so that consecutive runs of rows, sorted by the target
+     * feature, are dealt to the folds in turn: the rows of every fold span
+     * the whole range of the target.
+     *
+     * @param data the rows
+     * @param folds the number of folds
+     * @param targetFeature URI of a numeric feature
+     * @return the row indices in stratified order, or null if the target
+     * feature is missing or not numeric
+     */
+    public static int[] stratifiedRows(ColumnarData data, Integer folds, String targetFeature) {
+        int target = data.getDictionary().indexOf(targetFeature);
+        if (target < 0 || data.rows() == 0 || !(data.get(0, target) instanceof Number)) {
+            return null;
+        }
+        double[] keys = new double[data.rows()];
+        for (int row = 0; row < keys.length; row++) {
+            Object value;
+            keys[row] = data.isNumeric(target)
+                    ? data.getDouble(row, target)
+                    : (value = data.get(row, target)) != null ? Double.parseDouble(value.toString()) : Double.NaN;
+        }
+        int[] sortedRows = sortedByKey(keys);
+
+        int[] finalRows = new int[sortedRows.length];
+        int size = 0;
+        for (int i = 0; size < sortedRows.length; i++) {
+            for (int k = i; k < sortedRows.length; k += folds) {
+                finalRows[size++] = sortedRows[k];
+            }
+        }
+        return finalRows;
+    }
+
+    /**
+     * Stable merge sort of row indices by a primitive key, ordering keys as
+     * {@link Double#compare(double, double)} does.
+     */
+    private static int[] sortedByKey(double[] keys) {
+        int[] rows = IntStream.range(0, keys.length).toArray();
+        int[] buffer = new int[rows.length];
+        for (int width = 1; width < rows.length; width *= 2) {
+            for (int from = 0; from < rows.length; from += 2 * width) {
+                int middle = Math.min(from + width, rows.length);
+                int to = Math.min(from + 2 * width, rows.length);
+                int i = from;
+                int j = middle;
+                for (int k = from; k < to; k++) {
+                    buffer[k] = j >= to || (i < middle && Double.compare(keys[rows[i]], keys[rows[j]]) <= 0)
+                            ? rows[i++]
+                            : rows[j++];
+                }
+            }
+            int[] swap = rows;
+            rows = buffer;
+            buffer = swap;
+        }
+        return rows;
     }
 }
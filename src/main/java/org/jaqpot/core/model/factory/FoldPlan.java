@@ -0,0 +1,210 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.factory;
+
+import java.util.Arrays;
+import java.util.Random;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+
+/**
+ * Assignment of the rows of a dataset to the folds of a, possibly repeated,
+ * cross validation. The assignment is computed once as an array of fold
+ * indices per repetition; the training and test sets of every fold are views
+ * of the original dataset, so no rows are copied.
+ *
+ * <p>
+ * The folds of the first repetition are contiguous blocks of rows, the first
+ * <code>rows % folds</code> of them one row larger than the rest, so that a
+ * dataset that is already in stratified order is split as it is. Every other
+ * repetition assigns rows shuffled with a seeded generator in the same way.
+ * Within a fold rows keep their order, so plans are fully determined by their
+ * parameters. Leave-one-out is a plan with as many folds as rows.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public final class FoldPlan {
+
+    private final int rows;
+    private final int folds;
+    /**
+     * Per repetition, the rows ordered by fold.
+     */
+    private final int[][] order;
+    /**
+     * Per repetition, the start of every fold in {@link #order} followed by
+     * the number of rows.
+     */
+    private final int[][] bounds;
+
+    private FoldPlan(int rows, int folds, int[][] assignments) {
+        this.rows = rows;
+        this.folds = folds;
+        this.order = new int[assignments.length][];
+        this.bounds = new int[assignments.length][];
+        for (int repeat = 0; repeat < assignments.length; repeat++) {
+            // Counting sort of the rows by fold keeps the rows of a fold in order
+            int[] start = new int[folds + 1];
+            for (int fold : assignments[repeat]) {
+                start[fold + 1]++;
+            }
+            for (int fold = 0; fold < folds; fold++) {
+                start[fold + 1] += start[fold];
+            }
+            int[] next = Arrays.copyOf(start, folds);
+            int[] sorted = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                sorted[next[assignments[repeat][row]]++] = row;
+            }
+            order[repeat] = sorted;
+            bounds[repeat] = start;
+        }
+    }
+
+    /**
+     * @param rows the number of rows of the dataset
+     * @param folds the number of folds; more folds than rows are taken as
+     * leave-one-out
+     * @param repeats the number of repetitions
+     * @param seed seed of the shuffling of the repetitions after the first
+     * @return the plan
+     * @throws IllegalArgumentException if there are no folds or repetitions
+     */
+    public static FoldPlan of(int rows, int folds, int repeats, long seed) {
+        if (folds < 1) {
+            throw new IllegalArgumentException("Cross validation needs at least one fold, got " + folds);
+        }
+        if (repeats < 1) {
+            throw new IllegalArgumentException("Cross validation needs at least one repetition, got " + repeats);
+        }
+        int k = Math.max(1, Math.min(folds, rows));
+        int[][] assignments = new int[repeats][];
+        int[] blocks = blocks(rows, k);
+        assignments[0] = blocks;
+        Random random = new Random(seed);
+        for (int repeat = 1; repeat < repeats; repeat++) {
+            int[] shuffled = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                int j = random.nextInt(i + 1);
+                shuffled[i] = shuffled[j];
+                shuffled[j] = i;
+            }
+            int[] assignment = new int[rows];
+            for (int i = 0; i < rows; i++) {
+                assignment[shuffled[i]] = blocks[i];
+            }
+            assignments[repeat] = assignment;
+        }
+        return new FoldPlan(rows, k, assignments);
+    }
+
+    /**
+     * @return a single repetition with a fold per row
+     */
+    public static FoldPlan leaveOneOut(int rows) {
+        return of(rows, Math.max(1, rows), 1, 0L);
+    }
+
+    /**
+     * Fold of every row for contiguous blocks of rows, the first
+     * <code>rows % folds</code> of them one row larger.
+     */
+    private static int[] blocks(int rows, int folds) {
+        int[] assignment = new int[rows];
+        int minRows = rows / folds;
+        int extras = rows % folds;
+        int row = 0;
+        for (int fold = 0; fold < folds; fold++) {
+            int end = row + minRows + (fold < extras ? 1 : 0);
+            Arrays.fill(assignment, row, end, fold);
+            row = end;
+        }
+        return assignment;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getFolds() {
+        return folds;
+    }
+
+    public int getRepeats() {
+        return order.length;
+    }
+
+    /**
+     * @return the number of train and test splits, repetitions times folds
+     */
+    public int size() {
+        return order.length * folds;
+    }
+
+    /**
+     * @param split a split, from 0 up to {@link #size()} (exclusive); the
+     * splits of a repetition are consecutive
+     * @return the rows of the test set of the split, in order
+     */
+    public int[] testRows(int split) {
+        int[] start = bounds[split / folds];
+        int fold = split % folds;
+        return Arrays.copyOfRange(order[split / folds], start[fold], start[fold + 1]);
+    }
+
+    /**
+     * @param split a split, see {@link #testRows(int)}
+     * @return the rows of all other folds of the repetition, in fold order
+     */
+    public int[] trainingRows(int split) {
+        int[] sorted = order[split / folds];
+        int[] start = bounds[split / folds];
+        int fold = split % folds;
+        int[] training = new int[rows - (start[fold + 1] - start[fold])];
+        System.arraycopy(sorted, 0, training, 0, start[fold]);
+        System.arraycopy(sorted, start[fold + 1], training, start[fold], rows - start[fold + 1]);
+        return training;
+    }
+
+    /**
+     * @return a view of the test set of the split
+     */
+    public Dataset test(Dataset dataset, int split) {
+        return DatasetFactory.copy(dataset, testRows(split));
+    }
+
+    /**
+     * @return a view of the training set of the split
+     */
+    public Dataset training(Dataset dataset, int split) {
+        return DatasetFactory.copy(dataset, trainingRows(split));
+    }
+
+}
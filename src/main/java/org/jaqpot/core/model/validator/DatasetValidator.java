@@ -0,0 +1,243 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.validator;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.FeatureDictionary;
+
+/**
+ * Validates the rows of a dataset against its features in a single pass.
+ * Rows are fed one at a time, so validation can run while rows are being
+ * read. The keys of every row are walked together with the sorted feature
+ * URIs, so no per-row collections are allocated. While validating, the
+ * totals of the dataset are counted and the type of the values of every
+ * feature is detected.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class DatasetValidator {
+
+    public enum ColumnType {
+        EMPTY, NUMERIC, STRING, BOOLEAN, OTHER, MIXED
+    }
+
+    /**
+     * Problems kept for the error message; further problems are only
+     * counted.
+     */
+    public static final int MAX_PROBLEMS = 20;
+
+    private static final int NUMBER = 1;
+    private static final int TEXT = 2;
+    private static final int LOGICAL = 4;
+    private static final int STRUCTURED = 8;
+
+    private final FeatureDictionary features;
+    private final int[] kinds;
+    private final List<String> problems = new ArrayList<>();
+    private int problemCount;
+    private int rows;
+    private int columns;
+
+    /**
+     * @param features the URIs of the features of the dataset
+     */
+    public DatasetValidator(Collection<String> features) {
+        this.features = FeatureDictionary.of(features);
+        this.kinds = new int[this.features.size()];
+    }
+
+    /**
+     * Validates the next row.
+     *
+     * @param dataEntry the row
+     * @return true if the row has a value for exactly the features of the
+     * dataset
+     */
+    public boolean accept(DataEntry dataEntry) {
+        int row = rows++;
+        if (dataEntry == null || dataEntry.getValues() == null) {
+            problem(row, dataEntry, "has no values");
+            return false;
+        }
+        int size = features.size();
+        int column = 0;
+        int width = 0;
+        int missing = 0;
+        int unknown = 0;
+        String firstMissing = null;
+        String firstUnknown = null;
+        for (Map.Entry<String, Object> value : dataEntry.getValues().entrySet()) {
+            String key = value.getKey();
+            width++;
+            while (column < size && features.uri(column).compareTo(key) < 0) {
+                if (missing++ == 0) {
+                    firstMissing = features.uri(column);
+                }
+                column++;
+            }
+            if (column < size && features.uri(column).equals(key)) {
+                kinds[column] |= kindOf(value.getValue());
+                column++;
+            } else if (unknown++ == 0) {
+                firstUnknown = key;
+            }
+        }
+        if (column < size) {
+            if (missing == 0) {
+                firstMissing = features.uri(column);
+            }
+            missing += size - column;
+        }
+        columns = Math.max(columns, width);
+        if (missing == 0 && unknown == 0) {
+            return true;
+        }
+        StringBuilder message = new StringBuilder();
+        if (missing > 0) {
+            message.append("lacks ").append(missing).append(" feature(s), e.g. ").append(firstMissing);
+        }
+        if (unknown > 0) {
+            message.append(missing > 0 ? " and " : "")
+                    .append("has ").append(unknown).append(" unknown feature(s), e.g. ").append(firstUnknown);
+        }
+        problem(row, dataEntry, message.toString());
+        return false;
+    }
+
+    /**
+     * @return the sorted URIs of the features rows are checked against
+     */
+    public List<String> getFeatures() {
+        return features.uris();
+    }
+
+    public boolean isValid() {
+        return problemCount == 0;
+    }
+
+    /**
+     * @return up to {@link #MAX_PROBLEMS} problems, each naming its row
+     */
+    public List<String> getProblems() {
+        return Collections.unmodifiableList(problems);
+    }
+
+    public int getProblemCount() {
+        return problemCount;
+    }
+
+    /**
+     * @return the number of rows validated so far
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * @return the number of values of the widest row validated so far
+     */
+    public int getColumns() {
+        return columns;
+    }
+
+    /**
+     * @return the type of the non null values of every feature, in the order
+     * of the feature URIs
+     */
+    public Map<String, ColumnType> getColumnTypes() {
+        Map<String, ColumnType> types = new LinkedHashMap<>();
+        for (int column = 0; column < kinds.length; column++) {
+            types.put(features.uri(column), typeOf(kinds[column]));
+        }
+        return types;
+    }
+
+    /**
+     * @throws IllegalArgumentException listing the problems found, if any
+     */
+    public void check() throws IllegalArgumentException {
+        if (isValid()) {
+            return;
+        }
+        StringBuilder message = new StringBuilder("Invalid Dataset - DataEntry URIs do not match with Feature URIs. ");
+        message.append(String.join("; ", problems));
+        if (problemCount > problems.size()) {
+            message.append("; and ").append(problemCount - problems.size()).append(" more row(s)");
+        }
+        throw new IllegalArgumentException(message.toString());
+    }
+
+    private void problem(int row, DataEntry dataEntry, String message) {
+        if (problemCount++ < MAX_PROBLEMS) {
+            problems.add("Row " + row
+                    + (dataEntry != null && dataEntry.getCompound() != null ? " (" + dataEntry.getCompound() + ")" : "")
+                    + " " + message);
+        }
+    }
+
+    private static int kindOf(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof Number) {
+            return NUMBER;
+        } else if (value instanceof String) {
+            return TEXT;
+        } else if (value instanceof Boolean) {
+            return LOGICAL;
+        }
+        return STRUCTURED;
+    }
+
+    private static ColumnType typeOf(int kind) {
+        switch (kind) {
+            case 0:
+                return ColumnType.EMPTY;
+            case NUMBER:
+                return ColumnType.NUMERIC;
+            case TEXT:
+                return ColumnType.STRING;
+            case LOGICAL:
+                return ColumnType.BOOLEAN;
+            case STRUCTURED:
+                return ColumnType.OTHER;
+            default:
+                return ColumnType.MIXED;
+        }
+    }
+
+}
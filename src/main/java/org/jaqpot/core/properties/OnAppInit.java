@@ -58,6 +58,7 @@ import org.jaqpot.core.data.DatasetHandler;
 import org.jaqpot.core.data.UserHandler;
 import org.jaqpot.core.model.Algorithm;
 import org.jaqpot.core.model.User;
+import org.jaqpot.core.service.data.QuotaService;
 import org.jaqpot.core.service.resource.DatasetResource;
 
 /**
@@ -83,6 +84,9 @@ public class OnAppInit {
     @Inject
     DatasetHandler datasetHandler;
 
+    @Inject
+    QuotaService quotaService;
+
     @PostConstruct
     void init() {
 
@@ -96,17 +100,19 @@ public class OnAppInit {
         if (algo == null) {
             List<Algorithm> algos = this.readAlgorithms();
 
-            algos.forEach((alg) -> {
-                algoHandler.create(alg);
-            });
+            algoHandler.createAll(algos);
         }
 
         Long counted = datasetHandler.countAll();
 
         if (counted.intValue() == 0) {
             this.restoreDatasets();
+        } else {
+            datasetHandler.migrate();
         }
 
+        quotaService.reconcileCountersAsync();
+
     }
 
     public User firstUser() {
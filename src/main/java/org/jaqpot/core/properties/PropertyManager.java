@@ -72,6 +72,18 @@ public class PropertyManager {
         JAQPOT_DB_NAME("jaqpot.db.name", "db", "production"),
         JAQPOT_DB_HOST("jaqpot.db.host", "db", "localhost"),
         JAQPOT_DB_PORT("jaqpot.db.port", "db", "22012"),
+        JAQPOT_DB_BATCH_SIZE("jaqpot.db.batchsize", "db", "100"),
+        JAQPOT_DB_DATASET_COMPACT("jaqpot.db.dataset.compact", "db", "false"),
+        JAQPOT_DB_POOL_MAX("jaqpot.db.pool.max", "db", "100"),
+        JAQPOT_DB_POOL_MIN("jaqpot.db.pool.min", "db", "0"),
+        JAQPOT_DB_POOL_WAIT_QUEUE("jaqpot.db.pool.waitqueue", "db", "5"),
+        JAQPOT_DB_POOL_MAX_WAIT("jaqpot.db.pool.maxwait", "db", "120000"),
+        JAQPOT_DB_CONNECT_TIMEOUT("jaqpot.db.timeout.connect", "db", "10000"),
+        JAQPOT_DB_SOCKET_TIMEOUT("jaqpot.db.timeout.socket", "db", "0"),
+        JAQPOT_DB_WRITE_CONCERN("jaqpot.db.writeconcern", "db", "ACKNOWLEDGED"),
+        JAQPOT_DB_WRITE_CONCERN_COLLECTIONS("jaqpot.db.writeconcern.collections", "db", ""),
+        JAQPOT_DB_READ_PREFERENCE("jaqpot.db.readpreference", "db", "primary"),
+        JAQPOT_DB_READ_PREFERENCE_COLLECTIONS("jaqpot.db.readpreference.collections", "db", ""),
         JAQPOT_MAIL_SEND("jaqpot.mail.dosend", "mail", "false"),
         JAQPOT_MAIL_MANDRILL_API_KEY("jaqpot.mail.mandrillApiKey", "mail", ""),
         JAQPOT_MAIL_FROM_MAIL("jaqpot.mail.fromMail", "mail", ""),
@@ -84,6 +96,17 @@ public class PropertyManager {
         JAQPOT_PYTHON_ALGORITHMS_HOST("python.algorithms.host", "config", "http://localhost:8080/"),
         JAQPOT_EXPERIMENTAL_DESIGNS_HOST("exp.design.host", "config", "http://localhost:8080/"),
         JAQPOT_BASE_ALGORITHMS("jaqpot.base.algorithms", "config", "http://localhost:8080/algorithms/service/"),
+        JAQPOT_JPDI_ARROW("jaqpot.jpdi.arrow", "config", "false"),
+        JAQPOT_VALIDATION_PARALLELISM("jaqpot.validation.parallelism", "config", "4"),
+        JAQPOT_JPDI_HOST_PARALLELISM("jaqpot.jpdi.host.parallelism", "config", "16"),
+        JAQPOT_JPDI_POOL_MAX("jaqpot.jpdi.pool.max", "config", "200"),
+        JAQPOT_JPDI_POOL_ROUTE("jaqpot.jpdi.pool.route", "config", "50"),
+        JAQPOT_JPDI_CONNECT_TIMEOUT("jaqpot.jpdi.timeout.connect", "config", "10000"),
+        JAQPOT_JPDI_SOCKET_TIMEOUT("jaqpot.jpdi.timeout.socket", "config", "0"),
+        JAQPOT_JPDI_REQUEST_TIMEOUT("jaqpot.jpdi.timeout.request", "config", "60000"),
+        JAQPOT_JPDI_KEEP_ALIVE("jaqpot.jpdi.keepalive", "config", "30000"),
+        JAQPOT_JPDI_GZIP("jaqpot.jpdi.gzip", "config", "false"),
+        JAQPOT_JPDI_BUFFER("jaqpot.jpdi.buffer", "config", "1048576"),
         JAQPOT_READACROSS("jaqpot.readacross", "config", "http://147.102.82.32:8095/"),
         JAQPOT_QPRF("jaqpot.qprf", "config", "http://147.102.82.32:8094/pws/qprf"),
         PKSIM_BASE("pksim.base", "config", "http://147.102.86.129:9999/"),
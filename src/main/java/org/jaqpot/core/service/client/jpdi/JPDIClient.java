@@ -35,7 +35,9 @@
 package org.jaqpot.core.service.client.jpdi;
 
 import java.io.Closeable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
 import org.jaqpot.core.model.Algorithm;
 import org.jaqpot.core.model.MetaInfo;
@@ -52,13 +54,27 @@ public interface JPDIClient extends Closeable {
 
     Future<Dataset> calculate(byte[] file, Algorithm algorithm, Map<String, Object> parameters, String taskId);
 
-    Future<Model> train(Dataset dataset, Algorithm algorithm, Map<String, Object> parameters, String predictionFeature, MetaInfo modelMeta, String taskId);
+    /**
+     * @return the model, completed by the I/O thread of the client once the
+     * algorithm service answers
+     */
+    CompletableFuture<Model> train(Dataset dataset, Algorithm algorithm, Map<String, Object> parameters, String predictionFeature, MetaInfo modelMeta, String taskId);
 
-    Future<Dataset> predict(Dataset dataset, Model model, MetaInfo datasetMeta, String taskId);
+    /**
+     * @return the predictions, completed by the I/O thread of the client
+     * once the algorithm service answers
+     */
+    CompletableFuture<Dataset> predict(Dataset dataset, Model model, MetaInfo datasetMeta, String taskId);
 
     Future<Dataset> transform(Dataset dataset, Algorithm algorithm, Map<String, Object> parameters, String predictionFeature, MetaInfo datasetMeta, String taskId);
 
     Future<Report> report(Dataset dataset, Algorithm algorithm, Map<String, Object> parameters, MetaInfo reportMeta, String taskId);
 
     boolean cancel(String taskId);
+
+    /**
+     * @return metrics of the requests to every algorithm host, see
+     * {@link JPDIMetrics}
+     */
+    List<Map<String, Object>> statistics();
 }
@@ -7,9 +7,13 @@ package org.jaqpot.core.service.client.jpdi;
 
 import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
 import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
 import org.jaqpot.core.annotations.Jackson;
 import org.jaqpot.core.data.FeatureHandler;
 import org.jaqpot.core.data.serialize.JSONSerializer;
@@ -55,9 +59,38 @@ public class JPDIClientFactory {
 
     @PostConstruct
     public void init() {
+        int connectTimeout = intProperty(PropertyManager.PropertyType.JAQPOT_JPDI_CONNECT_TIMEOUT);
+        int socketTimeout = intProperty(PropertyManager.PropertyType.JAQPOT_JPDI_SOCKET_TIMEOUT);
+        long keepAlive = intProperty(PropertyManager.PropertyType.JAQPOT_JPDI_KEEP_ALIVE);
+        // Keep connections alive as long as the service allows, or for the
+        // configured time if it does not say
+        ConnectionKeepAliveStrategy keepAliveStrategy = (response, context) -> {
+            long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+            return duration > 0 ? duration : keepAlive;
+        };
         CloseableHttpAsyncClient asyncClient = HttpAsyncClientBuilder.create()
+                .setMaxConnTotal(intProperty(PropertyManager.PropertyType.JAQPOT_JPDI_POOL_MAX))
+                .setMaxConnPerRoute(intProperty(PropertyManager.PropertyType.JAQPOT_JPDI_POOL_ROUTE))
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(connectTimeout)
+                        .setSocketTimeout(socketTimeout)
+                        .setConnectionRequestTimeout(intProperty(PropertyManager.PropertyType.JAQPOT_JPDI_REQUEST_TIMEOUT))
+                        .build())
+                .setDefaultIOReactorConfig(IOReactorConfig.custom()
+                        .setConnectTimeout(connectTimeout)
+                        .setSoTimeout(socketTimeout)
+                        .setSoKeepAlive(true)
+                        .build())
+                .setKeepAliveStrategy(keepAliveStrategy)
                 .build();
-        this.client = new JPDIClientImpl(asyncClient, serializer, featureHandler, propertyManager.getProperty(PropertyManager.PropertyType.JAQPOT_BASE_SERVICE));
+        this.client = new JPDIClientImpl(asyncClient, serializer, featureHandler, propertyManager.getProperty(PropertyManager.PropertyType.JAQPOT_BASE_SERVICE),
+                Boolean.parseBoolean(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_JPDI_ARROW)),
+                Boolean.parseBoolean(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_JPDI_GZIP)),
+                Long.parseLong(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_JPDI_BUFFER).trim()));
+    }
+
+    private int intProperty(PropertyManager.PropertyType propertyType) {
+        return Integer.parseInt(propertyManager.getPropertyOrDefault(propertyType).trim());
     }
 
     @PreDestroy
@@ -39,14 +39,18 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.concurrent.FutureCallback;
 import org.apache.http.entity.ContentType;
-import org.apache.http.entity.InputStreamEntity;
 import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.nio.client.methods.HttpAsyncMethods;
 import org.jaqpot.core.data.FeatureHandler;
+import org.jaqpot.core.data.serialize.ArrowDatasetReader;
+import org.jaqpot.core.data.serialize.ArrowDatasetWriter;
 import org.jaqpot.core.data.serialize.JSONSerializer;
+import org.jaqpot.core.db.entitymanager.JaqpotBulkWriteException;
 import org.jaqpot.core.model.*;
 import org.jaqpot.core.model.builder.MetaInfoBuilder;
-import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.ColumnarData;
 import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureDictionary;
 import org.jaqpot.core.model.dto.dataset.FeatureInfo;
 import org.jaqpot.core.model.dto.jpdi.*;
 import org.jaqpot.core.model.factory.DatasetFactory;
@@ -64,6 +68,9 @@ import java.util.concurrent.Future;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 import org.apache.http.Header;
 
 /**
@@ -74,20 +81,75 @@ import org.apache.http.Header;
 public class JPDIClientImpl implements JPDIClient {
     
     private static final Logger LOG = Logger.getLogger(JPDIClientImpl.class.getName());
+
+    /**
+     * Schema metadata key of the JSON of a request, without its dataset, when
+     * the request is sent as an Arrow stream.
+     */
+    private static final String REQUEST = "jaqpot.request";
+
+    /**
+     * Ontological class of the algorithms whose training and prediction
+     * services accept datasets as Arrow streams.
+     */
+    public static final String ARROW_STREAM = "ot:ArrowStream";
+
+    private static final ContentType ARROW = ContentType.create(ArrowDatasetWriter.MEDIA_TYPE);
+
+    private static final long DEFAULT_BUFFER_LIMIT = 1 << 20;
+
     private final CloseableHttpAsyncClient client;
     private final JSONSerializer serializer;
     private final FeatureHandler featureHandler;
     private final String baseURI;
+    private final boolean arrow;
+    private final boolean gzip;
+    private final long bufferLimit;
+    private final JPDIMetrics metrics = new JPDIMetrics();
     private final ROG randomStringGenerator;
     
-    private final Map<String, Future> futureMap;
+    /**
+     * Requests in flight per task; a task may have several, e.g. the folds
+     * of a cross validation.
+     */
+    private final Map<String, Set<Future>> futureMap;
     
     public JPDIClientImpl(CloseableHttpAsyncClient client, JSONSerializer serializer, FeatureHandler featureHandler, String baseURI) {
+        this(client, serializer, featureHandler, baseURI, false);
+    }
+
+    /**
+     * @param arrow whether to send datasets to the training and prediction
+     * services of algorithms of the class {@link #ARROW_STREAM} as Arrow
+     * streams, see {@link ArrowDatasetWriter}; other algorithms are always
+     * sent JSON
+     */
+    public JPDIClientImpl(CloseableHttpAsyncClient client, JSONSerializer serializer, FeatureHandler featureHandler, String baseURI, boolean arrow) {
+        this(client, serializer, featureHandler, baseURI, arrow, false);
+    }
+
+    /**
+     * @param gzip whether to gzip the bodies of requests and accept gzipped
+     * responses
+     */
+    public JPDIClientImpl(CloseableHttpAsyncClient client, JSONSerializer serializer, FeatureHandler featureHandler, String baseURI, boolean arrow, boolean gzip) {
+        this(client, serializer, featureHandler, baseURI, arrow, gzip, DEFAULT_BUFFER_LIMIT);
+    }
+
+    /**
+     * @param bufferLimit bytes of a request body buffered ahead of the
+     * connection before the caller writing it waits, see
+     * {@link RequestBodyProducer}
+     */
+    public JPDIClientImpl(CloseableHttpAsyncClient client, JSONSerializer serializer, FeatureHandler featureHandler, String baseURI, boolean arrow, boolean gzip, long bufferLimit) {
         this.client = client;
         client.start();
         this.serializer = serializer;
         this.featureHandler = featureHandler;
         this.baseURI = baseURI;
+        this.arrow = arrow;
+        this.gzip = gzip;
+        this.bufferLimit = bufferLimit;
         this.futureMap = new ConcurrentHashMap<>(20);
         this.randomStringGenerator = new ROG(true);
     }
@@ -104,28 +166,17 @@ public class JPDIClientImpl implements JPDIClient {
         calculateRequest.setParameters(parameters);
 
 
-        PipedOutputStream out = new PipedOutputStream();
-        PipedInputStream in;
-        try {
-            in = new PipedInputStream(out);
-        } catch (IOException ex) {
-            futureDataset.completeExceptionally(ex);
-            return futureDataset;
-        }
-        InputStreamEntity entity = new InputStreamEntity(in, ContentType.APPLICATION_JSON);
-        entity.setChunked(true);
-
-        request.setEntity(entity);
+        RequestBodyProducer body = new RequestBodyProducer(request, ContentType.APPLICATION_JSON, bufferLimit);
         request.addHeader("Accept", "application/json");
 
-        Future futureResponse = client.execute(request, new FutureCallback<HttpResponse>() {
+        JPDIMetrics.Call call = prepare(request);
+        Future futureResponse = client.execute(body, HttpAsyncMethods.createConsumer(), new FutureCallback<HttpResponse>() {
 
             @Override
             public void completed(final HttpResponse response) {
-                futureMap.remove(taskId);
                 int status = response.getStatusLine().getStatusCode();
                 try {
-                    InputStream responseStream = response.getEntity().getContent();
+                    InputStream responseStream = content(response, call);
 
                     switch (status) {
                         case 200:
@@ -161,30 +212,23 @@ public class JPDIClientImpl implements JPDIClient {
 
             @Override
             public void failed(final Exception ex) {
-                futureMap.remove(taskId);
                 futureDataset.completeExceptionally(ex);
             }
 
             @Override
             public void cancelled() {
-                futureMap.remove(taskId);
                 futureDataset.cancel(true);
             }
 
         });
-        serializer.write(calculateRequest, out);
-        try {
-            out.close();
-        } catch (IOException ex) {
-            futureDataset.completeExceptionally(ex);
-        }
+        track(taskId, futureDataset, futureResponse, call);
+        send(body, call, out -> serializer.write(calculateRequest, out), futureDataset);
 
-        futureMap.put(taskId, futureResponse);
         return futureDataset;
     }
 
     @Override
-    public Future<Model> train(Dataset dataset, Algorithm algorithm, Map<String, Object> parameters, String predictionFeature, MetaInfo modelMeta, String taskId) {
+    public CompletableFuture<Model> train(Dataset dataset, Algorithm algorithm, Map<String, Object> parameters, String predictionFeature, MetaInfo modelMeta, String taskId) {
         
         CompletableFuture<Model> futureModel = new CompletableFuture<>();
         
@@ -197,28 +241,18 @@ public class JPDIClientImpl implements JPDIClient {
 
         final HttpPost request = new HttpPost(algorithm.getTrainingService());
         
-        PipedOutputStream out = new PipedOutputStream();
-        PipedInputStream in;
-        try {
-            in = new PipedInputStream(out);
-        } catch (IOException ex) {
-            futureModel.completeExceptionally(ex);
-            return futureModel;
-        }
-        InputStreamEntity entity = new InputStreamEntity(in, ContentType.APPLICATION_JSON);
-        entity.setChunked(true);
-        
-        request.setEntity(entity);
+        boolean sendArrow = sendsArrow(algorithm) && dataset != null;
+        RequestBodyProducer body = new RequestBodyProducer(request, sendArrow ? ARROW : ContentType.APPLICATION_JSON, bufferLimit);
         request.addHeader("Accept", "application/json");
         
-        Future futureResponse = client.execute(request, new FutureCallback<HttpResponse>() {
+        JPDIMetrics.Call call = prepare(request);
+        Future futureResponse = client.execute(body, HttpAsyncMethods.createConsumer(), new FutureCallback<HttpResponse>() {
             
             @Override
             public void completed(final HttpResponse response) {
-                futureMap.remove(taskId);
                 int status = response.getStatusLine().getStatusCode();
                 try {
-                    InputStream responseStream = response.getEntity().getContent();
+                    InputStream responseStream = content(response, call);
                     
                     switch (status) {
                         case 200:
@@ -249,8 +283,12 @@ public class JPDIClientImpl implements JPDIClient {
                             model.setMeta(modelMeta);
                             
                             List<String> predictedFeatures = new ArrayList<>();
+                            Map<String, Feature> newFeatures = new LinkedHashMap<>();
                             for (String featureTitle : trainingResponse.getPredictedFeatures()) {
-                                Feature predictionFeatureResource = featureHandler.findByTitleAndSource(featureTitle, "algorithm/" + algorithm.getId());
+                                Feature predictionFeatureResource = newFeatures.get(featureTitle);
+                                if (predictionFeatureResource == null) {
+                                    predictionFeatureResource = featureHandler.findByTitleAndSource(featureTitle, "algorithm/" + algorithm.getId());
+                                }
                                 if (predictionFeatureResource == null) {
                                     // Create the prediction features (POST /feature)
                                     String predFeatID = randomStringGenerator.nextString(12);
@@ -266,11 +304,14 @@ public class JPDIClientImpl implements JPDIClient {
                                             .addSeeAlso(predictionFeature)
                                             .addCreators(algorithm.getMeta().getCreators())
                                             .build());
-                                    /* Create feature */
-                                    featureHandler.create(predictionFeatureResource);
+                                    newFeatures.put(featureTitle, predictionFeatureResource);
                                 }
                                 predictedFeatures.add(baseURI + "feature/" + predictionFeatureResource.getId());
                             }
+                            /* Create all new features at once */
+                            if (!newFeatures.isEmpty()) {
+                                featureHandler.createAll(newFeatures.values());
+                            }
                             model.setPredictedFeatures(predictedFeatures);
                             futureModel.complete(model);
                             break;
@@ -289,114 +330,124 @@ public class JPDIClientImpl implements JPDIClient {
                                     .lines().collect(Collectors.joining("\n"));
                             futureModel.completeExceptionally(new InternalServerErrorException(message));
                     }
-                } catch (IOException | UnsupportedOperationException ex) {
+                } catch (IOException | UnsupportedOperationException | JaqpotBulkWriteException ex) {
                     futureModel.completeExceptionally(ex);
                 }
             }
             
             @Override
             public void failed(final Exception ex) {
-                futureMap.remove(taskId);
                 futureModel.completeExceptionally(ex);
             }
             
             @Override
             public void cancelled() {
-                futureMap.remove(taskId);
                 futureModel.cancel(true);
             }
             
         });
+        track(taskId, futureModel, futureResponse, call);
         
-        serializer.write(trainingRequest, out);
-        try {
-            out.close();
-        } catch (IOException ex) {
-            futureModel.completeExceptionally(ex);
-        }
+        send(body, call, out -> {
+            if (sendArrow) {
+                TrainingRequest header = new TrainingRequest();
+                header.setParameters(trainingRequest.getParameters());
+                header.setPredictionFeature(trainingRequest.getPredictionFeature());
+                writeArrow(dataset, header, out);
+            } else {
+                serializer.write(trainingRequest, out);
+            }
+        }, futureModel);
         
-        futureMap.put(taskId, futureResponse);
         return futureModel;
     }
     
     @Override
-    public Future<Dataset> predict(Dataset inputDataset, Model model, MetaInfo datasetMeta, String taskId) {
+    public CompletableFuture<Dataset> predict(Dataset inputDataset, Model model, MetaInfo datasetMeta, String taskId) {
         
         CompletableFuture<Dataset> futureDataset = new CompletableFuture<>();
         
         Dataset dataset = DatasetFactory.copy(inputDataset);
         Dataset tempWithDependentFeatures = DatasetFactory.copy(dataset, new HashSet<>(model.getDependentFeatures()));
         
-        dataset.getDataEntry().parallelStream()
-                .forEach(dataEntry -> {
-                    dataEntry.getValues().keySet().retainAll(model.getIndependentFeatures());
-                });
+        dataset.setColumnar(dataset.toColumnar().selectColumns(new HashSet<>(model.getIndependentFeatures())));
         PredictionRequest predictionRequest = new PredictionRequest();
         predictionRequest.setDataset(dataset);
         predictionRequest.setRawModel(model.getActualModel());
         predictionRequest.setAdditionalInfo(model.getAdditionalInfo());
         
         final HttpPost request = new HttpPost(model.getAlgorithm().getPredictionService());
-        request.addHeader("Accept", "application/json");
-        request.addHeader("Content-Type", "application/json");
+        boolean sendArrow = sendsArrow(model.getAlgorithm());
+        request.addHeader("Accept", sendArrow ? ArrowDatasetWriter.MEDIA_TYPE + ", application/json" : "application/json");
+        request.addHeader("Content-Type", sendArrow ? ArrowDatasetWriter.MEDIA_TYPE : "application/json");
         
-        PipedOutputStream out = new PipedOutputStream();
-        PipedInputStream in;
-        try {
-            in = new PipedInputStream(out);
-        } catch (IOException ex) {
-            futureDataset.completeExceptionally(ex);
-            return futureDataset;
-        }
-        request.setEntity(new InputStreamEntity(in, ContentType.APPLICATION_JSON));
+        RequestBodyProducer body = new RequestBodyProducer(request, sendArrow ? ARROW : ContentType.APPLICATION_JSON, bufferLimit);
         
-        Future futureResponse = client.execute(request, new FutureCallback<HttpResponse>() {
+        JPDIMetrics.Call call = prepare(request);
+        Future futureResponse = client.execute(body, HttpAsyncMethods.createConsumer(), new FutureCallback<HttpResponse>() {
             
             @Override
             public void completed(final HttpResponse response) {
-                futureMap.remove(taskId);
                 int status = response.getStatusLine().getStatusCode();
                 try {
-                    InputStream responseStream = response.getEntity().getContent();
+                    InputStream responseStream = content(response, call);
                     
                     switch (status) {
                         case 200:
                         case 201:
                             try {
-                                PredictionResponse predictionResponse = serializer.parse(responseStream, PredictionResponse.class);
+                                Header contentType = response.getEntity().getContentType();
+                                PredictionResponse predictionResponse = contentType != null && contentType.getValue().startsWith(ArrowDatasetWriter.MEDIA_TYPE)
+                                        ? readPredictions(responseStream)
+                                        : serializer.parse(responseStream, PredictionResponse.class);
                                 
                                 List<LinkedHashMap<String, Object>> predictions = predictionResponse.getPredictions();
                                 if (dataset.getDataEntry().isEmpty()) {
                                     DatasetFactory.addEmptyRows(dataset, predictions.size());
                                 }
-                                List<Feature> features = featureHandler.findBySource("algorithm/" + model.getAlgorithm().getId());
+                                Map<String, Feature> features = new HashMap<>();
+                                try (Stream<Feature> sourceFeatures = featureHandler.streamBySource("algorithm/" + model.getAlgorithm().getId(), Arrays.asList("_id", "meta.titles"))) {
+                                    sourceFeatures
+                                            .filter(f -> f.getMeta() != null && f.getMeta().getTitles() != null)
+                                            .forEach(f -> f.getMeta().getTitles().forEach(title -> features.putIfAbsent(title, f)));
+                                }
+                                boolean replaceValues = model.getAlgorithm().getOntologicalClasses().contains("ot:Scaling")
+                                        || model.getAlgorithm().getOntologicalClasses().contains("ot:Transformation");
+                                if (replaceValues) {
+                                    dataset.getFeatures().clear();
+                                }
+                                // One URI and one FeatureInfo per predicted feature, not per row
+                                Map<String, String> featureURIs = new HashMap<>();
+                                ColumnarData predicted = ColumnarData.create(Collections.emptySet(), dataset.getDataEntry().size());
                                 IntStream.range(0, dataset.getDataEntry().size())
                                         // .parallel()
                                         .forEach(i -> {
                                             Map<String, Object> row = predictions.get(i);
-                                            DataEntry dataEntry = dataset.getDataEntry().get(i);
-                                            if (model.getAlgorithm().getOntologicalClasses().contains("ot:Scaling")
-                                                    || model.getAlgorithm().getOntologicalClasses().contains("ot:Transformation")) {
-                                                dataEntry.getValues().clear();
-                                                dataset.getFeatures().clear();
-                                            }
+                                            predicted.setCompound(i, dataset.getDataEntry().get(i).getCompound());
                                             row.entrySet()
                                                     .stream()
                                                     .forEach(entry -> {
 //                                                    Feature feature = featureHandler.findByTitleAndSource(entry.getKey(), "algorithm/" + model.getAlgorithm().getId());
-                                                        Feature feature = features.stream()
-                                                                .filter(f -> f.getMeta().getTitles().contains(entry.getKey()))
-                                                                .findFirst()
-                                                                .orElse(null);
+                                                        Feature feature = features.get(entry.getKey());
                                                         if (feature == null) {
                                                             return;
                                                         }
-                                                        dataEntry.getValues().put(baseURI + "feature/" + feature.getId(), entry.getValue());
-                                                        FeatureInfo featInfo = new FeatureInfo(baseURI + "feature/" + feature.getId(), feature.getMeta().getTitles().stream().findFirst().get());
-                                                        featInfo.setCategory(Dataset.DescriptorCategory.PREDICTED);
-                                                        dataset.getFeatures().add(featInfo);
+                                                        String featureURI = featureURIs.get(entry.getKey());
+                                                        if (featureURI == null) {
+                                                            featureURI = FeatureDictionary.intern(baseURI + "feature/" + feature.getId());
+                                                            featureURIs.put(entry.getKey(), featureURI);
+                                                            FeatureInfo featInfo = new FeatureInfo(featureURI, feature.getMeta().getTitles().stream().findFirst().get());
+                                                            featInfo.setCategory(Dataset.DescriptorCategory.PREDICTED);
+                                                            dataset.getFeatures().add(featInfo);
+                                                        }
+                                                        predicted.set(i, featureURI, entry.getValue());
                                                     });
                                         });
+                                if (replaceValues) {
+                                    dataset.setColumnar(predicted);
+                                } else {
+                                    dataset.toColumnar().putColumns(predicted);
+                                }
                                 dataset.setId(randomStringGenerator.nextString(20));
                                 dataset.setTotalRows(dataset.getDataEntry().size());
                                 dataset.setMeta(datasetMeta);
@@ -432,23 +483,25 @@ public class JPDIClientImpl implements JPDIClient {
             
             @Override
             public void failed(final Exception ex) {
-                futureMap.remove(taskId);
                 futureDataset.completeExceptionally(new InternalServerErrorException(ex));
             }
             
             @Override
             public void cancelled() {
-                futureMap.remove(taskId);
                 futureDataset.cancel(true);
             }
         });
-        serializer.write(predictionRequest, out);
-        try {
-            out.close();
-        } catch (IOException ex) {
-            futureDataset.completeExceptionally(ex);
-        }
-        futureMap.put(taskId, futureResponse);
+        track(taskId, futureDataset, futureResponse, call);
+        send(body, call, out -> {
+            if (sendArrow) {
+                PredictionRequest header = new PredictionRequest();
+                header.setRawModel(predictionRequest.getRawModel());
+                header.setAdditionalInfo(predictionRequest.getAdditionalInfo());
+                writeArrow(dataset, header, out);
+            } else {
+                serializer.write(predictionRequest, out);
+            }
+        }, futureDataset);
         return futureDataset;
     }
     
@@ -471,14 +524,127 @@ public class JPDIClientImpl implements JPDIClient {
     
     @Override
     public boolean cancel(String taskId) {
-        Future future = futureMap.get(taskId);
-        if (future != null && !future.isCancelled() && !future.isDone()) {
-            future.cancel(true);
-            return true;
+        Set<Future> futures = futureMap.remove(taskId);
+        boolean cancelled = false;
+        if (futures != null) {
+            for (Future future : futures) {
+                if (!future.isCancelled() && !future.isDone()) {
+                    future.cancel(true);
+                    cancelled = true;
+                }
+            }
         }
-        return false;
+        return cancelled;
+    }
+
+    @Override
+    public List<Map<String, Object>> statistics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * Keeps the request of a task until its result is complete, so that
+     * {@link #cancel(String)} can abort it, and then ends its measurement.
+     */
+    private void track(String taskId, CompletableFuture<?> result, Future response, JPDIMetrics.Call call) {
+        futureMap.computeIfAbsent(taskId, id -> ConcurrentHashMap.newKeySet()).add(response);
+        result.whenComplete((value, error) -> {
+            futureMap.computeIfPresent(taskId, (id, futures) -> {
+                futures.remove(response);
+                return futures.isEmpty() ? null : futures;
+            });
+            call.finish(error != null && !result.isCancelled());
+        });
+    }
+
+    /**
+     * Sets the content coding headers of a request and starts measuring it.
+     */
+    private JPDIMetrics.Call prepare(HttpPost request) {
+        if (gzip) {
+            request.addHeader("Content-Encoding", "gzip");
+            request.addHeader("Accept-Encoding", "gzip");
+        }
+        return metrics.start(request.getURI());
+    }
+
+    /**
+     * Writes the body of a request on the calling thread. If writing fails
+     * the exchange is aborted rather than sending a partial body.
+     */
+    private void send(RequestBodyProducer body, JPDIMetrics.Call call, BodyWriter writer, CompletableFuture<?> result) {
+        try {
+            try (OutputStream out = requestBody(body.stream(), call)) {
+                writer.write(out);
+            }
+            body.finish();
+        } catch (IOException | RuntimeException ex) {
+            body.abort(ex);
+            result.completeExceptionally(ex);
+        }
+    }
+
+    @FunctionalInterface
+    private interface BodyWriter {
+
+        void write(OutputStream out) throws IOException;
+
+    }
+
+    /**
+     * The stream the body of a request is written to, compressed if gzip is
+     * enabled; the bytes sent are counted after compression.
+     */
+    private OutputStream requestBody(OutputStream out, JPDIMetrics.Call call) throws IOException {
+        OutputStream sent = call.sending(out);
+        return gzip ? new GZIPOutputStream(sent, 1 << 16) : sent;
+    }
+
+    /**
+     * The body of a response, decompressed if the service sent it gzipped;
+     * the bytes received are counted before decompression.
+     */
+    private static InputStream content(HttpResponse response, JPDIMetrics.Call call) throws IOException {
+        InputStream received = call.receiving(response.getEntity().getContent());
+        Header encoding = response.getEntity().getContentEncoding();
+        return encoding != null && "gzip".equalsIgnoreCase(encoding.getValue().trim())
+                ? new GZIPInputStream(received)
+                : received;
     }
     
+    /**
+     * Whether datasets are sent to the services of an algorithm as Arrow
+     * streams: only if Arrow is enabled and the algorithm declares that its
+     * services accept them, so that services that only read JSON keep
+     * working.
+     */
+    private boolean sendsArrow(Algorithm algorithm) {
+        return arrow && algorithm != null && algorithm.getOntologicalClasses() != null
+                && algorithm.getOntologicalClasses().contains(ARROW_STREAM);
+    }
+
+    /**
+     * Writes a dataset as an Arrow stream, with the rest of the request it
+     * belongs to as JSON in the schema metadata.
+     */
+    private void writeArrow(Dataset dataset, Object request, OutputStream out) throws IOException {
+        Map<String, String> metadata = new HashMap<>();
+        metadata.put(REQUEST, serializer.write(request));
+        ArrowDatasetWriter.write(dataset, metadata, out);
+    }
+
+    /**
+     * Reads predictions returned as an Arrow stream, a column per predicted
+     * feature.
+     */
+    private static PredictionResponse readPredictions(InputStream in) throws IOException {
+        List<LinkedHashMap<String, Object>> predictions = new ArrayList<>();
+        ArrowDatasetReader.read(in, (header, dataEntry) -> predictions.add(new LinkedHashMap<>(dataEntry.getValues())));
+        PredictionResponse predictionResponse = new PredictionResponse();
+        predictionResponse.setPredictions(predictions);
+        return predictionResponse;
+    }
+
     @Override
     public void close() throws IOException {
         client.close();
@@ -0,0 +1,206 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it, in particular:
+ * (i)   JaqpotCoreServices
+ * (ii)  JaqpotAlgorithmServices
+ * (iii) JaqpotDB
+ * (iv)  JaqpotDomain
+ * (v)   JaqpotEAR
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.service.client.jpdi;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the requests to the algorithm services, per host: requests in
+ * flight, a histogram of their latency, bytes sent and received and errors.
+ * They are meant for sizing the fleet of algorithm services, so they are
+ * kept for the lifetime of the application.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class JPDIMetrics {
+
+    /**
+     * Upper bounds of the latency buckets in milliseconds; the last bucket
+     * has no upper bound.
+     */
+    private static final long[] BUCKETS = {50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000, 60000, 300000};
+
+    private final Map<String, HostMetrics> hosts = new ConcurrentHashMap<>();
+
+    /**
+     * Starts measuring a request.
+     *
+     * @param uri the URI of the algorithm service
+     * @return the measurement of the request, to be finished once
+     */
+    public Call start(URI uri) {
+        String host = uri.getAuthority() != null ? uri.getAuthority() : String.valueOf(uri);
+        HostMetrics metrics = hosts.computeIfAbsent(host, key -> new HostMetrics());
+        metrics.inFlight.incrementAndGet();
+        metrics.requests.increment();
+        return new Call(metrics);
+    }
+
+    /**
+     * @return the metrics of every host, ordered by host
+     */
+    public List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> snapshot = new ArrayList<>();
+        new TreeMap<>(hosts).forEach((host, metrics) -> {
+            Map<String, Object> statistics = new LinkedHashMap<>();
+            statistics.put("host", host);
+            statistics.put("inFlight", metrics.inFlight.get());
+            statistics.put("requests", metrics.requests.sum());
+            statistics.put("errors", metrics.errors.sum());
+            statistics.put("bytesSent", metrics.bytesSent.sum());
+            statistics.put("bytesReceived", metrics.bytesReceived.sum());
+            statistics.put("latencyTotalMillis", metrics.latencyMillis.sum());
+            Map<String, Long> histogram = new LinkedHashMap<>();
+            for (int bucket = 0; bucket <= BUCKETS.length; bucket++) {
+                histogram.put(bucket < BUCKETS.length ? "le" + BUCKETS[bucket] : "inf", metrics.latency.get(bucket));
+            }
+            statistics.put("latencyMillis", histogram);
+            snapshot.add(statistics);
+        });
+        return snapshot;
+    }
+
+    private static final class HostMetrics {
+
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LongAdder bytesSent = new LongAdder();
+        private final LongAdder bytesReceived = new LongAdder();
+        private final LongAdder latencyMillis = new LongAdder();
+        private final AtomicLongArray latency = new AtomicLongArray(BUCKETS.length + 1);
+
+    }
+
+    /**
+     * Measurement of a single request.
+     */
+    public static final class Call {
+
+        private final HostMetrics metrics;
+        private final long start = System.nanoTime();
+        private boolean finished;
+
+        private Call(HostMetrics metrics) {
+            this.metrics = metrics;
+        }
+
+        /**
+         * @return a stream counting the bytes written to the given one as
+         * sent
+         */
+        public OutputStream sending(OutputStream out) {
+            return new FilterOutputStream(out) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    metrics.bytesSent.increment();
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    metrics.bytesSent.add(len);
+                }
+            };
+        }
+
+        /**
+         * @return a stream counting the bytes read from the given one as
+         * received
+         */
+        public InputStream receiving(InputStream in) {
+            return new FilterInputStream(in) {
+                @Override
+                public int read() throws IOException {
+                    int b = in.read();
+                    if (b >= 0) {
+                        metrics.bytesReceived.increment();
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    int read = in.read(b, off, len);
+                    if (read > 0) {
+                        metrics.bytesReceived.add(read);
+                    }
+                    return read;
+                }
+            };
+        }
+
+        /**
+         * Ends the measurement; only the first call has an effect.
+         *
+         * @param error whether the request failed
+         */
+        public synchronized void finish(boolean error) {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            long millis = (System.nanoTime() - start) / 1_000_000;
+            metrics.inFlight.decrementAndGet();
+            metrics.latencyMillis.add(millis);
+            int bucket = 0;
+            while (bucket < BUCKETS.length && millis > BUCKETS[bucket]) {
+                bucket++;
+            }
+            metrics.latency.incrementAndGet(bucket);
+            if (error) {
+                metrics.errors.increment();
+            }
+        }
+
+    }
+
+}
@@ -0,0 +1,331 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it, in particular:
+ * (i)   JaqpotCoreServices
+ * (ii)  JaqpotAlgorithmServices
+ * (iii) JaqpotDB
+ * (iv)  JaqpotDomain
+ * (v)   JaqpotEAR
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.service.client.jpdi;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.utils.URIUtils;
+import org.apache.http.entity.BasicHttpEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.apache.http.nio.protocol.HttpAsyncRequestProducer;
+import org.apache.http.protocol.HttpContext;
+
+/**
+ * Produces the body of a request to an algorithm service as it is written.
+ * The caller writes the body to {@link #stream()} on its own thread in
+ * buffers taken from a pool of direct buffers; the I/O reactor writes the
+ * filled buffers to the connection whenever it can take them and suspends
+ * output while there are none, so it never waits for the writer.
+ * <p>
+ * The writer waits only when more than the configured limit of bytes is
+ * buffered ahead of the connection, and it fails instead of waiting forever
+ * once the exchange ends, e.g. when the request is cancelled or the service
+ * responds without reading the whole body.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+final class RequestBodyProducer implements HttpAsyncRequestProducer {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Buffers kept for reuse by later requests, 16 MB in total.
+     */
+    private static final BlockingQueue<ByteBuffer> POOL = new ArrayBlockingQueue<>(256);
+
+    private final HttpHost target;
+    private final HttpPost request;
+    private final long limit;
+    private final OutputStream stream = new BodyStream();
+
+    /**
+     * Filled buffers not yet written to the connection.
+     */
+    private final Deque<ByteBuffer> chunks = new ArrayDeque<>();
+    private long pending;
+    private boolean finished;
+    private IOException failure;
+    private IOControl ioctrl;
+
+    /**
+     * Buffer being filled by the writer; only the writer uses it.
+     */
+    private ByteBuffer current;
+
+    /**
+     * @param request the request, sent with a chunked body
+     * @param contentType the type of the body
+     * @param limit bytes buffered ahead of the connection before the writer
+     * waits; if not positive the writer never waits
+     */
+    RequestBodyProducer(HttpPost request, ContentType contentType, long limit) {
+        BasicHttpEntity entity = new BasicHttpEntity();
+        entity.setContentType(contentType.toString());
+        entity.setChunked(true);
+        request.setEntity(entity);
+        this.target = URIUtils.extractHost(request.getURI());
+        this.request = request;
+        this.limit = limit;
+    }
+
+    /**
+     * @return the stream the body is written to, by a single thread; closing
+     * it does not end the body, see {@link #finish()}
+     */
+    OutputStream stream() {
+        return stream;
+    }
+
+    /**
+     * Ends the body once everything written so far is sent.
+     *
+     * @throws IOException if the exchange has already ended
+     */
+    void finish() throws IOException {
+        stream.close();
+        IOControl control;
+        synchronized (this) {
+            checkOpen();
+            finished = true;
+            control = ioctrl;
+        }
+        if (control != null) {
+            control.requestOutput();
+        }
+    }
+
+    /**
+     * Aborts the exchange because the body could not be written, so that a
+     * partial body is never sent as a complete one.
+     *
+     * @param cause why the body could not be written
+     */
+    void abort(Exception cause) {
+        IOControl control;
+        synchronized (this) {
+            if (failure == null) {
+                failure = new IOException("Request body could not be written", cause);
+            }
+            control = ioctrl;
+        }
+        if (control != null) {
+            control.requestOutput();
+        }
+    }
+
+    @Override
+    public HttpHost getTarget() {
+        return target;
+    }
+
+    @Override
+    public HttpRequest generateRequest() {
+        return request;
+    }
+
+    @Override
+    public synchronized void produceContent(ContentEncoder encoder, IOControl ioctrl) throws IOException {
+        this.ioctrl = ioctrl;
+        if (failure != null) {
+            throw failure;
+        }
+        while (!chunks.isEmpty()) {
+            ByteBuffer chunk = chunks.peek();
+            pending -= encoder.write(chunk);
+            if (chunk.hasRemaining()) {
+                // The connection is full; the reactor calls again once it is writable
+                break;
+            }
+            release(chunks.poll());
+        }
+        notifyAll();
+        if (chunks.isEmpty()) {
+            if (finished) {
+                encoder.complete();
+            } else {
+                ioctrl.suspendOutput();
+            }
+        }
+    }
+
+    @Override
+    public void requestCompleted(HttpContext context) {
+    }
+
+    @Override
+    public void failed(Exception ex) {
+        end(ex instanceof IOException ? (IOException) ex : new IOException(ex));
+    }
+
+    @Override
+    public boolean isRepeatable() {
+        return false;
+    }
+
+    @Override
+    public void resetRequest() {
+    }
+
+    @Override
+    public void close() {
+        end(new IOException("Request to " + request.getURI() + " has ended"));
+    }
+
+    private synchronized void end(IOException cause) {
+        if (failure == null) {
+            failure = cause;
+        }
+        while (!chunks.isEmpty()) {
+            release(chunks.poll());
+        }
+        pending = 0;
+        notifyAll();
+    }
+
+    private void checkOpen() throws IOException {
+        if (failure != null) {
+            throw new IOException("Request body is no longer accepted", failure);
+        }
+    }
+
+    /**
+     * Hands a filled buffer to the reactor and waits while too much is
+     * buffered ahead of the connection.
+     */
+    private void enqueue(ByteBuffer buffer) throws IOException {
+        IOControl control;
+        synchronized (this) {
+            if (failure != null) {
+                release(buffer);
+                checkOpen();
+            }
+            buffer.flip();
+            chunks.add(buffer);
+            pending += buffer.remaining();
+            control = ioctrl;
+        }
+        // Outside the lock, which the reactor holds while suspending output
+        if (control != null) {
+            control.requestOutput();
+        }
+        synchronized (this) {
+            while (limit > 0 && pending > limit && failure == null) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while writing a request body");
+                }
+            }
+            checkOpen();
+        }
+    }
+
+    private static ByteBuffer acquire() {
+        ByteBuffer buffer = POOL.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static void release(ByteBuffer buffer) {
+        buffer.clear();
+        POOL.offer(buffer);
+    }
+
+    private final class BodyStream extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            if (current == null) {
+                current = acquire();
+            }
+            current.put((byte) b);
+            if (!current.hasRemaining()) {
+                send();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (current == null) {
+                    current = acquire();
+                }
+                int length = Math.min(len, current.remaining());
+                current.put(b, off, length);
+                off += length;
+                len -= length;
+                if (!current.hasRemaining()) {
+                    send();
+                }
+            }
+        }
+
+        /**
+         * Hands over what is buffered; serializers close the stream when
+         * they are done, so this also covers their last partial buffer.
+         */
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                if (current.position() > 0) {
+                    send();
+                } else {
+                    release(current);
+                    current = null;
+                }
+            }
+        }
+
+        private void send() throws IOException {
+            ByteBuffer buffer = current;
+            current = null;
+            enqueue(buffer);
+        }
+
+    }
+
+}
@@ -34,8 +34,14 @@
  */
 package org.jaqpot.core.service.data;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
+import javax.ejb.Schedule;
 import javax.ejb.Stateless;
 import org.jaqpot.core.data.AlgorithmHandler;
 import org.jaqpot.core.data.BibTeXHandler;
@@ -43,7 +49,10 @@ import org.jaqpot.core.data.DatasetHandler;
 import org.jaqpot.core.data.ModelHandler;
 import org.jaqpot.core.data.ReportHandler;
 import org.jaqpot.core.data.TaskHandler;
+import org.jaqpot.core.data.UserCountersHandler;
+import org.jaqpot.core.data.UserHandler;
 import org.jaqpot.core.model.Task;
+import org.jaqpot.core.model.User;
 import org.jaqpot.core.model.UserQuota;
 
 /**
@@ -57,6 +66,8 @@ public class QuotaService {
     
     private static final Logger LOG = Logger.getLogger(QuotaService.class.getName());
     
+    private static final int RECONCILE_ATTEMPTS = 3;
+    
     @EJB
     TaskHandler taskHandler;
     
@@ -75,6 +86,16 @@ public class QuotaService {
     @EJB
     ReportHandler reportHandler;
     
+    @EJB
+    UserHandler userHandler;
+    
+    @EJB
+    UserCountersHandler userCountersHandler;
+    
+    /**
+     * Reads the quota of the user from the incrementally maintained counters,
+     * without counting any collection.
+     */
     public UserQuota getUserQuota(String userId) {
         UserQuota userQuota = new UserQuota();
         userQuota.setUserId(userId);
@@ -88,4 +109,40 @@ public class QuotaService {
         return userQuota;
     }
     
+    /**
+     * Recomputes the counters of all users from the collections, correcting
+     * any drift of the incrementally maintained counters, e.g. from writes
+     * that failed halfway.
+     */
+    @Schedule(hour = "3", persistent = false)
+    public void reconcileCounters() {
+        try (Stream<User> users = userHandler.stream(new HashMap<>(), Arrays.asList("_id"))) {
+            users.forEach(user -> {
+                try {
+                    reconcileCounters(user.getId());
+                } catch (RuntimeException ex) {
+                    LOG.log(Level.SEVERE, "Could not reconcile the counters of user " + user.getId(), ex);
+                }
+            });
+        }
+    }
+    
+    @Asynchronous
+    public void reconcileCountersAsync() {
+        reconcileCounters();
+    }
+    
+    /**
+     * Reconciles the counters of the given user, counting again if they
+     * changed while the collections were counted.
+     */
+    public void reconcileCounters(String userId) {
+        for (int attempt = 0; attempt < RECONCILE_ATTEMPTS; attempt++) {
+            if (userCountersHandler.reconcile(userId)) {
+                return;
+            }
+        }
+        LOG.log(Level.WARNING, "The counters of user {0} kept changing and were not reconciled", userId);
+    }
+    
 }
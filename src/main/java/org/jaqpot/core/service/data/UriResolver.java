@@ -0,0 +1,256 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.service.data;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.inject.Inject;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.NotFoundException;
+import javax.ws.rs.client.Client;
+import javax.ws.rs.client.WebTarget;
+import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.MediaType;
+import org.jaqpot.core.data.DatasetHandler;
+import org.jaqpot.core.data.ModelHandler;
+import org.jaqpot.core.model.Model;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+import org.jaqpot.core.properties.PropertyManager;
+
+/**
+ * Retrieves datasets and models by URI. Those of this service, i.e. those
+ * under {@link PropertyManager.PropertyType#JAQPOT_BASE_SERVICE}, are read
+ * directly through their handlers, interpreting the query parameters that
+ * the corresponding resources understand. All others are fetched over HTTP
+ * with the client of the caller.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+@Stateless
+public class UriResolver {
+
+    @EJB
+    DatasetHandler datasetHandler;
+
+    @EJB
+    ModelHandler modelHandler;
+
+    @Inject
+    PropertyManager propertyManager;
+
+    /**
+     * @param uri the URI of a dataset or model
+     * @return true if the URI is that of a dataset or model of this service
+     */
+    public boolean isLocal(String uri) {
+        return local(uri, "dataset") != null || local(uri, "model") != null;
+    }
+
+    /**
+     * @param uri the URI of a dataset
+     * @return the id of the dataset if the URI is that of a whole dataset of
+     * this service, without a query, or null otherwise
+     */
+    public String localDatasetId(String uri) {
+        LocalUri local = local(uri, "dataset");
+        return local != null && local.query.isEmpty() ? local.id : null;
+    }
+
+    public Dataset getDataset(Client client, String datasetURI, String subjectId) {
+        return getDataset(client, datasetURI, Collections.emptyMap(), subjectId);
+    }
+
+    /**
+     * @param client the client used if the dataset is not of this service
+     * @param datasetURI the URI of the dataset
+     * @param query query parameters added to those of the URI; null values
+     * are left out
+     * @param subjectId the token of the user
+     * @return the dataset
+     * @throws NotFoundException if a dataset of this service does not exist
+     * @throws BadRequestException if a query parameter of a dataset of this
+     * service is not valid
+     */
+    public Dataset getDataset(Client client, String datasetURI, Map<String, Object> query, String subjectId) {
+        LocalUri local = local(datasetURI, "dataset");
+        if (local == null) {
+            WebTarget target = client.target(datasetURI);
+            for (Map.Entry<String, Object> param : query.entrySet()) {
+                if (param.getValue() != null) {
+                    target = target.queryParam(param.getKey(), param.getValue());
+                }
+            }
+            return target.request()
+                    .accept(MediaType.APPLICATION_JSON)
+                    .header("subjectid", subjectId)
+                    .get(Dataset.class);
+        }
+        query.forEach((name, value) -> {
+            if (value != null) {
+                local.query.putIfAbsent(name, value.toString());
+            }
+        });
+        Dataset dataset = datasetHandler.find(local.id,
+                local.integer("rowStart"), local.integer("rowMax"),
+                local.integer("colStart"), local.integer("colMax"),
+                local.query.get("stratify"), local.longValue("seed"),
+                local.integer("folds"), local.query.get("target_feature"));
+        if (dataset == null) {
+            throw new NotFoundException("Could not find Dataset with id:" + local.id);
+        }
+        return dataset;
+    }
+
+    /**
+     * @return the features of the dataset with the given URI; the query of
+     * the URI is ignored
+     * @throws NotFoundException if a dataset of this service does not exist
+     */
+    public Set<FeatureInfo> getDatasetFeatures(Client client, String datasetURI, String subjectId) {
+        LocalUri local = local(datasetURI, "dataset");
+        if (local == null) {
+            return client.target(datasetURI.split("\\?")[0] + "/features")
+                    .request()
+                    .accept(MediaType.APPLICATION_JSON)
+                    .header("subjectid", subjectId)
+                    .get(new GenericType<Set<FeatureInfo>>() {
+                    });
+        }
+        Dataset dataset = datasetHandler.findHeader(local.id);
+        if (dataset == null) {
+            throw new NotFoundException("Could not find Dataset with id:" + local.id);
+        }
+        return dataset.getFeatures();
+    }
+
+    /**
+     * @throws NotFoundException if a model of this service does not exist
+     */
+    public Model getModel(Client client, String modelURI, String subjectId) {
+        LocalUri local = local(modelURI, "model");
+        if (local == null) {
+            return client.target(modelURI)
+                    .request()
+                    .accept(MediaType.APPLICATION_JSON)
+                    .header("subjectid", subjectId)
+                    .get(Model.class);
+        }
+        Model model = modelHandler.findModel(local.id);
+        if (model == null) {
+            throw new NotFoundException("Could not find Model with id:" + local.id);
+        }
+        return model;
+    }
+
+    /**
+     * @return the id and query of a URI of the form
+     * <code>{base}/{collection}/{id}[?{query}]</code>, or null if the URI
+     * is not of this form
+     */
+    private LocalUri local(String uri, String collection) {
+        if (uri == null) {
+            return null;
+        }
+        String base = propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_BASE_SERVICE);
+        String prefix = (base.endsWith("/") ? base : base + "/") + collection + "/";
+        if (!uri.startsWith(prefix)) {
+            return null;
+        }
+        int end = uri.indexOf('#');
+        if (end < 0) {
+            end = uri.length();
+        }
+        int queryStart = uri.indexOf('?');
+        String id = uri.substring(prefix.length(), queryStart >= 0 && queryStart < end ? queryStart : end);
+        if (id.isEmpty() || id.contains("/")) {
+            return null;
+        }
+        LocalUri local = new LocalUri(id);
+        if (queryStart >= 0 && queryStart < end) {
+            for (String param : uri.substring(queryStart + 1, end).split("&")) {
+                if (param.isEmpty()) {
+                    continue;
+                }
+                int equals = param.indexOf('=');
+                // As with @QueryParam, the first value of a parameter wins
+                local.query.putIfAbsent(decode(equals >= 0 ? param.substring(0, equals) : param),
+                        equals >= 0 ? decode(param.substring(equals + 1)) : "");
+            }
+        }
+        return local;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static final class LocalUri {
+
+        private final String id;
+        private final Map<String, String> query = new HashMap<>();
+
+        LocalUri(String id) {
+            this.id = id;
+        }
+
+        Integer integer(String name) {
+            String value = query.get(name);
+            try {
+                return value != null && !value.isEmpty() ? Integer.valueOf(value) : null;
+            } catch (NumberFormatException ex) {
+                throw new BadRequestException("Query parameter " + name + " must be an integer, got " + value);
+            }
+        }
+
+        Long longValue(String name) {
+            String value = query.get(name);
+            try {
+                return value != null && !value.isEmpty() ? Long.valueOf(value) : null;
+            } catch (NumberFormatException ex) {
+                throw new BadRequestException("Query parameter " + name + " must be an integer, got " + value);
+            }
+        }
+
+    }
+
+}
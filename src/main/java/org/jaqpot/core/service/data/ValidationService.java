@@ -65,6 +65,9 @@ public class ValidationService {
     @UnSecure
     Client client;
 
+    @EJB
+    UriResolver uriResolver;
+
     public Object[] trainAndTest(String algorithmURI, String trainingDataset, String testingDataset, String predictionFeature, String algorithmParameters, String transformations, String scaling, String subjectId) throws JaqpotWebException {
         MultivaluedMap<String, String> params = new MultivaluedHashMap<>();
         params.add("dataset_uri", trainingDataset);
@@ -122,11 +125,7 @@ public class ValidationService {
             throw new JaqpotWebException(predictionTask.getErrorReport());
 
         }
-        Model model = client.target(modelURI)
-                .request()
-                .header("subjectid", subjectId)
-                .accept(MediaType.APPLICATION_JSON)
-                .get(Model.class);
+        Model model = uriResolver.getModel(client, modelURI, subjectId);
         Object[] result = new Object[5];
         result[0] = predictionTask.getResultUri();
         result[1] = predictionFeature;
@@ -44,14 +44,18 @@ import org.jaqpot.core.model.builder.MetaInfoBuilder;
 import org.jaqpot.core.model.dto.dataset.Dataset;
 import org.jaqpot.core.model.dto.jpdi.TrainingRequest;
 import org.jaqpot.core.model.factory.DatasetFactory;
+import org.jaqpot.core.model.factory.FoldPlan;
 import org.jaqpot.core.model.util.ROG;
 import org.jaqpot.core.properties.PropertyManager;
 import org.jaqpot.core.service.annotations.Secure;
 import org.jaqpot.core.service.client.jpdi.JPDIClient;
+import org.jaqpot.core.service.data.UriResolver;
 
+import javax.annotation.Resource;
 import javax.ejb.ActivationConfigProperty;
 import javax.ejb.EJB;
 import javax.ejb.MessageDriven;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 import javax.jms.JMSException;
 import javax.jms.Message;
@@ -61,9 +65,15 @@ import javax.ws.rs.NotFoundException;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
 import javax.ws.rs.core.MediaType;
+import java.net.URI;
 import java.util.*;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -83,6 +93,12 @@ public class CrossValidationProcedure extends AbstractJaqpotProcedure {
 
     private static final Logger LOG = Logger.getLogger(CrossValidationProcedure.class.getName());
 
+    /**
+     * Folds in flight per algorithm host, see
+     * {@link PropertyManager.PropertyType#JAQPOT_JPDI_HOST_PARALLELISM}.
+     */
+    private static final Map<String, HostSlots> HOST_SLOTS = new ConcurrentHashMap<>();
+
     @EJB
     AlgorithmHandler algorithmHandler;
 
@@ -103,6 +119,12 @@ public class CrossValidationProcedure extends AbstractJaqpotProcedure {
     @Secure
     Client client;
 
+    @EJB
+    UriResolver uriResolver;
+
+    @Resource
+    private ManagedExecutorService executor;
+
     public CrossValidationProcedure() {
         super(null);
 //        throw new IllegalStateException("Cannot use empty constructor, instantiate with TaskHandler");
@@ -135,6 +157,7 @@ public class CrossValidationProcedure extends AbstractJaqpotProcedure {
         Integer folds = (Integer) messageBody.get("folds");
         String stratify = (String) messageBody.get("stratify");
         Integer seed = (Integer) messageBody.get("seed");
+        Integer repeats = (Integer) messageBody.get("repeats");
 
         try {
             init(taskId);
@@ -150,14 +173,11 @@ public class CrossValidationProcedure extends AbstractJaqpotProcedure {
             progress(5f, "Algorithm retrieved successfully.");
             checkCancelled();
 
-            Dataset dataset = Optional.of(client.target(datasetURI)
-                    .queryParam("stratify", stratify)
-                    .queryParam("folds", folds)
-                    .queryParam("seed", seed)
-                    .request()
-                    .accept(MediaType.APPLICATION_JSON)
-                    .header("subjectId", subjectId)
-                    .get(Dataset.class)).orElseThrow(() -> new NotFoundException("Dataset with URI:" + datasetURI + " was not found."));
+            Map<String, Object> query = new HashMap<>();
+            query.put("stratify", stratify);
+            query.put("folds", folds);
+            query.put("seed", seed);
+            Dataset dataset = Optional.of(uriResolver.getDataset(client, datasetURI, query, subjectId)).orElseThrow(() -> new NotFoundException("Dataset with URI:" + datasetURI + " was not found."));
             progress(10f, "Dataset retrieved successfully.");
             checkCancelled();
 
@@ -197,53 +217,49 @@ public class CrossValidationProcedure extends AbstractJaqpotProcedure {
             }
             checkCancelled();
 
-            Integer rows = dataset.getTotalRows();
-
-            Integer minRows = rows / folds;
-            Integer extras = rows % folds;
-
             Map<String, Object> parameterMap = null;
             if (algorithmParams != null && !algorithmParams.isEmpty()) {
                 parameterMap = serializer.parse(algorithmParams, new HashMap<String, Object>().getClass());
             }
 
-            Set<Dataset> partialDatasets = new HashSet<>();
+            FoldPlan plan = FoldPlan.of(dataset.toColumnar().rows(), folds, repeats != null ? repeats : 1,
+                    seed != null ? seed : 0L);
             Dataset finalDataset = null;
-            Integer i = 0, j = 0;
-            while (i < rows) {
-                Integer rowStart;
-                Integer rowMax;
-                if (j < extras) {
-                    rowStart = i;
-                    rowMax = minRows + 1;
-                    i += rowMax;
-                    j++;
-                } else {
-                    rowStart = i;
-                    rowMax = minRows;
-                    i += rowMax;
-                }
-                Dataset partialDataset = DatasetFactory.copy(dataset, rowStart, rowMax);
-                partialDatasets.add(partialDataset);
-            }
-            progress(50f, "Created partial datasets.");
+            progress(50f, "Planned " + plan.size() + " partial train and test(s).");
             checkCancelled();
-            int p = 1;
+            int parallelism = Math.max(1, Integer.parseInt(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_VALIDATION_PARALLELISM)));
+            Splits splits = new Splits(plan, dataset, algorithm, parameterMap, predictionFeature, taskId);
+            splits.start(parallelism);
+            List<CompletableFuture<Fold>> results = splits.results;
+            progress("Started " + Math.min(parallelism, results.size()) + " partial train and test(s) at once.");
+
             String predictedFeature = "";
             Integer indepFeatureSize = 0;
-            for (Dataset predictionDataset : partialDatasets) {
-                progress("Starting partial train and test:" + p++);
-                Dataset trainingDataset = partialDatasets.stream()
-                        .filter(d -> !d.getId().equals(predictionDataset.getId()))
-                        .reduce(DatasetFactory.createEmpty(0),(a, b) -> DatasetFactory.mergeRows(a, b));
-                        //.orElseThrow(() -> new InternalServerErrorException("Training dataset merging failed"));
-                Model model = jpdiClient.train(trainingDataset, algorithm, parameterMap, predictionFeature, trainingDataset.getMeta(), taskId).get();
-                Dataset predictedDataset = jpdiClient.predict(predictionDataset, model, predictionDataset.getMeta(), taskId).get();
-                finalDataset = DatasetFactory.mergeRows(finalDataset, predictedDataset);
-                predictedFeature = model.getPredictedFeatures().get(0);
-                indepFeatureSize = Math.max(indepFeatureSize, model.getIndependentFeatures().size());
-                addProgress(40f / folds, "Done");
-                checkCancelled();
+            boolean completed = false;
+            try {
+                int p = 1;
+                for (CompletableFuture<Fold> result : results) {
+                    Fold fold;
+                    try {
+                        fold = result.join();
+                    } catch (CompletionException ex) {
+                        if (ex.getCause() instanceof CancellationException) {
+                            throw (CancellationException) ex.getCause();
+                        }
+                        throw new ExecutionException(ex.getCause());
+                    }
+                    finalDataset = DatasetFactory.mergeRows(finalDataset, fold.predictions);
+                    predictedFeature = fold.model.getPredictedFeatures().get(0);
+                    indepFeatureSize = Math.max(indepFeatureSize, fold.model.getIndependentFeatures().size());
+                    addProgress(40f / results.size(), "Done partial train and test:" + p++);
+                    checkCancelled();
+                }
+                completed = true;
+            } finally {
+                if (!completed) {
+                    splits.abort();
+                    jpdiClient.cancel(taskId);
+                }
             }
 
             ValidationType validationType;
@@ -287,7 +303,8 @@ public class CrossValidationProcedure extends AbstractJaqpotProcedure {
                     .addTitles("Cross validation report")
                     .addCreators(creator)
                     .addSources(datasetURI, algorithmURI)
-                    .addDescriptions(folds + " Fold cross validation on algorithm:" + algorithmURI + " with dataset:" + datasetURI)
+                    .addDescriptions((repeats != null && repeats > 1 ? repeats + " x " : "") + folds
+                            + " Fold cross validation on algorithm:" + algorithmURI + " with dataset:" + datasetURI)
                     .build());
             report.setVisible(Boolean.TRUE);
             reportHandler.create(report);
@@ -313,4 +330,119 @@ public class CrossValidationProcedure extends AbstractJaqpotProcedure {
             errInternalServerError(ex, null);
         }
     }
+
+    /**
+     * The splits of the plan of a cross validation. Each split starts as
+     * soon as any split of the task in flight is done, so that at most the
+     * given parallelism of them are in flight at once, and then waits for a
+     * slot of the algorithm host without holding a thread. The results stay
+     * in the order of the plan.
+     */
+    private final class Splits {
+
+        private final FoldPlan plan;
+        private final Dataset dataset;
+        private final Algorithm algorithm;
+        private final Map<String, Object> parameters;
+        private final String predictionFeature;
+        private final String taskId;
+        private final HostSlots hostSlots;
+        private final AtomicInteger next = new AtomicInteger();
+        private final AtomicBoolean aborted = new AtomicBoolean();
+        private final List<CompletableFuture<Fold>> results;
+
+        Splits(FoldPlan plan, Dataset dataset, Algorithm algorithm, Map<String, Object> parameters,
+                String predictionFeature, String taskId) {
+            this.plan = plan;
+            this.dataset = dataset;
+            this.algorithm = algorithm;
+            this.parameters = parameters;
+            this.predictionFeature = predictionFeature;
+            this.taskId = taskId;
+            this.hostSlots = hostSlots(algorithm.getTrainingService());
+            this.results = new ArrayList<>(plan.size());
+            for (int split = 0; split < plan.size(); split++) {
+                results.add(new CompletableFuture<>());
+            }
+        }
+
+        void start(int parallelism) {
+            for (int i = 0; i < Math.min(parallelism, results.size()); i++) {
+                startNext();
+            }
+        }
+
+        void abort() {
+            aborted.set(true);
+            results.forEach(result -> result.cancel(true));
+        }
+
+        private void startNext() {
+            int split = next.getAndIncrement();
+            if (split >= results.size() || aborted.get()) {
+                return;
+            }
+            CompletableFuture<Fold> result = results.get(split);
+            hostSlots.submit(() -> runFold(split), executor).whenComplete((fold, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(error);
+                } else {
+                    result.complete(fold);
+                }
+                startNext();
+            });
+        }
+
+        /**
+         * Trains a model on the training set of a split and then predicts
+         * its test set. The views of the split are only created here, so
+         * that just the splits in flight hold their row indices. Both
+         * requests are written on the executor, never on the I/O thread
+         * that completes the training, since writing a body may wait for
+         * the client to send it.
+         */
+        private CompletableFuture<Fold> runFold(int split) {
+            if (aborted.get()) {
+                throw new CancellationException("Cross validation was aborted");
+            }
+            Dataset trainingDataset = plan.training(dataset, split);
+            Dataset predictionDataset = plan.test(dataset, split);
+            return jpdiClient.train(trainingDataset, algorithm, parameters, predictionFeature, trainingDataset.getMeta(), taskId)
+                    .thenComposeAsync(model -> {
+                        if (aborted.get()) {
+                            throw new CancellationException("Cross validation was aborted");
+                        }
+                        return jpdiClient.predict(predictionDataset, model, predictionDataset.getMeta(), taskId)
+                                .thenApply(predictions -> new Fold(model, predictions));
+                    }, executor);
+        }
+
+    }
+
+    /**
+     * @return the slots of the host of the given service, shared by the
+     * folds of all cross validations
+     */
+    private HostSlots hostSlots(String serviceURI) {
+        String host;
+        try {
+            host = URI.create(serviceURI).getAuthority();
+        } catch (IllegalArgumentException ex) {
+            host = null;
+        }
+        return HOST_SLOTS.computeIfAbsent(host != null ? host : String.valueOf(serviceURI), key -> new HostSlots(Math.max(1,
+                Integer.parseInt(propertyManager.getPropertyOrDefault(PropertyManager.PropertyType.JAQPOT_JPDI_HOST_PARALLELISM)))));
+    }
+
+    private static final class Fold {
+
+        private final Model model;
+        private final Dataset predictions;
+
+        Fold(Model model, Dataset predictions) {
+            this.model = model;
+            this.predictions = predictions;
+        }
+
+    }
 }
@@ -11,6 +11,7 @@ import org.jaqpot.core.model.util.ROG;
 import org.jaqpot.core.properties.PropertyManager;
 import org.jaqpot.core.service.annotations.Secure;
 import org.jaqpot.core.service.client.jpdi.JPDIClient;
+import org.jaqpot.core.service.data.UriResolver;
 
 import javax.ejb.ActivationConfigProperty;
 import javax.ejb.EJB;
@@ -72,6 +73,9 @@ public class ExternalValidationProcedure extends AbstractJaqpotProcedure {
     @Secure
     Client client;
 
+    @EJB
+    UriResolver uriResolver;
+
     public ExternalValidationProcedure() {
         super(null);
 //        throw new IllegalStateException("Cannot use empty constructor, instantiate with TaskHandler");
@@ -114,11 +118,7 @@ public class ExternalValidationProcedure extends AbstractJaqpotProcedure {
             progress(10f, "Model retrieved successfully.");
             checkCancelled();
 
-            Dataset dataset = Optional.of(client.target(dataset_uri)
-                    .request()
-                    .accept(MediaType.APPLICATION_JSON)
-                    .header("subjectId", subjectId)
-                    .get(Dataset.class)).orElseThrow(() -> new NotFoundException("Dataset with URI:" + dataset_uri + " was not found."));
+            Dataset dataset = Optional.of(uriResolver.getDataset(client, dataset_uri, subjectId)).orElseThrow(() -> new NotFoundException("Dataset with URI:" + dataset_uri + " was not found."));
             progress(10f, "Dataset retrieved successfully.");
             checkCancelled();
 
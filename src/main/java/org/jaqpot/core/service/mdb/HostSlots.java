@@ -0,0 +1,140 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it, in particular:
+ * (i)   JaqpotCoreServices
+ * (ii)  JaqpotAlgorithmServices
+ * (iii) JaqpotDB
+ * (iv)  JaqpotDomain
+ * (v)   JaqpotEAR
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.service.mdb;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Limits the work in flight on an algorithm host without holding a thread
+ * while the host is busy. Work that finds every slot taken is queued and
+ * started in order as soon as the work before it completes.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+final class HostSlots {
+
+    private final int slots;
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+    private int running;
+
+    HostSlots(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("A host needs at least one slot");
+        }
+        this.slots = slots;
+    }
+
+    /**
+     * Starts the given work on the executor once a slot is free and holds
+     * the slot until the stage the work returns is complete.
+     *
+     * @return the result of the stage the work returns
+     */
+    <T> CompletableFuture<T> submit(Supplier<? extends CompletionStage<T>> work, Executor executor) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            try {
+                executor.execute(() -> {
+                    CompletionStage<T> stage;
+                    try {
+                        stage = work.get();
+                    } catch (RuntimeException | Error ex) {
+                        release();
+                        result.completeExceptionally(ex);
+                        return;
+                    }
+                    stage.whenComplete((value, error) -> {
+                        release();
+                        if (error != null) {
+                            result.completeExceptionally(error);
+                        } else {
+                            result.complete(value);
+                        }
+                    });
+                });
+            } catch (RuntimeException ex) {
+                release();
+                result.completeExceptionally(ex);
+            }
+        };
+        boolean free;
+        synchronized (this) {
+            free = running < slots;
+            if (free) {
+                running++;
+            } else {
+                pending.add(start);
+            }
+        }
+        if (free) {
+            start.run();
+        }
+        return result;
+    }
+
+    /**
+     * @return the work started and not yet complete
+     */
+    synchronized int running() {
+        return running;
+    }
+
+    /**
+     * @return the work waiting for a slot
+     */
+    synchronized int pending() {
+        return pending.size();
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (this) {
+            next = pending.poll();
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            next.run();
+        }
+    }
+
+}
@@ -47,6 +47,7 @@ import org.jaqpot.core.model.dto.dataset.Dataset;
 import org.jaqpot.core.model.factory.DatasetFactory;
 import org.jaqpot.core.service.annotations.Secure;
 import org.jaqpot.core.service.client.jpdi.JPDIClient;
+import org.jaqpot.core.service.data.UriResolver;
 import org.jaqpot.core.service.messaging.RabbitMQ;
 
 import javax.ejb.ActivationConfigProperty;
@@ -58,7 +59,6 @@ import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.ws.rs.BadRequestException;
 import javax.ws.rs.client.Client;
-import javax.ws.rs.core.MediaType;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.HashSet;
@@ -111,6 +111,9 @@ public class PredictionProcedure extends AbstractJaqpotProcedure implements Mess
     @Secure
     Client client;
 
+    @EJB
+    UriResolver uriResolver;
+
     public PredictionProcedure() {
         super(null);
         //        throw new IllegalStateException("Cannot use empty constructor, instantiate with TaskHandler");
@@ -156,11 +159,7 @@ public class PredictionProcedure extends AbstractJaqpotProcedure implements Mess
             Dataset dataset;
             if (dataset_uri != null && !dataset_uri.isEmpty()) {
                 progress("Attempting to download dataset...");
-                dataset = client.target(dataset_uri)
-                        .request()
-                        .header("subjectid", subjectId)
-                        .accept(MediaType.APPLICATION_JSON)
-                        .get(Dataset.class);
+                dataset = uriResolver.getDataset(client, dataset_uri, subjectId);
                 dataset.setDatasetURI(dataset_uri);
                 progress("Dataset has been retrieved.");
             } else {
@@ -14,6 +14,7 @@ import org.jaqpot.core.model.util.ROG;
 import org.jaqpot.core.properties.PropertyManager;
 import org.jaqpot.core.service.annotations.Secure;
 import org.jaqpot.core.service.client.jpdi.JPDIClient;
+import org.jaqpot.core.service.data.UriResolver;
 
 import javax.ejb.ActivationConfigProperty;
 import javax.ejb.EJB;
@@ -70,6 +71,9 @@ public class SplitValidationProcedure extends AbstractJaqpotProcedure {
     @Secure
     Client client;
 
+    @EJB
+    UriResolver uriResolver;
+
     public SplitValidationProcedure() {
         super(null);
 //        throw new IllegalStateException("Cannot use empty constructor, instantiate with TaskHandler");
@@ -118,14 +122,11 @@ public class SplitValidationProcedure extends AbstractJaqpotProcedure {
             progress(5f, "Algorithm retrieved successfully.");
             checkCancelled();
 
-            Dataset dataset = Optional.of(client.target(datasetURI)
-                    .queryParam("stratify", stratify)
-                    .queryParam("splitRatio", splitRatio)
-                    .queryParam("seed", seed)
-                    .request()
-                    .accept(MediaType.APPLICATION_JSON)
-                    .header("subjectId", subjectId)
-                    .get(Dataset.class)).orElseThrow(() -> new NotFoundException("Dataset with URI:" + datasetURI + " was not found."));
+            Map<String, Object> query = new HashMap<>();
+            query.put("stratify", stratify);
+            query.put("splitRatio", splitRatio);
+            query.put("seed", seed);
+            Dataset dataset = Optional.of(uriResolver.getDataset(client, datasetURI, query, subjectId)).orElseThrow(() -> new NotFoundException("Dataset with URI:" + datasetURI + " was not found."));
             progress(10f, "Dataset retrieved successfully.");
             checkCancelled();
 
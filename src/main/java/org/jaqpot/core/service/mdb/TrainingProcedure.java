@@ -39,6 +39,7 @@ import org.jaqpot.core.data.AlgorithmHandler;
 import org.jaqpot.core.data.ModelHandler;
 import org.jaqpot.core.data.TaskHandler;
 import org.jaqpot.core.data.serialize.JSONSerializer;
+import org.jaqpot.core.db.entitymanager.JaqpotBulkWriteException;
 import org.jaqpot.core.model.Algorithm;
 import org.jaqpot.core.model.MetaInfo;
 import org.jaqpot.core.model.Model;
@@ -48,6 +49,7 @@ import org.jaqpot.core.model.dto.dataset.DataEntry;
 import org.jaqpot.core.model.dto.dataset.Dataset;
 import org.jaqpot.core.service.annotations.Secure;
 import org.jaqpot.core.service.client.jpdi.JPDIClient;
+import org.jaqpot.core.service.data.UriResolver;
 import org.jaqpot.core.service.messaging.RabbitMQ;
 
 import javax.ejb.ActivationConfigProperty;
@@ -58,7 +60,6 @@ import javax.jms.JMSException;
 import javax.jms.Message;
 import javax.jms.MessageListener;
 import javax.ws.rs.client.Client;
-import javax.ws.rs.core.MediaType;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CancellationException;
@@ -105,6 +106,9 @@ public class TrainingProcedure extends AbstractJaqpotProcedure implements Messag
     @Secure
     Client client;
 
+    @EJB
+    UriResolver uriResolver;
+
     public TrainingProcedure() {
         super(null);
     }
@@ -155,11 +159,7 @@ public class TrainingProcedure extends AbstractJaqpotProcedure implements Messag
             if (dataset_uri != null && !dataset_uri.isEmpty()) {
                 progress("Training dataset URI is:" + dataset_uri,
                         "Attempting to download dataset...");
-                dataset = client.target(dataset_uri)
-                        .request()
-                        .header("subjectid", subjectId)
-                        .accept(MediaType.APPLICATION_JSON)
-                        .get(Dataset.class);
+                dataset = uriResolver.getDataset(client, dataset_uri, subjectId);
                 dataset.setDatasetURI(dataset_uri);
                 progress("Dataset has been retrieved.");
             }
@@ -254,20 +254,17 @@ public class TrainingProcedure extends AbstractJaqpotProcedure implements Messag
             }
 
             checkCancelled();
-            progress("Saving transformation models.");
+            progress(80f, "Saving transformation, linked and main models.");
+            List<Model> dependencies = new ArrayList<>();
             for (Model transModel : transformationModels) {
                 transModel.setVisible(Boolean.FALSE);
-                modelHandler.create(transModel);
+                dependencies.add(transModel);
             }
-
-            progress(80f, "Saving linked models.");
             for (Model linkedModel : linkedModels) {
                 linkedModel.setVisible(Boolean.FALSE);
-                modelHandler.create(linkedModel);
+                dependencies.add(linkedModel);
             }
 
-            progress(90f, "Saving main model.");
-
             model.setVisible(Boolean.TRUE);
             model.setTransformationModels(transformationModels.stream()
                     .map(tm -> baseURI + "model/" + tm.getId())
@@ -277,7 +274,19 @@ public class TrainingProcedure extends AbstractJaqpotProcedure implements Messag
                     .map(lm -> baseURI + "model/" + lm.getId())
                     .collect(Collectors.toList())
             );
+            // The main model is only saved once every model it refers to is
+            if (!dependencies.isEmpty()) {
+                try {
+                    modelHandler.createAll(dependencies);
+                } catch (JaqpotBulkWriteException ex) {
+                    modelHandler.removeAll(dependencies.stream()
+                            .filter(dependency -> !ex.getFailures().containsKey(dependency.getId()))
+                            .collect(Collectors.toList()));
+                    throw ex;
+                }
+            }
             modelHandler.create(model);
+            progress(90f, "Models were saved successfully.");
             complete("model/" + model.getId());
 //            rabbitMQClient.sendMessage(creator,"Training procedure for model "+ modelTitle +" was completed successfully!");
 
@@ -0,0 +1,166 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.service.resource;
+
+import io.swagger.annotations.*;
+import org.jaqpot.core.annotations.MongoDB;
+import org.jaqpot.core.db.entitymanager.JaqpotEntityManager;
+import org.jaqpot.core.properties.PropertyManager;
+import org.jaqpot.core.service.annotations.Authorize;
+import org.jaqpot.core.service.client.jpdi.JPDIClient;
+import org.jaqpot.core.service.exceptions.JaqpotNotAuthorizedException;
+
+import javax.inject.Inject;
+import javax.ws.rs.*;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.SecurityContext;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ *
+ */
+@Path("admin")
+@Api(value = "/admin", description = "Administration API")
+@Produces({"application/json"})
+@Authorize
+public class AdministrationResource {
+
+    @Inject
+    @MongoDB
+    JaqpotEntityManager em;
+
+    @Inject
+    PropertyManager propertyManager;
+
+    @Inject
+    JPDIClient jpdiClient;
+
+    @Context
+    SecurityContext securityContext;
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("/indexes")
+    @ApiOperation(value = "Explains the indexed query shapes (admins only)",
+            notes = "Reports the query plan that the database chooses for every query shape that is declared on the "
+            + "Jaqpot entities and flags the ones that require a collection scan. "
+            + "This operation can only be performed by the system administrators.")
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "Query plans are listed in the response body"),
+        @ApiResponse(code = 401, message = "You are not authorized to access this resource"),
+        @ApiResponse(code = 403, message = "This request is forbidden (e.g., no authentication token is provided)"),
+        @ApiResponse(code = 500, message = "Internal server error - this request cannot be served.")
+    })
+    public Response explainIndexes(
+            @ApiParam(value = "Clients need to authenticate in order to access this resource")
+            @HeaderParam("subjectid") String subjectId) throws JaqpotNotAuthorizedException {
+        // This resource can be accessed only by the system administrators
+        String admins = propertyManager.getProperty(PropertyManager.PropertyType.JAQPOT_ADMINISTRATORS);
+        List<String> adminsList = Arrays.asList(admins.split("\\s*,\\s*"));
+        String currentUserID = securityContext.getUserPrincipal().getName();
+        if (!adminsList.contains(currentUserID)) {
+            throw new JaqpotNotAuthorizedException("User " + currentUserID + " is not a system administrator, "
+                    + "therefore is not authorized to access this resource.", "AdministratorsOnly");
+        }
+
+        List<Map<String, Object>> plans = em.explainQueryShapes();
+        return Response
+                .ok(plans)
+                .build();
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("/pool")
+    @ApiOperation(value = "Reports the utilization of the database connection pool (admins only)",
+            notes = "Lists the size, the number of checked out connections and the number of waiting threads of the "
+            + "connection pool of every database server. "
+            + "This operation can only be performed by the system administrators.")
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "Pool statistics are listed in the response body"),
+        @ApiResponse(code = 401, message = "You are not authorized to access this resource"),
+        @ApiResponse(code = 403, message = "This request is forbidden (e.g., no authentication token is provided)"),
+        @ApiResponse(code = 500, message = "Internal server error - this request cannot be served.")
+    })
+    public Response connectionPoolStatistics(
+            @ApiParam(value = "Clients need to authenticate in order to access this resource")
+            @HeaderParam("subjectid") String subjectId) throws JaqpotNotAuthorizedException {
+        // This resource can be accessed only by the system administrators
+        String admins = propertyManager.getProperty(PropertyManager.PropertyType.JAQPOT_ADMINISTRATORS);
+        List<String> adminsList = Arrays.asList(admins.split("\\s*,\\s*"));
+        String currentUserID = securityContext.getUserPrincipal().getName();
+        if (!adminsList.contains(currentUserID)) {
+            throw new JaqpotNotAuthorizedException("User " + currentUserID + " is not a system administrator, "
+                    + "therefore is not authorized to access this resource.", "AdministratorsOnly");
+        }
+
+        return Response
+                .ok(em.connectionPoolStatistics())
+                .build();
+    }
+
+    @GET
+    @Produces({MediaType.APPLICATION_JSON})
+    @Path("/jpdi")
+    @ApiOperation(value = "Reports the load of the algorithm services (admins only)",
+            notes = "Lists, for every algorithm service host, the requests in flight, a histogram of their latency, "
+            + "the bytes sent and received and the errors since startup. "
+            + "This operation can only be performed by the system administrators.")
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, message = "Algorithm service statistics are listed in the response body"),
+        @ApiResponse(code = 401, message = "You are not authorized to access this resource"),
+        @ApiResponse(code = 403, message = "This request is forbidden (e.g., no authentication token is provided)"),
+        @ApiResponse(code = 500, message = "Internal server error - this request cannot be served.")
+    })
+    public Response algorithmServiceStatistics(
+            @ApiParam(value = "Clients need to authenticate in order to access this resource")
+            @HeaderParam("subjectid") String subjectId) throws JaqpotNotAuthorizedException {
+        // This resource can be accessed only by the system administrators
+        String admins = propertyManager.getProperty(PropertyManager.PropertyType.JAQPOT_ADMINISTRATORS);
+        List<String> adminsList = Arrays.asList(admins.split("\\s*,\\s*"));
+        String currentUserID = securityContext.getUserPrincipal().getName();
+        if (!adminsList.contains(currentUserID)) {
+            throw new JaqpotNotAuthorizedException("User " + currentUserID + " is not a system administrator, "
+                    + "therefore is not authorized to access this resource.", "AdministratorsOnly");
+        }
+
+        return Response
+                .ok(jpdiClient.statistics())
+                .build();
+    }
+
+}
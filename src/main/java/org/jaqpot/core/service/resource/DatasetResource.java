@@ -36,15 +36,25 @@ import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.*;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
+import javax.enterprise.concurrent.ManagedExecutorService;
 import javax.inject.Inject;
 import javax.validation.constraints.NotNull;
 import javax.ws.rs.BadRequestException;
@@ -62,6 +72,8 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.client.Client;
 import javax.ws.rs.client.Entity;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.*;
 
 import org.apache.commons.collections.ArrayStack;
@@ -71,6 +83,7 @@ import org.jaqpot.core.data.DatasetHandler;
 import org.jaqpot.core.data.ModelHandler;
 import org.jaqpot.core.data.ReportHandler;
 import org.jaqpot.core.data.UserHandler;
+import org.jaqpot.core.data.serialize.ArrowDatasetWriter;
 import org.jaqpot.core.model.*;
 import org.jaqpot.core.model.Feature;
 import org.jaqpot.core.model.builder.MetaInfoBuilder;
@@ -88,10 +101,12 @@ import org.jaqpot.core.service.annotations.Authorize;
 import org.jaqpot.core.service.annotations.UnSecure;
 import org.jaqpot.core.service.client.ambit.Ambit;
 import org.jaqpot.core.service.client.jpdi.JPDIClient;
+import org.jaqpot.core.service.data.UriResolver;
 import org.jaqpot.core.service.exceptions.JaqpotForbiddenException;
 import org.jaqpot.core.service.exceptions.JaqpotNotAuthorizedException;
 import org.jaqpot.core.service.exceptions.QuotaExceededException;
 import org.jaqpot.core.service.exceptions.parameter.*;
+import org.jaqpot.core.service.writer.CSVWriter;
 import org.jboss.resteasy.plugins.providers.multipart.InputPart;
 import org.jboss.resteasy.plugins.providers.multipart.MultipartFormDataInput;
 
@@ -110,6 +125,12 @@ public class DatasetResource {
 
     private static final Logger LOG = Logger.getLogger(DatasetResource.class.getName());
 
+    /**
+     * Maximum number of datasets of other services fetched at the same time
+     * for a merge.
+     */
+    private static final int MERGE_FETCHES = 8;
+
     @EJB
     DatasetHandler datasetHandler;
 
@@ -132,6 +153,9 @@ public class DatasetResource {
     @UnSecure
     Client client;
 
+    @EJB
+    UriResolver uriResolver;
+
     @Inject
     JPDIClient jpdiClient;
 
@@ -141,6 +165,12 @@ public class DatasetResource {
     @Context
     SecurityContext securityContext;
 
+    @Context
+    UriInfo uriInfo;
+
+    @Resource
+    private ManagedExecutorService executor;
+
     @GET
     @Produces({MediaType.APPLICATION_JSON, "text/uri-list"})
     @ApiOperation(value = "Finds all Datasets",
@@ -165,26 +195,39 @@ public class DatasetResource {
             @ApiParam(value = "Authorization token") @HeaderParam("subjectid") String subjectId,
             @ApiParam(value = "start", defaultValue = "0") @QueryParam("start") Integer start,
             @ApiParam(value = "max - the server imposes an upper limit of 500 on this "
-                    + "parameter.", defaultValue = "10") @QueryParam("max") Integer max
+                    + "parameter.", defaultValue = "10") @QueryParam("max") Integer max,
+            @ApiParam(value = "cursor - continuation token taken from the next link of a previous page; "
+                    + "when given, start is ignored") @QueryParam("cursor") String cursor
     ) {
         start = start != null ? start : 0;
         if (max == null || max > 500) {
             max = 500;
         }
         String creator = securityContext.getUserPrincipal().getName();
-        return Response.ok(datasetHandler.listMetaOfCreator(creator, start, max))
+        List<Dataset> datasets = cursor != null
+                ? datasetHandler.listMetaOfCreator(creator, cursor, max)
+                : datasetHandler.listMetaOfCreator(creator, start, max);
+        Response.ResponseBuilder response = Response.ok(datasets)
                 .status(Response.Status.OK)
-                .header("total", datasetHandler.countAllOfCreator(creator))
-                .build();
+                .header("total", datasetHandler.countAllOfCreator(creator));
+        if (datasets.size() == max) {
+            response.links(Link.fromUriBuilder(uriInfo.getRequestUriBuilder()
+                    .replaceQueryParam("start")
+                    .replaceQueryParam("cursor", datasetHandler.cursorOf(datasets.get(max - 1))))
+                    .rel("next")
+                    .build());
+        }
+        return response.build();
 
     }
 
     @GET
-    @Produces({"text/csv", MediaType.APPLICATION_JSON})
+    @Produces({"text/csv", MediaType.APPLICATION_JSON, ArrowDatasetWriter.MEDIA_TYPE})
 
     @Path("{id}")
     @ApiOperation(value = "Finds Dataset by Id",
-            notes = "Finds specified Dataset"
+            notes = "Finds specified Dataset. The Dataset can be obtained as JSON, as CSV or as an Apache Arrow "
+            + "stream with a column per feature, as specified by the Accept HTTP header"
     )
     @ApiResponses(value = {
         @ApiResponse(code = 200, response = Dataset.class, message = "Dataset was found")
@@ -197,7 +240,8 @@ public class DatasetResource {
         ,
             @ApiResponse(code = 500, response = ErrorReport.class, message = "Internal server error - this request cannot be served.")
     })
-    public Response getDataset(
+    public void getDataset(
+            @Suspended final AsyncResponse asyncResponse,
             @ApiParam(value = "Authorization token") @HeaderParam("subjectid") String subjectId,
             @PathParam("id") String id,
             @QueryParam("rowStart") Integer rowStart,
@@ -207,12 +251,56 @@ public class DatasetResource {
             @QueryParam("stratify") String stratify,
             @QueryParam("seed") Long seed,
             @QueryParam("folds") Integer folds,
-            @QueryParam("target_feature") String targetFeature) {
-        Dataset dataset = datasetHandler.find(id, rowStart, rowMax, colStart, colMax, stratify, seed, folds, targetFeature);
-        if (dataset == null) {
-            throw new NotFoundException("Could not find Dataset with id:" + id);
+            @QueryParam("target_feature") String targetFeature,
+            @ApiParam(value = "Key the values of every row by the position of the feature in the dictionary of the dataset instead of by feature URI (JSON only)", defaultValue = "false") @QueryParam("compact") Boolean compact,
+            @HeaderParam("Accept") String accept,
+            @HeaderParam("Accept-Encoding") String acceptEncoding) {
+        if (accept != null && accept.contains("text/csv") && !accept.contains(MediaType.APPLICATION_JSON)
+                && rowStart == null && rowMax == null && colStart == null && colMax == null && stratify == null) {
+            Dataset dataset = datasetHandler.findHeader(id);
+            if (dataset == null) {
+                asyncResponse.resume(new NotFoundException("Could not find Dataset with id:" + id));
+            } else {
+                asyncResponse.resume(streamCsv(dataset, acceptEncoding != null && acceptEncoding.contains("gzip")));
+            }
+            return;
         }
-        return Response.ok(dataset).build();
+        boolean compactJson = Boolean.TRUE.equals(compact)
+                && (accept == null || !(accept.contains("text/csv") || accept.contains(ArrowDatasetWriter.MEDIA_TYPE)));
+        datasetHandler.findAsync(id, rowStart, rowMax, colStart, colMax, stratify, seed, folds, targetFeature)
+                .whenComplete((dataset, error) -> {
+                    if (error != null) {
+                        asyncResponse.resume(error instanceof CompletionException ? error.getCause() : error);
+                    } else if (dataset == null) {
+                        asyncResponse.resume(new NotFoundException("Could not find Dataset with id:" + id));
+                    } else {
+                        asyncResponse.resume(Response.ok(compactJson ? dataset.compact() : dataset).build());
+                    }
+                });
+    }
+
+    /**
+     * Writes a whole Dataset as CSV while its rows are read from the database,
+     * so that only a single chunk of it is held in memory.
+     */
+    private Response streamCsv(Dataset dataset, boolean gzip) {
+        List<String> columns = dataset.getFeatures() != null
+                ? dataset.getFeatures().stream().map(FeatureInfo::getURI).sorted().distinct().collect(Collectors.toList())
+                : Collections.emptyList();
+        StreamingOutput csv = out -> {
+            OutputStream target = gzip ? new GZIPOutputStream(out, 1 << 16) : out;
+            try (Stream<DataEntry> rows = datasetHandler.streamRows(dataset.getId())) {
+                CSVWriter.write(dataset.getFeatures(), columns, rows.iterator(), target);
+            }
+            if (gzip) {
+                ((GZIPOutputStream) target).finish();
+            }
+        };
+        Response.ResponseBuilder response = Response.ok(csv, "text/csv");
+        if (gzip) {
+            response.header(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        return response.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
     }
 
     @GET
@@ -273,7 +361,7 @@ public class DatasetResource {
             @ApiParam(value = "Authorization token") @HeaderParam("subjectid") String subjectId,
             @PathParam("id") String id
     ) {
-        Dataset dataset = datasetHandler.find(id);
+        Dataset dataset = datasetHandler.findHeader(id);
         if (dataset == null) {
             throw new NotFoundException("Could not find Dataset with id:" + id);
         }
@@ -299,7 +387,7 @@ public class DatasetResource {
     public Response getDatasetMeta(
             @ApiParam(value = "Authorization token") @HeaderParam("subjectid") String subjectId,
             @PathParam("id") String id) {
-        Dataset dataset = datasetHandler.find(id);
+        Dataset dataset = datasetHandler.findHeader(id);
         dataset.setDataEntry(new ArrayList<>());
         if (dataset == null) {
             throw new NotFoundException("Could not find Dataset with id:" + id);
@@ -309,10 +397,12 @@ public class DatasetResource {
     }
 
     @POST
-    @Consumes(MediaType.APPLICATION_JSON)
+    @Consumes({MediaType.APPLICATION_JSON, ArrowDatasetWriter.MEDIA_TYPE})
     @Produces({"text/uri-list", MediaType.APPLICATION_JSON})
     @ApiOperation(value = "Creates a new Dataset",
-            notes = "The new Dataset created will be assigned on a random generated Id")
+            notes = "The Dataset is read either from JSON or from an Apache Arrow stream with a column per feature, "
+            + "as specified by the Content-Type HTTP header. The new Dataset created will be assigned on a random "
+            + "generated Id")
     @ApiResponses(value = {
         @ApiResponse(code = 200, response = Dataset.class, message = "Dataset was created succesfully")
         ,
@@ -326,7 +416,8 @@ public class DatasetResource {
     })
     public Response createDataset(
             @ApiParam(value = "Authorization token") @HeaderParam("subjectid") String subjectId,
-            Dataset dataset) throws QuotaExceededException, URISyntaxException {
+            @HeaderParam("Content-Type") String contentType,
+            @ApiParam(value = "Dataset in JSON or Arrow; rows are read and stored as they arrive", required = true) InputStream body) throws QuotaExceededException, URISyntaxException, IOException {
 
         User user = userHandler.find(securityContext.getUserPrincipal().getName());
         long datasetCount = datasetHandler.countAllOfCreator(user.getId());
@@ -341,14 +432,77 @@ public class DatasetResource {
         }
 
         ROG randomStringGenerator = new ROG(true);
-        dataset.setId(randomStringGenerator.nextString(14));
-        dataset.setFeatured(Boolean.FALSE);
-        if (dataset.getMeta() == null) {
-            dataset.setMeta(new MetaInfo());
+        String creator = securityContext.getUserPrincipal().getName();
+        Consumer<Dataset> prepare = header -> {
+            header.setFeatured(Boolean.FALSE);
+            if (header.getMeta() == null) {
+                header.setMeta(new MetaInfo());
+            }
+            header.getMeta().setCreators(new HashSet<>(Arrays.asList(creator)));
+        };
+        Dataset dataset = contentType != null && contentType.startsWith(ArrowDatasetWriter.MEDIA_TYPE)
+                ? datasetHandler.ingestArrow(randomStringGenerator.nextString(14), body, prepare)
+                : datasetHandler.ingest(randomStringGenerator.nextString(14), body, prepare);
+
+        return Response.created(new URI(dataset.getId())).entity(dataset).build();
+
+    }
+
+    @POST
+    @Path("/csv")
+    @Consumes("text/csv")
+    @Produces({"text/uri-list", MediaType.APPLICATION_JSON})
+    @ApiOperation(value = "Creates a new Dataset from a CSV document",
+            notes = "The first record of the document names the columns, each of which becomes a feature, except for "
+            + "the column holding the names of the substances. Columns whose values are all numbers in the first "
+            + "1000 records are read as numeric. Empty values are missing values and are stored as null. The document is read and stored "
+            + "as it arrives. The new Dataset created will be assigned on a random generated Id")
+    @ApiResponses(value = {
+        @ApiResponse(code = 200, response = Dataset.class, message = "Dataset was created succesfully")
+        ,
+            @ApiResponse(code = 400, response = ErrorReport.class, message = "The CSV document is invalid")
+        ,
+            @ApiResponse(code = 403, response = ErrorReport.class, message = "Dataset quota has been exceeded")
+        ,
+            @ApiResponse(code = 401, response = ErrorReport.class, message = "You are not authorized to access this resource")
+        ,
+            @ApiResponse(code = 403, response = ErrorReport.class, message = "This request is forbidden (e.g., no authentication token is provided)")
+        ,
+            @ApiResponse(code = 500, response = ErrorReport.class, message = "Internal server error - this request cannot be served.")
+    })
+    public Response createDatasetFromCsv(
+            @ApiParam(value = "Authorization token") @HeaderParam("subjectid") String subjectId,
+            @ApiParam(value = "Title of the dataset") @QueryParam("title") String title,
+            @ApiParam(value = "Description of the dataset") @QueryParam("description") String description,
+            @ApiParam(value = "Name of the column holding the names of the substances", defaultValue = "Substance") @QueryParam("substance") String substanceColumn,
+            @ApiParam(value = "CSV document in UTF-8", required = true) InputStream body) throws QuotaExceededException, URISyntaxException, IOException {
+
+        User user = userHandler.find(securityContext.getUserPrincipal().getName());
+        long datasetCount = datasetHandler.countAllOfCreator(user.getId());
+        int maxAllowedDatasets = new UserFacade(user).getMaxDatasets();
+
+        if (datasetCount > maxAllowedDatasets) {
+            LOG.info(String.format("User %s has %d datasets while maximum is %d",
+                    user.getId(), datasetCount, maxAllowedDatasets));
+            throw new QuotaExceededException("Dear " + user.getId()
+                    + ", your quota has been exceeded; you already have " + datasetCount + " datasets. "
+                    + "No more than " + maxAllowedDatasets + " are allowed with your subscription.");
         }
-        dataset.getMeta().setCreators(new HashSet<>(Arrays.asList(securityContext.getUserPrincipal().getName())));
-        dataset.setVisible(Boolean.TRUE);
-        datasetHandler.create(dataset);
+
+        ROG randomStringGenerator = new ROG(true);
+        String creator = securityContext.getUserPrincipal().getName();
+        Dataset dataset = datasetHandler.ingestCsv(randomStringGenerator.nextString(14), body,
+                substanceColumn != null ? substanceColumn : "Substance", header -> {
+                    MetaInfoBuilder meta = MetaInfoBuilder.builder().addCreators(creator);
+                    if (title != null) {
+                        meta.addTitles(title);
+                    }
+                    if (description != null) {
+                        meta.addDescriptions(description);
+                    }
+                    header.setMeta(meta.build());
+                    header.setFeatured(Boolean.FALSE);
+                });
 
         return Response.created(new URI(dataset.getId())).entity(dataset).build();
 
@@ -435,31 +589,94 @@ public class DatasetResource {
                     + "No more than " + maxAllowedDatasets + " are allowed with your subscription.");
         }
 
-        String[] datasets = datasetURIs.split(",");
-        Dataset dataset = null;
-        for (String datasetURI : datasets) {
-            Dataset d = client.target(datasetURI)
-                    .request()
-                    .accept(MediaType.APPLICATION_JSON)
-                    .header("subjectid", subjectId)
-                    .get(Dataset.class);
-            dataset = DatasetFactory.mergeRows(dataset, d);
+        if (datasetURIs == null || datasetURIs.trim().isEmpty()) {
+            throw new BadRequestException("No dataset_uris were given");
         }
+        List<DatasetHandler.MergePart> parts = new ArrayList<>();
+        List<CompletableFuture<Dataset>> fetches = fetchDatasets(datasetURIs.split(","), subjectId, parts);
         ROG randomStringGenerator = new ROG(true);
-        dataset.setId(randomStringGenerator.nextString(14));
-        dataset.setFeatured(Boolean.FALSE);
-        dataset.setVisible(true);
-        if (dataset.getMeta() == null) {
-            dataset.setMeta(new MetaInfo());
+        Dataset dataset;
+        try {
+            dataset = datasetHandler.createMerged(randomStringGenerator.nextString(14), parts, header -> {
+                header.setFeatured(Boolean.FALSE);
+                if (header.getMeta() == null) {
+                    header.setMeta(new MetaInfo());
+                }
+                header.getMeta().setCreators(new HashSet<>(Arrays.asList(securityContext.getUserPrincipal().getName())));
+            });
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
+            }
+            throw ex;
+        } finally {
+            // Fetches not started yet are skipped once the merge is over
+            fetches.forEach(fetch -> fetch.cancel(false));
         }
-        dataset.getMeta().setCreators(new HashSet<>(Arrays.asList(securityContext.getUserPrincipal().getName())));
-
-        datasetHandler.create(dataset);
 
         return Response.created(new URI(dataset.getId())).entity(dataset).build();
 
     }
 
+    /**
+     * Adds the given datasets to the parts of a merge, in order. Datasets of
+     * this service are streamed from the database by the merge, while the
+     * others are fetched over HTTP at the same time by at most
+     * {@link #MERGE_FETCHES} workers, each taking the next dataset as soon as
+     * its fetch is done.
+     *
+     * @return the fetches, completed as the datasets arrive
+     * @throws NotFoundException if a dataset of this service does not exist
+     */
+    private List<CompletableFuture<Dataset>> fetchDatasets(String[] datasetURIs, String subjectId, List<DatasetHandler.MergePart> parts) {
+        Queue<Runnable> pending = new ConcurrentLinkedQueue<>();
+        List<CompletableFuture<Dataset>> fetches = new ArrayList<>();
+        for (String uri : datasetURIs) {
+            String datasetURI = uri.trim();
+            String id = uriResolver.localDatasetId(datasetURI);
+            if (id != null) {
+                Dataset header = datasetHandler.findHeader(id);
+                if (header == null) {
+                    throw new NotFoundException("Could not find Dataset with id:" + id);
+                }
+                parts.add(DatasetHandler.MergePart.stored(header));
+                continue;
+            }
+            CompletableFuture<Dataset> fetch = new CompletableFuture<>();
+            pending.add(() -> {
+                if (fetch.isDone()) {
+                    return;
+                }
+                try {
+                    fetch.complete(uriResolver.getDataset(client, datasetURI, subjectId));
+                } catch (RuntimeException ex) {
+                    fetch.completeExceptionally(ex);
+                }
+            });
+            fetches.add(fetch);
+            parts.add(DatasetHandler.MergePart.fetched(fetch));
+        }
+        Runnable worker = () -> {
+            for (Runnable next = pending.poll(); next != null; next = pending.poll()) {
+                next.run();
+            }
+        };
+        int workers = 0;
+        try {
+            while (workers < Math.min(MERGE_FETCHES, fetches.size())) {
+                executor.execute(worker);
+                workers++;
+            }
+        } catch (RejectedExecutionException ex) {
+            if (workers == 0) {
+                fetches.forEach(fetch -> fetch.cancel(false));
+                throw ex;
+            }
+            // The workers already started take the rest
+        }
+        return fetches;
+    }
+
     @DELETE
     @Path("{id}")
     @Authorize
@@ -480,7 +697,7 @@ public class DatasetResource {
     public Response deleteDataset(
             @ApiParam(value = "Authorization token") @HeaderParam("subjectid") String subjectId,
             @PathParam("id") String id) throws JaqpotForbiddenException {
-        Dataset ds = datasetHandler.find(id);
+        Dataset ds = datasetHandler.findHeader(id);
         if (ds == null) {
             throw new NotFoundException("Dataset with id:" + id + " was not found on the server.");
         }
@@ -552,11 +769,7 @@ public class DatasetResource {
         if (datasetURI == null || datasetURI.isEmpty()) {
             throw new BadRequestException("The model that created this dataset does not point to a valid training dataset.");
         }
-        Dataset trainingDS = client.target(datasetURI)
-                .request()
-                .accept(MediaType.APPLICATION_JSON)
-                .header("subjectid", subjectId)
-                .get(Dataset.class);
+        Dataset trainingDS = uriResolver.getDataset(client, datasetURI, subjectId);
         if (trainingDS == null) {
             throw new BadRequestException("The model that created this dataset does not point to a valid training dataset.");
         }
@@ -743,11 +956,7 @@ public class DatasetResource {
         if (datasetURI == null || datasetURI.isEmpty()) {
             throw new BadRequestException("The model that created this dataset does not point to a valid training dataset.");
         }
-        Dataset trainingDS = client.target(datasetURI)
-                .request()
-                .accept(MediaType.APPLICATION_JSON)
-                .header("subjectid", subjectId)
-                .get(Dataset.class);
+        Dataset trainingDS = uriResolver.getDataset(client, datasetURI, subjectId);
         if (trainingDS == null) {
             throw new BadRequestException("The model that created this dataset does not point to a valid training dataset.");
         }
@@ -45,6 +45,7 @@ import org.jaqpot.core.model.util.ROG;
 import org.jaqpot.core.properties.PropertyManager;
 import org.jaqpot.core.service.annotations.Authorize;
 import org.jaqpot.core.service.annotations.UnSecure;
+import org.jaqpot.core.service.data.UriResolver;
 import org.jaqpot.core.service.exceptions.QuotaExceededException;
 
 import javax.ejb.EJB;
@@ -76,6 +77,9 @@ public class InterLabTestingResource {
     @UnSecure
     Client client;
 
+    @EJB
+    UriResolver uriResolver;
+
     @Inject
     @Jackson
     JSONSerializer jsonSerializer;
@@ -120,11 +124,7 @@ public class InterLabTestingResource {
                     + "No more than " + maxAllowedReports + " are allowed with your subscription.");
         }
 
-        Dataset dataset = client.target(datasetURI)
-                .request()
-                .header("subjectid", subjectId)
-                .accept(MediaType.APPLICATION_JSON)
-                .get(Dataset.class);
+        Dataset dataset = uriResolver.getDataset(client, datasetURI, subjectId);
         dataset.setDatasetURI(datasetURI);
 
         TrainingRequest trainingRequest = new TrainingRequest();
@@ -38,14 +38,17 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletionException;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 import javax.ejb.EJB;
 import javax.inject.Inject;
 import javax.ws.rs.*;
 import javax.ws.rs.client.Client;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
-import javax.ws.rs.core.GenericType;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
@@ -63,6 +66,7 @@ import org.jaqpot.core.model.factory.ErrorReportFactory;
 import org.jaqpot.core.service.annotations.Authorize;
 import org.jaqpot.core.service.annotations.UnSecure;
 import org.jaqpot.core.service.data.PredictionService;
+import org.jaqpot.core.service.data.UriResolver;
 import org.jaqpot.core.service.exceptions.JaqpotForbiddenException;
 import org.jaqpot.core.service.exceptions.parameter.ParameterInvalidURIException;
 import org.jaqpot.core.service.exceptions.parameter.ParameterIsNullException;
@@ -106,6 +110,9 @@ public class ModelResource {
     @Inject
     @UnSecure
     Client client;
+
+    @EJB
+    UriResolver uriResolver;
     
     @Inject
     ParameterValidator parameterValidator;
@@ -141,15 +148,27 @@ public class ModelResource {
             @ApiParam(value = "Authorization token") @HeaderParam("subjectid") String subjectId,
             @ApiParam(value = "start", defaultValue = "0") @QueryParam("start") Integer start,
             @ApiParam(value = "max - the server imposes an upper limit of 500 on this "
-                    + "parameter.", defaultValue = "20") @QueryParam("max") Integer max
+                    + "parameter.", defaultValue = "20") @QueryParam("max") Integer max,
+            @ApiParam(value = "cursor - continuation token taken from the next link of a previous page; "
+                    + "when given, start is ignored") @QueryParam("cursor") String cursor
     ) {
         if (max == null || max > 500) {
             max = 500;
         }
         String creator = securityContext.getUserPrincipal().getName();
-        return Response.ok(modelHandler.listMetaOfCreator(creator, start != null ? start : 0, max))
-                .header("total", modelHandler.countAllOfCreator(creator))
-                .build();
+        List<Model> models = cursor != null
+                ? modelHandler.listMetaOfCreator(creator, cursor, max)
+                : modelHandler.listMetaOfCreator(creator, start != null ? start : 0, max);
+        Response.ResponseBuilder response = Response.ok(models)
+                .header("total", modelHandler.countAllOfCreator(creator));
+        if (models.size() == max) {
+            response.links(Link.fromUriBuilder(uriInfo.getRequestUriBuilder()
+                    .replaceQueryParam("start")
+                    .replaceQueryParam("cursor", modelHandler.cursorOf(models.get(max - 1))))
+                    .rel("next")
+                    .build());
+        }
+        return response.build();
     }
 
     @GET
@@ -220,17 +239,23 @@ public class ModelResource {
 //        @ApiResponse(code = 404, message = "This model was not found."),
 //        @ApiResponse(code = 500, message = "Internal server error - this request cannot be served.")
 //    })
-    public Response getModel(
+    public void getModel(
+            @Suspended final AsyncResponse asyncResponse,
             @PathParam("id") String id,
             @ApiParam(value = "Clients need to authenticate in order to access models") @HeaderParam("subjectid") String subjectId) {
-        Model model = modelHandler.findModel(id);
-        if (model == null) {
-            return Response
-                    .ok(ErrorReportFactory.notFoundError(uriInfo.getPath()))
-                    .status(Response.Status.NOT_FOUND)
-                    .build();
-        }
-        return Response.ok(model).build();
+        String path = uriInfo.getPath();
+        modelHandler.findModelAsync(id).whenComplete((model, error) -> {
+            if (error != null) {
+                asyncResponse.resume(error instanceof CompletionException ? error.getCause() : error);
+            } else if (model == null) {
+                asyncResponse.resume(Response
+                        .ok(ErrorReportFactory.notFoundError(path))
+                        .status(Response.Status.NOT_FOUND)
+                        .build());
+            } else {
+                asyncResponse.resume(Response.ok(model).build());
+            }
+        });
     }
 
     @GET
@@ -375,11 +400,7 @@ public class ModelResource {
         String datasetURI;
 
         if (model.getTransformationModels() != null && !model.getTransformationModels().isEmpty()) {
-            Model firstTransformation = client.target(model.getTransformationModels().get(0))
-                    .request()
-                    .accept(MediaType.APPLICATION_JSON)
-                    .header("subjectId", subjectId)
-                    .get(Model.class);
+            Model firstTransformation = uriResolver.getModel(client, model.getTransformationModels().get(0), subjectId);
             requiredFeatures = firstTransformation.getIndependentFeatures();
             datasetURI = firstTransformation.getDatasetUri();
         } else {
@@ -388,12 +409,7 @@ public class ModelResource {
         }
         Set<FeatureInfo> featureSet;
         if (datasetURI != null) {
-            featureSet = client.target(datasetURI.split("\\?")[0] + "/features")
-                    .request()
-                    .accept(MediaType.APPLICATION_JSON)
-                    .header("subjectId", subjectId)
-                    .get(new GenericType<Set<FeatureInfo>>() {
-                    });
+            featureSet = uriResolver.getDatasetFeatures(client, datasetURI, subjectId);
         } else {
             featureSet = new HashSet<>();
         }
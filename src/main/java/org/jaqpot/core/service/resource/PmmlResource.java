@@ -53,6 +53,7 @@ import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
@@ -288,14 +289,36 @@ public class PmmlResource {
     public Response listPmml(
             @ApiParam(value = "Authorization token") @HeaderParam("subjectid") String subjectId,
             @ApiParam(value = "start", defaultValue = "0") @QueryParam("start") Integer start,
-            @ApiParam(value = "max", defaultValue = "10") @QueryParam("max") Integer max
+            @ApiParam(value = "max", defaultValue = "10") @QueryParam("max") Integer max,
+            @ApiParam(value = "cursor - continuation token taken from the next link of a previous page; "
+                    + "when given, start is ignored") @QueryParam("cursor") String cursor
     ) {
         String creator = securityContext.getUserPrincipal().getName();
-        return Response
-                .ok(pmmlHandler.listMetaOfCreator(creator, start != null ? start : 0, max != null ? max : Integer.MAX_VALUE))
+        if (cursor == null) {
+            return Response
+                    .ok(pmmlHandler.listMetaOfCreator(creator, start != null ? start : 0, max != null ? max : Integer.MAX_VALUE))
+                    .status(Response.Status.OK)
+                    .header("total", pmmlHandler.countAllOfCreator(creator))
+                    .build();
+        }
+        if (max == null) {
+            max = 10;
+        } else if (max > 500) {
+            max = 500;
+        }
+        List<Pmml> pmmls = pmmlHandler.listMetaOfCreator(creator, cursor, max);
+        Response.ResponseBuilder response = Response
+                .ok(pmmls)
                 .status(Response.Status.OK)
-                .header("total", pmmlHandler.countAllOfCreator(creator))
-                .build();
+                .header("total", pmmlHandler.countAllOfCreator(creator));
+        if (pmmls.size() == max) {
+            response.links(Link.fromUriBuilder(uriInfo.getRequestUriBuilder()
+                    .replaceQueryParam("start")
+                    .replaceQueryParam("cursor", pmmlHandler.cursorOf(pmmls.get(max - 1))))
+                    .rel("next")
+                    .build());
+        }
+        return response.build();
     }
     
 }
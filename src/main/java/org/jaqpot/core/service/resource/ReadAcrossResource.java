@@ -20,6 +20,7 @@ import org.jaqpot.core.model.facades.UserFacade;
 import org.jaqpot.core.model.util.ROG;
 import org.jaqpot.core.service.annotations.Authorize;
 import org.jaqpot.core.service.annotations.UnSecure;
+import org.jaqpot.core.service.data.UriResolver;
 import org.jaqpot.core.service.exceptions.QuotaExceededException;
 
 import javax.ejb.EJB;
@@ -50,6 +51,9 @@ public class ReadAcrossResource {
     @UnSecure
     Client client;
 
+    @EJB
+    UriResolver uriResolver;
+
     @Inject
     @Jackson
     JSONSerializer jsonSerializer;
@@ -90,11 +94,7 @@ public class ReadAcrossResource {
                     + "No more than " + maxAllowedReports + " are allowed with your subscription.");
         }
 
-        Dataset dataset = client.target(datasetURI)
-                .request()
-                .header("subjectid", subjectId)
-                .accept(MediaType.APPLICATION_JSON)
-                .get(Dataset.class);
+        Dataset dataset = uriResolver.getDataset(client, datasetURI, subjectId);
         dataset.setDatasetURI(datasetURI);
 
         TrainingRequest trainingRequest = new TrainingRequest();
@@ -56,6 +56,7 @@ import javax.ws.rs.QueryParam;
 import javax.ws.rs.container.AsyncResponse;
 import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Link;
 import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.SecurityContext;
@@ -110,7 +111,9 @@ public class TaskResource {
             @ApiParam(value = "Status of the task", allowableValues = "RUNNING,QUEUED,COMPLETED,ERROR,CANCELLED,REJECTED") @QueryParam("status") String status,
             @ApiParam(value = "start", defaultValue = "0") @QueryParam("start") Integer start,
             @ApiParam(value = "max - the server imposes an upper limit of 500 on this "
-                    + "parameter.", defaultValue = "10") @QueryParam("max") Integer max
+                    + "parameter.", defaultValue = "10") @QueryParam("max") Integer max,
+            @ApiParam(value = "cursor - continuation token taken from the next link of a previous page; "
+                    + "when given, start is ignored") @QueryParam("cursor") String cursor
     ) {
         start = start != null ? start : 0;
         if (max == null || max > 500) {
@@ -120,10 +123,14 @@ public class TaskResource {
         Long totalTasks;
         String creator = securityContext.getUserPrincipal().getName();
         if (status == null) {
-            foundTasks = taskHandler.findByUser(creator, start, max);
+            foundTasks = cursor != null
+                    ? taskHandler.findByUser(creator, cursor, max)
+                    : taskHandler.findByUser(creator, start, max);
             totalTasks = taskHandler.countAllOfCreator(creator);
         } else {
-            foundTasks = taskHandler.findByUserAndStatus(creator, Task.Status.valueOf(status), start, max);
+            foundTasks = cursor != null
+                    ? taskHandler.findByUserAndStatus(creator, Task.Status.valueOf(status), cursor, max)
+                    : taskHandler.findByUserAndStatus(creator, Task.Status.valueOf(status), start, max);
             totalTasks = taskHandler.countByUserAndStatus(creator, Task.Status.valueOf(status));
         }
         foundTasks.stream().forEach(task -> {
@@ -131,9 +138,16 @@ public class TaskResource {
                 task.setResultUri(uriInfo.getBaseUri() + task.getResult());
             }
         });
-        return Response.ok(foundTasks)
-                .header("total", totalTasks)
-                .build();
+        Response.ResponseBuilder response = Response.ok(foundTasks)
+                .header("total", totalTasks);
+        if (foundTasks.size() == max) {
+            response.links(Link.fromUriBuilder(uriInfo.getRequestUriBuilder()
+                    .replaceQueryParam("start")
+                    .replaceQueryParam("cursor", taskHandler.cursorOf(foundTasks.get(max - 1))))
+                    .rel("next")
+                    .build());
+        }
+        return response.build();
     }
 
     @GET
@@ -156,6 +156,7 @@ public class ValidationResource {
             @FormParam("folds") Integer folds,
             @FormParam("stratify") String stratify,
             @FormParam("seed") Integer seed,
+            @ApiParam(value = "Number of times the cross validation is repeated, each time after the first with the rows shuffled", defaultValue = "1") @FormParam("repeats") Integer repeats,
             @HeaderParam("subjectId") String subjectId
     ) throws QuotaExceededException, JMSException, ParameterInvalidURIException, ParameterIsNullException {
         if (algorithmURI==null)
@@ -164,6 +165,8 @@ public class ValidationResource {
             throw new ParameterIsNullException("datasetURI");
         if (folds==null)
             throw new ParameterIsNullException("folds");
+        if (folds < 1 || (repeats != null && repeats < 1))
+            throw new BadRequestException("Folds and repeats must be positive numbers");
 
         User user = userHandler.find(securityContext.getUserPrincipal().getName());
         long reportCount = reportHandler.countAllOfCreator(user.getId());
@@ -219,6 +222,7 @@ public class ValidationResource {
         options.put("folds", folds);
         options.put("stratify", stratify);
         options.put("seed", seed);
+        options.put("repeats", repeats);
         options.put("creator", user.getId());
         options.put("subjectId", subjectId);
 
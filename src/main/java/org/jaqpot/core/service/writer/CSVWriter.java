@@ -29,12 +29,19 @@
  */
 package org.jaqpot.core.service.writer;
 
+import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.lang.annotation.Annotation;
 import java.lang.reflect.Type;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import javax.ws.rs.Produces;
 import javax.ws.rs.WebApplicationException;
 import javax.ws.rs.core.Context;
@@ -46,6 +53,7 @@ import javax.ws.rs.ext.Provider;
 import org.jaqpot.core.model.JaqpotEntity;
 import org.jaqpot.core.model.dto.dataset.DataEntry;
 import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
 
 /**
  *
@@ -57,6 +65,8 @@ import org.jaqpot.core.model.dto.dataset.Dataset;
 @Produces("text/csv")
 public class CSVWriter implements MessageBodyWriter<JaqpotEntity> {
 
+    private static final int BUFFER_SIZE = 1 << 16;
+
     @Context
     UriInfo uriInfo;
 
@@ -74,26 +84,76 @@ public class CSVWriter implements MessageBodyWriter<JaqpotEntity> {
     public void writeTo(JaqpotEntity entity, Class<?> type, Type genericType,
             Annotation[] annotations, MediaType mediaType, MultivaluedMap<String, Object> httpHeaders,
             OutputStream entityStream) throws IOException, WebApplicationException {
-
-        String uri = uriInfo.getBaseUri() + entity.getClass().getSimpleName().toLowerCase() + "/" + entity.getId();
         Dataset dataset = (Dataset) entity;
+        List<String> columns = dataset.toColumnar().getDictionary().uris();
+        write(dataset.getFeatures(), columns, dataset.getDataEntry().iterator(), entityStream);
+    }
 
-        Set<String> attributes = dataset.getDataEntry().get(0).getValues().keySet();
-        String headers = "\"Substance\"," + attributes.stream()
-                .map(a -> "\"" + dataset.getFeatures().stream()
-                        .filter(f -> f.getURI().equals(a))
-                        .findFirst()
-                        .get()
-                        .getName() + "\"")
-                .collect(Collectors.joining(","));
-//        String headers = dataset.getDataEntry().get(0).getValues().keySet().stream().collect(Collectors.joining(","));
-        entityStream.write(headers.getBytes());
-        for (DataEntry de : dataset.getDataEntry()) {
-            String row = "\n\"" + de.getCompound().getName() + "\"," + de.getValues().values().stream()
-                    .map(v -> v != null ? "\"" + v.toString() + "\"" : "\"null\"").collect(Collectors.joining(","));
-            entityStream.write(row.getBytes());
+    /**
+     * Writes rows as CSV, one line per row preceded by a header line with the
+     * names of the features. Values are quoted, with embedded quotes doubled,
+     * and missing values are left empty. Rows are consumed one at a time, so
+     * they may be read lazily from the database while writing.
+     *
+     * @param features the features of the dataset, used to name the columns
+     * @param columns feature URIs of the columns in ascending order
+     * @param rows the rows to write
+     * @param out the stream to write to; it is flushed but not closed
+     * @throws IOException if writing fails
+     */
+    public static void write(Collection<FeatureInfo> features, List<String> columns, Iterator<DataEntry> rows, OutputStream out) throws IOException {
+        Map<String, String> names = new HashMap<>();
+        if (features != null) {
+            for (FeatureInfo feature : features) {
+                if (feature.getName() != null) {
+                    names.put(feature.getURI(), feature.getName());
+                }
+            }
+        }
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        writer.write("\"Substance\"");
+        for (String column : columns) {
+            writer.write(',');
+            quote(writer, names.getOrDefault(column, column));
+        }
+        String[] cells = new String[columns.size()];
+        while (rows.hasNext()) {
+            DataEntry dataEntry = rows.next();
+            writer.write('\n');
+            quote(writer, dataEntry.getCompound() != null ? dataEntry.getCompound().getName() : null);
+            // Both the columns and the keys of the row are sorted, so a single
+            // merge pass places every value in its column.
+            int column = 0;
+            for (Map.Entry<String, Object> value : dataEntry.getValues().entrySet()) {
+                while (column < cells.length && columns.get(column).compareTo(value.getKey()) < 0) {
+                    cells[column++] = null;
+                }
+                if (column < cells.length && columns.get(column).equals(value.getKey())) {
+                    cells[column++] = value.getValue() != null ? value.getValue().toString() : null;
+                }
+            }
+            while (column < cells.length) {
+                cells[column++] = null;
+            }
+            for (String cell : cells) {
+                writer.write(',');
+                quote(writer, cell);
+            }
+        }
+        writer.flush();
+    }
+
+    private static void quote(Writer writer, String value) throws IOException {
+        if (value == null) {
+            return;
+        }
+        writer.write('"');
+        if (value.indexOf('"') < 0) {
+            writer.write(value);
+        } else {
+            writer.write(value.replace("\"", "\"\""));
         }
-        entityStream.flush();
+        writer.write('"');
     }
 
 }
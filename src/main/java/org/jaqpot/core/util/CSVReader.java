@@ -0,0 +1,186 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A streaming reader of RFC 4180 CSV documents. Records are read from a
+ * reusable character buffer, one at a time, so documents of any size are
+ * read in constant memory. Quoted fields may span several lines and contain
+ * separators and doubled quotes; lines may end with LF, CRLF or CR, and
+ * blank lines are skipped.
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class CSVReader implements Closeable {
+
+    private static final char DEFAULT_SEPARATOR = ',';
+    private static final char DEFAULT_QUOTE = '"';
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Reader reader;
+    private final char separator;
+    private final char quote;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private final StringBuilder field = new StringBuilder();
+    private final List<String> fields = new ArrayList<>();
+    private long line = 1;
+
+    public CSVReader(Reader reader) {
+        this(reader, DEFAULT_SEPARATOR, DEFAULT_QUOTE);
+    }
+
+    public CSVReader(Reader reader, char separator, char quote) {
+        this.reader = reader;
+        this.separator = separator;
+        this.quote = quote;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @return the fields of the record, or null at the end of the document
+     * @throws IOException if reading fails or a quoted field is not closed
+     */
+    public String[] readRecord() throws IOException {
+        int c;
+        do {
+            c = read();
+            if (c == '\r' || c == '\n') {
+                endOfLine(c);
+            }
+        } while (c == '\r' || c == '\n');
+        if (c < 0) {
+            return null;
+        }
+        fields.clear();
+        while (true) {
+            field.setLength(0);
+            if (c == quote) {
+                c = readQuoted();
+            } else {
+                while (c >= 0 && c != separator && c != '\r' && c != '\n') {
+                    field.append((char) c);
+                    c = read();
+                }
+            }
+            fields.add(field.toString());
+            if (c == separator) {
+                c = read();
+            } else {
+                if (c >= 0) {
+                    endOfLine(c);
+                }
+                return fields.toArray(new String[fields.size()]);
+            }
+        }
+    }
+
+    /**
+     * The line at which the next record starts.
+     *
+     * @return a line number, starting from 1
+     */
+    public long getLine() {
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+
+    /**
+     * Reads a quoted field, whose opening quote has been read, along with
+     * anything up to the next separator or line end.
+     */
+    private int readQuoted() throws IOException {
+        long start = line;
+        while (true) {
+            int c = read();
+            if (c < 0) {
+                throw new IOException("Unterminated quoted field starting at line " + start);
+            }
+            if (c == quote) {
+                c = read();
+                if (c != quote) {
+                    while (c >= 0 && c != separator && c != '\r' && c != '\n') {
+                        field.append((char) c);
+                        c = read();
+                    }
+                    return c;
+                }
+            } else if (c == '\n' || (c == '\r' && peek() != '\n')) {
+                line++;
+            }
+            field.append((char) c);
+        }
+    }
+
+    private void endOfLine(int c) throws IOException {
+        if (c == '\r' && peek() == '\n') {
+            position++;
+        }
+        line++;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+
+}
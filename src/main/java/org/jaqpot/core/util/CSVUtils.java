@@ -33,14 +33,13 @@ public class CSVUtils {
             separators = DEFAULT_SEPARATOR;
         }
 
-        StringBuffer curVal = new StringBuffer();
+        StringBuilder curVal = new StringBuilder();
         boolean inQuotes = false;
         boolean startCollectChar = false;
         boolean doubleQuotesInColumn = false;
 
-        char[] chars = cvsLine.toCharArray();
-
-        for (char ch : chars) {
+        for (int i = 0; i < cvsLine.length(); i++) {
+            char ch = cvsLine.charAt(i);
 
             if (inQuotes) {
                 startCollectChar = true;
@@ -66,7 +65,7 @@ public class CSVUtils {
                     inQuotes = true;
 
                     //Fixed : allow "" in empty quote enclosed
-                    if (chars[0] != '"' && customQuote == '\"') {
+                    if (cvsLine.charAt(0) != '"' && customQuote == '\"') {
                         curVal.append('"');
                     }
 
@@ -79,7 +78,7 @@ public class CSVUtils {
 
                     result.add(curVal.toString());
 
-                    curVal = new StringBuffer();
+                    curVal.setLength(0);
                     startCollectChar = false;
 
                 } else if (ch == '\r') {
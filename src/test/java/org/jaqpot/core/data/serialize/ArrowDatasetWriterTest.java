@@ -0,0 +1,160 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.ipc.ArrowStreamReader;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.Schema;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+import org.jaqpot.core.model.dto.dataset.Substance;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class ArrowDatasetWriterTest {
+
+    private static final String FEATURE = "http://localhost:8080/jaqpot/services/feature/";
+    private static final String INTEGERS = FEATURE + "integers";
+    private static final String DOUBLES = FEATURE + "doubles";
+    private static final String FLAGS = FEATURE + "flags";
+    private static final String NAMES = FEATURE + "names";
+    private static final String MIXED = FEATURE + "mixed";
+
+    @Test
+    public void typesColumnsAfterTheirValues() throws IOException {
+        Map<String, Field> fields = new HashMap<>();
+        try (BufferAllocator allocator = ArrowDatasetWriter.ALLOCATOR.newChildAllocator("test", 0, Long.MAX_VALUE);
+                ArrowStreamReader reader = new ArrowStreamReader(new ByteArrayInputStream(write(dataset())), allocator)) {
+            Schema schema = reader.getVectorSchemaRoot().getSchema();
+            for (Field field : schema.getFields()) {
+                fields.put(field.getName(), field);
+            }
+        }
+
+        assertEquals(new ArrowType.Int(64, true), fields.get(INTEGERS).getType());
+        assertEquals(new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE), fields.get(DOUBLES).getType());
+        assertEquals(ArrowType.Bool.INSTANCE, fields.get(FLAGS).getType());
+        assertEquals(ArrowType.Utf8.INSTANCE, fields.get(NAMES).getType());
+        assertNull(fields.get(NAMES).getMetadata().get(ArrowDatasetWriter.ENCODING));
+        assertEquals(ArrowType.Utf8.INSTANCE, fields.get(MIXED).getType());
+        assertEquals(ArrowDatasetWriter.JSON, fields.get(MIXED).getMetadata().get(ArrowDatasetWriter.ENCODING));
+    }
+
+    @Test
+    public void readsBackTheValuesWritten() throws IOException {
+        Dataset dataset = dataset();
+        List<DataEntry> rows = new ArrayList<>();
+        Dataset header = ArrowDatasetReader.read(new ByteArrayInputStream(write(dataset)), (h, row) -> rows.add(row));
+
+        assertEquals("arrow", header.getId());
+        assertEquals(dataset.getFeatures().size(), header.getFeatures().size());
+        assertEquals(3, rows.size());
+        for (int i = 0; i < rows.size(); i++) {
+            DataEntry expected = dataset.getDataEntry().get(i);
+            assertEquals(expected.getCompound().getURI(), rows.get(i).getCompound().getURI());
+            assertEquals(expected.getCompound().getName(), rows.get(i).getCompound().getName());
+            assertEquals(expected.getValues(), rows.get(i).getValues());
+        }
+        assertEquals(Integer.class, rows.get(0).getValues().get(INTEGERS).getClass());
+        assertEquals(Long.class, rows.get(1).getValues().get(INTEGERS).getClass());
+    }
+
+    @Test
+    public void readsMissingValuesAsNull() throws IOException {
+        Dataset dataset = dataset();
+        dataset.getDataEntry().get(2).getValues().remove(DOUBLES);
+        List<DataEntry> rows = new ArrayList<>();
+        ArrowDatasetReader.read(new ByteArrayInputStream(write(dataset)), (h, row) -> rows.add(row));
+
+        Map<String, Object> values = rows.get(2).getValues();
+        assertEquals(5, values.size());
+        assertTrue(values.containsKey(DOUBLES));
+        assertNull(values.get(DOUBLES));
+    }
+
+    private static byte[] write(Dataset dataset) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ArrowDatasetWriter.write(dataset, out);
+        return out.toByteArray();
+    }
+
+    private static Dataset dataset() {
+        Set<FeatureInfo> features = new HashSet<>();
+        for (String uri : Arrays.asList(INTEGERS, DOUBLES, FLAGS, NAMES, MIXED)) {
+            features.add(new FeatureInfo(uri, uri.substring(FEATURE.length())));
+        }
+        List<DataEntry> dataEntry = new ArrayList<>();
+        dataEntry.add(row(0, 1, 0.5, true, "a", "text"));
+        dataEntry.add(row(1, 1L << 40, Double.NaN, false, null, 2));
+        dataEntry.add(row(2, null, -1.25, null, "c", Arrays.asList(1, "x")));
+        Dataset dataset = new Dataset();
+        dataset.setId("arrow");
+        dataset.setFeatures(features);
+        dataset.setDataEntry(dataEntry);
+        return dataset;
+    }
+
+    private static DataEntry row(int i, Object integer, Object number, Object flag, Object name, Object mixed) {
+        TreeMap<String, Object> values = new TreeMap<>();
+        values.put(INTEGERS, integer);
+        values.put(DOUBLES, number);
+        values.put(FLAGS, flag);
+        values.put(NAMES, name);
+        values.put(MIXED, mixed);
+        DataEntry row = new DataEntry();
+        row.setCompound(new Substance("http://localhost:8080/jaqpot/services/substance/s" + i, "s" + i, null));
+        row.setValues(values);
+        return row;
+    }
+
+}
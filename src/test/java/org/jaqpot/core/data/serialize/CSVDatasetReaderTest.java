@@ -0,0 +1,140 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class CSVDatasetReaderTest {
+
+    private static final String BASE = "http://localhost:8080/jaqpot/services/";
+
+    @Test
+    public void namesFeaturesByEncodedAbsoluteUris() throws IOException {
+        List<DataEntry> rows = new ArrayList<>();
+        Dataset dataset = read("Substance,log P,a/b\nwater,1.5,x\n", rows);
+
+        Map<String, String> names = new TreeMap<>();
+        for (FeatureInfo feature : dataset.getFeatures()) {
+            names.put(feature.getURI(), feature.getName());
+        }
+        Map<String, String> expected = new TreeMap<>();
+        expected.put(BASE + "feature/log+P", "log P");
+        expected.put(BASE + "feature/a%2Fb", "a/b");
+        assertEquals(expected, names);
+        assertEquals("water", rows.get(0).getCompound().getName());
+        assertEquals(BASE + "substance/0", rows.get(0).getCompound().getURI());
+    }
+
+    @Test
+    public void readsMissingValuesAsNull() throws IOException {
+        List<DataEntry> rows = new ArrayList<>();
+        read("Substance,a,b,c\ns1,1,,x\ns2,2\n", rows);
+
+        Map<String, Object> first = rows.get(0).getValues();
+        assertEquals(3, first.size());
+        assertEquals(1.0, first.get(BASE + "feature/a"));
+        assertTrue(first.containsKey(BASE + "feature/b"));
+        assertNull(first.get(BASE + "feature/b"));
+        assertEquals("x", first.get(BASE + "feature/c"));
+
+        Map<String, Object> second = rows.get(1).getValues();
+        assertEquals(3, second.size());
+        assertEquals(2.0, second.get(BASE + "feature/a"));
+        assertNull(second.get(BASE + "feature/b"));
+        assertNull(second.get(BASE + "feature/c"));
+    }
+
+    @Test
+    public void readsNumericColumnsAsNumbers() throws IOException {
+        List<DataEntry> rows = new ArrayList<>();
+        read("n,s\n1e3,1\n-2.5,0x10\n", rows);
+
+        assertEquals(1000.0, rows.get(0).getValues().get(BASE + "feature/n"));
+        assertEquals(-2.5, rows.get(1).getValues().get(BASE + "feature/n"));
+        assertEquals("1", rows.get(0).getValues().get(BASE + "feature/s"));
+        assertEquals("row1", rows.get(1).getCompound().getName());
+    }
+
+    @Test
+    public void appendsTheSlashToTheBaseUri() throws IOException {
+        Dataset dataset = CSVDatasetReader.read(stream("a\n1\n"), "http://localhost/services", null, (header, row) -> {
+        });
+
+        assertEquals("http://localhost/services/feature/a", dataset.getFeatures().iterator().next().getURI());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRecordsLongerThanTheHeader() throws IOException {
+        read("a,b\n1,2,3\n", new ArrayList<>());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicateColumns() throws IOException {
+        read("a,b,a\n1,2,3\n", new ArrayList<>());
+    }
+
+    @Test
+    public void parsesOnlyDecimalNumbers() {
+        assertEquals(Double.valueOf(-1.5e-3), CSVDatasetReader.toNumber("-1.5e-3"));
+        assertNull(CSVDatasetReader.toNumber("0x10"));
+        assertNull(CSVDatasetReader.toNumber("1f"));
+        assertNull(CSVDatasetReader.toNumber("e"));
+        assertNull(CSVDatasetReader.toNumber("1-"));
+        assertNull(CSVDatasetReader.toNumber("NaN"));
+    }
+
+    private static Dataset read(String csv, List<DataEntry> rows) throws IOException {
+        return CSVDatasetReader.read(stream(csv), BASE, "Substance", (header, row) -> rows.add(row));
+    }
+
+    private static ByteArrayInputStream stream(String csv) {
+        return new ByteArrayInputStream(csv.getBytes(StandardCharsets.UTF_8));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.jaqpot.core.model.Model;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class JacksonMongoSerializerTest {
+
+    private final JacksonMongoSerializer serializer = new JacksonMongoSerializer();
+
+    @Test
+    public void escapesNestedKeys() {
+        Model model = new Model();
+        Map<String, Object> nested = new HashMap<>();
+        nested.put("x.y", 1);
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("a.b", nested);
+        model.setParameters(parameters);
+
+        String json = serializer.write(model);
+
+        assertTrue(json.contains("\"a(DOT)b\""));
+        assertTrue(json.contains("\"x(DOT)y\""));
+        assertFalse(json.contains("a.b"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void unescapesKeysNestedInUntypedValues() {
+        Model model = serializer.parse("{\"parameters\":{\"a(DOT)b\":{\"x(DOT)y\":[{\"p(DOT)q\":2}],\"z\":3}}}", Model.class);
+
+        Map<String, Object> nested = (Map<String, Object>) model.getParameters().get("a.b");
+        assertEquals(Collections.singleton("a.b"), model.getParameters().keySet());
+        assertEquals(3, nested.get("z"));
+        List<Object> list = (List<Object>) nested.get("x.y");
+        assertEquals(Collections.singletonMap("p.q", 2), list.get(0));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void keepsTheOrderOfUntypedMaps() {
+        Model model = serializer.parse("{\"parameters\":{\"p\":{\"c\":1,\"b(DOT)1\":2,\"a\":3}}}", Model.class);
+
+        Map<String, Object> nested = (Map<String, Object>) model.getParameters().get("p");
+        assertEquals(Arrays.asList("c", "b.1", "a"), Arrays.asList(nested.keySet().toArray()));
+    }
+
+}
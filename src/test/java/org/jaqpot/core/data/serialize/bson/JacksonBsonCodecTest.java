@@ -0,0 +1,149 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize.bson;
+
+import com.mongodb.MongoClient;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.TreeMap;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentReader;
+import org.bson.BsonDocumentWriter;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.jaqpot.core.data.serialize.JacksonMongoSerializer;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.FeatureInfo;
+import org.jaqpot.core.model.dto.dataset.Substance;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class JacksonBsonCodecTest {
+
+    private static final String FEATURE = "http://localhost:8080/jaqpot/services/feature/a.b";
+
+    private final JacksonMongoSerializer serializer = new JacksonMongoSerializer();
+    private final JacksonBsonCodec<Dataset> codec = new JacksonBsonCodec<>(Dataset.class, JacksonMongoSerializer.createMapper());
+
+    @Test
+    public void encodesLikeDocumentParse() {
+        Dataset dataset = dataset();
+
+        BsonDocument expected = Document.parse(serializer.write(dataset))
+                .toBsonDocument(BsonDocument.class, MongoClient.getDefaultCodecRegistry());
+
+        assertEquals(expected, encode(dataset));
+    }
+
+    @Test
+    public void escapesDottedKeys() {
+        BsonDocument values = encode(dataset())
+                .getArray("dataEntry").get(0).asDocument()
+                .getDocument("values");
+
+        assertEquals(new HashSet<>(Arrays.asList(
+                "http://localhost:8080/jaqpot/services/feature/a(DOT)b",
+                "plain")), values.keySet());
+    }
+
+    @Test
+    public void narrowsIntegralNumbers() {
+        BsonDocument values = encode(dataset())
+                .getArray("dataEntry").get(0).asDocument()
+                .getDocument("values");
+
+        assertEquals(BsonType.INT32, values.get("plain").getBsonType());
+        assertEquals(BsonType.DOUBLE, values.get("http://localhost:8080/jaqpot/services/feature/a(DOT)b").getBsonType());
+    }
+
+    @Test
+    public void decodesWhatItEncodes() {
+        Dataset decoded = codec.decode(new BsonDocumentReader(encode(dataset())), DecoderContext.builder().build());
+
+        assertEquals("d1", decoded.getId());
+        assertEquals(2, decoded.getDataEntry().size());
+        DataEntry row = decoded.getDataEntry().get(1);
+        assertEquals("http://localhost:8080/jaqpot/services/substance/s2", row.getCompound().getURI());
+        assertEquals(2.5, ((Number) row.getValues().get(FEATURE)).doubleValue(), 0);
+        assertNull(row.getValues().get("plain"));
+    }
+
+    @Test
+    public void writesNonFiniteNumbersAsStrings() {
+        Dataset dataset = dataset();
+        dataset.getDataEntry().get(0).getValues().put(FEATURE, Double.NaN);
+
+        BsonDocument values = encode(dataset)
+                .getArray("dataEntry").get(0).asDocument()
+                .getDocument("values");
+
+        assertEquals("NaN", values.getString("http://localhost:8080/jaqpot/services/feature/a(DOT)b").getValue());
+    }
+
+    private BsonDocument encode(Dataset dataset) {
+        BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), dataset, EncoderContext.builder().build());
+        return document;
+    }
+
+    private static Dataset dataset() {
+        TreeMap<String, Object> first = new TreeMap<>();
+        first.put(FEATURE, 1.5);
+        first.put("plain", 3L);
+        TreeMap<String, Object> second = new TreeMap<>();
+        second.put(FEATURE, 2.5);
+        second.put("plain", null);
+
+        Dataset dataset = new Dataset();
+        dataset.setId("d1");
+        dataset.setFeatures(new HashSet<>(Arrays.asList(new FeatureInfo(FEATURE, "a.b"), new FeatureInfo("plain", "plain"))));
+        dataset.setDataEntry(Arrays.asList(row("s1", first), row("s2", second)));
+        dataset.setTotalRows(2);
+        return dataset;
+    }
+
+    private static DataEntry row(String id, TreeMap<String, Object> values) {
+        DataEntry row = new DataEntry();
+        row.setCompound(new Substance("http://localhost:8080/jaqpot/services/substance/" + id, id, null));
+        row.setValues(values);
+        return row;
+    }
+
+}
@@ -0,0 +1,92 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.data.serialize.custom;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class MongoKeyEncoderTest {
+
+    @Test
+    public void escapesEveryDot() {
+        assertEquals("http://host(DOT)org/feature/a(DOT)(DOT)b(DOT)", MongoKeyEncoder.encode("http://host.org/feature/a..b."));
+    }
+
+    @Test
+    public void unescapesEveryDot() {
+        assertEquals("http://host.org/feature/a..b.", MongoKeyEncoder.decode("http://host(DOT)org/feature/a(DOT)(DOT)b(DOT)"));
+    }
+
+    @Test
+    public void matchesTheRegularExpressions() {
+        String key = "(DOT.)x.y(D.OT)";
+        assertEquals(key.replaceAll("\\.", "\\(DOT\\)"), MongoKeyEncoder.encode(key));
+        String escaped = MongoKeyEncoder.encode(key);
+        assertEquals(escaped.replaceAll("\\(DOT\\)", "\\."), MongoKeyEncoder.decode(escaped));
+    }
+
+    @Test
+    public void leavesKeysWithoutDotsAlone() {
+        String key = "http://host/feature/abc";
+        assertSame(key, MongoKeyEncoder.encode(key));
+        assertSame(key, MongoKeyEncoder.decode(key));
+        assertNull(MongoKeyEncoder.encode(null));
+        assertNull(MongoKeyEncoder.decode(null));
+    }
+
+    @Test
+    public void roundTrips() {
+        for (String key : new String[]{".", "..", "a.b", "(DOT", "DOT)", "(D.OT)", "x.(DOT)"}) {
+            String encoded = MongoKeyEncoder.encode(key);
+            assertEquals(-1, encoded.indexOf('.'));
+            if (!key.contains("(DOT)")) {
+                assertEquals(key, MongoKeyEncoder.decode(encoded));
+            }
+        }
+    }
+
+    @Test
+    public void keepsCachingOnceFull() {
+        for (int i = 0; i < 40000; i++) {
+            MongoKeyEncoder.encode("http://host.org/feature/" + i);
+        }
+        String key = "http://host.org/feature/after";
+        assertSame(MongoKeyEncoder.encode(key), MongoKeyEncoder.encode(new String(key)));
+    }
+
+}
@@ -0,0 +1,116 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.db.entitymanager;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Date;
+import org.jaqpot.core.model.MetaInfo;
+import org.jaqpot.core.model.Model;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class KeysetCursorTest {
+
+    @Test
+    public void pointsAtTheDateAndIdOfTheEntity() {
+        KeysetCursor cursor = KeysetCursor.parse(KeysetCursor.of(model("MOD1", new Date(1500000000123L))));
+
+        assertEquals(Long.valueOf(1500000000123L), cursor.getDate());
+        assertEquals("MOD1", cursor.getId());
+    }
+
+    @Test
+    public void keepsEntitiesWithoutADate() {
+        Model undated = model("MOD2", null);
+        Model withoutMeta = model("MOD3", null);
+        withoutMeta.setMeta(null);
+
+        KeysetCursor first = KeysetCursor.parse(KeysetCursor.of(undated));
+        KeysetCursor second = KeysetCursor.parse(KeysetCursor.of(withoutMeta));
+
+        assertNull(first.getDate());
+        assertEquals("MOD2", first.getId());
+        assertNull(second.getDate());
+        assertEquals("MOD3", second.getId());
+    }
+
+    @Test
+    public void keepsSeparatorsInTheId() {
+        KeysetCursor cursor = KeysetCursor.parse(KeysetCursor.of(model("a:b:c", new Date(42L))));
+
+        assertEquals(Long.valueOf(42L), cursor.getDate());
+        assertEquals("a:b:c", cursor.getId());
+    }
+
+    @Test
+    public void isSafeInAQueryString() {
+        String token = KeysetCursor.of(model("??>>~~ü", new Date(7L)));
+
+        assertFalse(token, token.matches(".*[+/=].*"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTokensThatAreNotBase64() {
+        KeysetCursor.parse("not a cursor!");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTokensWithoutSeparator() {
+        KeysetCursor.parse(encode("1500000000123"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsTokensWithoutNumericDate() {
+        KeysetCursor.parse(encode("yesterday:MOD1"));
+    }
+
+    private static String encode(String token) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Model model(String id, Date date) {
+        MetaInfo meta = new MetaInfo();
+        meta.setDate(date);
+        Model model = new Model();
+        model.setId(id);
+        model.setMeta(meta);
+        return model;
+    }
+
+}
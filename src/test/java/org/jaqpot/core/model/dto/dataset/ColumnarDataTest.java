@@ -0,0 +1,261 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.dto.dataset;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.stream.IntStream;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class ColumnarDataTest {
+
+    private static final String A = "http://localhost:8080/jaqpot/services/feature/a";
+    private static final String B = "http://localhost:8080/jaqpot/services/feature/b";
+
+    @Test
+    public void keepsTheTypeOfNumbers() {
+        ColumnarData data = ColumnarData.create(Arrays.asList(A), 4);
+        data.set(0, A, 3);
+        data.set(1, A, 1L << 40);
+        data.set(2, A, 1.5);
+        data.set(3, A, null);
+
+        assertTrue(data.isNumeric(0));
+        assertEquals(Integer.valueOf(3), data.get(0, A));
+        assertEquals(Long.valueOf(1L << 40), data.get(1, A));
+        assertEquals(Double.valueOf(1.5), data.get(2, A));
+        assertNull(data.get(3, A));
+        assertTrue(data.isPresent(3, 0));
+        assertEquals(3.0, data.getDouble(0, 0), 0);
+        assertEquals((double) (1L << 40), data.getDouble(1, 0), 0);
+        assertTrue(Double.isNaN(data.getDouble(3, 0)));
+    }
+
+    @Test
+    public void keepsTheTypeOfNumbersInSelections() {
+        ColumnarData data = ColumnarData.of(Arrays.asList(row("s1", 1), row("s2", 2L), row("s3", 2.5)));
+
+        ColumnarData selected = data.selectRows(new int[]{2, 0, 1});
+        selected.setCompound(0, new Substance(null, "written", null));
+
+        assertEquals(Double.valueOf(2.5), selected.get(0, A));
+        assertEquals(Integer.valueOf(1), selected.get(1, A));
+        assertEquals(Long.valueOf(2L), selected.get(2, A));
+    }
+
+    @Test
+    public void keepsStrayValuesAside() {
+        ColumnarData data = ColumnarData.create(Arrays.asList(A), 0);
+        for (int row = 0; row < 100; row++) {
+            data.addRow(row("s" + row, row * 0.5));
+        }
+        data.set(50, A, "n/a");
+
+        assertFalse(data.isNumeric(0));
+        assertEquals("n/a", data.get(50, A));
+        assertTrue(Double.isNaN(data.getDouble(50, 0)));
+        assertEquals(Double.valueOf(24.5), data.get(49, A));
+        assertEquals(25.5, data.getDouble(51, 0), 0);
+
+        data.set(50, A, 25.0);
+        assertTrue(data.isNumeric(0));
+    }
+
+    @Test
+    public void encodesTextColumns() {
+        List<DataEntry> rows = new ArrayList<>();
+        for (int row = 0; row < 20; row++) {
+            rows.add(row("s" + row, row % 2 == 0 ? "active" : "inactive"));
+        }
+        rows.get(3).getValues().put(A, 7);
+
+        ColumnarData data = ColumnarData.of(rows);
+
+        assertFalse(data.isNumeric(0));
+        assertEquals("active", data.get(0, A));
+        assertEquals("inactive", data.get(1, A));
+        assertEquals(Integer.valueOf(7), data.get(3, A));
+    }
+
+    @Test
+    public void tellsMissingFeaturesFromNullValues() {
+        DataEntry missing = row("s1", 1.0);
+        missing.getValues().remove(A);
+        missing.getValues().put(B, 2.0);
+        DataEntry nulled = row("s2", null);
+
+        ColumnarData data = ColumnarData.of(Arrays.asList(missing, nulled));
+
+        assertFalse(data.isPresent(0, data.getDictionary().indexOf(A)));
+        assertTrue(data.isPresent(1, data.getDictionary().indexOf(A)));
+        assertFalse(data.row(0).getValues().containsKey(A));
+        assertTrue(data.row(1).getValues().containsKey(A));
+    }
+
+    @Test
+    public void copiesDoNotSeeEachOthersWrites() {
+        ColumnarData data = ColumnarData.of(Arrays.asList(row("s1", 1.0), row("s2", 2.0)));
+        ColumnarData copy = data.copy();
+
+        copy.set(0, A, 10.0);
+        data.set(1, A, 20.0);
+
+        assertEquals(Double.valueOf(1.0), data.get(0, A));
+        assertEquals(Double.valueOf(20.0), data.get(1, A));
+        assertEquals(Double.valueOf(10.0), copy.get(0, A));
+        assertEquals(Double.valueOf(2.0), copy.get(1, A));
+    }
+
+    @Test
+    public void rangesAreViewsUntilWritten() {
+        ColumnarData data = ColumnarData.of(Arrays.asList(row("s1", 1.0), row("s2", 2.0), row("s3", 3.0), row("s4", 4.0)));
+        ColumnarData range = data.selectRows(1, 3);
+
+        assertEquals(2, range.rows());
+        assertEquals(Double.valueOf(2.0), range.get(0, A));
+        assertEquals("s3", range.getCompound(1).getName());
+
+        range.set(0, A, 20.0);
+        range.setCompound(1, new Substance(null, "renamed", null));
+        data.set(2, A, 30.0);
+
+        assertEquals(Double.valueOf(20.0), range.get(0, A));
+        assertEquals(Double.valueOf(3.0), range.get(1, A));
+        assertEquals("renamed", range.getCompound(1).getName());
+        assertEquals(Double.valueOf(2.0), data.get(1, A));
+        assertEquals(Double.valueOf(30.0), data.get(2, A));
+        assertEquals("s3", data.getCompound(2).getName());
+    }
+
+    @Test
+    public void permutationsRepeatRowsIndependently() {
+        ColumnarData data = ColumnarData.of(Arrays.asList(row("s1", 1.0), row("s2", 2.0)));
+        ColumnarData repeated = data.selectRows(new int[]{1, 1, 0});
+
+        repeated.set(0, A, 5.0);
+
+        assertEquals(Double.valueOf(5.0), repeated.get(0, A));
+        assertEquals(Double.valueOf(2.0), repeated.get(1, A));
+        assertEquals(Double.valueOf(1.0), repeated.get(2, A));
+        assertEquals(Double.valueOf(2.0), data.get(1, A));
+    }
+
+    @Test
+    public void columnSelectionsShareOnlyTheirColumns() {
+        DataEntry first = row("s1", 1.0);
+        first.getValues().put(B, "x");
+        DataEntry second = row("s2", 2.0);
+        second.getValues().put(B, "y");
+        ColumnarData data = ColumnarData.of(Arrays.asList(first, second));
+        ColumnarData onlyB = data.selectColumns(Arrays.asList(B));
+
+        assertEquals(1, onlyB.getDictionary().size());
+        assertFalse(onlyB.row(0).getValues().containsKey(A));
+
+        onlyB.set(0, B, "z");
+        onlyB.set(1, A, 9.0);
+        data.set(1, B, "w");
+
+        assertEquals("z", onlyB.get(0, B));
+        assertEquals("y", onlyB.get(1, B));
+        assertEquals(Double.valueOf(9.0), onlyB.get(1, A));
+        assertEquals("x", data.get(0, B));
+        assertEquals("w", data.get(1, B));
+        assertEquals(Double.valueOf(2.0), data.get(1, A));
+    }
+
+    @Test
+    public void rowListsOfViewsWriteToTheView() {
+        ColumnarData data = ColumnarData.of(Arrays.asList(row("s1", 1.0), row("s2", 2.0)));
+        ColumnarData view = data.selectRows(0, 1);
+        List<DataEntry> rows = view.rowList();
+
+        DataEntry previous = rows.set(0, row("t1", 100));
+        rows.add(row("t2", 200L));
+
+        assertEquals(Double.valueOf(1.0), previous.getValues().get(A));
+        assertEquals(2, view.rows());
+        assertEquals(Integer.valueOf(100), view.get(0, A));
+        assertEquals(Long.valueOf(200L), view.get(1, A));
+        assertEquals(2, data.rows());
+        assertEquals(Double.valueOf(1.0), data.get(0, A));
+        assertEquals(Double.valueOf(2.0), data.get(1, A));
+    }
+
+    @Test
+    public void convertingRowsOfAnotherInstanceCopiesOnWrite() {
+        ColumnarData data = ColumnarData.of(Arrays.asList(row("s1", 1.0), row("s2", 2.0)));
+        ColumnarData converted = ColumnarData.of(data.rowList());
+
+        converted.set(0, A, 7.0);
+
+        assertEquals(Double.valueOf(1.0), data.get(0, A));
+        assertEquals(Double.valueOf(7.0), converted.get(0, A));
+    }
+
+    @Test
+    public void writesDistinctRowsConcurrently() {
+        ColumnarData data = ColumnarData.create(Arrays.asList(A, B), 10000);
+        ColumnarData snapshot = data.copy();
+
+        IntStream.range(0, 10000).parallel().forEach(row -> {
+            data.set(row, A, row);
+            data.set(row, B, row * 0.5);
+        });
+
+        for (int row = 0; row < 10000; row++) {
+            assertEquals(Integer.valueOf(row), data.get(row, A));
+            assertEquals(Double.valueOf(row * 0.5), data.get(row, B));
+            assertFalse(snapshot.isPresent(row, 0));
+        }
+    }
+
+    static DataEntry row(String name, Object value) {
+        TreeMap<String, Object> values = new TreeMap<>();
+        values.put(A, value);
+        DataEntry row = new DataEntry();
+        row.setCompound(new Substance("http://localhost:8080/jaqpot/services/substance/" + name, name, null));
+        row.setValues(values);
+        return row;
+    }
+
+}
@@ -0,0 +1,115 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.dto.dataset;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import org.bson.BsonDocument;
+import org.bson.BsonDocumentWriter;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.BsonDocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.jaqpot.core.data.serialize.JacksonMongoSerializer;
+import org.jaqpot.core.data.serialize.bson.JacksonBsonCodec;
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class DatasetChunkTest {
+
+    private static final String FEATURE = "http://localhost:8080/jaqpot/services/feature/";
+
+    private final JacksonBsonCodec<DatasetChunk> codec = new JacksonBsonCodec<>(DatasetChunk.class, JacksonMongoSerializer.createMapper());
+
+    @Test
+    public void estimatesAtLeastTheStoredSize() {
+        List<DataEntry> rows = rows(200, 50);
+
+        long estimate = rows.stream().mapToLong(DatasetChunk::estimateBytes).sum();
+        long stored = size(new DatasetChunk("d1", "g1", 0, rows));
+
+        assertTrue(estimate + " < " + stored, estimate >= stored);
+        assertTrue(estimate + " > 2 * " + stored, estimate <= 2 * stored);
+    }
+
+    @Test
+    public void overestimatesCompactChunks() {
+        List<DataEntry> rows = rows(200, 50);
+
+        long estimate = rows.stream().mapToLong(DatasetChunk::estimateBytes).sum();
+        long stored = size(DatasetChunk.compact("d1", "g1", 0, ColumnarData.of(rows)));
+
+        assertTrue(estimate + " < " + stored, estimate >= stored);
+    }
+
+    @Test
+    public void countsNestedValues() {
+        DataEntry flat = row(0, 1);
+        DataEntry nested = row(0, 1);
+        List<Object> list = new ArrayList<>();
+        list.add("a long string value that is stored as it is");
+        list.add(1.0);
+        nested.getValues().put(FEATURE + "nested", list);
+
+        assertTrue(DatasetChunk.estimateBytes(nested) > DatasetChunk.estimateBytes(flat) + 50);
+    }
+
+    private long size(DatasetChunk chunk) {
+        BsonDocument document = new BsonDocument();
+        codec.encode(new BsonDocumentWriter(document), chunk, EncoderContext.builder().build());
+        return new RawBsonDocument(document, new BsonDocumentCodec()).getByteBuffer().remaining();
+    }
+
+    private static List<DataEntry> rows(int rows, int features) {
+        List<DataEntry> dataEntry = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            dataEntry.add(row(i, features));
+        }
+        return dataEntry;
+    }
+
+    private static DataEntry row(int i, int features) {
+        TreeMap<String, Object> values = new TreeMap<>();
+        for (int j = 0; j < features; j++) {
+            values.put(FEATURE + "f" + j, j % 5 == 0 ? "class-" + (i % 3) : i * 0.5 + j);
+        }
+        DataEntry row = new DataEntry();
+        row.setCompound(new Substance("http://localhost:8080/jaqpot/services/substance/s" + i, "s" + i, null));
+        row.setValues(values);
+        return row;
+    }
+
+}
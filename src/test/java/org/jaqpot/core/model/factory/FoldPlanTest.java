@@ -0,0 +1,175 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.factory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeMap;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.dto.dataset.Dataset;
+import org.jaqpot.core.model.dto.dataset.Substance;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class FoldPlanTest {
+
+    @Test
+    public void splitsTheFirstRepetitionInContiguousBlocks() {
+        FoldPlan plan = FoldPlan.of(10, 3, 1, 0L);
+
+        assertEquals(3, plan.size());
+        assertArrayEquals(new int[]{0, 1, 2, 3}, plan.testRows(0));
+        assertArrayEquals(new int[]{4, 5, 6}, plan.testRows(1));
+        assertArrayEquals(new int[]{7, 8, 9}, plan.testRows(2));
+        assertArrayEquals(new int[]{0, 1, 2, 3, 7, 8, 9}, plan.trainingRows(1));
+    }
+
+    @Test
+    public void partitionsTheRowsInEveryRepetition() {
+        FoldPlan plan = FoldPlan.of(23, 5, 4, 42L);
+
+        assertEquals(4, plan.getRepeats());
+        assertEquals(20, plan.size());
+        for (int repeat = 0; repeat < plan.getRepeats(); repeat++) {
+            int[] seen = new int[23];
+            for (int fold = 0; fold < plan.getFolds(); fold++) {
+                int split = repeat * plan.getFolds() + fold;
+                int[] test = plan.testRows(split);
+                int[] training = plan.trainingRows(split);
+                assertEquals(fold < 3 ? 5 : 4, test.length);
+                assertEquals(23, test.length + training.length);
+                assertSorted(test);
+                for (int row : test) {
+                    seen[row]++;
+                }
+                int[] all = Arrays.copyOf(training, 23);
+                System.arraycopy(test, 0, all, training.length, test.length);
+                Arrays.sort(all);
+                for (int row = 0; row < 23; row++) {
+                    assertEquals(row, all[row]);
+                }
+            }
+            for (int row = 0; row < 23; row++) {
+                assertEquals(1, seen[row]);
+            }
+        }
+    }
+
+    @Test
+    public void shufflesLaterRepetitionsByTheSeed() {
+        FoldPlan plan = FoldPlan.of(50, 5, 2, 7L);
+        FoldPlan same = FoldPlan.of(50, 5, 2, 7L);
+        FoldPlan other = FoldPlan.of(50, 5, 2, 8L);
+
+        for (int split = 0; split < plan.size(); split++) {
+            assertArrayEquals(plan.testRows(split), same.testRows(split));
+        }
+        assertFalse(Arrays.equals(plan.testRows(0), plan.testRows(5)));
+        assertFalse(Arrays.equals(plan.testRows(5), other.testRows(5)));
+    }
+
+    @Test
+    public void takesMoreFoldsThanRowsAsLeaveOneOut() {
+        FoldPlan plan = FoldPlan.of(4, 10, 1, 0L);
+        FoldPlan leaveOneOut = FoldPlan.leaveOneOut(4);
+
+        assertEquals(4, plan.getFolds());
+        assertEquals(4, leaveOneOut.size());
+        for (int split = 0; split < 4; split++) {
+            assertArrayEquals(new int[]{split}, leaveOneOut.testRows(split));
+            assertArrayEquals(plan.trainingRows(split), leaveOneOut.trainingRows(split));
+            assertEquals(3, leaveOneOut.trainingRows(split).length);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroFolds() {
+        FoldPlan.of(10, 0, 1, 0L);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsZeroRepetitions() {
+        FoldPlan.of(10, 2, 0, 0L);
+    }
+
+    @Test
+    public void viewsTheRowsOfTheSplit() {
+        Dataset dataset = dataset(7);
+        FoldPlan plan = FoldPlan.of(7, 2, 1, 0L);
+
+        Dataset test = plan.test(dataset, 1);
+        Dataset training = plan.training(dataset, 1);
+
+        assertEquals(Arrays.asList("s4", "s5", "s6"), names(test));
+        assertEquals(Arrays.asList("s0", "s1", "s2", "s3"), names(training));
+        assertEquals(4.0, training.getDataEntry().get(3).getValues().get("http://localhost/feature/x"));
+        assertEquals(7, dataset.getDataEntry().size());
+    }
+
+    private static void assertSorted(int[] rows) {
+        for (int i = 1; i < rows.length; i++) {
+            assertTrue(rows[i - 1] < rows[i]);
+        }
+    }
+
+    private static List<String> names(Dataset dataset) {
+        List<String> names = new ArrayList<>();
+        for (DataEntry dataEntry : dataset.getDataEntry()) {
+            names.add(dataEntry.getCompound().getName());
+        }
+        return names;
+    }
+
+    private static Dataset dataset(int rows) {
+        List<DataEntry> dataEntry = new ArrayList<>();
+        for (int i = 0; i < rows; i++) {
+            TreeMap<String, Object> values = new TreeMap<>();
+            values.put("http://localhost/feature/x", i + 1.0);
+            DataEntry row = new DataEntry();
+            row.setCompound(new Substance("http://localhost/substance/s" + i, "s" + i, null));
+            row.setValues(values);
+            dataEntry.add(row);
+        }
+        Dataset dataset = new Dataset();
+        dataset.setDataEntry(dataEntry);
+        return dataset;
+    }
+
+}
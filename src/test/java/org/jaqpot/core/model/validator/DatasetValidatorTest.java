@@ -0,0 +1,174 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.model.validator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import org.jaqpot.core.model.dto.dataset.DataEntry;
+import org.jaqpot.core.model.validator.DatasetValidator.ColumnType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class DatasetValidatorTest {
+
+    private static final String A = "http://localhost:8080/jaqpot/services/feature/a";
+    private static final String B = "http://localhost:8080/jaqpot/services/feature/b";
+    private static final String C = "http://localhost:8080/jaqpot/services/feature/c";
+
+    @Test
+    public void acceptsRowsMatchingTheFeatures() {
+        DatasetValidator validator = new DatasetValidator(Arrays.asList(C, A, B));
+
+        assertTrue(validator.accept(row(A, 1.0, B, 2, C, 3L)));
+        assertTrue(validator.accept(row(A, 4.0, B, 5, C, 6L)));
+        validator.check();
+
+        assertTrue(validator.isValid());
+        assertEquals(Arrays.asList(A, B, C), validator.getFeatures());
+        assertEquals(2, validator.getRows());
+        assertEquals(3, validator.getColumns());
+        assertEquals(0, validator.getProblemCount());
+    }
+
+    @Test
+    public void reportsMissingFeatures() {
+        DatasetValidator validator = new DatasetValidator(Arrays.asList(A, B, C));
+
+        assertFalse(validator.accept(row(B, 1.0)));
+
+        assertEquals(1, validator.getProblemCount());
+        assertEquals("Row 0 lacks 2 feature(s), e.g. " + A, validator.getProblems().get(0));
+        assertEquals(1, validator.getColumns());
+    }
+
+    @Test
+    public void reportsMissingTrailingFeatures() {
+        DatasetValidator validator = new DatasetValidator(Arrays.asList(A, B, C));
+
+        assertFalse(validator.accept(row(A, 1.0)));
+
+        assertEquals("Row 0 lacks 2 feature(s), e.g. " + B, validator.getProblems().get(0));
+    }
+
+    @Test
+    public void reportsUnknownFeatures() {
+        DatasetValidator validator = new DatasetValidator(Arrays.asList(A, C));
+
+        assertFalse(validator.accept(row(A, 1.0, B, 2.0, C, 3.0)));
+
+        assertEquals("Row 0 has 1 unknown feature(s), e.g. " + B, validator.getProblems().get(0));
+        assertEquals(3, validator.getColumns());
+    }
+
+    @Test
+    public void reportsMissingAndUnknownFeaturesTogether() {
+        DatasetValidator validator = new DatasetValidator(Arrays.asList(A, B));
+
+        assertFalse(validator.accept(row(A, 1.0, C, 2.0)));
+
+        assertEquals("Row 0 lacks 1 feature(s), e.g. " + B + " and has 1 unknown feature(s), e.g. " + C,
+                validator.getProblems().get(0));
+    }
+
+    @Test
+    public void reportsRowsWithoutValues() {
+        DatasetValidator validator = new DatasetValidator(Arrays.asList(A));
+
+        assertFalse(validator.accept(null));
+        assertFalse(validator.accept(new DataEntry()));
+
+        assertEquals(2, validator.getRows());
+        assertEquals(Arrays.asList("Row 0 has no values", "Row 1 has no values"), validator.getProblems());
+    }
+
+    @Test
+    public void keepsTheFirstProblemsAndCountsTheRest() {
+        DatasetValidator validator = new DatasetValidator(Arrays.asList(A, B));
+        int rows = DatasetValidator.MAX_PROBLEMS + 5;
+        for (int i = 0; i < rows; i++) {
+            validator.accept(row(A, i));
+        }
+
+        assertEquals(rows, validator.getProblemCount());
+        assertEquals(DatasetValidator.MAX_PROBLEMS, validator.getProblems().size());
+        try {
+            validator.check();
+            fail("Expected the invalid rows to be reported");
+        } catch (IllegalArgumentException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().startsWith("Invalid Dataset - DataEntry URIs do not match with Feature URIs. Row 0 "));
+            assertTrue(ex.getMessage(), ex.getMessage().endsWith("; and 5 more row(s)"));
+        }
+    }
+
+    @Test
+    public void detectsColumnTypes() {
+        String d = "http://localhost:8080/jaqpot/services/feature/d";
+        String e = "http://localhost:8080/jaqpot/services/feature/e";
+        String f = "http://localhost:8080/jaqpot/services/feature/f";
+        DatasetValidator validator = new DatasetValidator(Arrays.asList(A, B, C, d, e, f));
+        List<Object> list = new ArrayList<>();
+        list.add(1.0);
+
+        validator.accept(row(A, 1, B, "x", C, true, d, null, e, list, f, 2.0));
+        validator.accept(row(A, 2.5, B, null, C, false, d, null, e, list, f, "y"));
+
+        Map<String, ColumnType> types = validator.getColumnTypes();
+        assertEquals(Arrays.asList(A, B, C, d, e, f), new ArrayList<>(types.keySet()));
+        assertEquals(ColumnType.NUMERIC, types.get(A));
+        assertEquals(ColumnType.STRING, types.get(B));
+        assertEquals(ColumnType.BOOLEAN, types.get(C));
+        assertEquals(ColumnType.EMPTY, types.get(d));
+        assertEquals(ColumnType.OTHER, types.get(e));
+        assertEquals(ColumnType.MIXED, types.get(f));
+    }
+
+    private static DataEntry row(Object... keysAndValues) {
+        TreeMap<String, Object> values = new TreeMap<>();
+        for (int i = 0; i < keysAndValues.length; i += 2) {
+            values.put((String) keysAndValues[i], keysAndValues[i + 1]);
+        }
+        DataEntry dataEntry = new DataEntry();
+        dataEntry.setValues(values);
+        return dataEntry;
+    }
+
+}
@@ -0,0 +1,280 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.service.client.jpdi;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.entity.ContentType;
+import org.apache.http.nio.ContentEncoder;
+import org.apache.http.nio.IOControl;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class RequestBodyProducerTest {
+
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    @After
+    public void tearDown() {
+        writer.shutdownNow();
+    }
+
+    @Test
+    public void sendsTheBodyAsWritten() throws Exception {
+        byte[] body = body(1 << 20);
+        RequestBodyProducer producer = producer(256 << 10);
+        Future<?> written = writer.submit(() -> {
+            producer.stream().write(body, 0, 1000);
+            producer.stream().write(body[1000]);
+            producer.stream().write(body, 1001, body.length - 1001);
+            producer.finish();
+            return null;
+        });
+
+        Encoder encoder = new Encoder(10000);
+        Control control = new Control();
+        while (!encoder.isCompleted()) {
+            producer.produceContent(encoder, control);
+        }
+        written.get(10, TimeUnit.SECONDS);
+
+        assertArrayEquals(body, encoder.bytes.toByteArray());
+    }
+
+    @Test
+    public void sendsAChunkedBodyOfTheGivenType() {
+        HttpPost request = (HttpPost) producer(0).generateRequest();
+
+        assertTrue(request.getEntity().isChunked());
+        assertEquals(ContentType.APPLICATION_JSON.toString(), request.getEntity().getContentType().getValue());
+        assertEquals("localhost", producer(0).getTarget().getHostName());
+    }
+
+    @Test
+    public void suspendsOutputWhileNothingIsBuffered() throws IOException {
+        RequestBodyProducer producer = producer(1 << 20);
+        Encoder encoder = new Encoder(Integer.MAX_VALUE);
+        Control control = new Control();
+
+        producer.produceContent(encoder, control);
+        assertEquals(1, control.suspended.get());
+
+        producer.stream().write(new byte[100]);
+        producer.finish();
+        assertTrue(control.requested.get() > 0);
+        producer.produceContent(encoder, control);
+        assertTrue(encoder.isCompleted());
+        assertEquals(100, encoder.bytes.size());
+    }
+
+    @Test
+    public void makesTheWriterWaitBeyondTheLimit() throws Exception {
+        RequestBodyProducer producer = producer(128 << 10);
+        byte[] body = body(1 << 20);
+        Future<?> written = writer.submit(() -> {
+            producer.stream().write(body);
+            producer.finish();
+            return null;
+        });
+        try {
+            written.get(500, TimeUnit.MILLISECONDS);
+            fail("Expected the writer to wait for the connection");
+        } catch (TimeoutException expected) {
+        }
+
+        Encoder encoder = new Encoder(1 << 16);
+        Control control = new Control();
+        while (!encoder.isCompleted()) {
+            producer.produceContent(encoder, control);
+        }
+        written.get(10, TimeUnit.SECONDS);
+        assertArrayEquals(body, encoder.bytes.toByteArray());
+    }
+
+    @Test
+    public void neverMakesTheWriterWaitWithoutALimit() throws IOException {
+        RequestBodyProducer producer = producer(0);
+        producer.stream().write(body(4 << 20));
+        producer.finish();
+
+        Encoder encoder = new Encoder(1 << 20);
+        Control control = new Control();
+        while (!encoder.isCompleted()) {
+            producer.produceContent(encoder, control);
+        }
+        assertEquals(4 << 20, encoder.bytes.size());
+    }
+
+    @Test
+    public void releasesAWaitingWriterWhenTheExchangeEnds() throws Exception {
+        RequestBodyProducer producer = producer(64 << 10);
+        Future<?> written = writer.submit(() -> {
+            producer.stream().write(body(1 << 20));
+            producer.finish();
+            return null;
+        });
+        Thread.sleep(200);
+        assertFalse(written.isDone());
+
+        producer.close();
+        try {
+            written.get(10, TimeUnit.SECONDS);
+            fail("Expected the writer to fail");
+        } catch (ExecutionException ex) {
+            assertTrue(ex.getCause() instanceof IOException);
+        }
+    }
+
+    @Test
+    public void refusesTheBodyAfterAFailure() throws IOException {
+        RequestBodyProducer producer = producer(1 << 20);
+        producer.failed(new IOException("Connection reset"));
+        try {
+            producer.stream().write(new byte[1 << 17]);
+            fail("Expected the body to be refused");
+        } catch (IOException expected) {
+        }
+        try {
+            producer.finish();
+            fail("Expected the body to be refused");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void abortsInsteadOfSendingAPartialBody() throws IOException {
+        RequestBodyProducer producer = producer(1 << 20);
+        producer.stream().write(new byte[1 << 17]);
+        producer.abort(new IllegalStateException("Serialization failed"));
+
+        try {
+            producer.produceContent(new Encoder(Integer.MAX_VALUE), new Control());
+            fail("Expected the exchange to be aborted");
+        } catch (IOException ex) {
+            assertTrue(ex.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    private static RequestBodyProducer producer(long limit) {
+        return new RequestBodyProducer(new HttpPost("http://localhost:8080/algorithm/training"), ContentType.APPLICATION_JSON, limit);
+    }
+
+    private static byte[] body(int length) {
+        byte[] body = new byte[length];
+        new Random(length).nextBytes(body);
+        return body;
+    }
+
+    /**
+     * Takes at most a fixed number of bytes per write, as a connection whose
+     * socket buffer fills up does.
+     */
+    private static class Encoder implements ContentEncoder {
+
+        private final int capacity;
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private boolean completed;
+
+        Encoder(int capacity) {
+            this.capacity = capacity;
+        }
+
+        @Override
+        public int write(ByteBuffer src) {
+            int length = Math.min(capacity, src.remaining());
+            byte[] chunk = new byte[length];
+            src.get(chunk);
+            bytes.write(chunk, 0, length);
+            return length;
+        }
+
+        @Override
+        public void complete() {
+            completed = true;
+        }
+
+        @Override
+        public boolean isCompleted() {
+            return completed;
+        }
+
+    }
+
+    private static class Control implements IOControl {
+
+        private final AtomicInteger requested = new AtomicInteger();
+        private final AtomicInteger suspended = new AtomicInteger();
+
+        @Override
+        public void requestInput() {
+        }
+
+        @Override
+        public void suspendInput() {
+        }
+
+        @Override
+        public void requestOutput() {
+            requested.incrementAndGet();
+        }
+
+        @Override
+        public void suspendOutput() {
+            suspended.incrementAndGet();
+        }
+
+        @Override
+        public void shutdown() {
+        }
+
+    }
+
+}
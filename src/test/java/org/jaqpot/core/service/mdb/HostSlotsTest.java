@@ -0,0 +1,151 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.service.mdb;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class HostSlotsTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @Test
+    public void queuesWorkBeyondTheSlotsWithoutWaiting() {
+        HostSlots slots = new HostSlots(2);
+        List<CompletableFuture<Integer>> stages = stages(4);
+        List<CompletableFuture<Integer>> results = new ArrayList<>();
+        List<Integer> started = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            int work = i;
+            results.add(slots.submit(() -> {
+                started.add(work);
+                return stages.get(work);
+            }, DIRECT));
+        }
+
+        assertEquals(2, slots.running());
+        assertEquals(2, slots.pending());
+        assertEquals(2, started.size());
+        stages.get(1).complete(1);
+        assertEquals(Integer.valueOf(1), results.get(1).join());
+        assertEquals(3, started.size());
+        assertEquals(Integer.valueOf(2), started.get(2));
+        assertEquals(2, slots.running());
+        assertEquals(1, slots.pending());
+    }
+
+    @Test
+    public void startsQueuedWorkInOrder() {
+        HostSlots slots = new HostSlots(1);
+        List<CompletableFuture<Integer>> stages = stages(3);
+        List<Integer> started = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int work = i;
+            slots.submit(() -> {
+                started.add(work);
+                return stages.get(work);
+            }, DIRECT);
+        }
+        stages.get(0).complete(0);
+        stages.get(1).complete(1);
+        stages.get(2).complete(2);
+
+        assertEquals(3, started.size());
+        assertEquals(Integer.valueOf(0), started.get(0));
+        assertEquals(Integer.valueOf(1), started.get(1));
+        assertEquals(Integer.valueOf(2), started.get(2));
+        assertEquals(0, slots.running());
+    }
+
+    @Test
+    public void releasesTheSlotOfFailedWork() {
+        HostSlots slots = new HostSlots(1);
+        CompletableFuture<Integer> stage = new CompletableFuture<>();
+        CompletableFuture<Integer> failed = slots.submit(() -> stage, DIRECT);
+        CompletableFuture<Integer> thrown = slots.submit(() -> {
+            throw new IllegalStateException("Not started");
+        }, DIRECT);
+        CompletableFuture<Integer> next = slots.submit(() -> CompletableFuture.completedFuture(3), DIRECT);
+
+        stage.completeExceptionally(new IllegalArgumentException("Bad request"));
+
+        assertTrue(failed.isCompletedExceptionally());
+        assertTrue(thrown.isCompletedExceptionally());
+        assertEquals(Integer.valueOf(3), next.join());
+        assertEquals(0, slots.running());
+        assertEquals(0, slots.pending());
+    }
+
+    @Test
+    public void releasesTheSlotWhenTheExecutorRejectsTheWork() {
+        HostSlots slots = new HostSlots(1);
+        CompletableFuture<Integer> rejected = slots.submit(() -> CompletableFuture.completedFuture(1), task -> {
+            throw new RejectedExecutionException("Shut down");
+        });
+
+        assertTrue(rejected.isCompletedExceptionally());
+        assertEquals(0, slots.running());
+        assertEquals(Integer.valueOf(2), slots.submit(() -> CompletableFuture.completedFuture(2), DIRECT).join());
+    }
+
+    @Test
+    public void startsTheWorkOnTheExecutor() {
+        HostSlots slots = new HostSlots(1);
+        List<Runnable> tasks = new ArrayList<>();
+        CompletableFuture<Integer> result = slots.submit(() -> CompletableFuture.completedFuture(1), tasks::add);
+
+        assertEquals(1, tasks.size());
+        assertFalse(result.isDone());
+        tasks.get(0).run();
+        assertEquals(Integer.valueOf(1), result.join());
+    }
+
+    private static List<CompletableFuture<Integer>> stages(int count) {
+        List<CompletableFuture<Integer>> stages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            stages.add(new CompletableFuture<>());
+        }
+        return stages;
+    }
+
+}
@@ -0,0 +1,166 @@
+/*
+ *
+ * JAQPOT Quattro
+ *
+ * JAQPOT Quattro and the components shipped with it (web applications and beans)
+ * are licensed by GPL v3 as specified hereafter. Additional components may ship
+ * with some other licence as will be specified therein.
+ *
+ * Copyright (C) 2014-2015 KinkyDesign (Charalampos Chomenidis, Pantelis Sopasakis)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ * Source code:
+ * The source code of JAQPOT Quattro is available on github at:
+ * https://github.com/KinkyDesign/JaqpotQuattro
+ * All source files of JAQPOT Quattro that are stored on github are licensed
+ * with the aforementioned licence. 
+ */
+package org.jaqpot.core.util;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ *
+ * @author Charalampos Chomenidis
+ * @author Pantelis Sopasakis
+ */
+public class CSVReaderTest {
+
+    @Test
+    public void readsRecordsWithAnyLineEnd() throws IOException {
+        List<String[]> records = readAll(new StringReader("a,b\nc,d\r\ne,f\rg,h"));
+
+        assertEquals(4, records.size());
+        assertArrayEquals(new String[]{"a", "b"}, records.get(0));
+        assertArrayEquals(new String[]{"c", "d"}, records.get(1));
+        assertArrayEquals(new String[]{"e", "f"}, records.get(2));
+        assertArrayEquals(new String[]{"g", "h"}, records.get(3));
+    }
+
+    @Test
+    public void keepsEmptyFields() throws IOException {
+        List<String[]> records = readAll(new StringReader(",b,\n,,\n"));
+
+        assertArrayEquals(new String[]{"", "b", ""}, records.get(0));
+        assertArrayEquals(new String[]{"", "", ""}, records.get(1));
+    }
+
+    @Test
+    public void readsQuotedFields() throws IOException {
+        List<String[]> records = readAll(new StringReader("\"a,b\",\"say \"\"hi\"\"\",\"\"\n"));
+
+        assertArrayEquals(new String[]{"a,b", "say \"hi\"", ""}, records.get(0));
+    }
+
+    @Test
+    public void readsQuotedFieldsSpanningLines() throws IOException {
+        CSVReader reader = new CSVReader(new StringReader("id,note\n1,\"first\r\nsecond\nthird\"\n2,x\n"));
+
+        reader.readRecord();
+        assertArrayEquals(new String[]{"1", "first\r\nsecond\nthird"}, reader.readRecord());
+        assertEquals(5, reader.getLine());
+        assertArrayEquals(new String[]{"2", "x"}, reader.readRecord());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void skipsBlankLinesAndCountsThem() throws IOException {
+        CSVReader reader = new CSVReader(new StringReader("a\n\n\r\n\rb\n"));
+
+        assertArrayEquals(new String[]{"a"}, reader.readRecord());
+        assertEquals(2, reader.getLine());
+        assertArrayEquals(new String[]{"b"}, reader.readRecord());
+        assertEquals(6, reader.getLine());
+        assertNull(reader.readRecord());
+    }
+
+    @Test
+    public void readsAcrossBufferBoundaries() throws IOException {
+        StringBuilder document = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            document.append(i).append(",\"v").append(i).append("\"\r\n");
+        }
+
+        List<String[]> records = readAll(new OneCharReader(new StringReader(document.toString())));
+        List<String[]> buffered = readAll(new StringReader(document.toString()));
+
+        assertEquals(20000, records.size());
+        assertEquals(20000, buffered.size());
+        for (int i = 0; i < 20000; i++) {
+            assertArrayEquals(new String[]{String.valueOf(i), "v" + i}, records.get(i));
+            assertArrayEquals(new String[]{String.valueOf(i), "v" + i}, buffered.get(i));
+        }
+    }
+
+    @Test
+    public void supportsOtherSeparatorsAndQuotes() throws IOException {
+        CSVReader reader = new CSVReader(new StringReader("a;'b;c'\n"), ';', '\'');
+
+        assertArrayEquals(new String[]{"a", "b;c"}, reader.readRecord());
+    }
+
+    @Test
+    public void rejectsUnterminatedQuotes() throws IOException {
+        CSVReader reader = new CSVReader(new StringReader("a,b\n1,\"open\n2,3\n"));
+        reader.readRecord();
+        try {
+            reader.readRecord();
+            fail("Expected the unterminated quote to be reported");
+        } catch (IOException ex) {
+            assertTrue(ex.getMessage(), ex.getMessage().contains("line 2"));
+        }
+    }
+
+    private static List<String[]> readAll(Reader in) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(in)) {
+            String[] record;
+            while ((record = reader.readRecord()) != null) {
+                records.add(record);
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Hands out one character per read, so that every character is at the
+     * edge of the buffer.
+     */
+    private static class OneCharReader extends FilterReader {
+
+        OneCharReader(Reader in) {
+            super(in);
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            return super.read(buffer, offset, Math.min(length, 1));
+        }
+
+    }
+
+}